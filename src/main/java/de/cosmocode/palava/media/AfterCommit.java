@@ -0,0 +1,201 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Static utility class which defers actions until the surrounding transaction
+ * commits. Transaction boundaries are tracked by the interceptor installed
+ * using the {@link AfterCommitModule}. Actions deferred outside of a transaction,
+ * or if the module is not installed, are executed immediately.
+ *
+ * <p>
+ *   All actions deferred during a transaction are executed in one batch after the
+ *   outermost transactional method returned and dropped if it threw an exception.
+ *   Failing actions are logged, but do not affect the already committed transaction.
+ * </p>
+ *
+ * @since 2.2
+ * @author agent
+ */
+public final class AfterCommit {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AfterCommit.class);
+    
+    private static final ThreadLocal<Frame> FRAME = new ThreadLocal<Frame>();
+    
+    private AfterCommit() {
+        
+    }
+    
+    /**
+     * Transaction state of the current thread.
+     */
+    private static final class Frame {
+        
+        private int depth;
+        
+        private final List<Runnable> actions = Lists.newArrayList();
+        
+    }
+    
+    /**
+     * Executes the given action after the current transaction committed
+     * or immediately if there is no current transaction.
+     * 
+     * @param action the action
+     * @throws NullPointerException if action is null
+     */
+    public static void execute(Runnable action) {
+        Preconditions.checkNotNull(action, "Action");
+        final Frame frame = FRAME.get();
+        if (frame == null) {
+            action.run();
+        } else {
+            frame.actions.add(action);
+        }
+    }
+    
+    /**
+     * Creates a proxy which defers all calls to the given delegate using {@link #execute(Runnable)}.
+     * 
+     * @param <T> the generic event type
+     * @param type the event interface
+     * @param delegate the delegate, usually created using {@link de.cosmocode.palava.core.Registry#proxy(Class)}
+     * @return a proxy which defers calls until the current transaction committed
+     * @throws NullPointerException if type or delegate is null
+     * @throws IllegalArgumentException if type is not an interface or declares methods returning values
+     */
+    public static <T> T of(Class<T> type, final T delegate) {
+        Preconditions.checkNotNull(type, "Type");
+        Preconditions.checkNotNull(delegate, "Delegate");
+        Preconditions.checkArgument(type.isInterface(), "%s is not an interface", type);
+        for (Method method : type.getMethods()) {
+            Preconditions.checkArgument(method.getReturnType() == void.class, "%s does not return void", method);
+        }
+        
+        final InvocationHandler handler = new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, final Method method, final Object[] args) throws Throwable {
+                if (method.getDeclaringClass() == Object.class) {
+                    if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    } else if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    } else {
+                        return String.format("AfterCommit [delegate=%s]", delegate);
+                    }
+                } else if (FRAME.get() == null) {
+                    try {
+                        return method.invoke(delegate, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+                
+                execute(new Runnable() {
+                    
+                    @Override
+                    public void run() {
+                        try {
+                            method.invoke(delegate, args);
+                        } catch (IllegalAccessException e) {
+                            throw new IllegalStateException(e);
+                        } catch (InvocationTargetException e) {
+                            throw new IllegalStateException(e.getCause());
+                        }
+                    }
+                    
+                });
+                
+                return null;
+            }
+            
+        };
+        
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+    
+    /**
+     * Marks the beginning of a transactional method.
+     */
+    static void begin() {
+        final Frame frame = FRAME.get();
+        if (frame == null) {
+            FRAME.set(new Frame());
+        } else {
+            frame.depth++;
+        }
+    }
+    
+    /**
+     * Checks whether the current transactional method is the outermost one.
+     * 
+     * @return true if the end of the current method completes the transaction
+     */
+    static boolean isOutermost() {
+        final Frame frame = FRAME.get();
+        return frame != null && frame.depth == 0;
+    }
+    
+    /**
+     * Marks the end of a transactional method.
+     * 
+     * @param committed true if the method returned normally, false if it threw an exception
+     */
+    static void end(boolean committed) {
+        final Frame frame = FRAME.get();
+        Preconditions.checkState(frame != null, "No transaction in progress");
+        
+        if (frame.depth > 0) {
+            frame.depth--;
+            return;
+        }
+        
+        FRAME.remove();
+        
+        if (!committed) {
+            LOG.debug("Dropping {} deferred action(s) after rollback", frame.actions.size());
+            return;
+        }
+        
+        LOG.trace("Executing {} deferred action(s) after commit", frame.actions.size());
+        
+        for (Runnable action : frame.actions) {
+            try {
+                action.run();
+            /* CHECKSTYLE:OFF */
+            } catch (RuntimeException e) {
+            /* CHECKSTYLE:ON */
+                LOG.error("Deferred action " + action + " failed", e);
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media;
+
+import javax.persistence.EntityManager;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+/**
+ * Tracks transaction boundaries for {@link AfterCommit}. If an {@link EntityManager}
+ * is bound, the interceptor verifies that its transaction has been completed when the
+ * outermost transactional method returns. A transaction which is still active at that
+ * point reveals that this interceptor runs inside the transaction interceptor, i.e.
+ * that deferred actions would run before the commit.
+ *
+ * @since 2.2
+ * @author agent
+ */
+final class AfterCommitInterceptor implements MethodInterceptor {
+
+    private Provider<EntityManager> provider;
+    
+    @Inject(optional = true)
+    void setEntityManager(Provider<EntityManager> entityManager) {
+        this.provider = Preconditions.checkNotNull(entityManager, "EntityManager");
+    }
+    
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        AfterCommit.begin();
+        final Object returnValue;
+        
+        try {
+            returnValue = invocation.proceed();
+        /* CHECKSTYLE:OFF */
+        } catch (Throwable e) {
+        /* CHECKSTYLE:ON */
+            AfterCommit.end(false);
+            throw e;
+        }
+        
+        if (AfterCommit.isOutermost() && isTransactionActive()) {
+            AfterCommit.end(false);
+            throw new IllegalStateException(String.format(
+                "Transaction is still active after %s returned, %s must be installed before the module " +
+                "binding the transaction interceptor", invocation.getMethod(), AfterCommitModule.class.getName()));
+        }
+        
+        AfterCommit.end(true);
+        return returnValue;
+    }
+    
+    private boolean isTransactionActive() {
+        return provider != null && provider.get().getTransaction().isActive();
+    }
+
+}
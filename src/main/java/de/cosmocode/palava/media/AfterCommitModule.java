@@ -0,0 +1,68 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Binder;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.matcher.Matchers;
+
+import de.cosmocode.palava.jpa.Transactional;
+
+/**
+ * Enables {@link AfterCommit} by intercepting all methods annotated with {@link Transactional}.
+ * This module must be installed before the module binding the transaction interceptor, which
+ * places the returned interceptor outside of the transaction. If an {@link javax.persistence.EntityManager}
+ * is bound, a wrong order is detected at runtime: the outermost transactional method then fails
+ * with an {@link IllegalStateException}, which rolls back the transaction, instead of executing
+ * deferred actions before the commit.
+ *
+ * @since 2.2
+ * @author agent
+ */
+public final class AfterCommitModule implements Module {
+
+    private static final Key<AfterCommitInterceptor> KEY = Key.get(AfterCommitInterceptor.class);
+
+    @Override
+    public void configure(Binder binder) {
+        final AfterCommitInterceptor interceptor = new AfterCommitInterceptor();
+        binder.bind(KEY).toInstance(interceptor);
+        binder.requestInjection(interceptor);
+        binder.bindInterceptor(Matchers.any(), Matchers.annotatedWith(Transactional.class), interceptor);
+    }
+
+    /**
+     * Checks whether this module has been installed in the given injector or one of its parents.
+     * Features which must not run before the transaction committed use this check to reject
+     * configurations in which {@link AfterCommit} would execute actions immediately.
+     *
+     * @param injector the injector to check
+     * @return true if this module has been installed, false otherwise
+     * @throws NullPointerException if injector is null
+     */
+    public static boolean isInstalled(Injector injector) {
+        Preconditions.checkNotNull(injector, "Injector");
+        for (Injector current = injector; current != null; current = current.getParent()) {
+            if (current.getBindings().containsKey(KEY)) return true;
+        }
+        return false;
+    }
+
+}
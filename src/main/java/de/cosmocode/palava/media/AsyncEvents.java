@@ -0,0 +1,315 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.media;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.persistence.Entity;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.model.base.EntityBase;
+
+/**
+ * Asynchronous event dispatching using an {@link Executor}.
+ * 
+ * <p>
+ *   Only events which have already happened, like {@link de.cosmocode.palava.media.asset.AssetCreatedEvent},
+ *   should be dispatched asynchronously. Events which allow listeners to veto an operation
+ *   by throwing an exception must stay synchronous. Listeners of asynchronous events
+ *   run in a different thread and must therefore not rely on lazy loading.
+ * </p>
+ * 
+ * <p>
+ *   Calls are queued per entity, which is the first {@link EntityBase} argument of a call,
+ *   identified by its id and its mapped entity type. Calls for the same entity are delivered
+ *   one after another in the order they were made, across all proxies created by the same instance.
+ *   If the last pending call of an entity's queue has the same method and the same arguments,
+ *   it is replaced by the new call, i.e. only the latest state is delivered. Entities, unlike
+ *   other arguments, are compared by identity rather than by instance.
+ *   If the executor rejects a call, e.g. because its queue is full, the call is delivered
+ *   in the calling thread, which slows down producers to the pace of the listeners.
+ * </p>
+ *
+ * @since 2.2
+ * @author agent
+ */
+public final class AsyncEvents {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncEvents.class);
+    
+    /**
+     * The queue key of calls without any entity argument.
+     */
+    private static final Object NO_ENTITY = new Object();
+    
+    private static final ConcurrentMap<Class<?>, Class<?>> MAPPED_TYPES = Maps.newConcurrentMap();
+    
+    private final Executor executor;
+    
+    private final Map<Object, LinkedList<Call>> queues = Maps.newHashMap();
+    
+    public AsyncEvents(Executor executor) {
+        this.executor = Preconditions.checkNotNull(executor, "Executor");
+    }
+    
+    /**
+     * Creates a proxy which dispatches all calls to the given delegate using the executor of this instance.
+     * 
+     * @param <T> the generic event type
+     * @param type the event interface
+     * @param delegate the delegate, usually created using {@link de.cosmocode.palava.core.Registry#proxy(Class)}
+     * @return an asynchronous proxy for the given delegate
+     * @throws NullPointerException if type or delegate is null
+     * @throws IllegalArgumentException if type is not an interface or declares methods returning values
+     */
+    public <T> T of(Class<T> type, T delegate) {
+        Preconditions.checkNotNull(type, "Type");
+        Preconditions.checkArgument(type.isInterface(), "%s is not an interface", type);
+        for (Method method : type.getMethods()) {
+            Preconditions.checkArgument(method.getReturnType() == void.class, "%s does not return void", method);
+        }
+        final InvocationHandler handler = new AsyncHandler(Preconditions.checkNotNull(delegate, "Delegate"));
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+    
+    private void enqueue(Call call) {
+        final Object entity = call.entity();
+        final LinkedList<Call> queue;
+        
+        synchronized (queues) {
+            final LinkedList<Call> existing = queues.get(entity);
+            if (existing == null) {
+                queue = new LinkedList<Call>();
+                queue.add(call);
+                queues.put(entity, queue);
+            } else {
+                final Call last = existing.peekLast();
+                if (last != null && last.equals(call)) {
+                    LOG.trace("Coalesced pending {}", call.method);
+                    existing.set(existing.size() - 1, call);
+                } else {
+                    existing.add(call);
+                }
+                // already being drained
+                return;
+            }
+        }
+        
+        final Runnable task = new Runnable() {
+            
+            @Override
+            public void run() {
+                drain(entity, queue);
+            }
+            
+        };
+        
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Executor is saturated, delivering {} in calling thread", call.method);
+            task.run();
+        }
+    }
+    
+    private void drain(Object entity, LinkedList<Call> queue) {
+        while (true) {
+            final Call call;
+            synchronized (queues) {
+                call = queue.poll();
+                if (call == null) {
+                    queues.remove(entity);
+                    return;
+                }
+            }
+            call.deliver();
+        }
+    }
+    
+    /**
+     * Identifies an entity by its mapped type and id, which allows matching
+     * proxies against their actual instances.
+     * 
+     * @param entity the entity
+     * @return an object identifying the given entity
+     */
+    private static Object identityOf(EntityBase entity) {
+        return Arrays.asList(mappedTypeOf(entity.getClass()), entity.getId());
+    }
+    
+    /**
+     * Finds the topmost class annotated with {@link Entity}, which is the root of
+     * the mapped inheritance hierarchy and therefore shares its ids with all subclasses.
+     * Proxy classes extend the class they proxy and thus resolve to the same type.
+     * 
+     * @param type the runtime type of an entity
+     * @return the mapped type or the given type if it is not mapped at all
+     */
+    private static Class<?> mappedTypeOf(Class<?> type) {
+        final Class<?> cached = MAPPED_TYPES.get(type);
+        if (cached != null) return cached;
+        Class<?> mapped = type;
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            if (current.isAnnotationPresent(Entity.class)) mapped = current;
+        }
+        MAPPED_TYPES.putIfAbsent(type, mapped);
+        return mapped;
+    }
+    
+    /**
+     * A pending call. Calls are equal if they target the same method using the same arguments.
+     */
+    private static final class Call {
+        
+        private final Object delegate;
+        
+        private final Method method;
+        
+        private final Object[] args;
+        
+        private final Object[] identities;
+        
+        public Call(Object delegate, Method method, Object[] args) {
+            this.delegate = delegate;
+            this.method = method;
+            this.args = args == null ? new Object[0] : args;
+            this.identities = new Object[this.args.length];
+            for (int i = 0; i < identities.length; i++) {
+                final Object arg = this.args[i];
+                identities[i] = arg instanceof EntityBase ? identityOf(EntityBase.class.cast(arg)) : new Identity(arg);
+            }
+        }
+        
+        /**
+         * Provides the key of the queue this call belongs to.
+         * 
+         * @return the identity of the first entity argument
+         */
+        public Object entity() {
+            for (Object arg : args) {
+                if (arg instanceof EntityBase) return identityOf(EntityBase.class.cast(arg));
+            }
+            return NO_ENTITY;
+        }
+        
+        /**
+         * Delivers this call to its delegate. Failures are logged, because they
+         * must neither affect the caller nor the remaining calls of the queue.
+         */
+        public void deliver() {
+            try {
+                method.invoke(delegate, args);
+            } catch (IllegalAccessException e) {
+                LOG.error("Asynchronous delivery of " + method + " failed", e);
+            } catch (InvocationTargetException e) {
+                LOG.error("Asynchronous delivery of " + method + " failed", e.getCause());
+            }
+        }
+        
+        @Override
+        public boolean equals(Object that) {
+            if (this == that) {
+                return true;
+            } else if (that instanceof Call) {
+                final Call other = Call.class.cast(that);
+                return delegate == other.delegate && method.equals(other.method) && 
+                    Arrays.equals(identities, other.identities);
+            } else {
+                return false;
+            }
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * method.hashCode() + Arrays.hashCode(identities);
+        }
+        
+    }
+    
+    /**
+     * Compares objects by identity.
+     */
+    private static final class Identity {
+        
+        private final Object object;
+        
+        public Identity(Object object) {
+            this.object = object;
+        }
+        
+        @Override
+        public boolean equals(Object that) {
+            return that instanceof Identity && Identity.class.cast(that).object == object;
+        }
+        
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(object);
+        }
+        
+    }
+    
+    /**
+     * Dispatches calls asynchronously.
+     */
+    private final class AsyncHandler implements InvocationHandler {
+        
+        private final Object delegate;
+        
+        public AsyncHandler(Object delegate) {
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                } else {
+                    return toString();
+                }
+            }
+            
+            enqueue(new Call(delegate, method, args));
+            return null;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("AsyncEvents [delegate=%s, executor=%s]", delegate, executor);
+        }
+        
+    }
+    
+}
@@ -26,6 +26,50 @@ public final class MediaConfig {
 
     public static final String PREFIX = "media.";
     
+    public static final String DEDUPLICATION = PREFIX + "deduplication";
+    
+    public static final String CACHE_MAX_SIZE = PREFIX + "cache.maxSize";
+    
+    public static final String CACHE_MAX_ENTRY_SIZE = PREFIX + "cache.maxEntrySize";
+    
+    public static final String COMPRESSION_LEVEL = PREFIX + "compression.level";
+    
+    public static final String EXPIRATION_INTERVAL = PREFIX + "expiration.interval";
+    
+    public static final String EXPIRATION_INTERVAL_UNIT = PREFIX + "expiration.intervalUnit";
+    
+    public static final String EXPIRATION_BATCH_SIZE = PREFIX + "expiration.batchSize";
+    
+    public static final String EXPIRATION_TICK = PREFIX + "expiration.tick";
+    
+    public static final String EXPIRATION_TICK_UNIT = PREFIX + "expiration.tickUnit";
+    
+    public static final String EXPIRATION_HORIZON = PREFIX + "expiration.horizon";
+    
+    public static final String EXPIRATION_HORIZON_UNIT = PREFIX + "expiration.horizonUnit";
+    
+    public static final String META_DATA_NUMBERS = PREFIX + "metaData.numbers";
+    
+    public static final String INDEX_DIRECTORY = PREFIX + "index.directory";
+    
+    public static final String INDEX_MAX_RESULTS = PREFIX + "index.maxResults";
+    
+    public static final String UPLOAD_DIRECTORY = PREFIX + "upload.directory";
+    
+    public static final String UPLOAD_TIMEOUT = PREFIX + "upload.timeout";
+    
+    public static final String UPLOAD_TIMEOUT_UNIT = PREFIX + "upload.timeoutUnit";
+    
+    public static final String RENDITIONS = PREFIX + "renditions";
+    
+    public static final String RENDITIONS_EAGER = PREFIX + "renditions.eager";
+    
+    public static final String RENDITIONS_DIRECTORY = PREFIX + "renditions.directory";
+    
+    public static final String RENDITIONS_THREADS = PREFIX + "renditions.threads";
+    
+    public static final String RENDITIONS_MAX_PIXELS = PREFIX + "renditions.maxPixels";
+    
     private MediaConfig() {
         
     }
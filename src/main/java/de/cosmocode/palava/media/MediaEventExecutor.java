@@ -0,0 +1,42 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.Executor;
+
+import com.google.inject.BindingAnnotation;
+
+/**
+ * Binding annotation for the {@link Executor} used to dispatch events
+ * asynchronously, see {@link AsyncEvents} for details. Should be bound to
+ * a bounded executor, e.g. one configured using palava-concurrent.
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({
+    ElementType.METHOD, ElementType.PARAMETER
+})
+@BindingAnnotation
+public @interface MediaEventExecutor {
+
+}
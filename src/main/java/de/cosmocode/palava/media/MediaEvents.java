@@ -0,0 +1,82 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.media;
+
+import java.util.concurrent.Executor;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.core.Registry;
+
+/**
+ * Creates the event proxies used by palava-media. Events which have already happened
+ * are deferred until the surrounding transaction commits, see {@link AfterCommit}, and
+ * dispatched asynchronously if an executor has been bound using {@link MediaEventExecutor},
+ * see {@link AsyncEvents}. All asynchronous proxies share one {@link AsyncEvents} instance,
+ * which keeps the events of one entity in order across all event types.
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Singleton
+public final class MediaEvents {
+
+    private final Registry registry;
+    
+    private AsyncEvents async;
+    
+    @Inject
+    public MediaEvents(Registry registry) {
+        this.registry = Preconditions.checkNotNull(registry, "Registry");
+    }
+    
+    @Inject(optional = true)
+    void setEventExecutor(@MediaEventExecutor Executor executor) {
+        this.async = new AsyncEvents(executor);
+    }
+    
+    /**
+     * Creates a synchronous proxy for events which allow listeners to veto an operation.
+     * 
+     * @param <T> the generic event type
+     * @param type the event interface
+     * @return a proxy for all listeners registered for the given type
+     * @throws NullPointerException if type is null
+     */
+    public <T> T proxy(Class<T> type) {
+        return registry.proxy(type);
+    }
+    
+    /**
+     * Creates a proxy for events which have already happened. Calls are deferred until
+     * the current transaction committed and delivered asynchronously, if configured.
+     * 
+     * @param <T> the generic event type
+     * @param type the event interface
+     * @return a proxy for all listeners registered for the given type
+     * @throws NullPointerException if type is null
+     * @throws IllegalArgumentException if type is not an interface or declares methods returning values
+     */
+    public <T> T afterCommit(Class<T> type) {
+        final T delegate = registry.proxy(type);
+        return AfterCommit.of(type, async == null ? delegate : async.of(type, delegate));
+    }
+    
+}
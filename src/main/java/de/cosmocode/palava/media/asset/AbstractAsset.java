@@ -51,6 +51,9 @@ public abstract class AbstractAsset extends AbstractEntity implements AssetBase
     @Column(name = "store_identifier", updatable = false)
     private String storeIdentifier;
     
+    @Column(updatable = false)
+    private String digest;
+    
     private String title;
 
     @Lob
@@ -101,10 +104,21 @@ public abstract class AbstractAsset extends AbstractEntity implements AssetBase
     
     @Override
     public void setStoreIdentifier(String storeIdentifier) {
-        Preconditions.checkArgument(StringUtils.isNotBlank(storeIdentifier), "StoreIdentifier must not be blank");
+        Preconditions.checkArgument(storeIdentifier == null || StringUtils.isNotBlank(storeIdentifier),
+            "StoreIdentifier must not be blank");
         this.storeIdentifier = storeIdentifier;
     }
     
+    @Override
+    public String getDigest() {
+        return digest;
+    }
+    
+    @Override
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+    
     @Override
     public String getTitle() {
         return title;
@@ -18,20 +18,48 @@ package de.cosmocode.palava.media.asset;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import javax.persistence.LockModeType;
 import javax.persistence.PersistenceException;
+import javax.persistence.Query;
 
+import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.LimitInputStream;
 import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.name.Named;
 
 import de.cosmocode.palava.core.Registry;
 import de.cosmocode.palava.core.lifecycle.Disposable;
 import de.cosmocode.palava.entity.AbstractEntityService;
 import de.cosmocode.palava.entity.EntityService;
 import de.cosmocode.palava.jpa.Transactional;
+import de.cosmocode.palava.media.AfterCommit;
+import de.cosmocode.palava.media.AfterCommitModule;
+import de.cosmocode.palava.media.MediaConfig;
+import de.cosmocode.palava.media.MediaEvents;
 import de.cosmocode.palava.store.Store;
 
 /**
@@ -43,23 +71,97 @@ import de.cosmocode.palava.store.Store;
  * @param <T> the generic asset type
  */
 public abstract class AbstractAssetService<T extends AssetBase> extends AbstractEntityService<T>
-    implements AssetBaseService<T>, Disposable {
+    implements ExtendedAssetBaseService<T>, Disposable {
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractAssetService.class);
+    
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    
+    private static final int BUFFER_SIZE = 8192;
+    
+    /**
+     * The maximum number of ids passed to a single query, which keeps
+     * in clauses well below the parameter limits of common databases.
+     */
+    private static final int CHUNK_SIZE = 500;
 
     private final AssetCreateEvent createEvent;
     private final AssetCreatedEvent createdEvent;
     private final AssetUpdateEvent updateEvent;
     private final AssetUpdatedEvent updatedEvent;
+    private final AssetDeleteEvent deleteEvent;
+    private final AssetDeletedEvent deletedEvent;
     
-    @Inject
+    private boolean deduplication;
+    
+    private boolean numbers;
+    
+    /**
+     * Creates a service which dispatches all events synchronously, deferring created, updated
+     * and deleted events until the transaction commits. The {@link MediaEvents} created here
+     * are not injected, so a bound {@link de.cosmocode.palava.media.MediaEventExecutor} is
+     * silently ignored.
+     * 
+     * @deprecated inject {@link MediaEvents} and use {@link #AbstractAssetService(MediaEvents)},
+     *             which dispatches events asynchronously if an executor has been bound
+     * @param registry the registry used to create the event proxies
+     */
+    @Deprecated
     public AbstractAssetService(Registry registry) {
-        Preconditions.checkNotNull(registry, "Registry");
+        this(new MediaEvents(registry));
+    }
+    
+    /**
+     * Creates a service which uses the given events to create its event proxies.
+     * 
+     * @since 2.2
+     * @param events the media events
+     */
+    @Inject
+    public AbstractAssetService(MediaEvents events) {
+        Preconditions.checkNotNull(events, "Events");
         
-        this.createEvent = registry.proxy(AssetCreateEvent.class);
-        this.createdEvent = registry.proxy(AssetCreatedEvent.class);
-        this.updateEvent = registry.proxy(AssetUpdateEvent.class);
-        this.updatedEvent = registry.proxy(AssetUpdatedEvent.class);
+        this.createEvent = events.proxy(AssetCreateEvent.class);
+        this.createdEvent = events.afterCommit(AssetCreatedEvent.class);
+        this.updateEvent = events.proxy(AssetUpdateEvent.class);
+        this.updatedEvent = events.afterCommit(AssetUpdatedEvent.class);
+        this.deleteEvent = events.proxy(AssetDeleteEvent.class);
+        this.deletedEvent = events.afterCommit(AssetDeletedEvent.class);
+    }
+
+    /**
+     * Enables content based deduplication. Assets with equal binary data will then share
+     * the same store identifier and binary data will only be removed from the store
+     * when the last asset referencing it is deleted. Requires the {@link AssetBase#BY_DIGEST}
+     * and {@link AssetBase#COUNT_BY_STORE_IDENTIFIER} queries and the {@link AfterCommitModule},
+     * because shared binary data may only be released once the deletion has been committed.
+     * 
+     * @since 2.2
+     * @param deduplication true to enable deduplication, false otherwise
+     * @param injector the injector used to verify the {@link AfterCommitModule} is installed
+     * @throws IllegalStateException if deduplication is enabled without the {@link AfterCommitModule}
+     */
+    @Inject(optional = true)
+    public void setDeduplication(@Named(MediaConfig.DEDUPLICATION) boolean deduplication, Injector injector) {
+        Preconditions.checkState(!deduplication || AfterCommitModule.isInstalled(injector),
+            "Deduplication requires the %s", AfterCommitModule.class.getName());
+        this.deduplication = deduplication;
+    }
+
+    /**
+     * Enables maintaining the numeric column of the meta data used by
+     * {@link #findByMetaDataRange(String, double, double, int)}. Every save of an asset
+     * then flushes and runs the {@link AssetBase#CLEAR_META_DATA_NUMBERS} and
+     * {@link AssetBase#UPDATE_META_DATA_NUMBER} queries, unless {@link #update(AssetBase, Set)}
+     * reports no changed meta data. Disabled by default, in which case implementations
+     * relying on range queries have to maintain the column themselves.
+     * 
+     * @since 2.2
+     * @param numbers true to maintain the numeric column, false otherwise
+     */
+    @Inject(optional = true)
+    public void setNumbers(@Named(MediaConfig.META_DATA_NUMBERS) boolean numbers) {
+        this.numbers = numbers;
     }
 
     /**
@@ -72,39 +174,205 @@ public abstract class AbstractAssetService<T extends AssetBase> extends Abstract
     @Transactional
     @Override
     public T create(final T entity) {
-        createEvent.eventAssetCreate(entity);
-        
-        final Store store = getStore();
+        final boolean writing = entity.getStoreIdentifier() == null;
+        final String orphan;
         
-        final String identifier;
-        final InputStream stream = entity.getStream();
-        
-        try {
-            identifier = store.create(stream);
-        } catch (IOException e) {
-            throw new PersistenceException(e);
+        if (writing) {
+            createEvent.eventAssetCreate(entity);
+            final MessageDigest digest = deduplication ? newDigest() : null;
+            final String created = write(entity, digest);
+            if (digest != null) entity.setDigest(hex(digest));
+            final String identifier = digest == null ? created : deduplicate(entity, created);
+            entity.setStoreIdentifier(identifier);
+            if (!identifier.equals(created)) readEncoding(entity);
+            orphan = identifier.equals(created) ? identifier : null;
+        } else if (deduplication && entity.getDigest() != null) {
+            LOG.trace("Binary data of {} has already been written, deduplicating", entity);
+            final String written = entity.getStoreIdentifier();
+            final String identifier = deduplicate(entity, written);
+            if (!identifier.equals(written)) {
+                entity.setStoreIdentifier(identifier);
+                readEncoding(entity);
+            }
+            orphan = null;
+        } else {
+            LOG.trace("Binary data of {} has already been written", entity);
+            orphan = null;
         }
         
-        entity.setStoreIdentifier(identifier);
-        
         try {
             final T returnValue = super.create(entity);
+            if (numbers) indexNumbers(entity, false);
             createdEvent.eventAssetCreated(entity);
             return returnValue;
         /* CHECKSTYLE:OFF */
         } catch (RuntimeException e) {
         /* CHECKSTYLE:ON */
-            entity.setStoreIdentifier(null);
-            try {
+            if (orphan == null) {
+                LOG.warn("Saving asset {} failed. Keeping binary data {}", entity, entity.getStoreIdentifier());
+            } else {
                 LOG.warn("Saving asset {} failed. Removing binary data from store", entity);
-                store.delete(identifier);
-            } catch (IOException inner) {
-                LOG.warn("Unable to delete binary data from store for " + identifier, inner);
+                try {
+                    getStore().delete(orphan);
+                } catch (IOException inner) {
+                    LOG.warn("Unable to delete binary data from store for " + orphan, inner);
+                }
+            }
+            if (writing) {
+                entity.setStoreIdentifier(null);
+                entity.setDigest(null);
             }
             throw e;
         }
     }
     
+    @Override
+    public void writeStream(T asset) throws PersistenceException {
+        Preconditions.checkNotNull(asset, "Asset");
+        Preconditions.checkState(asset.getStoreIdentifier() == null, "%s has already been written", asset);
+        createEvent.eventAssetCreate(asset);
+        final MessageDigest digest = deduplication ? newDigest() : null;
+        asset.setStoreIdentifier(write(asset, digest));
+        // the lookup of existing binary data requires the transaction of create
+        if (digest != null) asset.setDigest(hex(digest));
+    }
+    
+    @Override
+    public void deleteStream(T asset) {
+        Preconditions.checkNotNull(asset, "Asset");
+        Preconditions.checkState(asset.getStoreIdentifier() != null, "%s has not been written", asset);
+        try {
+            release(asset.getStoreIdentifier());
+        } finally {
+            asset.setStoreIdentifier(null);
+            asset.setDigest(null);
+        }
+    }
+    
+    /**
+     * Writes the binary data of the given asset to the store. If the store is
+     * decorated by a {@link CompressingStore}, the content encoding it is going
+     * to use is recorded in the meta data of the given asset.
+     * 
+     * @param entity the asset
+     * @param digest the digest to update while writing, may be null
+     * @return the store identifier of the newly written binary data
+     */
+    private String write(T entity, MessageDigest digest) {
+        final InputStream raw = digest == null ? entity.getStream() : 
+            new DigestInputStream(entity.getStream(), digest);
+        final Store store = getStore();
+        
+        try {
+            if (Stores.find(store, CompressingStore.class) == null) {
+                return store.create(raw);
+            } else {
+                final PushbackInputStream stream = new PushbackInputStream(raw, CompressingStore.SNIFF_SIZE);
+                setEncoding(entity, CompressingStore.sniff(stream).getEncoding());
+                return store.create(stream);
+            }
+        } catch (IOException e) {
+            throw new PersistenceException(e);
+        }
+    }
+    
+    private String hex(MessageDigest digest) {
+        return new String(Hex.encodeHex(digest.digest()));
+    }
+    
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Records the content encoding of already stored binary data in the meta data of the
+     * given asset, if the store is decorated by a {@link CompressingStore}. Deduplicated
+     * binaries may have been written before compression was enabled, hence their header
+     * is read instead of assuming the encoding of the discarded duplicate.
+     * 
+     * @param entity the asset whose store identifier points to existing binary data
+     */
+    private void readEncoding(T entity) {
+        final CompressingStore store = Stores.find(getStore(), CompressingStore.class);
+        if (store == null) return;
+        
+        try {
+            setEncoding(entity, store.getEncoding(entity.getStoreIdentifier()));
+        } catch (IOException e) {
+            throw new PersistenceException(e);
+        }
+    }
+    
+    private void setEncoding(T entity, String encoding) {
+        if (encoding == null) {
+            entity.getMetaData().remove(MetaData.CONTENT_ENCODING);
+        } else {
+            entity.getMetaData().put(MetaData.CONTENT_ENCODING, encoding);
+        }
+    }
+    
+    /**
+     * Looks for already stored binary data with the same digest. If there is
+     * any, the newly created duplicate will be removed from the store.
+     * <p>
+     *   The assets found are locked until the current transaction ends. A concurrent
+     *   deletion of the last asset referencing the same binary data therefore either
+     *   commits first, in which case it is not found here, or waits for this transaction,
+     *   in which case {@link #release(String)} sees the new reference after its commit.
+     * </p>
+     * 
+     * @param entity the asset being created, whose digest has already been set
+     * @param created the store identifier of the newly written binary data
+     * @return the store identifier the given asset should use
+     */
+    private String deduplicate(T entity, String created) {
+        final String hex = entity.getDigest();
+        final List<?> identifiers = entityManager().createNamedQuery(AssetBase.BY_DIGEST).
+            setParameter(1, hex).setLockMode(LockModeType.PESSIMISTIC_WRITE).setMaxResults(1).getResultList();
+        
+        if (identifiers.isEmpty() || created.equals(identifiers.get(0).toString())) {
+            LOG.trace("No other binary data with digest {} found, keeping {}", hex, created);
+            return created;
+        } else {
+            final String existing = identifiers.get(0).toString();
+            LOG.debug("Found binary data with digest {} as {}, removing duplicate {}", new Object[] {
+                hex, existing, created
+            });
+            try {
+                getStore().delete(created);
+            } catch (IOException e) {
+                LOG.warn("Unable to delete duplicate binary data from store for " + created, e);
+            }
+            return existing;
+        }
+    }
+    
+    /**
+     * Removes the binary data with the given identifier from the store unless
+     * deduplication is enabled and it is still referenced by persisted assets.
+     * 
+     * @param identifier the store identifier
+     */
+    private void release(String identifier) {
+        if (deduplication) {
+            final long references = countReferences(identifier);
+            if (references > 0) {
+                LOG.trace("{} is still referenced {} time(s), keeping binary data", identifier, references);
+                return;
+            }
+        }
+        
+        try {
+            getStore().delete(identifier);
+        } catch (IOException e) {
+            LOG.warn("Unable to delete binary data from store for " + identifier, e);
+        }
+    }
+    
     @Override
     public void readStream(T asset) throws PersistenceException {
         Preconditions.checkNotNull(asset, "Asset");
@@ -120,12 +388,411 @@ public abstract class AbstractAssetService<T extends AssetBase> extends Abstract
         asset.setStream(stream);
     }
     
+    @Override
+    public InputStream readEncoded(T asset) throws PersistenceException {
+        Preconditions.checkNotNull(asset, "Asset");
+        final CompressingStore compressing = Stores.find(getStore(), CompressingStore.class);
+        
+        try {
+            if (compressing == null) {
+                return getStore().read(asset.getStoreIdentifier());
+            } else {
+                return compressing.readEncoded(asset.getStoreIdentifier());
+            }
+        } catch (IOException e) {
+            throw new PersistenceException(e);
+        }
+    }
+    
+    /**
+     * Opens a file channel on the given binary data if the store supports it.
+     * 
+     * @param store the store
+     * @param identifier the store identifier
+     * @return a new file channel or null if the store does not support channels
+     * @throws IOException if opening the channel failed
+     */
+    private FileChannel openChannel(Store store, String identifier) throws IOException {
+        if (store instanceof ChannelStore) {
+            return ChannelStore.class.cast(store).channel(identifier);
+        } else {
+            return null;
+        }
+    }
+    
+    @Override
+    public ReadableByteChannel readChannel(T asset) throws PersistenceException {
+        Preconditions.checkNotNull(asset, "Asset");
+        final Store store = getStore();
+        
+        try {
+            final FileChannel channel = openChannel(store, asset.getStoreIdentifier());
+            if (channel == null) {
+                return Channels.newChannel(store.read(asset.getStoreIdentifier()));
+            } else {
+                return channel;
+            }
+        } catch (IOException e) {
+            throw new PersistenceException(e);
+        }
+    }
+    
+    @Override
+    public InputStream readRange(T asset, ByteRange range) throws PersistenceException {
+        Preconditions.checkNotNull(asset, "Asset");
+        Preconditions.checkNotNull(range, "Range");
+        final Store store = getStore();
+        final String identifier = asset.getStoreIdentifier();
+        
+        try {
+            final FileChannel channel = openChannel(store, identifier);
+            if (channel == null) {
+                return readRange(store, identifier, range);
+            }
+            
+            boolean opened = false;
+            
+            try {
+                final long size = channel.size();
+                final ByteRange resolved = range.resolve(size);
+                if (resolved.getOffset() > size) {
+                    throw new PersistenceException(String.format("%s exceeds size of %s", range, asset));
+                }
+                channel.position(resolved.getOffset());
+                final InputStream stream = new LimitInputStream(Channels.newInputStream(channel), resolved.getLength());
+                opened = true;
+                return stream;
+            } finally {
+                if (!opened) channel.close();
+            }
+        } catch (IOException e) {
+            throw new PersistenceException(e);
+        }
+    }
+    
+    /**
+     * Opens a stream on the given range by skipping the leading bytes. The size of the binary
+     * data, which is required to resolve suffix ranges, is determined by reading it once.
+     * 
+     * @param store the store
+     * @param identifier the store identifier
+     * @param range the range to read
+     * @return a new stream limited to the given range
+     * @throws IOException if reading failed or the range starts beyond the end of the binary data
+     */
+    private InputStream readRange(Store store, String identifier, ByteRange range) throws IOException {
+        final ByteRange resolved = range.isSuffix() ? range.resolve(sizeOf(store, identifier)) : range;
+        final InputStream stream = store.read(identifier);
+        boolean opened = false;
+        
+        try {
+            ByteStreams.skipFully(stream, resolved.getOffset());
+            opened = true;
+            return new LimitInputStream(stream, resolved.getLength());
+        } finally {
+            if (!opened) stream.close();
+        }
+    }
+    
+    private long sizeOf(Store store, String identifier) throws IOException {
+        final InputStream stream = store.read(identifier);
+        
+        try {
+            long size = 0;
+            while (true) {
+                final long skipped = stream.skip(BUFFER_SIZE);
+                if (skipped > 0) {
+                    size += skipped;
+                } else if (stream.read() == -1) {
+                    return size;
+                } else {
+                    size++;
+                }
+            }
+        } finally {
+            stream.close();
+        }
+    }
+    
+    @Override
+    public List<InputStream> readRanges(T asset, List<ByteRange> ranges) throws PersistenceException {
+        Preconditions.checkNotNull(ranges, "Ranges");
+        final List<InputStream> streams = Lists.newArrayListWithCapacity(ranges.size());
+        
+        try {
+            for (ByteRange range : ranges) {
+                streams.add(readRange(asset, range));
+            }
+        /* CHECKSTYLE:OFF */
+        } catch (RuntimeException e) {
+        /* CHECKSTYLE:ON */
+            for (InputStream stream : streams) {
+                try {
+                    stream.close();
+                } catch (IOException inner) {
+                    LOG.warn("Unable to close range stream of " + asset, inner);
+                }
+            }
+            throw e;
+        }
+        
+        return streams;
+    }
+    
+    @Override
+    public long transferTo(T asset, WritableByteChannel target) throws PersistenceException {
+        Preconditions.checkNotNull(target, "Target");
+        final ReadableByteChannel channel = readChannel(asset);
+        
+        try {
+            if (channel instanceof FileChannel) {
+                final FileChannel file = FileChannel.class.cast(channel);
+                final long size = file.size();
+                long position = 0;
+                while (position < size) {
+                    final long transferred = file.transferTo(position, size - position, target);
+                    // nothing transferred means the file shrank or the target accepts no more bytes
+                    if (transferred == 0) break;
+                    position += transferred;
+                }
+                return position;
+            } else {
+                final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                long transferred = 0;
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        final int written = target.write(buffer);
+                        // the target accepts no more bytes, retrying would spin forever
+                        if (written == 0) return transferred;
+                        transferred += written;
+                    }
+                    buffer.clear();
+                }
+                return transferred;
+            }
+        } catch (IOException e) {
+            throw new PersistenceException(e);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close channel of " + asset, e);
+            }
+        }
+    }
+    
+    @Override
+    public Map<Long, T> readAll(Collection<Long> ids) {
+        Preconditions.checkNotNull(ids, "Ids");
+        final Map<Long, T> found = Maps.newHashMapWithExpectedSize(ids.size());
+        
+        for (List<Long> chunk : Iterables.partition(Sets.newLinkedHashSet(ids), CHUNK_SIZE)) {
+            @SuppressWarnings("unchecked")
+            final List<T> assets = entityManager().createNamedQuery(AssetBase.BY_IDS).
+                setParameter(1, chunk).getResultList();
+            for (T asset : assets) {
+                found.put(asset.getId(), asset);
+            }
+        }
+        
+        final Map<Long, T> ordered = Maps.newLinkedHashMap();
+        for (Long id : ids) {
+            final T asset = found.get(id);
+            if (asset != null) {
+                ordered.put(id, asset);
+            }
+        }
+        return ordered;
+    }
+
+    @Transactional
+    @Override
+    public List<Long> expire(int limit) {
+        return Expirations.update(entityManager(), true, limit);
+    }
+
+    @Transactional
+    @Override
+    public List<Long> unexpire(int limit) {
+        return Expirations.update(entityManager(), false, limit);
+    }
+
+    @Override
+    public List<Long> getDirectoryIds(T asset) {
+        Preconditions.checkNotNull(asset, "Asset");
+        return findIds(entityManager().createNamedQuery(AssetBase.DIRECTORY_IDS).
+            setParameter(1, asset.getId()), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long countDirectories(T asset) {
+        Preconditions.checkNotNull(asset, "Asset");
+        final Number count = (Number) entityManager().createNamedQuery(AssetBase.COUNT_DIRECTORIES).
+            setParameter(1, asset.getId()).getSingleResult();
+        return count.longValue();
+    }
+
+    @Override
+    public long countReferences(String storeIdentifier) {
+        Preconditions.checkNotNull(storeIdentifier, "StoreIdentifier");
+        final Number count = (Number) entityManager().createNamedQuery(AssetBase.COUNT_BY_STORE_IDENTIFIER).
+            setParameter(1, storeIdentifier).getSingleResult();
+        return count.longValue();
+    }
+
+    @Override
+    public Map<Long, Long> countDirectories(Collection<Long> assetIds) {
+        Preconditions.checkNotNull(assetIds, "AssetIds");
+        final Map<Long, Long> counts = Maps.newHashMapWithExpectedSize(assetIds.size());
+        
+        for (Long assetId : assetIds) {
+            counts.put(assetId, 0L);
+        }
+        
+        for (List<Long> chunk : Iterables.partition(counts.keySet(), CHUNK_SIZE)) {
+            @SuppressWarnings("unchecked")
+            final List<Object[]> rows = entityManager().createNamedQuery(AssetBase.COUNT_DIRECTORIES_BY_IDS).
+                setParameter(1, chunk).getResultList();
+            for (Object[] row : rows) {
+                counts.put(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+            }
+        }
+        
+        return counts;
+    }
+
+    @Override
+    public List<Long> listIds(long after, int limit) {
+        return findIds(entityManager().createNamedQuery(AssetBase.IDS_AFTER).setParameter(1, after), limit);
+    }
+
+    @Override
+    public List<Long> findByMetaData(String key, String value, int limit) {
+        Preconditions.checkNotNull(key, "Key");
+        Preconditions.checkNotNull(value, "Value");
+        return findIds(entityManager().createNamedQuery(AssetBase.BY_META_DATA).
+            setParameter(1, key).setParameter(2, value), limit);
+    }
+
+    @Override
+    public List<Long> findByMetaDataPrefix(String key, String prefix, int limit) {
+        Preconditions.checkNotNull(key, "Key");
+        Preconditions.checkNotNull(prefix, "Prefix");
+        return findIds(entityManager().createNamedQuery(AssetBase.BY_META_DATA_PREFIX).
+            setParameter(1, key).setParameter(2, MetaData.toPattern(prefix)), limit);
+    }
+
+    @Override
+    public List<Long> findByMetaDataRange(String key, double min, double max, int limit) {
+        Preconditions.checkNotNull(key, "Key");
+        Preconditions.checkArgument(min <= max, "Min %s must not be greater than max %s", min, max);
+        return findIds(entityManager().createNamedQuery(AssetBase.BY_META_DATA_RANGE).
+            setParameter(1, key).setParameter(2, min).setParameter(3, max), limit);
+    }
+
+    /**
+     * Maintains the numeric column of the meta data of the given asset,
+     * which is used by {@link #findByMetaDataRange(String, double, double, int)}.
+     * 
+     * @param entity the asset which has just been saved
+     * @param existing whether the asset existed before, in which case numbers of
+     *        removed or no longer numeric values have to be cleared
+     */
+    private void indexNumbers(T entity, boolean existing) {
+        final Map<String, Double> numbers = Maps.newHashMap();
+        for (Map.Entry<String, String> entry : entity.getMetaData().entrySet()) {
+            final Double number = MetaData.toNumber(entry.getValue());
+            if (number == null) continue;
+            numbers.put(entry.getKey(), number);
+        }
+        
+        if (numbers.isEmpty() && !existing) return;
+        
+        // the bulk updates require the meta data rows to be written
+        entityManager().flush();
+        
+        if (existing) {
+            entityManager().createNamedQuery(AssetBase.CLEAR_META_DATA_NUMBERS).
+                setParameter(1, entity.getId()).executeUpdate();
+        }
+        
+        for (Map.Entry<String, Double> entry : numbers.entrySet()) {
+            entityManager().createNamedQuery(AssetBase.UPDATE_META_DATA_NUMBER).setParameter(1, entity.getId()).
+                setParameter(2, entry.getKey()).setParameter(3, entry.getValue()).executeUpdate();
+        }
+    }
+
+    /**
+     * Maintains the numeric column of the given meta data keys of the given asset.
+     * Removed keys do not need to be cleared, because their rows are gone.
+     * 
+     * @param entity the asset which has just been saved
+     * @param keys the changed meta data keys
+     */
+    private void indexNumbers(T entity, Set<String> keys) {
+        if (keys.isEmpty()) return;
+        
+        // the bulk updates require the meta data rows to be written
+        entityManager().flush();
+        
+        for (String key : keys) {
+            entityManager().createNamedQuery(AssetBase.UPDATE_META_DATA_NUMBER).setParameter(1, entity.getId()).
+                setParameter(2, key).setParameter(3, MetaData.toNumber(entity.getMetaData().get(key))).
+                executeUpdate();
+        }
+    }
+
+    private List<Long> findIds(Query query, int limit) {
+        Preconditions.checkArgument(limit > 0, "Limit must be positive, but was %s", limit);
+        final List<?> result = query.setMaxResults(limit).getResultList();
+        final List<Long> ids = Lists.newArrayListWithCapacity(result.size());
+        for (Object id : result) {
+            ids.add(((Number) id).longValue());
+        }
+        return ids;
+    }
+
     @Override
     public T update(T entity) {
         updateEvent.eventAssetUpdate(entity);
         final T returnValue = super.update(entity);
+        if (numbers) indexNumbers(returnValue, true);
+        updatedEvent.eventAssetUpdated(entity);
+        return returnValue;
+    }
+    
+    @Override
+    public T update(T entity, Set<String> changedKeys) {
+        Preconditions.checkNotNull(changedKeys, "ChangedKeys");
+        updateEvent.eventAssetUpdate(entity);
+        final T returnValue = super.update(entity);
+        if (numbers) indexNumbers(returnValue, changedKeys);
         updatedEvent.eventAssetUpdated(entity);
         return returnValue;
     }
+    
+    @Transactional
+    @Override
+    public void delete(T entity) {
+        deleteEvent.eventAssetDelete(entity);
+        final String identifier = entity.getStoreIdentifier();
+        super.delete(entity);
+        
+        if (deduplication) {
+            // binary data must survive a rollback and references are only final after commit
+            AfterCommit.execute(new Runnable() {
+                
+                @Override
+                public void run() {
+                    release(identifier);
+                }
+                
+            });
+        }
+        
+        // fired after releasing, so listeners can tell whether the binary data is gone
+        deletedEvent.eventAssetDeleted(entity);
+    }
 
 }
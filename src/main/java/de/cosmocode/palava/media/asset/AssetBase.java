@@ -78,6 +78,136 @@ public interface AssetBase extends EntityBase {
      * in unexpiring state. See {@link AssetBase#isUnexpiring()} for details.
      */
     String UNEXPIRING = "AssetBase.UNEXPIRING";
+    
+    /**
+     * Abstract query name for retrieving the ids of all assets which are currently
+     * in expiring state. Required by {@link ExtendedAssetBaseService#expire(int)}.
+     */
+    String EXPIRING_IDS = "AssetBase.EXPIRING_IDS";
+    
+    /**
+     * Abstract query name for retrieving the ids of all assets which are currently
+     * in unexpiring state. Required by {@link ExtendedAssetBaseService#unexpire(int)}.
+     */
+    String UNEXPIRING_IDS = "AssetBase.UNEXPIRING_IDS";
+    
+    /**
+     * Abstract query name for a bulk update which sets the expired flag on all assets
+     * whose id is contained in the collection passed as first parameter and which are
+     * still in expiring state, using the same criteria as {@link AssetBase#EXPIRING_IDS}.
+     * Required by {@link ExtendedAssetBaseService#expire(int)}.
+     */
+    String UPDATE_EXPIRING = "AssetBase.UPDATE_EXPIRING";
+    
+    /**
+     * Abstract query name for a bulk update which clears the expired flag on all assets
+     * whose id is contained in the collection passed as first parameter and which are
+     * still in unexpiring state, using the same criteria as {@link AssetBase#UNEXPIRING_IDS}.
+     * Required by {@link ExtendedAssetBaseService#unexpire(int)}.
+     */
+    String UPDATE_UNEXPIRING = "AssetBase.UPDATE_UNEXPIRING";
+    
+    /**
+     * Abstract query name for retrieving the store identifiers of all assets
+     * whose binary data has the digest passed as first parameter. Required
+     * if deduplication is enabled. See {@link AssetBase#getDigest()} for details.
+     * The query is executed with a pessimistic write lock and therefore has to be
+     * a JPQL query on the asset entity, e.g.
+     * {@code select a.storeIdentifier from Asset a where a.digest = ?1}.
+     * Implementations should index the digest column.
+     */
+    String BY_DIGEST = "AssetBase.BY_DIGEST";
+    
+    /**
+     * Abstract query name for counting all assets which reference the
+     * store identifier passed as first parameter. Required if deduplication
+     * is enabled.
+     */
+    String COUNT_BY_STORE_IDENTIFIER = "AssetBase.COUNT_BY_STORE_IDENTIFIER";
+    
+    /**
+     * Abstract query name for retrieving id and expiresAt of all assets which are
+     * not expired and expire after the date passed as first parameter but not after the
+     * date passed as second parameter. Results should be ordered by id. Required
+     * by the {@link AssetExpirationTimer}.
+     */
+    String EXPIRING_BETWEEN = "AssetBase.EXPIRING_BETWEEN";
+    
+    /**
+     * Abstract query name for retrieving all assets whose id is contained
+     * in the collection passed as first parameter. Implementations should fetch
+     * join the meta data, e.g. {@code select distinct a from Asset a left join fetch a.metaData}.
+     */
+    String BY_IDS = "AssetBase.BY_IDS";
+    
+    /**
+     * Abstract query name for retrieving the ids of all directories containing
+     * the asset whose id is passed as first parameter.
+     */
+    String DIRECTORY_IDS = "AssetBase.DIRECTORY_IDS";
+    
+    /**
+     * Abstract query name for counting all directories containing the asset
+     * whose id is passed as first parameter.
+     */
+    String COUNT_DIRECTORIES = "AssetBase.COUNT_DIRECTORIES";
+    
+    /**
+     * Abstract query name for counting the directories of all assets whose id
+     * is contained in the collection passed as first parameter. Must return
+     * pairs of asset id and count, grouped by asset id.
+     */
+    String COUNT_DIRECTORIES_BY_IDS = "AssetBase.COUNT_DIRECTORIES_BY_IDS";
+    
+    /**
+     * Abstract query name for retrieving the ids of all assets whose meta data
+     * maps the key passed as first parameter to the value passed as second
+     * parameter. Implementations should store meta data in a separate table
+     * with a composite index on key and value.
+     */
+    String BY_META_DATA = "AssetBase.BY_META_DATA";
+    
+    /**
+     * Abstract query name for retrieving the ids of all assets whose id is greater than
+     * the first parameter, ordered by ascending id. Required by
+     * {@link ExtendedAssetBaseService#listIds(long, int)}.
+     */
+    String IDS_AFTER = "AssetBase.IDS_AFTER";
+    
+    /**
+     * Abstract query name for retrieving the ids of all assets whose meta data
+     * maps the key passed as first parameter to a value matching the like pattern
+     * passed as second parameter, e.g. {@code value like ?2 escape '\'}. The pattern
+     * always ends with a single wildcard, which allows using the composite index
+     * described in {@link #BY_META_DATA}.
+     */
+    String BY_META_DATA_PREFIX = "AssetBase.BY_META_DATA_PREFIX";
+    
+    /**
+     * Abstract query name for retrieving the ids of all assets whose meta data
+     * maps the key passed as first parameter to a numeric value between the second
+     * and the third parameter, both inclusive. Implementations should store the result
+     * of {@link MetaData#toNumber(String)} in an indexed numeric column next to the value.
+     * {@link AbstractAssetService} maintains that column using {@link #CLEAR_META_DATA_NUMBERS}
+     * and {@link #UPDATE_META_DATA_NUMBER} if {@link de.cosmocode.palava.media.MediaConfig#META_DATA_NUMBERS}
+     * is enabled, otherwise implementations have to maintain it themselves, e.g. using a trigger.
+     */
+    String BY_META_DATA_RANGE = "AssetBase.BY_META_DATA_RANGE";
+    
+    /**
+     * Abstract query name for a bulk update which sets the numeric column described
+     * in {@link #BY_META_DATA_RANGE} to null for all meta data of the asset whose id is
+     * passed as first parameter. Usually a native query on the meta data table.
+     */
+    String CLEAR_META_DATA_NUMBERS = "AssetBase.CLEAR_META_DATA_NUMBERS";
+    
+    /**
+     * Abstract query name for a bulk update which sets the numeric column described
+     * in {@link #BY_META_DATA_RANGE} of the meta data of the asset whose id is passed
+     * as first parameter and whose key is passed as second parameter to the third parameter,
+     * which is null for values which are not numeric. Usually a native query on the meta data table.
+     */
+    String UPDATE_META_DATA_NUMBER = "AssetBase.UPDATE_META_DATA_NUMBER";
 
     /**
      * Allows case insensitive ordering by name.
@@ -189,9 +319,28 @@ public interface AssetBase extends EntityBase {
     /**
      * Sets the store identifier of this asset.
      * 
-     * @param storeIdentifier the new store identifier
+     * @param storeIdentifier the new store identifier, null if the asset is
+     *        no longer associated with a store, e.g. after creating it failed
      */
     void setStoreIdentifier(String storeIdentifier);
+    
+    /**
+     * Provides the hex encoded digest of this asset's binary data. The digest
+     * is only computed if deduplication is enabled, in which case assets with equal
+     * digests share the same store identifier.
+     * 
+     * @since 2.2
+     * @return the digest or null if it has not been computed
+     */
+    String getDigest();
+    
+    /**
+     * Sets the digest of this asset's binary data.
+     * 
+     * @since 2.2
+     * @param digest the new digest
+     */
+    void setDigest(String digest);
 
     /**
      * Provides the title of this asset which can be seen as
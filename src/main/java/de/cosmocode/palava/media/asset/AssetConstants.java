@@ -27,15 +27,35 @@ public final class AssetConstants {
 
     // parameters
     public static final String ASSET_ID = "assetId";
+    public static final String ASSET_IDS = "assetIds";
     public static final String NAME = "name";
     public static final String TITLE = "title";
     public static final String DESCRIPTION = "description";
     public static final String META_DATA = "metaData";
     public static final String EXPIRES_AT = "expiresAt";
     public static final String BINARY = "binary";
+    public static final String UPLOAD_ID = "uploadId";
+    public static final String CHUNK = "chunk";
+    public static final String CHUNKS = "chunks";
+    public static final String QUERY = "query";
+    public static final String LIMIT = "limit";
+    public static final String PATCH = "patch";
+    public static final String AFTER = "after";
+    public static final String RENDITION = "rendition";
     
     // return values
     public static final String ASSET = "asset";
+    public static final String ASSETS = "assets";
+    public static final String MISSING = "missing";
+    public static final String INDEXED = "indexed";
+    public static final String NEXT = "next";
+    public static final String FORMAT = "format";
+    public static final String QUEUE_DEPTH = "queueDepth";
+    public static final String COMPLETED = "completed";
+    public static final String FAILED = "failed";
+    public static final String RETRYING = "retrying";
+    public static final String AVERAGE_DURATION = "averageDuration";
+    public static final String THROUGHPUT = "throughput";
     
     private AssetConstants() {
         
@@ -0,0 +1,184 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.media.MediaConfig;
+import de.cosmocode.palava.media.MediaEvents;
+
+/**
+ * Periodically moves assets in expiring state into expired state and assets
+ * in unexpiring state out of it, firing {@link AssetExpiredEvent}s and
+ * {@link AssetUnexpiredEvent}s respectively.
+ *
+ * <p>
+ *   Assets are updated in batches using a single bulk update per batch, each in a transaction
+ *   of its own, see {@link ExtendedAssetBaseService#expire(int)} for the required queries. Events are fired
+ *   after each commit with the assets loaded using {@link AssetBase#BY_IDS}. Requires a
+ *   {@link ScheduledExecutorService} bound using {@link ExpirationScheduler}, e.g. one configured
+ *   using palava-concurrent.
+ * </p>
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Singleton
+public final class AssetExpirationService implements Initializable, Runnable, Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AssetExpirationService.class);
+
+    private final EntityManagerFactory factory;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final AssetExpiredEvent expiredEvent;
+
+    private final AssetUnexpiredEvent unexpiredEvent;
+
+    private long interval = 5;
+
+    private TimeUnit intervalUnit = TimeUnit.MINUTES;
+
+    private int batchSize = 100;
+
+    private ScheduledFuture<?> future;
+
+    @Inject
+    public AssetExpirationService(EntityManagerFactory factory,
+        @ExpirationScheduler ScheduledExecutorService scheduler, MediaEvents events) {
+        this.factory = Preconditions.checkNotNull(factory, "Factory");
+        this.scheduler = Preconditions.checkNotNull(scheduler, "Scheduler");
+        Preconditions.checkNotNull(events, "Events");
+        this.expiredEvent = events.afterCommit(AssetExpiredEvent.class);
+        this.unexpiredEvent = events.afterCommit(AssetUnexpiredEvent.class);
+    }
+
+    @Inject(optional = true)
+    void setInterval(@Named(MediaConfig.EXPIRATION_INTERVAL) long interval) {
+        Preconditions.checkArgument(interval > 0, "Interval must be positive, but was %s", interval);
+        this.interval = interval;
+    }
+
+    @Inject(optional = true)
+    void setIntervalUnit(@Named(MediaConfig.EXPIRATION_INTERVAL_UNIT) TimeUnit intervalUnit) {
+        this.intervalUnit = Preconditions.checkNotNull(intervalUnit, "IntervalUnit");
+    }
+
+    @Inject(optional = true)
+    void setBatchSize(@Named(MediaConfig.EXPIRATION_BATCH_SIZE) int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "BatchSize must be positive, but was %s", batchSize);
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        LOG.info("Scheduling asset expiration every {} {}", interval, intervalUnit);
+        future = scheduler.scheduleWithFixedDelay(this, interval, interval, intervalUnit);
+    }
+
+    @Override
+    public void run() {
+        try {
+            final int expired = process(true);
+            final int unexpired = process(false);
+            LOG.debug("Expired {} and unexpired {} asset(s)", expired, unexpired);
+        /* CHECKSTYLE:OFF */
+        } catch (RuntimeException e) {
+        /* CHECKSTYLE:ON */
+            // exceptions would otherwise suppress all subsequent executions
+            LOG.error("Asset expiration failed", e);
+        }
+    }
+
+    private int process(boolean expired) {
+        final EntityManager manager = factory.createEntityManager();
+        int total = 0;
+
+        try {
+            while (true) {
+                final List<Long> ids = batch(manager, expired);
+                if (ids.isEmpty()) return total;
+
+                @SuppressWarnings("unchecked")
+                final List<AssetBase> assets = manager.createNamedQuery(AssetBase.BY_IDS).
+                    setParameter(1, ids).getResultList();
+
+                for (AssetBase asset : assets) {
+                    // skipped by the update because it changed concurrently
+                    if (asset.isExpired() != expired) continue;
+                    if (expired) {
+                        expiredEvent.eventAssetExpired(asset);
+                    } else {
+                        unexpiredEvent.eventAssetUnexpired(asset);
+                    }
+                }
+
+                manager.clear();
+                total += ids.size();
+
+                if (ids.size() < batchSize) return total;
+            }
+        } finally {
+            manager.close();
+        }
+    }
+
+    private List<Long> batch(EntityManager manager, boolean expired) {
+        final EntityTransaction transaction = manager.getTransaction();
+        transaction.begin();
+
+        try {
+            final List<Long> ids = Expirations.update(manager, expired, batchSize);
+            transaction.commit();
+            return ids;
+        /* CHECKSTYLE:OFF */
+        } catch (RuntimeException e) {
+        /* CHECKSTYLE:ON */
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+}
@@ -0,0 +1,319 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.Registry;
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.media.MediaConfig;
+import de.cosmocode.palava.media.MediaEvents;
+
+/**
+ * Expires assets within one tick of their expiresAt date, firing {@link AssetExpiredEvent}s.
+ *
+ * <p>
+ *   Upcoming deadlines are kept in a {@link DeadlineQueue}. The queue is filled with all
+ *   deadlines within the configured horizon using the {@link AssetBase#EXPIRING_BETWEEN} query,
+ *   which is repeated for the next horizon once half of the current one has passed. Assets
+ *   created or updated in the meantime are added using {@link AssetCreatedEvent}s and
+ *   {@link AssetUpdatedEvent}s, which replace the queued deadline of the asset or remove it if the
+ *   asset is no longer expirable. Every asset is checked again using {@link AssetBase#isExpiring()}
+ *   when its deadline passed, which covers changes made by other nodes. Assets which could not be
+ *   expired are queued again and retried on the next tick.
+ * </p>
+ * <p>
+ *   Unexpiring assets are not handled, use the {@link AssetExpirationService} to cover those
+ *   and to catch up with changes made outside of this application.
+ * </p>
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Singleton
+public final class AssetExpirationTimer implements Initializable, Runnable, Disposable,
+    AssetCreatedEvent, AssetUpdatedEvent {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AssetExpirationTimer.class);
+
+    private static final int PAGE_SIZE = 10000;
+
+    private final EntityManagerFactory factory;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Registry registry;
+
+    private final AssetExpiredEvent expiredEvent;
+
+    private final DeadlineQueue queue = new DeadlineQueue();
+
+    private long tick = 1;
+
+    private TimeUnit tickUnit = TimeUnit.SECONDS;
+
+    private long horizon = 1;
+
+    private TimeUnit horizonUnit = TimeUnit.HOURS;
+
+    private int batchSize = 100;
+
+    /**
+     * All deadlines up to this point in time are either queued or about to be loaded.
+     */
+    private long loadedUntil;
+
+    private ScheduledFuture<?> future;
+
+    @Inject
+    public AssetExpirationTimer(EntityManagerFactory factory,
+        @ExpirationScheduler ScheduledExecutorService scheduler, Registry registry, MediaEvents events) {
+        this.factory = Preconditions.checkNotNull(factory, "Factory");
+        this.scheduler = Preconditions.checkNotNull(scheduler, "Scheduler");
+        this.registry = Preconditions.checkNotNull(registry, "Registry");
+        Preconditions.checkNotNull(events, "Events");
+        this.expiredEvent = events.afterCommit(AssetExpiredEvent.class);
+    }
+
+    @Inject(optional = true)
+    void setTick(@Named(MediaConfig.EXPIRATION_TICK) long tick) {
+        Preconditions.checkArgument(tick > 0, "Tick must be positive, but was %s", tick);
+        this.tick = tick;
+    }
+
+    @Inject(optional = true)
+    void setTickUnit(@Named(MediaConfig.EXPIRATION_TICK_UNIT) TimeUnit tickUnit) {
+        this.tickUnit = Preconditions.checkNotNull(tickUnit, "TickUnit");
+    }
+
+    @Inject(optional = true)
+    void setHorizon(@Named(MediaConfig.EXPIRATION_HORIZON) long horizon) {
+        Preconditions.checkArgument(horizon > 0, "Horizon must be positive, but was %s", horizon);
+        this.horizon = horizon;
+    }
+
+    @Inject(optional = true)
+    void setHorizonUnit(@Named(MediaConfig.EXPIRATION_HORIZON_UNIT) TimeUnit horizonUnit) {
+        this.horizonUnit = Preconditions.checkNotNull(horizonUnit, "HorizonUnit");
+    }
+
+    @Inject(optional = true)
+    void setBatchSize(@Named(MediaConfig.EXPIRATION_BATCH_SIZE) int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "BatchSize must be positive, but was %s", batchSize);
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        registry.register(AssetCreatedEvent.class, this);
+        registry.register(AssetUpdatedEvent.class, this);
+        load(0L, System.currentTimeMillis() + horizonUnit.toMillis(horizon));
+        LOG.info("Scheduling asset expiration timer every {} {}", tick, tickUnit);
+        future = scheduler.scheduleWithFixedDelay(this, tick, tick, tickUnit);
+    }
+
+    @Override
+    public void eventAssetCreated(AssetBase asset) {
+        schedule(asset);
+    }
+
+    @Override
+    public void eventAssetUpdated(AssetBase asset) {
+        schedule(asset);
+    }
+
+    private void schedule(AssetBase asset) {
+        synchronized (queue) {
+            if (asset.isExpired() || !asset.isExpirable()) {
+                queue.remove(asset.getId());
+                return;
+            }
+            final long deadline = asset.getExpiresAt().getTime();
+            if (deadline > loadedUntil) {
+                // deadlines beyond the horizon will be loaded later on
+                queue.remove(asset.getId());
+            } else {
+                queue.add(asset.getId(), deadline);
+            }
+        }
+    }
+
+    private void load(long from, long until) {
+        synchronized (queue) {
+            // events fired while loading must not be dropped, the queue keeps one entry per asset
+            loadedUntil = until;
+        }
+
+        final EntityManager manager = factory.createEntityManager();
+        int total = 0;
+
+        try {
+            while (true) {
+                @SuppressWarnings("unchecked")
+                final List<Object[]> rows = manager.createNamedQuery(AssetBase.EXPIRING_BETWEEN).
+                    setParameter(1, new Date(from)).setParameter(2, new Date(until)).
+                    setFirstResult(total).setMaxResults(PAGE_SIZE).getResultList();
+
+                synchronized (queue) {
+                    for (Object[] row : rows) {
+                        queue.add(((Number) row[0]).longValue(), ((Date) row[1]).getTime());
+                    }
+                }
+
+                total += rows.size();
+                if (rows.size() < PAGE_SIZE) break;
+            }
+        } finally {
+            manager.close();
+        }
+
+        LOG.debug("Loaded {} deadline(s) until {}", total, new Date(until));
+    }
+
+    @Override
+    public void run() {
+        try {
+            final long now = System.currentTimeMillis();
+            final long horizonMillis = horizonUnit.toMillis(horizon);
+
+            final long until;
+            synchronized (queue) {
+                until = loadedUntil;
+            }
+
+            if (now + horizonMillis / 2 >= until) {
+                load(until, now + horizonMillis);
+            }
+
+            final long[] identifiers = new long[batchSize];
+            while (true) {
+                final int count;
+                synchronized (queue) {
+                    count = queue.drainTo(now, identifiers);
+                }
+                if (count == 0) break;
+                try {
+                    expire(identifiers, count);
+                /* CHECKSTYLE:OFF */
+                } catch (RuntimeException e) {
+                /* CHECKSTYLE:ON */
+                    requeue(identifiers, count, now);
+                    throw e;
+                }
+                if (count < batchSize) break;
+            }
+        /* CHECKSTYLE:OFF */
+        } catch (RuntimeException e) {
+        /* CHECKSTYLE:ON */
+            // exceptions would otherwise suppress all subsequent executions
+            LOG.error("Asset expiration timer failed", e);
+        }
+    }
+
+    /**
+     * Queues the given identifiers again after expiring them failed, unless they have been
+     * rescheduled in the meantime.
+     *
+     * @param identifiers the drained identifiers
+     * @param count the number of drained identifiers
+     * @param deadline the deadline used to retry on the next tick
+     */
+    private void requeue(long[] identifiers, int count, long deadline) {
+        synchronized (queue) {
+            for (int i = 0; i < count; i++) {
+                if (queue.contains(identifiers[i])) continue;
+                queue.add(identifiers[i], deadline);
+            }
+        }
+        LOG.debug("Queued {} asset(s) again after failure", count);
+    }
+
+    private void expire(long[] identifiers, int count) {
+        final List<Long> ids = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(identifiers[i]);
+        }
+
+        final EntityManager manager = factory.createEntityManager();
+
+        try {
+            final EntityTransaction transaction = manager.getTransaction();
+            transaction.begin();
+
+            final List<AssetBase> expired = Lists.newArrayListWithCapacity(count);
+
+            try {
+                @SuppressWarnings("unchecked")
+                final List<AssetBase> assets = manager.createNamedQuery(AssetBase.BY_IDS).
+                    setParameter(1, ids).getResultList();
+
+                for (AssetBase asset : assets) {
+                    // the deadline may have been changed or removed since it was queued
+                    if (!asset.isExpiring()) continue;
+                    asset.setExpired(true);
+                    expired.add(asset);
+                }
+
+                transaction.commit();
+            /* CHECKSTYLE:OFF */
+            } catch (RuntimeException e) {
+            /* CHECKSTYLE:ON */
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+
+            for (AssetBase asset : expired) {
+                expiredEvent.eventAssetExpired(asset);
+            }
+
+            LOG.debug("Expired {} of {} due asset(s)", expired.size(), count);
+        } finally {
+            manager.close();
+        }
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        if (future != null) {
+            future.cancel(false);
+        }
+        registry.remove(AssetCreatedEvent.class, this);
+        registry.remove(AssetUpdatedEvent.class, this);
+    }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Static utility class for lists of asset ids passed as command arguments.
+ *
+ * @since 2.2
+ * @author agent
+ */
+public final class AssetIds {
+
+    private AssetIds() {
+
+    }
+
+    /**
+     * Parses the given argument into a list of ids. Supported are iterables and arrays
+     * whose elements are either numbers or strings containing a number.
+     *
+     * @param ids the ids argument
+     * @return a new list of ids, in the same order as ids
+     * @throws NullPointerException if ids is null or contains null
+     * @throws IllegalArgumentException if ids or one of its elements is of an unsupported type
+     */
+    public static List<Long> parse(Object ids) {
+        Preconditions.checkNotNull(ids, "Ids");
+        final Iterable<?> iterable;
+        if (ids instanceof Iterable<?>) {
+            iterable = Iterable.class.cast(ids);
+        } else if (ids instanceof Object[]) {
+            iterable = Lists.newArrayList((Object[]) ids);
+        } else {
+            throw new IllegalArgumentException(String.format("Unsupported ids %s", ids));
+        }
+
+        final List<Long> list = Lists.newArrayList();
+        for (Object id : iterable) {
+            Preconditions.checkNotNull(id, "Id");
+            if (id instanceof Number) {
+                list.add(Number.class.cast(id).longValue());
+            } else if (id instanceof CharSequence) {
+                list.add(Long.valueOf(id.toString()));
+            } else {
+                throw new IllegalArgumentException(String.format("Unsupported id %s", id));
+            }
+        }
+        return list;
+    }
+
+}
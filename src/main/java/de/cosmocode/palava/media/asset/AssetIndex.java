@@ -0,0 +1,286 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryParser.MultiFieldQueryParser;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.Registry;
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.media.MediaConfig;
+
+/**
+ * A full-text index over name, title and description of all assets, stored
+ * in a local Lucene directory. Requires lucene-core on the classpath.
+ *
+ * <p>
+ *   The index is kept up to date using {@link AssetCreatedEvent}s, {@link AssetUpdatedEvent}s
+ *   and {@link AssetDeletedEvent}s, which are fired once the surrounding transaction has committed.
+ *   Changes are visible to searches immediately, but only committed to disk every 1000 changes
+ *   and on shutdown. A crash therefore loses up to 999 changes, until {@link RebuildIndex}
+ *   has been run over all assets.
+ * </p>
+ *
+ * <p>
+ *   Assets which existed before the index was set up can be added using
+ *   {@link #reindex(long, long, Collection)}, see {@link RebuildIndex}.
+ * </p>
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Singleton
+public final class AssetIndex implements Initializable, Disposable,
+    AssetCreatedEvent, AssetUpdatedEvent, AssetDeletedEvent {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AssetIndex.class);
+
+    private static final String ID = "id";
+
+    /**
+     * The id as numeric field, which allows replacing ranges of ids.
+     */
+    private static final String ID_RANGE = "idRange";
+
+    private static final String NAME = "name";
+
+    private static final String TITLE = "title";
+
+    private static final String DESCRIPTION = "description";
+
+    /**
+     * The number of changes after which the index is committed to disk.
+     */
+    private static final int COMMIT_INTERVAL = 1000;
+
+    private final File file;
+
+    private final Registry registry;
+
+    private final Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_30);
+
+    private final AtomicInteger changes = new AtomicInteger();
+
+    private IndexWriter writer;
+
+    private IndexReader reader;
+
+    private boolean stale = true;
+
+    @Inject
+    public AssetIndex(@Named(MediaConfig.INDEX_DIRECTORY) File file, Registry registry) {
+        this.file = Preconditions.checkNotNull(file, "File");
+        this.registry = Preconditions.checkNotNull(registry, "Registry");
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        try {
+            writer = new IndexWriter(FSDirectory.open(file), analyzer, IndexWriter.MaxFieldLength.UNLIMITED);
+        } catch (IOException e) {
+            throw new LifecycleException(e);
+        }
+        LOG.info("Opened asset index in {}", file);
+        registry.register(AssetCreatedEvent.class, this);
+        registry.register(AssetUpdatedEvent.class, this);
+        registry.register(AssetDeletedEvent.class, this);
+    }
+
+    @Override
+    public void eventAssetCreated(AssetBase asset) {
+        index(asset);
+    }
+
+    @Override
+    public void eventAssetUpdated(AssetBase asset) {
+        index(asset);
+    }
+
+    @Override
+    public void eventAssetDeleted(AssetBase asset) {
+        try {
+            writer.deleteDocuments(new Term(ID, Long.toString(asset.getId())));
+            changed();
+        } catch (IOException e) {
+            LOG.error("Unable to remove " + asset + " from index", e);
+        }
+    }
+
+    private void index(AssetBase asset) {
+        try {
+            write(asset);
+            changed();
+        } catch (IOException e) {
+            LOG.error("Unable to index " + asset, e);
+        }
+    }
+
+    /**
+     * Replaces all documents whose id is greater than after and less than or equal to last
+     * by the given assets and commits the index to disk afterwards. Documents of assets which
+     * have been deleted in the meantime are removed.
+     *
+     * @param after the id after which the range starts
+     * @param last the last id of the range, inclusive
+     * @param assets the existing assets in the given range
+     * @throws NullPointerException if assets is null
+     * @throws IllegalArgumentException if last is less than after
+     * @throws IOException if writing the index failed
+     */
+    public void reindex(long after, long last, Collection<? extends AssetBase> assets) throws IOException {
+        Preconditions.checkNotNull(assets, "Assets");
+        Preconditions.checkArgument(last >= after, "Last %s must not be less than %s", last, after);
+        // deletions only apply to documents added before, so the assets can be written afterwards
+        writer.deleteDocuments(NumericRangeQuery.newLongRange(ID_RANGE, after, last, false, true));
+        for (AssetBase asset : assets) {
+            write(asset);
+        }
+        synchronized (this) {
+            stale = true;
+        }
+        writer.commit();
+        LOG.debug("Reindexed {} assets", assets.size());
+    }
+
+    private void write(AssetBase asset) throws IOException {
+        final String id = Long.toString(asset.getId());
+        final Document document = new Document();
+        document.add(new Field(ID, id, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        document.add(new NumericField(ID_RANGE).setLongValue(asset.getId()));
+        add(document, NAME, asset.getName());
+        add(document, TITLE, asset.getTitle());
+        add(document, DESCRIPTION, asset.getDescription());
+        writer.updateDocument(new Term(ID, id), document);
+    }
+
+    private void add(Document document, String name, String value) {
+        if (value == null) return;
+        document.add(new Field(name, value, Field.Store.NO, Field.Index.ANALYZED));
+    }
+
+    private void changed() throws IOException {
+        synchronized (this) {
+            stale = true;
+        }
+        if (changes.incrementAndGet() % COMMIT_INTERVAL == 0) {
+            writer.commit();
+        }
+    }
+
+    /**
+     * Searches name, title and description of all assets using the Lucene query syntax.
+     *
+     * @param query the query
+     * @param limit the maximum number of results
+     * @return the ids of the best matching assets, up to limit, ordered by relevance
+     * @throws NullPointerException if query is null
+     * @throws IllegalArgumentException if query is not a valid query or limit is not positive
+     * @throws IOException if reading the index failed
+     */
+    public List<Long> search(String query, int limit) throws IOException {
+        Preconditions.checkNotNull(query, "Query");
+        Preconditions.checkArgument(limit > 0, "Limit must be positive, but was %s", limit);
+
+        final Query parsed;
+        try {
+            parsed = new MultiFieldQueryParser(Version.LUCENE_30,
+                new String[] {NAME, TITLE, DESCRIPTION}, analyzer).parse(query);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        final IndexReader current = acquire();
+
+        try {
+            final IndexSearcher searcher = new IndexSearcher(current);
+            final TopDocs docs = searcher.search(parsed, limit);
+            final List<Long> ids = Lists.newArrayListWithCapacity(docs.scoreDocs.length);
+            for (ScoreDoc doc : docs.scoreDocs) {
+                ids.add(Long.valueOf(searcher.doc(doc.doc).get(ID)));
+            }
+            return ids;
+        } finally {
+            current.decRef();
+        }
+    }
+
+    private synchronized IndexReader acquire() throws IOException {
+        if (stale) {
+            final IndexReader fresh = writer.getReader();
+            if (reader != null) {
+                reader.decRef();
+            }
+            reader = fresh;
+            stale = false;
+        }
+        reader.incRef();
+        return reader;
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        registry.remove(AssetCreatedEvent.class, this);
+        registry.remove(AssetUpdatedEvent.class, this);
+        registry.remove(AssetDeletedEvent.class, this);
+
+        try {
+            synchronized (this) {
+                if (reader != null) {
+                    reader.decRef();
+                    reader = null;
+                }
+            }
+            if (writer != null) {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new LifecycleException(e);
+        }
+    }
+
+}
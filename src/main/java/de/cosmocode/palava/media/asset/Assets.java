@@ -0,0 +1,88 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.jpa.Transactional;
+
+/**
+ * Creates assets on behalf of the asset commands. Not final, because the
+ * fallback for plain entity services is intercepted to run in a transaction.
+ * Only public to be injectable into the public command constructors.
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Singleton
+public class Assets {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Assets.class);
+
+    /**
+     * Creates the given asset in two phases if the service supports it. The binary data
+     * will be written to the store outside of any transaction, before the asset is persisted
+     * in a short transaction of its own. This prevents large uploads from holding database
+     * connections. If persisting fails, the already written binary data will be removed and
+     * the store identifier of the given asset is reset. All other services create the asset
+     * in a single transaction using {@link #createTransactional(EntityService, AssetBase)}.
+     *
+     * @param service the service used to create the asset
+     * @param asset the asset to create
+     */
+    public void create(EntityService<AssetBase> service, AssetBase asset) {
+        if (service instanceof ExtendedAssetBaseService<?>) {
+            @SuppressWarnings("unchecked")
+            final ExtendedAssetBaseService<AssetBase> assetService = (ExtendedAssetBaseService<AssetBase>) service;
+            assetService.writeStream(asset);
+            try {
+                assetService.create(asset);
+            /* CHECKSTYLE:OFF */
+            } catch (RuntimeException e) {
+            /* CHECKSTYLE:ON */
+                LOG.warn("Creating {} failed, removing orphaned binary data", asset);
+                try {
+                    assetService.deleteStream(asset);
+                /* CHECKSTYLE:OFF */
+                } catch (RuntimeException inner) {
+                /* CHECKSTYLE:ON */
+                    LOG.warn("Unable to remove orphaned binary data of " + asset, inner);
+                }
+                throw e;
+            }
+        } else {
+            createTransactional(service, asset);
+        }
+    }
+
+    /**
+     * Creates the given asset in a transaction, which services not supporting
+     * the two phase creation expect, like the asset commands did before.
+     *
+     * @param service the service used to create the asset
+     * @param asset the asset to create
+     */
+    @Transactional
+    public void createTransactional(EntityService<AssetBase> service, AssetBase asset) {
+        service.create(asset);
+    }
+
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.PersistenceException;
+
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommand.Description;
+import de.cosmocode.palava.ipc.IpcCommand.Param;
+import de.cosmocode.palava.ipc.IpcCommand.Return;
+import de.cosmocode.palava.ipc.IpcCommand.Returns;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.jpa.Transactional;
+import de.cosmocode.palava.media.MediaPermissions;
+
+/**
+ * See below.
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Description(
+    "Reads many assets from the database at once. Asset services implementing ExtendedAssetBaseService " +
+    "use a single query per chunk of identifiers, all others read every asset on its own."
+)
+@Param(name = AssetConstants.ASSET_IDS, type = "list", description = "The identifiers of the assets")
+@Returns({
+    @Return(name = AssetConstants.ASSETS, description = "The found assets, in the order of the given identifiers"),
+    @Return(name = AssetConstants.MISSING, description = "The identifiers of all assets which do not exist")
+})
+@Singleton
+public final class BatchRead implements IpcCommand {
+
+    private final EntityService<AssetBase> service;
+
+    @Inject
+    public BatchRead(EntityService<AssetBase> service) {
+        this.service = Preconditions.checkNotNull(service, "Service");
+    }
+
+    @RequiresPermissions(MediaPermissions.ASSET_READ)
+    @Transactional
+    @Override
+    public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+        final IpcArguments arguments = call.getArguments();
+        final List<Long> assetIds = AssetIds.parse(arguments.get(AssetConstants.ASSET_IDS));
+        
+        final List<AssetBase> assets = Lists.newArrayListWithCapacity(assetIds.size());
+        final List<Long> missing = Lists.newArrayList();
+        
+        if (service instanceof ExtendedAssetBaseService<?>) {
+            @SuppressWarnings("unchecked")
+            final ExtendedAssetBaseService<AssetBase> assetService = (ExtendedAssetBaseService<AssetBase>) service;
+            final Map<Long, AssetBase> found = assetService.readAll(assetIds);
+            for (Long assetId : assetIds) {
+                final AssetBase asset = found.get(assetId);
+                if (asset == null) {
+                    missing.add(assetId);
+                } else {
+                    assets.add(asset);
+                }
+            }
+        } else {
+            for (Long assetId : assetIds) {
+                final AssetBase asset;
+                try {
+                    // find returns null for unknown ids, other services may throw instead
+                    asset = service.read(assetId);
+                } catch (PersistenceException e) {
+                    missing.add(assetId);
+                    continue;
+                }
+                if (asset == null) {
+                    missing.add(assetId);
+                } else {
+                    assets.add(asset);
+                }
+            }
+        }
+        
+        result.put(AssetConstants.ASSETS, assets);
+        result.put(AssetConstants.MISSING, missing);
+    }
+
+}
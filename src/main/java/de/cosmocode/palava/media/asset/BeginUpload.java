@@ -0,0 +1,74 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommand.Description;
+import de.cosmocode.palava.ipc.IpcCommand.Return;
+import de.cosmocode.palava.ipc.IpcCommand.Throw;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.media.MediaPermissions;
+
+/**
+ * See below.
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Description(
+    "Begins a chunked upload session. Chunks can be sent using asset.UploadChunk " +
+    "and will be turned into an asset using asset.CommitUpload. The session can only be " +
+    "used by the current user."
+)
+@Return(name = AssetConstants.UPLOAD_ID, description = "The identifier of the new upload session")
+@Throw(name = IOException.class, description = "If creating the session failed")
+@Singleton
+public final class BeginUpload implements IpcCommand {
+
+    private final UploadSessions sessions;
+
+    @Inject
+    public BeginUpload(UploadSessions sessions) {
+        this.sessions = Preconditions.checkNotNull(sessions, "Sessions");
+    }
+
+    @RequiresPermissions(MediaPermissions.ASSET_CREATE)
+    @Override
+    public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+        final String uploadId;
+        
+        try {
+            uploadId = sessions.begin(SecurityUtils.getSubject().getPrincipal());
+        } catch (IOException e) {
+            throw new IpcCommandExecutionException(e);
+        }
+        
+        result.put(AssetConstants.UPLOAD_ID, uploadId);
+    }
+
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import org.apache.commons.codec.binary.Base64InputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Static utility class for binary command arguments.
+ *
+ * @since 2.2
+ * @author agent
+ */
+final class Binaries {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Binaries.class);
+
+    private Binaries() {
+
+    }
+
+    /**
+     * Opens a stream on the given binary argument. Base64 encoded strings are decoded
+     * on the fly, so the payload is never copied into an intermediate byte array.
+     * Input streams and readable byte channels are expected to contain raw binary data.
+     *
+     * @param binary the binary argument
+     * @return a stream of the decoded binary data
+     * @throws NullPointerException if binary is null
+     * @throws IllegalArgumentException if binary is of an unsupported type
+     */
+    static InputStream open(Object binary) {
+        Preconditions.checkNotNull(binary, "Binary");
+        if (binary instanceof CharSequence) {
+            LOG.trace("Decoding base64 encoded binary while streaming");
+            return new Base64InputStream(new CharSequenceInputStream(CharSequence.class.cast(binary)));
+        } else if (binary instanceof InputStream) {
+            LOG.trace("Streaming raw binary from {}", binary);
+            return InputStream.class.cast(binary);
+        } else if (binary instanceof ReadableByteChannel) {
+            LOG.trace("Streaming raw binary from channel {}", binary);
+            return Channels.newInputStream(ReadableByteChannel.class.cast(binary));
+        } else {
+            throw new IllegalArgumentException(String.format("Unsupported binary type %s", binary.getClass()));
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An immutable range of bytes within the binary data of an asset.
+ *
+ * @since 2.2
+ * @author agent
+ */
+public final class ByteRange {
+
+    private final long offset;
+    
+    private final long length;
+    
+    private final boolean suffix;
+    
+    private ByteRange(long offset, long length, boolean suffix) {
+        Preconditions.checkArgument(offset >= 0, "Offset must not be negative, but was %s", offset);
+        Preconditions.checkArgument(length >= 0, "Length must not be negative, but was %s", length);
+        this.offset = offset;
+        this.length = length;
+        this.suffix = suffix;
+    }
+    
+    /**
+     * Creates a range starting at offset which spans length bytes.
+     * 
+     * @param offset the zero based offset of the first byte
+     * @param length the maximum number of bytes
+     * @return a new range
+     * @throws IllegalArgumentException if offset or length is negative
+     */
+    public static ByteRange of(long offset, long length) {
+        return new ByteRange(offset, length, false);
+    }
+    
+    /**
+     * Creates a range starting at offset which spans all remaining bytes.
+     * 
+     * @param offset the zero based offset of the first byte
+     * @return a new range
+     * @throws IllegalArgumentException if offset is negative
+     */
+    public static ByteRange from(long offset) {
+        return new ByteRange(offset, Long.MAX_VALUE, false);
+    }
+    
+    /**
+     * Creates a range which spans the last length bytes, like the suffix
+     * byte range {@code bytes=-length} of http.
+     * 
+     * @param length the maximum number of trailing bytes
+     * @return a new range
+     * @throws IllegalArgumentException if length is negative
+     */
+    public static ByteRange last(long length) {
+        return new ByteRange(0, length, true);
+    }
+    
+    /**
+     * Provides the offset of this range. Suffix ranges have to be {@link #resolve(long) resolved}
+     * before their offset is known.
+     * 
+     * @return the zero based offset of the first byte
+     * @throws IllegalStateException if this is a suffix range
+     */
+    public long getOffset() {
+        Preconditions.checkState(!suffix, "%s has to be resolved first", this);
+        return offset;
+    }
+    
+    /**
+     * Checks whether this range has been created using {@link #last(long)}.
+     * 
+     * @return true if this range spans the trailing bytes of the binary data, false otherwise
+     */
+    public boolean isSuffix() {
+        return suffix;
+    }
+    
+    /**
+     * Resolves this range against binary data of the given size. Suffix ranges are
+     * turned into ranges with a fixed offset, all other ranges are returned unchanged.
+     * 
+     * @param size the size of the binary data in bytes
+     * @return a range with a known offset
+     * @throws IllegalArgumentException if size is negative
+     */
+    public ByteRange resolve(long size) {
+        Preconditions.checkArgument(size >= 0, "Size must not be negative, but was %s", size);
+        if (suffix) {
+            final long resolved = Math.min(length, size);
+            return new ByteRange(size - resolved, resolved, false);
+        } else {
+            return this;
+        }
+    }
+    
+    /**
+     * Provides the maximum number of bytes of this range. The actual number
+     * may be lower if the range exceeds the end of the binary data.
+     * 
+     * @return the maximum length
+     */
+    public long getLength() {
+        return length;
+    }
+    
+    @Override
+    public boolean equals(Object that) {
+        if (this == that) {
+            return true;
+        } else if (that instanceof ByteRange) {
+            final ByteRange other = ByteRange.class.cast(that);
+            return offset == other.offset && length == other.length && suffix == other.suffix;
+        } else {
+            return false;
+        }
+    }
+    
+    @Override
+    public int hashCode() {
+        final int hash = 31 * (int) (offset ^ (offset >>> 32)) + (int) (length ^ (length >>> 32));
+        return 31 * hash + (suffix ? 1 : 0);
+    }
+    
+    @Override
+    public String toString() {
+        if (suffix) {
+            return String.format("ByteRange [last=%s]", length);
+        } else {
+            return String.format("ByteRange [offset=%s, length=%s]", offset, length);
+        }
+    }
+    
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Binder;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.store.Store;
+
+/**
+ * Binds a {@link CachingStore} which decorates the store bound to the source key.
+ * By default the decorator is bound to the {@link AssetStore}. Decorators can be
+ * chained by binding the inner one to an intermediate key which the outer one uses
+ * as its source, e.g.:
+ * <pre>
+ *   final Key&lt;Store&gt; compressed = Key.get(Store.class, Names.named("compressed"));
+ *   install(new CompressingAssetStoreModule(Key.get(FileSystemStore.class), compressed));
+ *   install(new CachingAssetStoreModule(compressed));
+ * </pre>
+ *
+ * @since 2.2
+ * @author agent
+ */
+public final class CachingAssetStoreModule implements Module {
+
+    private final Key<? extends Store> source;
+    
+    private final Key<Store> target;
+
+    /**
+     * Binds the {@link AssetStore} to a {@link CachingStore} decorating the given key.
+     *
+     * @param source the key of the decorated store
+     * @throws NullPointerException if source is null
+     */
+    public CachingAssetStoreModule(Key<? extends Store> source) {
+        this(source, Key.get(Store.class, AssetStore.class));
+    }
+
+    /**
+     * Binds the target key to a {@link CachingStore} decorating the source key.
+     *
+     * @param source the key of the decorated store
+     * @param target the key the decorator will be bound to
+     * @throws NullPointerException if source or target is null
+     * @throws IllegalArgumentException if source and target are equal
+     */
+    public CachingAssetStoreModule(Key<? extends Store> source, Key<Store> target) {
+        this.source = Preconditions.checkNotNull(source, "Source");
+        this.target = Preconditions.checkNotNull(target, "Target");
+        Preconditions.checkArgument(!source.equals(target), "%s can't decorate itself", target);
+    }
+
+    @Override
+    public void configure(Binder binder) {
+        binder.bind(target).toProvider(new CachingStoreProvider(source)).in(Singleton.class);
+    }
+
+    /**
+     * Provides the caching store.
+     */
+    private static final class CachingStoreProvider implements Provider<Store> {
+        
+        private final Key<? extends Store> source;
+        
+        private Injector injector;
+        
+        public CachingStoreProvider(Key<? extends Store> source) {
+            this.source = source;
+        }
+        
+        @Inject
+        void setInjector(Injector injector) {
+            this.injector = injector;
+        }
+        
+        @Override
+        public Store get() {
+            final CachingStore store = new CachingStore(injector.getInstance(source));
+            injector.injectMembers(store);
+            return store;
+        }
+        
+    }
+
+}
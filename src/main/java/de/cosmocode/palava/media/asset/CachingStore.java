@@ -0,0 +1,349 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Ints;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.media.MediaConfig;
+import de.cosmocode.palava.store.Store;
+
+/**
+ * A {@link Store} decorator which keeps small binaries in memory.
+ *
+ * <p>
+ *   Eviction uses a segmented lru policy: Newly cached binaries enter a probationary
+ *   segment and are promoted to a protected segment when they are read again. Binaries
+ *   which are only read once are therefore evicted before frequently read ones, even if
+ *   they have been read more recently.
+ * </p>
+ * <p>
+ *   Binaries larger than the configured maximum entry size are streamed through
+ *   without being cached. If the decorated store is a {@link ChannelStore}, channels
+ *   are opened on the decorated store directly.
+ * </p>
+ *
+ * @since 2.2
+ * @author agent
+ */
+public final class CachingStore implements ChannelStore, StoreDecorator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingStore.class);
+
+    /**
+     * The share of the maximum size reserved for the protected segment, in percent.
+     */
+    private static final int PROTECTED_SHARE = 80;
+
+    /**
+     * The initial size of the buffer used to read binaries on a cache miss.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    private final Store store;
+
+    private final Map<String, byte[]> probation = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+    private final Map<String, byte[]> protectedSegment = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+    /**
+     * Tokens of the misses currently being loaded, used to detect concurrent writes and deletes.
+     */
+    private final Map<String, Object> loading = new HashMap<String, Object>();
+
+    private long maxSize = 64L * 1024 * 1024;
+
+    private int maxEntrySize = 256 * 1024;
+
+    private long probationSize;
+
+    private long protectedSize;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CachingStore(Store store) {
+        this.store = Preconditions.checkNotNull(store, "Store");
+    }
+
+    @Inject(optional = true)
+    public void setMaxSize(@Named(MediaConfig.CACHE_MAX_SIZE) long maxSize) {
+        Preconditions.checkArgument(maxSize >= 0, "MaxSize must not be negative, but was %s", maxSize);
+        this.maxSize = maxSize;
+    }
+
+    @Inject(optional = true)
+    public void setMaxEntrySize(@Named(MediaConfig.CACHE_MAX_ENTRY_SIZE) int maxEntrySize) {
+        Preconditions.checkArgument(maxEntrySize >= 0, "MaxEntrySize must not be negative, but was %s", maxEntrySize);
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    @Override
+    public Store getDelegate() {
+        return store;
+    }
+
+    @Override
+    public String create(InputStream stream) throws IOException {
+        return store.create(stream);
+    }
+
+    @Override
+    public void create(InputStream stream, String identifier) throws IOException {
+        invalidate(identifier);
+        try {
+            store.create(stream, identifier);
+        } finally {
+            // drops binaries read while writing
+            invalidate(identifier);
+        }
+    }
+
+    @Override
+    public InputStream read(String identifier) throws IOException {
+        Preconditions.checkNotNull(identifier, "Identifier");
+        final byte[] cached = get(identifier);
+
+        if (cached == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+            return new ByteArrayInputStream(cached);
+        }
+
+        final Object token = load(identifier);
+        final InputStream stream;
+
+        try {
+            stream = store.read(identifier);
+        } catch (IOException e) {
+            loaded(identifier, token);
+            throw e;
+        }
+
+        final int limit = maxEntrySize + 1;
+        byte[] buffer = new byte[Math.min(limit, INITIAL_BUFFER_SIZE)];
+        int length = 0;
+
+        try {
+            while (length < limit) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.min(limit, Ints.saturatedCast(2L * buffer.length)));
+                }
+                final int read = stream.read(buffer, length, buffer.length - length);
+                if (read == -1) break;
+                length += read;
+            }
+        } catch (IOException e) {
+            loaded(identifier, token);
+            stream.close();
+            throw e;
+        }
+
+        if (length > maxEntrySize) {
+            loaded(identifier, token);
+            LOG.trace("{} exceeds maximum entry size of {} bytes, not caching", identifier, maxEntrySize);
+            return new SequenceInputStream(new ByteArrayInputStream(buffer, 0, length), stream);
+        } else {
+            stream.close();
+            final byte[] binary = length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+            put(identifier, binary, token);
+            return new ByteArrayInputStream(binary);
+        }
+    }
+
+    /**
+     * Opens a channel on the decorated store, bypassing the cache.
+     *
+     * @param identifier the store identifier
+     * @return a new file channel or null if the decorated store is not a {@link ChannelStore}
+     * @throws IOException if opening the channel failed
+     */
+    @Override
+    public FileChannel channel(String identifier) throws IOException {
+        if (store instanceof ChannelStore) {
+            return ChannelStore.class.cast(store).channel(identifier);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public Set<String> list() throws IOException {
+        return store.list();
+    }
+
+    @Override
+    public void delete(String identifier) throws IOException {
+        invalidate(identifier);
+        try {
+            store.delete(identifier);
+        } finally {
+            // drops binaries read while deleting
+            invalidate(identifier);
+        }
+    }
+
+    private synchronized byte[] get(String identifier) {
+        final byte[] hit = protectedSegment.get(identifier);
+        if (hit != null) return hit;
+
+        final byte[] promoted = probation.remove(identifier);
+        if (promoted == null) return null;
+        probationSize -= promoted.length;
+        protectedSegment.put(identifier, promoted);
+        protectedSize += promoted.length;
+
+        // demote the least recently used protected binaries
+        final long maxProtectedSize = maxSize * PROTECTED_SHARE / 100;
+        final Iterator<Map.Entry<String, byte[]>> iterator = protectedSegment.entrySet().iterator();
+        while (protectedSize > maxProtectedSize && iterator.hasNext()) {
+            final Map.Entry<String, byte[]> eldest = iterator.next();
+            if (eldest.getKey().equals(identifier)) continue;
+            iterator.remove();
+            protectedSize -= eldest.getValue().length;
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationSize += eldest.getValue().length;
+        }
+
+        evict();
+        return promoted;
+    }
+
+    /**
+     * Registers a new miss of the given identifier. Writes and deletes of the identifier
+     * discard the returned token, which prevents caching binary data read before them.
+     *
+     * @param identifier the identifier being loaded
+     * @return a token to pass to {@link #put(String, byte[], Object)} or {@link #loaded(String, Object)}
+     */
+    private synchronized Object load(String identifier) {
+        final Object token = new Object();
+        loading.put(identifier, token);
+        return token;
+    }
+
+    private synchronized boolean loaded(String identifier, Object token) {
+        if (loading.get(identifier) == token) {
+            loading.remove(identifier);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private synchronized void put(String identifier, byte[] binary, Object token) {
+        if (!loaded(identifier, token)) {
+            LOG.trace("{} has been modified while loading, not caching", identifier);
+            return;
+        }
+        if (binary.length > maxSize || protectedSegment.containsKey(identifier)) return;
+        final byte[] replaced = probation.put(identifier, binary);
+        if (replaced != null) probationSize -= replaced.length;
+        probationSize += binary.length;
+        evict();
+    }
+
+    private void evict() {
+        while (probationSize + protectedSize > maxSize) {
+            final boolean fromProbation = !probation.isEmpty();
+            final Map<String, byte[]> segment = fromProbation ? probation : protectedSegment;
+            final Iterator<Map.Entry<String, byte[]>> iterator = segment.entrySet().iterator();
+            final Map.Entry<String, byte[]> eldest = iterator.next();
+            iterator.remove();
+            if (fromProbation) {
+                probationSize -= eldest.getValue().length;
+            } else {
+                protectedSize -= eldest.getValue().length;
+            }
+            evictions.incrementAndGet();
+            LOG.trace("Evicted {} from cache", eldest.getKey());
+        }
+    }
+
+    private synchronized void invalidate(String identifier) {
+        loading.remove(identifier);
+        final byte[] probationary = probation.remove(identifier);
+        if (probationary != null) probationSize -= probationary.length;
+        final byte[] protectedBinary = protectedSegment.remove(identifier);
+        if (protectedBinary != null) protectedSize -= protectedBinary.length;
+    }
+
+    /**
+     * Provides the number of reads which have been served from memory.
+     *
+     * @return the number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Provides the number of reads which had to be delegated to the underlying store.
+     *
+     * @return the number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Provides the number of binaries which have been evicted to stay within the maximum size.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Provides the number of bytes currently held in memory.
+     *
+     * @return the current size in bytes
+     */
+    public synchronized long getSize() {
+        return probationSize + protectedSize;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CachingStore [store=%s, hits=%s, misses=%s, evictions=%s]",
+            store, hits, misses, evictions);
+    }
+
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import de.cosmocode.palava.store.Store;
+
+/**
+ * Extension of the {@link Store} interface for stores which keep their binary
+ * data in local files. {@link AbstractAssetService} uses file channels of such
+ * stores to transfer binary data without copying it through the heap.
+ *
+ * @since 2.2
+ * @author agent
+ */
+public interface ChannelStore extends Store {
+
+    /**
+     * Opens a read-only file channel on the binary data with the given identifier.
+     * The caller is responsible for closing the returned channel. Decorators return
+     * null if the store they decorate does not support channels.
+     * 
+     * @param identifier the store identifier
+     * @return a new file channel positioned at the beginning of the binary data,
+     *         or null if channels are not supported
+     * @throws IOException if opening the channel failed, e.g. because there
+     *         is no binary data with the given identifier
+     */
+    FileChannel channel(String identifier) throws IOException;
+    
+}
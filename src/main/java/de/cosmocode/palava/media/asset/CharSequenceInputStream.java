@@ -0,0 +1,106 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.io.CharConversionException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An {@link InputStream} which reads the characters of a {@link CharSequence}
+ * as single bytes without copying them into a byte array first. Only supports
+ * pure ascii content, e.g. base64 encoded binary data. Reading any other character
+ * fails with a {@link CharConversionException} instead of silently corrupting it.
+ *
+ * @since 2.2
+ * @author agent
+ */
+public final class CharSequenceInputStream extends InputStream {
+
+    private static final char MAX_ASCII = 0x7F;
+
+    private final CharSequence sequence;
+
+    private int position;
+
+    private int mark;
+
+    public CharSequenceInputStream(CharSequence sequence) {
+        this.sequence = Preconditions.checkNotNull(sequence, "Sequence");
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position >= sequence.length()) return -1;
+        return next();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Preconditions.checkNotNull(b, "B");
+        Preconditions.checkPositionIndexes(off, off + len, b.length);
+        if (len == 0) return 0;
+        final int remaining = sequence.length() - position;
+        if (remaining <= 0) return -1;
+        final int count = Math.min(len, remaining);
+        for (int i = 0; i < count; i++) {
+            b[off + i] = next();
+        }
+        return count;
+    }
+
+    private byte next() throws CharConversionException {
+        final char c = sequence.charAt(position);
+        if (c > MAX_ASCII) {
+            throw new CharConversionException(String.format(
+                "Non-ascii character \\u%04x at index %s", (int) c, position));
+        }
+        position++;
+        return (byte) c;
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0) return 0;
+        final int skipped = (int) Math.min(n, sequence.length() - position);
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return sequence.length() - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        mark = position;
+    }
+
+    @Override
+    public synchronized void reset() {
+        position = mark;
+    }
+
+}
@@ -0,0 +1,324 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.media.MediaConfig;
+import de.cosmocode.palava.store.Store;
+
+/**
+ * A {@link Store} decorator which compresses text-like binaries, e.g. SVG, JSON, CSV or plain text.
+ *
+ * <p>
+ *   Whether a binary is compressed is decided by sniffing its first bytes, since stores do not know
+ *   about content types. Compressed binaries are stored in zlib format, which is what http calls the
+ *   {@code deflate} content encoding, behind a five byte header consisting of {@link #MAGIC} and a
+ *   {@link Codec} id. Uncompressed binaries are stored unchanged, unless they happen to start with
+ *   the magic bytes. Binaries written without this decorator can therefore be read as well.
+ * </p>
+ * <p>
+ *   {@link #read(String)} decompresses while streaming. Clients accepting the content encoding
+ *   can use {@link #readEncoded(String)} to receive the compressed bytes directly. Since the codec
+ *   only depends on the leading bytes, writers can learn it upfront using {@link #sniff(PushbackInputStream)}
+ *   instead of reading the stored binary back.
+ * </p>
+ *
+ * @since 2.2
+ * @author agent
+ */
+public final class CompressingStore implements StoreDecorator {
+
+    /**
+     * The bytes all binaries written with an explicit codec start with.
+     */
+    public static final byte[] MAGIC = {(byte) 0x89, 'P', 'M', 'C'};
+
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+
+    /**
+     * The number of leading bytes used to decide whether a binary is compressed.
+     */
+    public static final int SNIFF_SIZE = 1024;
+
+    /**
+     * Binaries smaller than this are not worth compressing.
+     */
+    private static final int MIN_SIZE = 256;
+
+    /**
+     * The maximum share of control characters in text, in percent.
+     */
+    private static final int MAX_CONTROL_SHARE = 1;
+
+    /**
+     * The codecs supported by this store.
+     *
+     * @since 2.2
+     * @author agent
+     */
+    public static enum Codec {
+
+        IDENTITY(null),
+
+        DEFLATE("deflate");
+
+        private final String encoding;
+
+        private Codec(String encoding) {
+            this.encoding = encoding;
+        }
+
+        /**
+         * Provides the http content encoding of this codec.
+         *
+         * @return the content encoding or null if binaries are stored unchanged
+         */
+        public String getEncoding() {
+            return encoding;
+        }
+
+    }
+
+    private final Store store;
+
+    private int level = Deflater.BEST_SPEED;
+
+    public CompressingStore(Store store) {
+        this.store = Preconditions.checkNotNull(store, "Store");
+    }
+
+    /**
+     * Sets the deflate level, which defaults to {@link Deflater#BEST_SPEED}. Higher levels
+     * trade write throughput for a better ratio, reading is equally fast for all levels.
+     *
+     * @param level the level, between {@link Deflater#BEST_SPEED} and {@link Deflater#BEST_COMPRESSION}
+     */
+    @Inject(optional = true)
+    public void setLevel(@Named(MediaConfig.COMPRESSION_LEVEL) int level) {
+        Preconditions.checkArgument(level >= Deflater.BEST_SPEED && level <= Deflater.BEST_COMPRESSION,
+            "Level must be between %s and %s, but was %s", Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION, level);
+        this.level = level;
+    }
+
+    @Override
+    public Store getDelegate() {
+        return store;
+    }
+
+    @Override
+    public String create(InputStream stream) throws IOException {
+        return store.create(encode(stream));
+    }
+
+    @Override
+    public void create(InputStream stream, String identifier) throws IOException {
+        store.create(encode(stream), identifier);
+    }
+
+    /**
+     * Decides which codec this store uses for the given binary, without consuming any bytes.
+     *
+     * @param input the binary, which must be able to push back at least {@link #SNIFF_SIZE} bytes
+     * @return the codec binaries starting like the given one are stored with
+     * @throws NullPointerException if input is null
+     * @throws IOException if reading failed
+     */
+    public static Codec sniff(PushbackInputStream input) throws IOException {
+        Preconditions.checkNotNull(input, "Input");
+        final byte[] head = new byte[SNIFF_SIZE];
+        final int length = readFully(input, head);
+        input.unread(head, 0, length);
+        return length >= MIN_SIZE && isText(head, length) ? Codec.DEFLATE : Codec.IDENTITY;
+    }
+
+    private InputStream encode(InputStream stream) throws IOException {
+        Preconditions.checkNotNull(stream, "Stream");
+        final PushbackInputStream input = new PushbackInputStream(stream, SNIFF_SIZE);
+        final Codec codec = sniff(input);
+
+        if (codec == Codec.IDENTITY && !startsWithMagic(input)) {
+            return input;
+        }
+
+        final byte[] header = new byte[HEADER_SIZE];
+        System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+        header[MAGIC.length] = (byte) codec.ordinal();
+
+        final InputStream body;
+
+        if (codec == Codec.DEFLATE) {
+            body = new DeflaterInputStream(input, new Deflater(level)) {
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        // custom deflaters are not released by the stream itself
+                        def.end();
+                    }
+                }
+
+            };
+        } else {
+            body = input;
+        }
+
+        return new SequenceInputStream(new ByteArrayInputStream(header), body);
+    }
+
+    private static boolean startsWithMagic(PushbackInputStream input) throws IOException {
+        final byte[] head = new byte[MAGIC.length];
+        final int length = readFully(input, head);
+        input.unread(head, 0, length);
+        return startsWithMagic(head, length);
+    }
+
+    private static int readFully(InputStream input, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            final int read = input.read(buffer, total, buffer.length - total);
+            if (read == -1) break;
+            total += read;
+        }
+        return total;
+    }
+
+    private static boolean isText(byte[] head, int length) {
+        int control = 0;
+        for (int i = 0; i < length; i++) {
+            final int b = head[i] & 0xFF;
+            if (b == 0) {
+                return false;
+            } else if ((b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f') || b == 0x7F) {
+                control++;
+            }
+        }
+        return control * 100 <= length * MAX_CONTROL_SHARE;
+    }
+
+    private static boolean startsWithMagic(byte[] head, int length) {
+        if (length < MAGIC.length) return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (head[i] != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public InputStream read(String identifier) throws IOException {
+        final PushbackInputStream input = open(identifier);
+        try {
+            return readCodec(input) == Codec.DEFLATE ? new InflaterInputStream(input) : input;
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a stream on the binary data with the given identifier, as stored. Its content
+     * is encoded using the content encoding returned by {@link #getEncoding(String)}.
+     *
+     * @param identifier the store identifier
+     * @return a new stream on the encoded binary data
+     * @throws IOException if reading failed
+     */
+    public InputStream readEncoded(String identifier) throws IOException {
+        final PushbackInputStream input = open(identifier);
+        try {
+            readCodec(input);
+            return input;
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Looks up the content encoding of the binary data with the given identifier.
+     *
+     * @param identifier the store identifier
+     * @return the content encoding or null if the binary data is not encoded
+     * @throws IOException if reading failed
+     */
+    public String getEncoding(String identifier) throws IOException {
+        final PushbackInputStream input = open(identifier);
+        try {
+            return readCodec(input).getEncoding();
+        } finally {
+            input.close();
+        }
+    }
+
+    private PushbackInputStream open(String identifier) throws IOException {
+        Preconditions.checkNotNull(identifier, "Identifier");
+        return new PushbackInputStream(store.read(identifier), HEADER_SIZE);
+    }
+
+    /**
+     * Consumes the header of the given stream, if there is one.
+     *
+     * @param input the stream
+     * @return the codec of the following bytes
+     * @throws IOException if reading failed or the codec is unknown
+     */
+    private Codec readCodec(PushbackInputStream input) throws IOException {
+        final byte[] header = new byte[HEADER_SIZE];
+        final int length = readFully(input, header);
+
+        if (length == HEADER_SIZE && startsWithMagic(header, length)) {
+            final int id = header[MAGIC.length];
+            if (id < 0 || id >= Codec.values().length) {
+                throw new IOException("Unknown codec " + id);
+            }
+            return Codec.values()[id];
+        } else {
+            input.unread(header, 0, length);
+            return Codec.IDENTITY;
+        }
+    }
+
+    @Override
+    public Set<String> list() throws IOException {
+        return store.list();
+    }
+
+    @Override
+    public void delete(String identifier) throws IOException {
+        store.delete(identifier);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CompressingStore [store=%s, level=%s]", store, level);
+    }
+
+}
@@ -16,17 +16,14 @@
 
 package de.cosmocode.palava.media.asset;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.Charset;
 import java.util.Date;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import javax.persistence.PersistenceException;
 
-import org.apache.commons.codec.binary.Base64InputStream;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,7 +44,6 @@ import de.cosmocode.palava.ipc.IpcCommand.Return;
 import de.cosmocode.palava.ipc.IpcCommand.Throw;
 import de.cosmocode.palava.ipc.IpcCommand.Throws;
 import de.cosmocode.palava.ipc.IpcCommandExecutionException;
-import de.cosmocode.palava.jpa.Transactional;
 import de.cosmocode.palava.media.MediaPermissions;
 
 /**
@@ -65,8 +61,9 @@ import de.cosmocode.palava.media.MediaPermissions;
     ),
     @Param(
         name = AssetConstants.BINARY,
-        type = "base64 encoded string",
-        description = "The binary data in base64 format."
+        type = "base64 encoded string, input stream or readable byte channel",
+        description = "The binary data in base64 format. Transports which support streaming " +
+            "may pass the raw binary data as an input stream or channel instead."
     ),
     @Param(
         name = AssetConstants.TITLE,
@@ -100,6 +97,7 @@ import de.cosmocode.palava.media.MediaPermissions;
 @Return(name = AssetConstants.ASSET, description = "The new asset")
 @Throws({
     @Throw(name = NullPointerException.class, description = "If metaData contains null keys"),
+    @Throw(name = IllegalArgumentException.class, description = "If binary is of an unsupported type"),
     @Throw(name = PersistenceException.class, description = "If no asset with the given id exists or update failed")
 })
 @Singleton
@@ -109,15 +107,16 @@ public final class Create implements IpcCommand {
 
     private final Provider<AssetBase> provider;
     private final EntityService<AssetBase> service;
+    private final Assets assets;
 
     @Inject
-    public Create(Provider<AssetBase> provider, EntityService<AssetBase> service) {
+    public Create(Provider<AssetBase> provider, EntityService<AssetBase> service, Assets assets) {
         this.provider = Preconditions.checkNotNull(provider, "Provider");
         this.service = Preconditions.checkNotNull(service, "Service");
+        this.assets = Preconditions.checkNotNull(assets, "Assets");
     }
 
     @RequiresPermissions(MediaPermissions.ASSET_CREATE)
-    @Transactional
     @Override
     public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
         final IpcArguments arguments = call.getArguments();
@@ -125,7 +124,7 @@ public final class Create implements IpcCommand {
         final AssetBase asset = provider.get();
 
         final String name = arguments.getString(AssetConstants.NAME);
-        final byte[] binary = arguments.getString(AssetConstants.BINARY).getBytes(Charset.forName("UTF-8"));
+        final Object binary = Preconditions.checkNotNull(arguments.get(AssetConstants.BINARY), "Binary");
         final String title = arguments.getString(AssetConstants.TITLE, null);
         final String description = arguments.getString(AssetConstants.DESCRIPTION, null);
         final Map<Object, Object> metaData = arguments.getMap(AssetConstants.META_DATA, null);
@@ -133,7 +132,7 @@ public final class Create implements IpcCommand {
 
         asset.setName(name);
         
-        final InputStream stream = new Base64InputStream(new ByteArrayInputStream(binary));
+        final InputStream stream = Binaries.open(binary);
         asset.setStream(stream);
         
         asset.setTitle(title);
@@ -155,7 +154,7 @@ public final class Create implements IpcCommand {
         asset.setExpiresAt(expiresAt);
 
         try {
-            service.create(asset);
+            assets.create(service, asset);
         } finally {
             try {
                 stream.close();
@@ -0,0 +1,260 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A priority queue of unique identifiers ordered by deadline, backed by a binary heap
+ * of primitive longs. The heap position of every identifier is tracked in an open addressing
+ * hash table of primitives, which allows changing or removing deadlines in logarithmic time.
+ * Entries occupy a few dozen bytes each and create no objects, which allows keeping
+ * millions of deadlines in memory.
+ *
+ * <p>
+ *   This class is not thread-safe.
+ * </p>
+ *
+ * @since 2.2
+ * @author agent
+ */
+public final class DeadlineQueue {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private long[] deadlines;
+
+    private long[] identifiers;
+
+    private int size;
+
+    /**
+     * Keys of the position table.
+     */
+    private long[] keys;
+
+    /**
+     * Heap index plus one of the identifier in the corresponding key slot, zero marks empty slots.
+     */
+    private int[] positions;
+
+    public DeadlineQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public DeadlineQueue(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive, but was %s", capacity);
+        this.deadlines = new long[capacity];
+        this.identifiers = new long[capacity];
+        final int slots = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) << 1;
+        this.keys = new long[slots];
+        this.positions = new int[slots];
+    }
+
+    /**
+     * Adds the given identifier with the specified deadline. If the identifier is
+     * already queued, its deadline is changed instead.
+     *
+     * @param identifier the identifier
+     * @param deadline the deadline in milliseconds since epoch
+     */
+    public void add(long identifier, long deadline) {
+        final int slot = slot(identifier);
+
+        if (positions[slot] > 0) {
+            final int index = positions[slot] - 1;
+            final long previous = deadlines[index];
+            if (deadline < previous) {
+                siftUp(index, identifier, deadline);
+            } else if (deadline > previous) {
+                siftDown(index, identifier, deadline);
+            }
+            return;
+        }
+
+        if (size == deadlines.length) {
+            final int capacity = deadlines.length + Math.max(1, deadlines.length >> 1);
+            deadlines = Arrays.copyOf(deadlines, capacity);
+            identifiers = Arrays.copyOf(identifiers, capacity);
+        }
+
+        keys[slot] = identifier;
+        positions[slot] = ++size;
+        siftUp(size - 1, identifier, deadline);
+
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    /**
+     * Removes the given identifier, if queued.
+     *
+     * @param identifier the identifier
+     * @return true if the identifier was queued, false otherwise
+     */
+    public boolean remove(long identifier) {
+        final int slot = slot(identifier);
+        if (positions[slot] == 0) return false;
+        final int index = positions[slot] - 1;
+        unindex(slot);
+
+        final int last = --size;
+        if (index == last) return true;
+
+        final long deadline = deadlines[last];
+        final long moved = identifiers[last];
+        if (index > 0 && deadline < deadlines[(index - 1) >>> 1]) {
+            siftUp(index, moved, deadline);
+        } else {
+            siftDown(index, moved, deadline);
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the given identifier is queued.
+     *
+     * @param identifier the identifier
+     * @return true if the identifier is queued, false otherwise
+     */
+    public boolean contains(long identifier) {
+        return positions[slot(identifier)] > 0;
+    }
+
+    /**
+     * Removes all identifiers whose deadline is not after now, up to the length of target.
+     *
+     * @param now the current time in milliseconds since epoch
+     * @param target the array receiving the removed identifiers
+     * @return the number of removed identifiers
+     */
+    public int drainTo(long now, long[] target) {
+        Preconditions.checkNotNull(target, "Target");
+        int count = 0;
+        while (count < target.length && size > 0 && deadlines[0] <= now) {
+            target[count] = identifiers[0];
+            remove(target[count++]);
+        }
+        return count;
+    }
+
+    private void siftUp(int start, long identifier, long deadline) {
+        int index = start;
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (deadlines[parent] <= deadline) break;
+            place(index, identifiers[parent], deadlines[parent]);
+            index = parent;
+        }
+        place(index, identifier, deadline);
+    }
+
+    private void siftDown(int start, long identifier, long deadline) {
+        int index = start;
+        while (true) {
+            int child = (index << 1) + 1;
+            if (child >= size) break;
+            if (child + 1 < size && deadlines[child + 1] < deadlines[child]) child++;
+            if (deadline <= deadlines[child]) break;
+            place(index, identifiers[child], deadlines[child]);
+            index = child;
+        }
+        place(index, identifier, deadline);
+    }
+
+    private void place(int index, long identifier, long deadline) {
+        deadlines[index] = deadline;
+        identifiers[index] = identifier;
+        positions[slot(identifier)] = index + 1;
+    }
+
+    private static int hash(long identifier) {
+        final int hash = (int) (identifier ^ (identifier >>> 32)) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Finds the slot of the given identifier using linear probing.
+     *
+     * @param identifier the identifier
+     * @return the slot containing the identifier or the empty slot it would be inserted into
+     */
+    private int slot(long identifier) {
+        final int mask = keys.length - 1;
+        int slot = hash(identifier) & mask;
+        while (positions[slot] > 0 && keys[slot] != identifier) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Clears the given slot, shifting subsequent entries back to keep probe sequences intact.
+     *
+     * @param slot the slot to clear
+     */
+    private void unindex(int slot) {
+        final int mask = keys.length - 1;
+        int free = slot;
+        int current = slot;
+        while (true) {
+            current = (current + 1) & mask;
+            if (positions[current] == 0) break;
+            final int ideal = hash(keys[current]) & mask;
+            if (((current - ideal) & mask) >= ((current - free) & mask)) {
+                keys[free] = keys[current];
+                positions[free] = positions[current];
+                free = current;
+            }
+        }
+        positions[free] = 0;
+    }
+
+    private void rehash(int capacity) {
+        final long[] oldKeys = keys;
+        final int[] oldPositions = positions;
+        keys = new long[capacity];
+        positions = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldPositions[i] == 0) continue;
+            final int slot = slot(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            positions[slot] = oldPositions[i];
+        }
+    }
+
+    /**
+     * Provides the earliest deadline.
+     *
+     * @return the earliest deadline or {@link Long#MAX_VALUE} if this queue is empty
+     */
+    public long peekDeadline() {
+        return size == 0 ? Long.MAX_VALUE : deadlines[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Static utility class for set based expiration of assets.
+ *
+ * @since 2.2
+ * @author agent
+ */
+final class Expirations {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Expirations.class);
+
+    private Expirations() {
+
+    }
+
+    /**
+     * Sets the expired flag on up to limit assets in expiring or unexpiring state,
+     * using one query for the ids and one bulk update. Requires an active transaction.
+     * Bulk updates bypass the persistence context, managed assets will therefore not
+     * reflect the change until they are refreshed. The update checks the expiration criteria
+     * again, assets changed concurrently after their ids have been selected are skipped.
+     *
+     * @param manager the entity manager
+     * @param expired true to expire expiring assets, false to unexpire unexpiring assets
+     * @param limit the maximum number of affected assets
+     * @return the ids of all selected assets, which may contain ids of skipped assets
+     *         if fewer assets have been updated than selected
+     */
+    static List<Long> update(EntityManager manager, boolean expired, int limit) {
+        Preconditions.checkNotNull(manager, "Manager");
+        Preconditions.checkArgument(limit > 0, "Limit must be positive, but was %s", limit);
+
+        final List<?> result = manager.createNamedQuery(
+            expired ? AssetBase.EXPIRING_IDS : AssetBase.UNEXPIRING_IDS).
+            setMaxResults(limit).getResultList();
+
+        if (result.isEmpty()) return Collections.emptyList();
+
+        final List<Long> ids = Lists.newArrayListWithCapacity(result.size());
+        for (Object id : result) {
+            ids.add(((Number) id).longValue());
+        }
+
+        final int updated = manager.createNamedQuery(
+            expired ? AssetBase.UPDATE_EXPIRING : AssetBase.UPDATE_UNEXPIRING).
+            setParameter(1, ids).executeUpdate();
+
+        if (updated < ids.size()) {
+            LOG.debug("{} of {} selected asset(s) changed concurrently and have been skipped",
+                ids.size() - updated, ids.size());
+        }
+
+        return ids;
+    }
+
+}
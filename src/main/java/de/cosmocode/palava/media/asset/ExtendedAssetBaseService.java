@@ -0,0 +1,301 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.PersistenceException;
+
+/**
+ * Optional extension of the {@link AssetBaseService} interface which adds streaming,
+ * batch and query operations. {@link AbstractAssetService} implements all of them.
+ * Commands check for this interface and fall back to the plain {@link AssetBaseService}
+ * or {@link de.cosmocode.palava.entity.EntityService} operations if a bound service
+ * does not implement it.
+ *
+ * @since 2.2
+ * @author agent
+ * @param <T> the generic asset type
+ */
+public interface ExtendedAssetBaseService<T extends AssetBase> extends AssetBaseService<T> {
+
+    /**
+     * Writes the stream of the specified asset to the associated store and
+     * sets the resulting store identifier. This method does not require a transaction,
+     * which allows writing large binaries before a short transaction persists the asset
+     * using {@code create}, which will then skip writing. The {@link AssetCreateEvent} is
+     * fired before writing, which allows listeners to veto the asset before the costly write.
+     * Deduplication, if enabled, takes place in the transaction of {@code create}. Callers
+     * should use {@link #deleteStream(AssetBase)} if persisting the asset fails.
+     * 
+     * @since 2.2
+     * @param asset the asset
+     * @throws NullPointerException if asset is null
+     * @throws IllegalStateException if the binary data has already been written
+     * @throws PersistenceException if writing the stream failed
+     */
+    void writeStream(T asset) throws PersistenceException;
+    
+    /**
+     * Removes the binary data written by {@link #writeStream(AssetBase)} from the associated
+     * store, unless it is shared with other assets. Failures are logged, but not propagated.
+     * The store identifier and digest of the given asset are reset in any case.
+     * 
+     * @since 2.2
+     * @param asset the asset which could not be persisted
+     * @throws NullPointerException if asset is null
+     * @throws IllegalStateException if the binary data has not been written
+     */
+    void deleteStream(T asset);
+    
+    /**
+     * Opens a stream on the binary data of the specified asset as stored, without decoding it.
+     * The content encoding is recorded in the meta data of the asset using
+     * {@link MetaData#CONTENT_ENCODING}, which allows serving compressed binary data directly
+     * to clients accepting that encoding. The caller is responsible for closing the returned stream.
+     * 
+     * @since 2.2
+     * @param asset the asset
+     * @return a new stream on the encoded binary data
+     * @throws NullPointerException if asset is null
+     * @throws PersistenceException if opening the stream failed
+     */
+    InputStream readEncoded(T asset) throws PersistenceException;
+    
+    /**
+     * Opens a channel on the binary data of the specified asset. If the associated
+     * store is a {@link ChannelStore} supporting channels, the returned channel will be a {@link FileChannel}
+     * which allows zero-copy transfers using {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+     * The caller is responsible for closing the returned channel.
+     * 
+     * @since 2.2
+     * @param asset the asset
+     * @return a new channel on the binary data of the given asset
+     * @throws NullPointerException if asset is null
+     * @throws PersistenceException if opening the channel failed
+     */
+    ReadableByteChannel readChannel(T asset) throws PersistenceException;
+    
+    /**
+     * Opens a stream on the given range of the binary data of the specified asset.
+     * Stores implementing {@link ChannelStore} seek directly to the offset, all others
+     * skip the leading bytes. Suffix ranges created using {@link ByteRange#last(long)} are
+     * resolved against the size of the binary data, which requires an additional pass over
+     * the binary data of stores not supporting channels. The caller is responsible for
+     * closing the returned stream.
+     * 
+     * @since 2.2
+     * @param asset the asset
+     * @param range the range to read
+     * @return a new stream which ends after the given range or the binary data, whichever comes first
+     * @throws NullPointerException if asset or range is null
+     * @throws PersistenceException if opening the stream failed or the range starts
+     *         beyond the end of the binary data
+     */
+    InputStream readRange(T asset, ByteRange range) throws PersistenceException;
+    
+    /**
+     * Opens one stream per given range, as required by multi range requests.
+     * The caller is responsible for closing all returned streams.
+     * 
+     * @since 2.2
+     * @param asset the asset
+     * @param ranges the ranges to read
+     * @return a list of new streams, in the same order as ranges
+     * @throws NullPointerException if asset or ranges is null
+     * @throws PersistenceException if opening any of the streams failed
+     */
+    List<InputStream> readRanges(T asset, List<ByteRange> ranges) throws PersistenceException;
+    
+    /**
+     * Transfers the binary data of the specified asset to the given target. File backed
+     * binaries will be transferred directly from the file system cache to the target,
+     * e.g. a socket, if supported by the operating system.
+     * 
+     * @since 2.2
+     * @param asset the asset
+     * @param target the target channel
+     * @return the number of transferred bytes, which is less than the size of the binary data
+     *         if it shrank during the transfer or a non-blocking target stopped accepting bytes
+     * @throws NullPointerException if asset or target is null
+     * @throws PersistenceException if transferring failed
+     */
+    long transferTo(T asset, WritableByteChannel target) throws PersistenceException;
+
+    /**
+     * Reads many assets at once, using one {@link AssetBase#BY_IDS} query per chunk of ids.
+     *
+     * @since 2.2
+     * @param ids the ids of the assets
+     * @return a map of id to asset, in the iteration order of ids, which does
+     *         not contain the ids of missing assets
+     * @throws NullPointerException if ids is null
+     */
+    Map<Long, T> readAll(Collection<Long> ids);
+
+    /**
+     * Moves up to limit assets in expiring state into expired state using a single
+     * bulk update. See {@link AssetBase#isExpiring()} for details. Assets already loaded
+     * by the current entity manager are not refreshed and no events are fired, callers
+     * are expected to notify {@link AssetExpiredEvent} listeners using the returned ids.
+     * The update checks the expiring state again, assets which left it after they have
+     * been selected are skipped, but their ids are still returned.
+     *
+     * @since 2.2
+     * @param limit the maximum number of assets to expire
+     * @return the ids of all selected assets, which is smaller than limit if no
+     *         more assets are in expiring state
+     * @throws IllegalArgumentException if limit is not positive
+     */
+    List<Long> expire(int limit);
+
+    /**
+     * Moves up to limit assets in unexpiring state out of expired state using a single
+     * bulk update. See {@link AssetBase#isUnexpiring()} for details. Like {@link #expire(int)}
+     * this neither refreshes loaded assets nor fires events.
+     *
+     * @since 2.2
+     * @param limit the maximum number of assets to unexpire
+     * @return the ids of all selected assets, which is smaller than limit if no
+     *         more assets are in unexpiring state
+     * @throws IllegalArgumentException if limit is not positive
+     */
+    List<Long> unexpire(int limit);
+
+    /**
+     * Looks up the ids of all directories containing the specified asset without
+     * loading {@link AssetBase#getDirectories()}.
+     *
+     * @since 2.2
+     * @param asset the asset
+     * @return the ids of all directories containing the given asset
+     * @throws NullPointerException if asset is null
+     */
+    List<Long> getDirectoryIds(T asset);
+
+    /**
+     * Counts all directories containing the specified asset without
+     * loading {@link AssetBase#getDirectories()}.
+     *
+     * @since 2.2
+     * @param asset the asset
+     * @return the number of directories containing the given asset
+     * @throws NullPointerException if asset is null
+     */
+    long countDirectories(T asset);
+
+    /**
+     * Counts all persisted assets which reference the binary data with the given
+     * store identifier. Only meaningful if deduplication is enabled, otherwise
+     * every binary is referenced by at most one asset.
+     *
+     * @since 2.2
+     * @param storeIdentifier the store identifier
+     * @return the number of assets referencing the given binary data
+     * @throws NullPointerException if storeIdentifier is null
+     */
+    long countReferences(String storeIdentifier);
+
+    /**
+     * Counts the directories of many assets at once, using one query per chunk of ids.
+     *
+     * @since 2.2
+     * @param assetIds the ids of the assets
+     * @return a map of asset id to number of directories, containing all given ids
+     * @throws NullPointerException if assetIds is null
+     */
+    Map<Long, Long> countDirectories(Collection<Long> assetIds);
+
+    /**
+     * Lists the ids of all assets page by page, which allows walking the whole library
+     * without loading all assets at once. The last id of a page is passed as after to
+     * retrieve the next page, starting with 0.
+     *
+     * @since 2.2
+     * @param after the id after which the page starts, exclusive
+     * @param limit the maximum number of ids
+     * @return the ids of all assets greater than after, up to limit, in ascending order
+     * @throws IllegalArgumentException if limit is not positive
+     */
+    List<Long> listIds(long after, int limit);
+
+    /**
+     * Finds assets whose meta data maps the given key to the given value.
+     *
+     * @since 2.2
+     * @param key the meta data key
+     * @param value the meta data value
+     * @param limit the maximum number of results
+     * @return the ids of all matching assets, up to limit
+     * @throws NullPointerException if key or value is null
+     * @throws IllegalArgumentException if limit is not positive
+     */
+    List<Long> findByMetaData(String key, String value, int limit);
+
+    /**
+     * Finds assets whose meta data maps the given key to a value starting with the given prefix.
+     *
+     * @since 2.2
+     * @param key the meta data key
+     * @param prefix the prefix of the meta data value
+     * @param limit the maximum number of results
+     * @return the ids of all matching assets, up to limit
+     * @throws NullPointerException if key or prefix is null
+     * @throws IllegalArgumentException if limit is not positive
+     */
+    List<Long> findByMetaDataPrefix(String key, String prefix, int limit);
+
+    /**
+     * Finds assets whose meta data maps the given key to a numeric value within the given range.
+     * Values which do not look like a number never match, see {@link MetaData#toNumber(String)}.
+     * {@link AbstractAssetService} maintains the numeric column this method relies on only if
+     * {@link de.cosmocode.palava.media.MediaConfig#META_DATA_NUMBERS} is enabled.
+     *
+     * @since 2.2
+     * @param key the meta data key
+     * @param min the lower bound, inclusive
+     * @param max the upper bound, inclusive
+     * @param limit the maximum number of results
+     * @return the ids of all matching assets, up to limit
+     * @throws NullPointerException if key is null
+     * @throws IllegalArgumentException if limit is not positive or min is greater than max
+     */
+    List<Long> findByMetaDataRange(String key, double min, double max, int limit);
+
+    /**
+     * Updates the given asset like {@code update}, but tells the service which meta data keys
+     * have been changed, removed or added since the asset was loaded. Services which derive data
+     * from the meta data, e.g. the numeric column used by
+     * {@link #findByMetaDataRange(String, double, double, int)}, only need to refresh those keys
+     * and can skip the work entirely if the set is empty.
+     *
+     * @since 2.2
+     * @param asset the asset
+     * @param changedKeys the changed meta data keys
+     * @return the updated asset
+     * @throws NullPointerException if asset or changedKeys is null
+     */
+    T update(T asset, Set<String> changedKeys);
+
+}
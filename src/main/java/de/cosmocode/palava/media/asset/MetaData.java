@@ -0,0 +1,93 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.util.regex.Pattern;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Static utility class for indexing and searching asset meta data.
+ * See {@link ExtendedAssetBaseService#findByMetaData(String, String, int)} for details.
+ *
+ * @since 2.2
+ * @author agent
+ */
+public final class MetaData {
+
+    /**
+     * The escape character used in like patterns.
+     */
+    public static final char ESCAPE = '\\';
+
+    /**
+     * The meta data key holding the content encoding of the stored binary data,
+     * which is absent if the binary data is stored unchanged. See {@link CompressingStore}.
+     */
+    public static final String CONTENT_ENCODING = "contentEncoding";
+
+    /**
+     * Plain decimal numbers with an optional sign and exponent, which excludes
+     * type suffixes, hexadecimal notation, infinity and NaN.
+     */
+    private static final Pattern NUMBER = Pattern.compile("[+-]?(\\d+(\\.\\d*)?|\\.\\d+)([eE][+-]?\\d+)?");
+
+    private MetaData() {
+
+    }
+
+    /**
+     * Parses the given meta data value into a number, which implementations
+     * should store next to the value to support range queries. Only plain decimal
+     * numbers, e.g. {@code 42}, {@code -1.5} or {@code 1e3}, are accepted, surrounded
+     * by optional whitespace. Values like {@code 1d}, {@code 0x1p3} or {@code Infinity}
+     * are not numbers.
+     *
+     * @param value the meta data value
+     * @return the numeric value or null if value does not look like a number
+     */
+    public static Double toNumber(String value) {
+        if (value == null) return null;
+        final String trimmed = value.trim();
+        if (!NUMBER.matcher(trimmed).matches()) return null;
+        final double number = Double.parseDouble(trimmed);
+        // exponents may still overflow
+        return Double.isInfinite(number) ? null : number;
+    }
+
+    /**
+     * Creates a like pattern matching all values starting with the given prefix.
+     * Wildcards in the prefix are escaped using {@link #ESCAPE}.
+     *
+     * @param prefix the prefix
+     * @return a like pattern ending with a single wildcard
+     * @throws NullPointerException if prefix is null
+     */
+    public static String toPattern(String prefix) {
+        Preconditions.checkNotNull(prefix, "Prefix");
+        final StringBuilder builder = new StringBuilder(prefix.length() + 1);
+        for (int i = 0; i < prefix.length(); i++) {
+            final char c = prefix.charAt(i);
+            if (c == '%' || c == '_' || c == ESCAPE) {
+                builder.append(ESCAPE);
+            }
+            builder.append(c);
+        }
+        return builder.append('%').toString();
+    }
+
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.media.asset;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.persistence.PersistenceException;
+
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommand.Description;
+import de.cosmocode.palava.ipc.IpcCommand.Param;
+import de.cosmocode.palava.ipc.IpcCommand.Params;
+import de.cosmocode.palava.ipc.IpcCommand.Return;
+import de.cosmocode.palava.ipc.IpcCommand.Returns;
+import de.cosmocode.palava.ipc.IpcCommand.Throw;
+import de.cosmocode.palava.ipc.IpcCommand.Throws;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.jpa.Transactional;
+import de.cosmocode.palava.media.MediaPermissions;
+
+/**
+ * See below.
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Description(
+    "Streams a named rendition, e.g. a thumbnail, of an image asset. " +
+    "Missing renditions are generated before this command returns."
+)
+@Params({
+    @Param(name = AssetConstants.ASSET_ID, description = "The identifier of the asset"),
+    @Param(name = AssetConstants.RENDITION, description = "The name of the rendition")
+})
+@Returns({
+    @Return(
+        name = AssetConstants.BINARY, 
+        description = "An input stream on the rendition, which the transport streams to the client and closes"
+    ),
+    @Return(name = AssetConstants.FORMAT, description = "The image format of the rendition, e.g. jpg or png")
+})
+@Throws({
+    @Throw(name = PersistenceException.class, description = "If there is no asset with the given identifier"),
+    @Throw(name = IllegalArgumentException.class, description = "If there is no rendition with the given name"),
+    @Throw(name = IOException.class, description = "If the asset is not a supported image or too large")
+})
+@Singleton
+public final class ReadRendition implements IpcCommand {
+
+    private final EntityService<AssetBase> service;
+
+    private final RenditionService renditions;
+
+    @Inject
+    public ReadRendition(EntityService<AssetBase> service, RenditionService renditions) {
+        this.service = Preconditions.checkNotNull(service, "Service");
+        this.renditions = Preconditions.checkNotNull(renditions, "Renditions");
+    }
+
+    @RequiresPermissions(MediaPermissions.ASSET_READ)
+    @Transactional
+    @Override
+    public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+        final IpcArguments arguments = call.getArguments();
+        final long assetId = arguments.getLong(AssetConstants.ASSET_ID);
+        final String name = arguments.getString(AssetConstants.RENDITION);
+        final RenditionSpec spec = renditions.getSpec(name);
+        final AssetBase asset = service.read(assetId);
+        
+        try {
+            result.put(AssetConstants.BINARY, renditions.read(asset, name));
+        } catch (IOException e) {
+            throw new IpcCommandExecutionException(e);
+        }
+        
+        result.put(AssetConstants.FORMAT, spec.getFormat());
+    }
+
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.media.asset;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommand.Description;
+import de.cosmocode.palava.ipc.IpcCommand.Param;
+import de.cosmocode.palava.ipc.IpcCommand.Params;
+import de.cosmocode.palava.ipc.IpcCommand.Return;
+import de.cosmocode.palava.ipc.IpcCommand.Returns;
+import de.cosmocode.palava.ipc.IpcCommand.Throw;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.jpa.Transactional;
+import de.cosmocode.palava.media.MediaPermissions;
+
+/**
+ * See below.
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Description(
+    "Adds one page of existing assets to the full-text index, ordered by id, and removes deleted assets " +
+    "of that page. Indexing the whole library requires calling this command repeatedly, passing the " +
+    "returned next id as after, until it is absent."
+)
+@Params({
+    @Param(
+        name = AssetConstants.AFTER, type = "long", 
+        description = "The id after which the page starts", optional = true, defaultValue = "0"
+    ),
+    @Param(
+        name = AssetConstants.LIMIT, type = "positive int", 
+        description = "The maximum number of assets to index", optional = true, defaultValue = "500"
+    )
+})
+@Returns({
+    @Return(name = AssetConstants.INDEXED, description = "The number of indexed assets"),
+    @Return(name = AssetConstants.NEXT, description = "The id to pass as after, or null if all assets are indexed")
+})
+@Throw(
+    name = IllegalStateException.class,
+    description = "If the asset service does not implement ExtendedAssetBaseService"
+)
+@Singleton
+public final class RebuildIndex implements IpcCommand {
+
+    private static final int DEFAULT_LIMIT = 500;
+    
+    private final EntityService<AssetBase> service;
+    
+    private final AssetIndex index;
+
+    @Inject
+    public RebuildIndex(EntityService<AssetBase> service, AssetIndex index) {
+        this.service = Preconditions.checkNotNull(service, "Service");
+        this.index = Preconditions.checkNotNull(index, "Index");
+    }
+
+    @RequiresPermissions(MediaPermissions.ASSET_UPDATE)
+    @Transactional
+    @Override
+    public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+        final IpcArguments arguments = call.getArguments();
+        final long after = arguments.getLong(AssetConstants.AFTER, 0L);
+        final int limit = arguments.getInt(AssetConstants.LIMIT, DEFAULT_LIMIT);
+        
+        Preconditions.checkState(service instanceof ExtendedAssetBaseService<?>, 
+            "%s does not support listing all assets", service);
+        @SuppressWarnings("unchecked")
+        final ExtendedAssetBaseService<AssetBase> assetService = (ExtendedAssetBaseService<AssetBase>) service;
+        
+        final List<Long> ids = assetService.listIds(after, limit);
+        final Long next = ids.size() < limit ? null : ids.get(ids.size() - 1);
+        
+        try {
+            // the last page also covers documents of deleted assets behind the last id
+            index.reindex(after, next == null ? Long.MAX_VALUE : next, assetService.readAll(ids).values());
+        } catch (IOException e) {
+            throw new IpcCommandExecutionException(e);
+        }
+        
+        result.put(AssetConstants.INDEXED, ids.size());
+        result.put(AssetConstants.NEXT, next);
+    }
+
+}
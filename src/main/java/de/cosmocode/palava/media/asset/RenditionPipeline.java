@@ -0,0 +1,450 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.Registry;
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.media.MediaConfig;
+
+/**
+ * Generates all configured renditions of newly created assets in the background,
+ * as an alternative to {@link MediaConfig#RENDITIONS_EAGER}.
+ *
+ * <p>
+ *   Every {@link AssetCreatedEvent} queues a job, which is persisted as an empty file named
+ *   after the asset id in {@link MediaConfig#RENDITIONS_DIRECTORY}. The file is removed once the
+ *   job is done, jobs left over from a previous run are queued again on startup. Since
+ *   {@link RenditionService} skips existing renditions, jobs interrupted by a shutdown
+ *   only generate the missing ones.
+ * </p>
+ * <p>
+ *   Jobs are processed by {@link MediaConfig#RENDITIONS_THREADS} workers, which defaults
+ *   to the number of available processors. Jobs of assets whose renditions have been
+ *   requested in the meantime, see {@link RenditionRequestedEvent}, are processed first,
+ *   all others in order of creation.
+ * </p>
+ * <p>
+ *   Jobs whose asset could not be loaded, e.g. because the database is not available,
+ *   are queued again after a delay, which starts at one second and doubles with every
+ *   failed attempt up to ten minutes. Statistics are available using {@link RenditionStatistics}.
+ * </p>
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Singleton
+public final class RenditionPipeline implements Initializable, Disposable,
+    AssetCreatedEvent, RenditionRequestedEvent {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RenditionPipeline.class);
+
+    private static final long SHUTDOWN_TIMEOUT = 10;
+
+    private static final long INITIAL_BACKOFF = TimeUnit.SECONDS.toMillis(1);
+
+    private static final long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(10);
+
+    private final File directory;
+
+    private final RenditionService service;
+
+    private final EntityManagerFactory factory;
+
+    private final Registry registry;
+
+    private final BlockingQueue<Job> queue = new PriorityBlockingQueue<Job>();
+
+    /**
+     * All queued jobs which have not been taken by a worker yet, by asset id.
+     */
+    private final ConcurrentMap<Long, Job> jobs = Maps.newConcurrentMap();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong duration = new AtomicLong();
+
+    private final AtomicInteger retrying = new AtomicInteger();
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private ExecutorService workers;
+
+    private ScheduledExecutorService retries;
+
+    private long startedAt;
+
+    @Inject
+    public RenditionPipeline(@Named(MediaConfig.RENDITIONS_DIRECTORY) File directory,
+        RenditionService service, EntityManagerFactory factory, Registry registry) {
+        this.directory = Preconditions.checkNotNull(directory, "Directory");
+        this.service = Preconditions.checkNotNull(service, "Service");
+        this.factory = Preconditions.checkNotNull(factory, "Factory");
+        this.registry = Preconditions.checkNotNull(registry, "Registry");
+    }
+
+    @Inject(optional = true)
+    void setThreads(@Named(MediaConfig.RENDITIONS_THREADS) int threads) {
+        Preconditions.checkArgument(threads > 0, "Threads must be positive, but was %s", threads);
+        this.threads = threads;
+    }
+
+    /**
+     * A job generating all renditions of one asset.
+     */
+    private static final class Job implements Comparable<Job> {
+
+        private final long assetId;
+
+        private final long sequence;
+
+        /**
+         * The time of the last request, 0 if there was none.
+         */
+        private final long requestedAt;
+
+        /**
+         * The number of previously failed attempts.
+         */
+        private final int failures;
+
+        public Job(long assetId, long sequence, long requestedAt, int failures) {
+            this.assetId = assetId;
+            this.sequence = sequence;
+            this.requestedAt = requestedAt;
+            this.failures = failures;
+        }
+
+        @Override
+        public int compareTo(Job that) {
+            if (requestedAt != that.requestedAt) {
+                // most recently requested first
+                return requestedAt > that.requestedAt ? -1 : 1;
+            } else if (sequence != that.sequence) {
+                return sequence < that.sequence ? -1 : 1;
+            } else {
+                return 0;
+            }
+        }
+
+    }
+
+    /**
+     * Takes and processes jobs until interrupted.
+     */
+    private final class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                final Job job;
+                try {
+                    job = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                jobs.remove(job.assetId, job);
+                process(job);
+            }
+        }
+
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new LifecycleException(new IOException("Unable to create " + directory));
+        }
+
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            throw new LifecycleException(new IOException("Unable to list " + directory));
+        }
+
+        final List<Long> pending = Lists.newArrayListWithCapacity(files.length);
+        for (File file : files) {
+            try {
+                pending.add(Long.valueOf(file.getName()));
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring unknown file {} in rendition queue", file);
+            }
+        }
+
+        // ids are assigned in order of creation
+        Collections.sort(pending);
+        for (Long assetId : pending) {
+            enqueue(assetId, 0);
+        }
+
+        LOG.info("Starting {} rendition worker(s), resuming {} job(s) from {}", new Object[] {
+            threads, pending.size(), directory
+        });
+
+        workers = Executors.newFixedThreadPool(threads,
+            new ThreadFactoryBuilder().setNameFormat("rendition-worker-%d").setDaemon(true).build());
+        for (int i = 0; i < threads; i++) {
+            workers.execute(new Worker());
+        }
+        retries = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("rendition-retry-%d").setDaemon(true).build());
+
+        startedAt = System.currentTimeMillis();
+        registry.register(AssetCreatedEvent.class, this);
+        registry.register(RenditionRequestedEvent.class, this);
+    }
+
+    @Override
+    public void eventAssetCreated(AssetBase asset) {
+        final File file = fileOf(asset.getId());
+        try {
+            if (!file.createNewFile()) {
+                LOG.trace("{} is already queued", asset);
+                return;
+            }
+        } catch (IOException e) {
+            LOG.error("Unable to persist rendition job for " + asset, e);
+            return;
+        }
+        enqueue(asset.getId(), 0);
+    }
+
+    @Override
+    public void eventRenditionRequested(AssetBase asset, String name) {
+        final Job job = jobs.get(asset.getId());
+        // a worker may have taken the job in the meantime
+        if (job == null || !queue.remove(job)) return;
+        final Job prioritized = new Job(job.assetId, job.sequence, System.currentTimeMillis(), job.failures);
+        jobs.replace(job.assetId, job, prioritized);
+        queue.add(prioritized);
+        LOG.trace("Prioritized rendition job of {}", asset);
+    }
+
+    private void enqueue(long assetId, int failures) {
+        final Job job = new Job(assetId, sequence.incrementAndGet(), 0L, failures);
+        if (jobs.putIfAbsent(assetId, job) == null) {
+            queue.add(job);
+        }
+    }
+
+    /**
+     * Queues the given job again after a delay depending on its number of failures.
+     * The job file is kept, so a shutdown in the meantime does not lose the job.
+     *
+     * @param job the failed job
+     */
+    private void retry(final Job job) {
+        final int failures = job.failures + 1;
+        final long delay = Math.min(INITIAL_BACKOFF << Math.min(failures - 1, 20), MAX_BACKOFF);
+        LOG.debug("Retrying rendition job of asset {} in {}ms after {} failure(s)", new Object[] {
+            job.assetId, delay, failures
+        });
+        
+        retrying.incrementAndGet();
+        try {
+            retries.schedule(new Runnable() {
+                
+                @Override
+                public void run() {
+                    retrying.decrementAndGet();
+                    enqueue(job.assetId, failures);
+                }
+                
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down, the job file will be picked up after the next restart
+            retrying.decrementAndGet();
+        }
+    }
+
+    private File fileOf(long assetId) {
+        return new File(directory, Long.toString(assetId));
+    }
+
+    private void process(Job job) {
+        final long assetId = job.assetId;
+        final long start = System.currentTimeMillis();
+        final AssetBase asset;
+
+        try {
+            asset = load(assetId);
+        /* CHECKSTYLE:OFF */
+        } catch (RuntimeException e) {
+        /* CHECKSTYLE:ON */
+            LOG.error("Unable to load asset " + assetId, e);
+            failed.incrementAndGet();
+            retry(job);
+            return;
+        }
+
+        if (asset == null) {
+            LOG.debug("Asset {} does not exist anymore", assetId);
+        } else {
+            for (String name : service.getSpecs().keySet()) {
+                try {
+                    service.generate(asset, name);
+                } catch (InterruptedIOException e) {
+                    // shutting down, keep the job file
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (IOException e) {
+                    // most likely not an image at all
+                    LOG.debug("Unable to generate rendition {} of {}: {}", new Object[] {
+                        name, asset, e.getMessage()
+                    });
+                /* CHECKSTYLE:OFF */
+                } catch (RuntimeException e) {
+                /* CHECKSTYLE:ON */
+                    LOG.error("Unable to generate rendition " + name + " of " + asset, e);
+                }
+            }
+        }
+
+        if (Thread.currentThread().isInterrupted()) {
+            LOG.debug("Interrupted while processing asset {}, keeping job", assetId);
+            return;
+        } else if (!fileOf(assetId).delete()) {
+            LOG.warn("Unable to delete rendition job file of asset {}", assetId);
+        }
+
+        completed.incrementAndGet();
+        duration.addAndGet(System.currentTimeMillis() - start);
+    }
+
+    private AssetBase load(long assetId) {
+        final EntityManager manager = factory.createEntityManager();
+        try {
+            final List<?> assets = manager.createNamedQuery(AssetBase.BY_IDS).
+                setParameter(1, Collections.singletonList(assetId)).getResultList();
+            return assets.isEmpty() ? null : AssetBase.class.cast(assets.get(0));
+        } finally {
+            manager.close();
+        }
+    }
+
+    /**
+     * Provides the number of jobs waiting for a worker.
+     *
+     * @return the current queue depth
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Provides the number of jobs processed since startup.
+     *
+     * @return the number of completed jobs
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Provides the number of failed attempts to process a job since startup.
+     * Failed jobs are retried with increasing delays.
+     *
+     * @return the number of failed attempts
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Provides the number of failed jobs waiting to be queued again.
+     *
+     * @return the number of jobs waiting for a retry
+     */
+    public int getRetrying() {
+        return retrying.get();
+    }
+
+    /**
+     * Provides the average time a worker spent on a completed job.
+     *
+     * @return the average duration in milliseconds, 0 if no job has been completed yet
+     */
+    public double getAverageDuration() {
+        final long count = completed.get();
+        return count == 0 ? 0 : (double) duration.get() / count;
+    }
+
+    /**
+     * Provides the number of jobs completed per second since startup.
+     *
+     * @return the throughput in jobs per second
+     */
+    public double getThroughput() {
+        final long elapsed = System.currentTimeMillis() - startedAt;
+        return elapsed <= 0 ? 0 : completed.get() * 1000d / elapsed;
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        registry.remove(AssetCreatedEvent.class, this);
+        registry.remove(RenditionRequestedEvent.class, this);
+
+        if (workers == null) return;
+        retries.shutdownNow();
+        workers.shutdownNow();
+
+        try {
+            if (!workers.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                LOG.warn("Rendition workers did not terminate within {} seconds", SHUTDOWN_TIMEOUT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        LOG.info("Stopped rendition pipeline with {} pending job(s)", queue.size());
+    }
+
+}
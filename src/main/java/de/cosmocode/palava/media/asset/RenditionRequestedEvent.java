@@ -0,0 +1,36 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+
+/**
+ * Event interface for renditions which had to be generated on request.
+ *
+ * @since 2.2
+ * @author agent
+ */
+public interface RenditionRequestedEvent {
+
+    /**
+     * Event callback.
+     * 
+     * @param asset the asset
+     * @param name the name of the requested rendition
+     */
+    void eventRenditionRequested(AssetBase asset, String name);
+
+}
@@ -0,0 +1,513 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.Registry;
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.media.MediaConfig;
+import de.cosmocode.palava.store.Store;
+
+/**
+ * Generates and caches renditions, e.g. thumbnails, of image assets in the {@link AssetStore}.
+ *
+ * <p>
+ *   Renditions are configured by name using {@link MediaConfig#RENDITIONS}, a comma separated
+ *   list of {@code <name>=<spec>} pairs, e.g. {@code thumbnail=128x128.jpg@0.8, preview=800x600.png}.
+ *   See {@link RenditionSpec} for the spec format. Images are scaled down to fit into width and height,
+ *   preserving their aspect ratio, but never scaled up.
+ * </p>
+ * <p>
+ *   Every rendition is stored under an identifier derived from the store identifier of the asset and
+ *   the spec, i.e. updates which do not replace the binary data keep all renditions and deduplicated
+ *   assets share them. A rendition is generated on first request or, if {@link MediaConfig#RENDITIONS_EAGER}
+ *   is enabled, when the asset is created. Concurrent first requests for the same rendition wait for a single
+ *   generation. Renditions are removed when their asset is deleted or, if deduplication is enabled,
+ *   when the last asset referencing the same binary data is deleted.
+ * </p>
+ * <p>
+ *   Images are decoded subsampled to roughly twice the size of the rendition. Images with more than
+ *   {@link MediaConfig#RENDITIONS_MAX_PIXELS} pixels, 40 million by default, are rejected before decoding.
+ * </p>
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Singleton
+public final class RenditionService implements Initializable, Disposable,
+    AssetCreatedEvent, AssetDeletedEvent {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RenditionService.class);
+
+    private final Store store;
+
+    private final Registry registry;
+
+    private final Map<String, RenditionSpec> specs;
+
+    private final RenditionRequestedEvent requestedEvent;
+
+    private final ConcurrentMap<String, FutureTask<Void>> pending = Maps.newConcurrentMap();
+
+    private boolean eager;
+
+    private long maxPixels = 40000000L;
+
+    private boolean deduplication;
+
+    private Provider<EntityService<AssetBase>> assetService;
+
+    @Inject
+    public RenditionService(@AssetStore Store store, Registry registry,
+        @Named(MediaConfig.RENDITIONS) String renditions) {
+        this.store = Preconditions.checkNotNull(store, "Store");
+        this.registry = Preconditions.checkNotNull(registry, "Registry");
+        this.requestedEvent = registry.proxy(RenditionRequestedEvent.class);
+        Preconditions.checkNotNull(renditions, "Renditions");
+
+        final Map<String, RenditionSpec> map = Maps.newLinkedHashMap();
+        for (String rendition : Splitter.on(',').trimResults().omitEmptyStrings().split(renditions)) {
+            final int index = rendition.indexOf('=');
+            Preconditions.checkArgument(index > 0, "%s is not of the form <name>=<spec>", rendition);
+            map.put(rendition.substring(0, index).trim(), RenditionSpec.valueOf(rendition.substring(index + 1)));
+        }
+        this.specs = Collections.unmodifiableMap(map);
+    }
+
+    @Inject(optional = true)
+    void setEager(@Named(MediaConfig.RENDITIONS_EAGER) boolean eager) {
+        this.eager = eager;
+    }
+
+    /**
+     * Enables reference counting before renditions of deleted assets are removed,
+     * which is required if assets share binary data, see {@link MediaConfig#DEDUPLICATION}.
+     *
+     * @param deduplication true if deduplication is enabled, false otherwise
+     * @param assetService the asset service used to count references
+     */
+    @Inject(optional = true)
+    void setDeduplication(@Named(MediaConfig.DEDUPLICATION) boolean deduplication,
+        Provider<EntityService<AssetBase>> assetService) {
+        this.deduplication = deduplication;
+        this.assetService = Preconditions.checkNotNull(assetService, "AssetService");
+    }
+
+    @Inject(optional = true)
+    void setMaxPixels(@Named(MediaConfig.RENDITIONS_MAX_PIXELS) long maxPixels) {
+        Preconditions.checkArgument(maxPixels > 0, "MaxPixels must be positive, but was %s", maxPixels);
+        this.maxPixels = maxPixels;
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        LOG.info("Configured renditions {}", specs);
+        registry.register(AssetCreatedEvent.class, this);
+        registry.register(AssetDeletedEvent.class, this);
+    }
+
+    /**
+     * Provides all configured renditions.
+     *
+     * @return an immutable map of rendition name to spec
+     */
+    public Map<String, RenditionSpec> getSpecs() {
+        return specs;
+    }
+
+    /**
+     * Provides the configured rendition with the given name.
+     *
+     * @param name the name of the rendition
+     * @return the spec of the rendition
+     * @throws NullPointerException if name is null
+     * @throws IllegalArgumentException if there is no rendition with the given name
+     */
+    public RenditionSpec getSpec(String name) {
+        Preconditions.checkNotNull(name, "Name");
+        final RenditionSpec spec = specs.get(name);
+        Preconditions.checkArgument(spec != null, "No rendition named %s", name);
+        return spec;
+    }
+
+    /**
+     * Opens a stream on the specified rendition of the given asset, generating it if necessary.
+     * Missing renditions are announced using {@link RenditionRequestedEvent}s before they are
+     * generated. The caller is responsible for closing the returned stream.
+     *
+     * @param asset the asset
+     * @param name the name of the rendition
+     * @return a new stream on the rendition
+     * @throws NullPointerException if asset or name is null
+     * @throws IllegalArgumentException if there is no rendition with the given name
+     * @throws IOException if the binary data of the asset is not a supported image
+     *         or reading from or writing to the store failed
+     */
+    public InputStream read(AssetBase asset, String name) throws IOException {
+        Preconditions.checkNotNull(asset, "Asset");
+        final RenditionSpec spec = getSpec(name);
+        final String identifier = identifierOf(asset, spec);
+        final InputStream stream = open(identifier);
+        if (stream != null) return stream;
+        requestedEvent.eventRenditionRequested(asset, name);
+        generate(asset, spec, identifier);
+        return store.read(identifier);
+    }
+
+    /**
+     * Generates the specified rendition of the given asset unless it already exists.
+     *
+     * @param asset the asset
+     * @param name the name of the rendition
+     * @throws NullPointerException if asset or name is null
+     * @throws IllegalArgumentException if there is no rendition with the given name
+     * @throws IOException if the binary data of the asset is not a supported image
+     *         or reading from or writing to the store failed
+     */
+    public void generate(AssetBase asset, String name) throws IOException {
+        Preconditions.checkNotNull(asset, "Asset");
+        final RenditionSpec spec = getSpec(name);
+        generate(asset, spec, identifierOf(asset, spec));
+    }
+
+    /**
+     * Removes all renditions of the given asset from the store. Renditions are shared
+     * by all assets with the same binary data.
+     *
+     * @param asset the asset
+     * @throws NullPointerException if asset is null
+     */
+    public void invalidate(AssetBase asset) {
+        Preconditions.checkNotNull(asset, "Asset");
+        if (asset.getStoreIdentifier() == null) return;
+        for (RenditionSpec spec : specs.values()) {
+            final String identifier = identifierOf(asset, spec);
+            try {
+                store.delete(identifier);
+            } catch (IOException e) {
+                LOG.trace("Unable to delete rendition {}: {}", identifier, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                LOG.trace("Rendition {} does not exist", identifier);
+            }
+        }
+    }
+
+    @Override
+    public void eventAssetCreated(AssetBase asset) {
+        if (!eager) return;
+        for (String name : specs.keySet()) {
+            try {
+                generate(asset, name);
+            } catch (IOException e) {
+                // most likely not an image at all
+                LOG.debug("Unable to generate rendition {} of {}: {}", new Object[] {name, asset, e.getMessage()});
+            }
+        }
+    }
+
+    @Override
+    public void eventAssetDeleted(AssetBase asset) {
+        if (asset.getStoreIdentifier() == null) return;
+        if (deduplication) {
+            // fired after commit, so the deleted asset is no longer counted
+            final long references = referencesOf(asset.getStoreIdentifier());
+            if (references > 0) {
+                LOG.trace("{} is still referenced {} time(s), keeping renditions", 
+                    asset.getStoreIdentifier(), references);
+                return;
+            }
+        }
+        invalidate(asset);
+    }
+
+    private long referencesOf(String identifier) {
+        final EntityService<AssetBase> service = assetService.get();
+        if (service instanceof ExtendedAssetBaseService<?>) {
+            @SuppressWarnings("unchecked")
+            final ExtendedAssetBaseService<AssetBase> extended = (ExtendedAssetBaseService<AssetBase>) service;
+            return extended.countReferences(identifier);
+        }
+        
+        // the binary data is kept as long as it is referenced
+        final InputStream original = open(identifier);
+        if (original == null) return 0L;
+        try {
+            original.close();
+        } catch (IOException e) {
+            LOG.trace("Unable to close {}: {}", identifier, e.getMessage());
+        }
+        return 1L;
+    }
+
+    private String identifierOf(AssetBase asset, RenditionSpec spec) {
+        Preconditions.checkArgument(asset.getStoreIdentifier() != null, "%s has no binary data", asset);
+        // name based uuids look like generated identifiers and are therefore accepted by all stores
+        final String name = asset.getStoreIdentifier() + ":" + spec;
+        return UUID.nameUUIDFromBytes(name.getBytes(Charsets.UTF_8)).toString();
+    }
+
+    /**
+     * Opens the given identifier.
+     *
+     * @param identifier the store identifier
+     * @return a new stream or null if there is no such identifier
+     */
+    private InputStream open(String identifier) {
+        try {
+            return store.read(identifier);
+        } catch (IOException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            // some stores reject unknown identifiers this way
+            return null;
+        }
+    }
+
+    private void generate(final AssetBase asset, final RenditionSpec spec, final String identifier)
+        throws IOException {
+        
+        final FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+
+            @Override
+            public Void call() throws IOException {
+                // a concurrent generation may have finished before this one started
+                final InputStream existing = open(identifier);
+                if (existing == null) {
+                    render(asset, spec, identifier);
+                } else {
+                    existing.close();
+                }
+                return null;
+            }
+
+        });
+
+        final FutureTask<Void> running = pending.putIfAbsent(identifier, task);
+
+        if (running == null) {
+            try {
+                task.run();
+            } finally {
+                pending.remove(identifier, task);
+            }
+            await(task);
+        } else {
+            LOG.trace("Waiting for running generation of {}", identifier);
+            await(running);
+        }
+    }
+
+    private void await(FutureTask<Void> task) throws IOException {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for rendition");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw IOException.class.cast(e.getCause());
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw RuntimeException.class.cast(e.getCause());
+            } else {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    private void render(AssetBase asset, RenditionSpec spec, String identifier) throws IOException {
+        Preconditions.checkArgument(asset.getStoreIdentifier() != null, "%s has no binary data", asset);
+        final long start = System.currentTimeMillis();
+        
+        final InputStream original = store.read(asset.getStoreIdentifier());
+        final BufferedImage source;
+        
+        try {
+            source = read(asset, original, spec);
+        } finally {
+            original.close();
+        }
+        
+        final byte[] bytes = write(scale(source, spec), spec);
+        store.create(new ByteArrayInputStream(bytes), identifier);
+        
+        LOG.debug("Generated rendition {} of {} with {} bytes in {}ms", new Object[] {
+            spec, asset, bytes.length, System.currentTimeMillis() - start
+        });
+    }
+
+    /**
+     * Decodes the given image, checking its dimensions before decoding any pixels.
+     * The image is subsampled while decoding, so that the decoded image is at least
+     * twice as large as the rendition, which leaves the smoothing to {@link #scale(BufferedImage, RenditionSpec)}.
+     *
+     * @param asset the asset
+     * @param original the binary data of the asset
+     * @param spec the spec of the rendition
+     * @return the decoded, possibly subsampled image
+     * @throws IOException if the binary data is not a supported image, exceeds the pixel limit or decoding failed
+     */
+    private BufferedImage read(AssetBase asset, InputStream original, RenditionSpec spec) throws IOException {
+        final ImageInputStream input = ImageIO.createImageInputStream(original);
+        if (input == null) throw new IOException("Unable to read " + asset);
+        
+        try {
+            final Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) throw new IOException(asset + " is not a supported image");
+            final ImageReader reader = readers.next();
+            
+            try {
+                reader.setInput(input, true, true);
+                final int width = reader.getWidth(0);
+                final int height = reader.getHeight(0);
+                final long pixels = (long) width * height;
+                if (pixels > maxPixels) {
+                    throw new IOException(String.format("%s has %sx%s pixels, which exceeds the limit of %s",
+                        asset, width, height, maxPixels));
+                }
+                
+                final double factor = Math.min((double) spec.getWidth() / width, (double) spec.getHeight() / height);
+                final int subsampling = factor >= 0.5 ? 1 : (int) (0.5 / factor);
+                final ImageReadParam param = reader.getDefaultReadParam();
+                if (subsampling > 1) {
+                    LOG.trace("Subsampling {} by {}", asset, subsampling);
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private BufferedImage scale(BufferedImage source, RenditionSpec spec) {
+        final double factor = Math.min(1.0, Math.min(
+            (double) spec.getWidth() / source.getWidth(),
+            (double) spec.getHeight() / source.getHeight()
+        ));
+        
+        final int width = Math.max(1, (int) Math.round(source.getWidth() * factor));
+        final int height = Math.max(1, (int) Math.round(source.getHeight() * factor));
+        final int type = spec.isTransparent() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        
+        // bilinear scaling by at most one half per step avoids aliasing of large reductions
+        do {
+            currentWidth = Math.max(currentWidth / 2, width);
+            currentHeight = Math.max(currentHeight / 2, height);
+            current = draw(current, currentWidth, currentHeight, type);
+        } while (currentWidth > width || currentHeight > height);
+        
+        return current;
+    }
+
+    private BufferedImage draw(BufferedImage source, int width, int height, int type) {
+        final BufferedImage target = new BufferedImage(width, height, type);
+        final Graphics2D graphics = target.createGraphics();
+        
+        try {
+            if (type == BufferedImage.TYPE_INT_RGB) {
+                // transparent areas would otherwise turn black
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, width, height);
+            }
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        
+        return target;
+    }
+
+    private byte[] write(BufferedImage image, RenditionSpec spec) throws IOException {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName(spec.getFormat()).next();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final ImageOutputStream stream = ImageIO.createImageOutputStream(output);
+        
+        try {
+            writer.setOutput(stream);
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionType() == null && param.getCompressionTypes() != null) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(spec.getQuality());
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+            stream.close();
+        }
+        
+        return output.toByteArray();
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        registry.remove(AssetCreatedEvent.class, this);
+        registry.remove(AssetDeletedEvent.class, this);
+    }
+
+}
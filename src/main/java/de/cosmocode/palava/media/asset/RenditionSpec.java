@@ -0,0 +1,149 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An immutable description of a rendition, consisting of the maximum width and height,
+ * the image format and the compression quality. The string form of a spec
+ * is {@code <width>x<height>.<format>[@<quality>]}, e.g. {@code 128x128.jpg@0.8}.
+ *
+ * @since 2.2
+ * @author agent
+ */
+public final class RenditionSpec {
+
+    /**
+     * The quality used if none is specified.
+     */
+    public static final float DEFAULT_QUALITY = 0.85f;
+
+    private static final Pattern PATTERN = Pattern.compile("(\\d+)x(\\d+)\\.(\\w+)(?:@(\\d*\\.?\\d+))?");
+
+    private final int width;
+
+    private final int height;
+
+    private final String format;
+
+    private final float quality;
+
+    /**
+     * Creates a new spec.
+     *
+     * @param width the maximum width in pixels
+     * @param height the maximum height in pixels
+     * @param format the informal image format name, as understood by {@link ImageIO}
+     * @param quality the compression quality between 0 and 1, ignored by lossless formats
+     * @throws NullPointerException if format is null
+     * @throws IllegalArgumentException if width or height is not positive, quality is out
+     *         of range or format is not supported
+     */
+    public RenditionSpec(int width, int height, String format, float quality) {
+        Preconditions.checkArgument(width > 0, "Width must be positive, but was %s", width);
+        Preconditions.checkArgument(height > 0, "Height must be positive, but was %s", height);
+        Preconditions.checkNotNull(format, "Format");
+        Preconditions.checkArgument(quality > 0f && quality <= 1f, "Quality must be in (0, 1], but was %s", quality);
+        this.width = width;
+        this.height = height;
+        this.format = format.toLowerCase();
+        Preconditions.checkArgument(ImageIO.getImageWritersByFormatName(this.format).hasNext(),
+            "No image writer for format %s", format);
+        this.quality = quality;
+    }
+
+    /**
+     * Parses the string form of a spec.
+     *
+     * @param value the string form, as returned by {@link #toString()}
+     * @return the parsed spec
+     * @throws NullPointerException if value is null
+     * @throws IllegalArgumentException if value is not a valid spec
+     */
+    public static RenditionSpec valueOf(String value) {
+        Preconditions.checkNotNull(value, "Value");
+        final Matcher matcher = PATTERN.matcher(value.trim());
+        Preconditions.checkArgument(matcher.matches(), "%s is not a valid rendition spec", value);
+        return new RenditionSpec(
+            Integer.parseInt(matcher.group(1)),
+            Integer.parseInt(matcher.group(2)),
+            matcher.group(3),
+            matcher.group(4) == null ? DEFAULT_QUALITY : Float.parseFloat(matcher.group(4))
+        );
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public float getQuality() {
+        return quality;
+    }
+
+    /**
+     * Checks whether the format of this spec supports transparency.
+     *
+     * @return true if renditions may contain an alpha channel, false otherwise
+     */
+    public boolean isTransparent() {
+        return "png".equals(format) || "gif".equals(format);
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (this == that) {
+            return true;
+        } else if (that instanceof RenditionSpec) {
+            final RenditionSpec other = RenditionSpec.class.cast(that);
+            return width == other.width && height == other.height &&
+                format.equals(other.format) && quality == other.quality;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + width;
+        result = prime * result + height;
+        result = prime * result + format.hashCode();
+        result = prime * result + Float.floatToIntBits(quality);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + "." + format + "@" + quality;
+    }
+
+}
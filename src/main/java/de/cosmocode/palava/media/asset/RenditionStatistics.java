@@ -0,0 +1,75 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.media.asset;
+
+import java.util.Map;
+
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommand.Description;
+import de.cosmocode.palava.ipc.IpcCommand.Return;
+import de.cosmocode.palava.ipc.IpcCommand.Returns;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.media.MediaPermissions;
+
+/**
+ * See below.
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Description("Provides statistics of the background rendition pipeline since startup")
+@Returns({
+    @Return(name = AssetConstants.QUEUE_DEPTH, description = "The number of jobs waiting for a worker"),
+    @Return(name = AssetConstants.COMPLETED, description = "The number of completed jobs"),
+    @Return(name = AssetConstants.FAILED, description = "The number of failed attempts to process a job"),
+    @Return(name = AssetConstants.RETRYING, description = "The number of failed jobs waiting for a retry"),
+    @Return(
+        name = AssetConstants.AVERAGE_DURATION, 
+        description = "The average time a worker spent on a completed job, in milliseconds"
+    ),
+    @Return(name = AssetConstants.THROUGHPUT, description = "The number of completed jobs per second")
+})
+@Singleton
+public final class RenditionStatistics implements IpcCommand {
+
+    private final RenditionPipeline pipeline;
+
+    @Inject
+    public RenditionStatistics(RenditionPipeline pipeline) {
+        this.pipeline = Preconditions.checkNotNull(pipeline, "Pipeline");
+    }
+
+    @RequiresPermissions(MediaPermissions.ASSET_READ)
+    @Override
+    public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+        result.put(AssetConstants.QUEUE_DEPTH, pipeline.getQueueDepth());
+        result.put(AssetConstants.COMPLETED, pipeline.getCompleted());
+        result.put(AssetConstants.FAILED, pipeline.getFailed());
+        result.put(AssetConstants.RETRYING, pipeline.getRetrying());
+        result.put(AssetConstants.AVERAGE_DURATION, pipeline.getAverageDuration());
+        result.put(AssetConstants.THROUGHPUT, pipeline.getThroughput());
+    }
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommand.Description;
+import de.cosmocode.palava.ipc.IpcCommand.Param;
+import de.cosmocode.palava.ipc.IpcCommand.Params;
+import de.cosmocode.palava.ipc.IpcCommand.Return;
+import de.cosmocode.palava.ipc.IpcCommand.Throw;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.media.MediaConfig;
+import de.cosmocode.palava.media.MediaPermissions;
+
+/**
+ * See below.
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Description("Searches name, title and description of all assets using the full-text index")
+@Params({
+    @Param(name = AssetConstants.QUERY, description = "The query, using the Lucene query syntax"),
+    @Param(
+        name = AssetConstants.LIMIT, type = "positive int", 
+        description = "The maximum number of results, capped at " + MediaConfig.INDEX_MAX_RESULTS,
+        optional = true, defaultValue = "50"
+    )
+})
+@Return(name = AssetConstants.ASSET_IDS, description = "The identifiers of the best matching assets, ordered by relevance")
+@Throw(
+    name = IllegalArgumentException.class, 
+    description = "If the query is not valid or limit is not positive"
+)
+@Singleton
+public final class Search implements IpcCommand {
+
+    private static final int DEFAULT_LIMIT = 50;
+    
+    private final AssetIndex index;
+    
+    private int maxResults = 500;
+
+    @Inject
+    public Search(AssetIndex index) {
+        this.index = Preconditions.checkNotNull(index, "Index");
+    }
+    
+    @Inject(optional = true)
+    void setMaxResults(@Named(MediaConfig.INDEX_MAX_RESULTS) int maxResults) {
+        Preconditions.checkArgument(maxResults > 0, "MaxResults must be positive, but was %s", maxResults);
+        this.maxResults = maxResults;
+    }
+
+    @RequiresPermissions(MediaPermissions.ASSET_READ)
+    @Override
+    public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+        final IpcArguments arguments = call.getArguments();
+        final String query = arguments.getString(AssetConstants.QUERY);
+        final int limit = arguments.getInt(AssetConstants.LIMIT, DEFAULT_LIMIT);
+        Preconditions.checkArgument(limit > 0, "Limit must be positive, but was %s", limit);
+        
+        try {
+            result.put(AssetConstants.ASSET_IDS, index.search(query, Math.min(limit, maxResults)));
+        } catch (IOException e) {
+            throw new IpcCommandExecutionException(e);
+        }
+    }
+
+}
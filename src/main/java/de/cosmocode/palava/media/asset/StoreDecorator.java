@@ -0,0 +1,39 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.media.asset;
+
+import de.cosmocode.palava.store.Store;
+
+/**
+ * Extension of the {@link Store} interface for decorators, e.g. {@link CachingStore}
+ * or {@link CompressingStore}. Exposing the decorated store allows looking up
+ * specific stores in a chain of decorators, see {@link Stores#find(Store, Class)}.
+ *
+ * @since 2.2
+ * @author agent
+ */
+public interface StoreDecorator extends Store {
+
+    /**
+     * Provides the decorated store.
+     * 
+     * @return the store this decorator delegates to
+     */
+    Store getDelegate();
+    
+}
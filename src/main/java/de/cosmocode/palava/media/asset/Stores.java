@@ -0,0 +1,59 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.media.asset;
+
+import com.google.common.base.Preconditions;
+
+import de.cosmocode.palava.store.Store;
+
+/**
+ * Static utility class for {@link Store}s.
+ *
+ * @since 2.2
+ * @author agent
+ */
+public final class Stores {
+
+    private Stores() {
+
+    }
+
+    /**
+     * Finds the first store of the given type in a chain of {@link StoreDecorator}s,
+     * starting with the given store itself.
+     *
+     * @param <S> the generic store type
+     * @param store the outermost store
+     * @param type the type of the store to look for
+     * @return the first store of the given type or null if there is none
+     * @throws NullPointerException if store or type is null
+     */
+    public static <S extends Store> S find(Store store, Class<S> type) {
+        Preconditions.checkNotNull(store, "Store");
+        Preconditions.checkNotNull(type, "Type");
+        for (Store current = store; current != null; current = delegateOf(current)) {
+            if (type.isInstance(current)) return type.cast(current);
+        }
+        return null;
+    }
+
+    private static Store delegateOf(Store store) {
+        return store instanceof StoreDecorator ? StoreDecorator.class.cast(store).getDelegate() : null;
+    }
+
+}
@@ -19,6 +19,7 @@ package de.cosmocode.palava.media.asset;
 import java.util.Date;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.persistence.PersistenceException;
 
@@ -26,7 +27,10 @@ import org.apache.shiro.authz.annotation.RequiresPermissions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
@@ -50,7 +54,10 @@ import de.cosmocode.palava.media.MediaPermissions;
  * @since 2.0
  * @author Willi Schoenborn
  */
-@Description("Updates an asset in the database. Default values will overwrite values from the datastore.")
+@Description(
+    "Updates an asset in the database. Default values will overwrite values from the datastore, " +
+    "unless patch is true, in which case only the given fields and meta data keys will be changed."
+)
 @Params({
     @Param(name = AssetConstants.ASSET_ID, description = "The identifier of the asset"),
     @Param(
@@ -80,6 +87,14 @@ import de.cosmocode.palava.media.MediaPermissions;
         description = "The date the specified asset will expire",
         optional = true,
         defaultValue = "null"
+    ),
+    @Param(
+        name = AssetConstants.PATCH,
+        type = "boolean",
+        description = "Whether only the given fields should be changed. Meta data keys with null values " +
+            "will be removed, all other keys will be kept.",
+        optional = true,
+        defaultValue = "false"
     )
 })
 @Return(name = AssetConstants.ASSET, description = "The updated asset")
@@ -109,34 +124,112 @@ public final class Update implements IpcCommand {
 
         final AssetBase asset = service.reference(assetId);
 
-        final String title = arguments.getString(AssetConstants.TITLE, null);
-        final String description = arguments.getString(AssetConstants.DESCRIPTION, null);
-        final Map<Object, Object> metaData = arguments.getMap(AssetConstants.META_DATA, null);
-        final Date expiresAt = arguments.getDate(AssetConstants.EXPIRES_AT, null);
-
-        asset.setTitle(title);
-        asset.setDescription(description);
-
-        asset.getMetaData().clear();
+        final boolean patch = arguments.getBoolean(AssetConstants.PATCH, false);
+        
+        // describes the stored binary data and must not be changed by clients
+        final String encoding = asset.getMetaData().get(MetaData.CONTENT_ENCODING);
         
-        if (metaData == null) {
-            LOG.debug("No meta data received");
+        // lets the service skip work derived from unchanged meta data
+        final Set<String> changedKeys = Sets.newHashSet();
+        
+        if (patch) {
+            LOG.debug("Patching {} with {}", asset, arguments);
+            if (arguments.containsKey(AssetConstants.TITLE)) {
+                asset.setTitle(arguments.getString(AssetConstants.TITLE, null));
+            }
+            if (arguments.containsKey(AssetConstants.DESCRIPTION)) {
+                asset.setDescription(arguments.getString(AssetConstants.DESCRIPTION, null));
+            }
+            if (arguments.containsKey(AssetConstants.EXPIRES_AT)) {
+                asset.setExpiresAt(arguments.getDate(AssetConstants.EXPIRES_AT, null));
+            }
+            final Map<Object, Object> metaData = arguments.getMap(AssetConstants.META_DATA, null);
+            if (metaData != null) {
+                patch(asset.getMetaData(), metaData, changedKeys);
+            }
         } else {
-            LOG.debug("Adding new metaData {} to {}", metaData, asset);
-            for (Entry<Object, Object> entry : metaData.entrySet()) {
-                final String key = Preconditions.checkNotNull(
-                    entry.getKey(), "Key with value {} is null", entry.getValue()
-                ).toString();
-                final String value = entry.getValue() == null ? null : entry.getValue().toString();
-                asset.getMetaData().put(key, value);
+            final String title = arguments.getString(AssetConstants.TITLE, null);
+            final String description = arguments.getString(AssetConstants.DESCRIPTION, null);
+            final Map<Object, Object> metaData = arguments.getMap(AssetConstants.META_DATA, null);
+            final Date expiresAt = arguments.getDate(AssetConstants.EXPIRES_AT, null);
+            
+            asset.setTitle(title);
+            asset.setDescription(description);
+            
+            if (metaData == null) {
+                LOG.debug("No meta data received");
+                changedKeys.addAll(asset.getMetaData().keySet());
+                asset.getMetaData().clear();
+            } else {
+                LOG.debug("Replacing metaData of {} with {}", asset, metaData);
+                replace(asset.getMetaData(), metaData, changedKeys);
             }
+            
+            asset.setExpiresAt(expiresAt);
+        }
+        
+        if (encoding == null) {
+            asset.getMetaData().remove(MetaData.CONTENT_ENCODING);
+        } else if (!encoding.equals(asset.getMetaData().get(MetaData.CONTENT_ENCODING))) {
+            asset.getMetaData().put(MetaData.CONTENT_ENCODING, encoding);
+        }
+        
+        // the encoding always ends up with its stored value
+        changedKeys.remove(MetaData.CONTENT_ENCODING);
+        
+        if (service instanceof ExtendedAssetBaseService<?>) {
+            @SuppressWarnings("unchecked")
+            final ExtendedAssetBaseService<AssetBase> assetService = (ExtendedAssetBaseService<AssetBase>) service;
+            assetService.update(asset, changedKeys);
+        } else {
+            service.update(asset);
         }
-
-        asset.setExpiresAt(expiresAt);
-
-        service.update(asset);
         
         result.put(AssetConstants.ASSET, asset);
     }
+    
+    private void patch(Map<String, String> current, Map<Object, Object> metaData, Set<String> changedKeys) {
+        for (Entry<Object, Object> entry : metaData.entrySet()) {
+            final String key = keyOf(entry);
+            if (entry.getValue() == null) {
+                // null values remove the key, unchanged values are not written at all
+                if (current.containsKey(key)) {
+                    current.remove(key);
+                    changedKeys.add(key);
+                }
+            } else {
+                final String value = entry.getValue().toString();
+                if (!value.equals(current.get(key))) {
+                    current.put(key, value);
+                    changedKeys.add(key);
+                }
+            }
+        }
+    }
+    
+    private void replace(Map<String, String> current, Map<Object, Object> metaData, Set<String> changedKeys) {
+        final Map<String, String> replacement = Maps.newHashMapWithExpectedSize(metaData.size());
+        for (Entry<Object, Object> entry : metaData.entrySet()) {
+            replacement.put(keyOf(entry), entry.getValue() == null ? null : entry.getValue().toString());
+        }
+        
+        // touch only those keys which have been removed or changed
+        changedKeys.addAll(Sets.difference(current.keySet(), replacement.keySet()));
+        current.keySet().retainAll(replacement.keySet());
+        
+        for (Entry<String, String> entry : replacement.entrySet()) {
+            if (!current.containsKey(entry.getKey()) || 
+                !Objects.equal(entry.getValue(), current.get(entry.getKey()))) {
+                current.put(entry.getKey(), entry.getValue());
+                changedKeys.add(entry.getKey());
+            }
+        }
+    }
+    
+    private String keyOf(Entry<Object, Object> entry) {
+        return Preconditions.checkNotNull(
+            entry.getKey(), "Key with value %s is null", entry.getValue()
+        ).toString();
+    }
 
 }
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommand.Description;
+import de.cosmocode.palava.ipc.IpcCommand.Param;
+import de.cosmocode.palava.ipc.IpcCommand.Params;
+import de.cosmocode.palava.ipc.IpcCommand.Throw;
+import de.cosmocode.palava.ipc.IpcCommand.Throws;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.media.MediaPermissions;
+
+/**
+ * See below.
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Description(
+    "Uploads a single chunk of a chunked upload session. Chunks may be sent in any order. " +
+    "Sending a chunk again replaces the previous one."
+)
+@Params({
+    @Param(name = AssetConstants.UPLOAD_ID, description = "The identifier of the upload session"),
+    @Param(name = AssetConstants.CHUNK, type = "positive int", description = "The zero based index of the chunk"),
+    @Param(
+        name = AssetConstants.BINARY,
+        type = "base64 encoded string, input stream or readable byte channel",
+        description = "The binary data of this chunk in base64 format. Transports which support streaming " +
+            "may pass the raw binary data as an input stream or channel instead."
+    )
+})
+@Throws({
+    @Throw(
+        name = IllegalArgumentException.class,
+        description = "If there is no such upload session owned by the current user"
+    ),
+    @Throw(name = IOException.class, description = "If spooling the chunk failed")
+})
+@Singleton
+public final class UploadChunk implements IpcCommand {
+
+    private final UploadSessions sessions;
+
+    @Inject
+    public UploadChunk(UploadSessions sessions) {
+        this.sessions = Preconditions.checkNotNull(sessions, "Sessions");
+    }
+
+    @RequiresPermissions(MediaPermissions.ASSET_CREATE)
+    @Override
+    public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+        final IpcArguments arguments = call.getArguments();
+        
+        final String uploadId = arguments.getString(AssetConstants.UPLOAD_ID);
+        final int chunk = arguments.getInt(AssetConstants.CHUNK);
+        final InputStream stream = Binaries.open(arguments.get(AssetConstants.BINARY));
+        
+        try {
+            sessions.append(uploadId, SecurityUtils.getSubject().getPrincipal(), chunk, stream);
+        } catch (IOException e) {
+            throw new IpcCommandExecutionException(e);
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                throw new IpcCommandExecutionException(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,410 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.asset;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.media.MediaConfig;
+
+/**
+ * <p>
+ *   Manages chunked upload sessions. Every session is a directory below the configured
+ *   upload directory which contains one spool file per chunk. Chunks may arrive in any order
+ *   and can be sent again to overwrite a previous, failed attempt. Sessions which have
+ *   not been touched for the configured timeout are purged by the {@link UploadScheduler}
+ *   every half timeout. Sessions are never purged while chunks are being spooled or read,
+ *   i.e. between {@link #open(String, Object, int)} and closing the returned stream.
+ * </p>
+ * <p>
+ *   Every session belongs to the user who began it. Other users can neither append to
+ *   nor open it and get the same error as for sessions which do not exist.
+ * </p>
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Singleton
+public final class UploadSessions implements Initializable, Runnable, Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UploadSessions.class);
+
+    private static final String CHUNK_PREFIX = "chunk-";
+
+    private static final String PART_SUFFIX = ".part";
+
+    private static final String OWNER = "owner";
+
+    private final ScheduledExecutorService scheduler;
+
+    private File directory = new File(System.getProperty("java.io.tmpdir"), "palava-media-uploads");
+
+    private long timeout = 1;
+
+    private TimeUnit timeoutUnit = TimeUnit.HOURS;
+
+    private ScheduledFuture<?> future;
+
+    // number of pending appends and open streams per session, guarded by this
+    private final Map<String, Integer> users = Maps.newHashMap();
+
+    @Inject
+    public UploadSessions(@UploadScheduler ScheduledExecutorService scheduler) {
+        this.scheduler = Preconditions.checkNotNull(scheduler, "Scheduler");
+    }
+
+    @Inject(optional = true)
+    void setDirectory(@Named(MediaConfig.UPLOAD_DIRECTORY) File directory) {
+        this.directory = Preconditions.checkNotNull(directory, "Directory");
+    }
+
+    @Inject(optional = true)
+    void setTimeout(@Named(MediaConfig.UPLOAD_TIMEOUT) long timeout) {
+        Preconditions.checkArgument(timeout > 0, "Timeout must be positive, but was %s", timeout);
+        this.timeout = timeout;
+    }
+
+    @Inject(optional = true)
+    void setTimeoutUnit(@Named(MediaConfig.UPLOAD_TIMEOUT_UNIT) TimeUnit timeoutUnit) {
+        this.timeoutUnit = Preconditions.checkNotNull(timeoutUnit, "TimeUnit");
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        if (directory.isDirectory() || directory.mkdirs()) {
+            LOG.info("Spooling chunked uploads to {}", directory);
+        } else {
+            throw new LifecycleException(String.format("Unable to create upload directory %s", directory));
+        }
+        run();
+        final long period = Math.max(1L, timeoutUnit.toMillis(timeout) / 2);
+        future = scheduler.scheduleWithFixedDelay(this, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Begins a new upload session.
+     *
+     * @param owner the principal of the user who begins the session
+     * @return the identifier of the new session
+     * @throws NullPointerException if owner is null
+     * @throws IOException if creating the session failed
+     */
+    public String begin(Object owner) throws IOException {
+        Preconditions.checkNotNull(owner, "Owner");
+        final String uploadId = UUID.randomUUID().toString();
+        final File session = new File(directory, uploadId);
+        if (!session.mkdirs()) {
+            throw new IOException(String.format("Unable to create upload session directory %s", session));
+        }
+        Files.write(owner.toString(), new File(session, OWNER), Charsets.UTF_8);
+        LOG.debug("Began upload session {} of {}", uploadId, owner);
+        return uploadId;
+    }
+
+    /**
+     * Spools the given chunk to disk. Sending a chunk again overwrites the previous one.
+     *
+     * @param uploadId the session identifier
+     * @param owner the principal of the current user
+     * @param index the zero based index of the chunk
+     * @param stream the chunk's binary data
+     * @throws IllegalArgumentException if index is negative or there is no such session
+     *         owned by the given user
+     * @throws IOException if spooling failed
+     */
+    public void append(String uploadId, Object owner, int index, InputStream stream) throws IOException {
+        Preconditions.checkArgument(index >= 0, "Index must not be negative, but was %s", index);
+        Preconditions.checkNotNull(stream, "Stream");
+        final File session = acquire(uploadId, owner);
+        try {
+            final File part = new File(session, CHUNK_PREFIX + index + PART_SUFFIX);
+            final OutputStream output = new FileOutputStream(part);
+            try {
+                ByteStreams.copy(stream, output);
+            } finally {
+                output.close();
+            }
+            final File chunk = new File(session, CHUNK_PREFIX + index);
+            if (chunk.exists() && !chunk.delete() || !part.renameTo(chunk)) {
+                throw new IOException(String.format("Unable to move %s to %s", part, chunk));
+            }
+            touch(session);
+        } finally {
+            release(uploadId);
+        }
+        LOG.trace("Spooled chunk {} of upload session {}", index, uploadId);
+    }
+
+    /**
+     * Opens a stream which reads all chunks of the specified session in order.
+     * The session will not be purged until the returned stream has been closed.
+     *
+     * @param uploadId the session identifier
+     * @param owner the principal of the current user
+     * @param chunks the number of chunks the client sent
+     * @return a stream of the concatenated chunks
+     * @throws IllegalArgumentException if there is no such session owned by the given user
+     * @throws IllegalStateException if any of the chunks is missing or the session
+     *         contains chunks with an index greater than or equal to chunks
+     */
+    public InputStream open(String uploadId, Object owner, int chunks) {
+        Preconditions.checkArgument(chunks > 0, "Chunks must be positive, but was %s", chunks);
+        final File session = acquire(uploadId, owner);
+        boolean opened = false;
+        try {
+            final String[] names = session.list();
+            Preconditions.checkState(names != null, "Unable to list upload session %s", uploadId);
+            for (String name : names) {
+                if (!name.startsWith(CHUNK_PREFIX) || name.endsWith(PART_SUFFIX)) continue;
+                final int index = Integer.parseInt(name.substring(CHUNK_PREFIX.length()));
+                Preconditions.checkState(index < chunks,
+                    "Upload session %s contains chunk %s, but only %s chunks were sent", uploadId, index, chunks);
+            }
+            final File[] files = new File[chunks];
+            for (int i = 0; i < chunks; i++) {
+                files[i] = new File(session, CHUNK_PREFIX + i);
+                Preconditions.checkState(files[i].isFile(), "Chunk %s of upload session %s is missing", i, uploadId);
+            }
+            touch(session);
+            opened = true;
+            return new ChunkInputStream(uploadId, files);
+        } finally {
+            if (!opened) release(uploadId);
+        }
+    }
+
+    /**
+     * Closes the specified session and removes all of its spool files.
+     *
+     * @param uploadId the session identifier
+     * @throws IllegalArgumentException if there is no such session
+     */
+    public void close(String uploadId) {
+        final File session = session(uploadId);
+        synchronized (this) {
+            delete(session);
+        }
+        LOG.debug("Closed upload session {}", uploadId);
+    }
+
+    private File session(String uploadId) {
+        Preconditions.checkNotNull(uploadId, "UploadId");
+        // prevents path traversal through manipulated identifiers
+        Preconditions.checkArgument(UUID.fromString(uploadId).toString().equals(uploadId),
+            "Invalid upload id %s", uploadId);
+        final File session = new File(directory, uploadId);
+        Preconditions.checkArgument(session.isDirectory(), "No upload session %s", uploadId);
+        return session;
+    }
+
+    /**
+     * Marks the specified session as in use after checking that it belongs to the given owner.
+     * Every successful call has to be followed by exactly one call to {@link #release(String)}.
+     *
+     * @param uploadId the session identifier
+     * @param owner the principal of the current user
+     * @return the session directory
+     * @throws IllegalArgumentException if there is no such session owned by the given user
+     */
+    private synchronized File acquire(String uploadId, Object owner) {
+        Preconditions.checkNotNull(owner, "Owner");
+        final File session = session(uploadId);
+        final String actual;
+        
+        try {
+            actual = Files.toString(new File(session, OWNER), Charsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(String.format("No upload session %s", uploadId), e);
+        }
+        
+        if (!actual.equals(owner.toString())) {
+            LOG.warn("{} tried to access upload session {} of {}", new Object[] {owner, uploadId, actual});
+            throw new IllegalArgumentException(String.format("No upload session %s", uploadId));
+        }
+        
+        final Integer count = users.get(uploadId);
+        users.put(uploadId, count == null ? 1 : count + 1);
+        return session;
+    }
+
+    private synchronized void release(String uploadId) {
+        final Integer count = users.get(uploadId);
+        if (count == null) return;
+        if (count == 1) {
+            users.remove(uploadId);
+        } else {
+            users.put(uploadId, count - 1);
+        }
+    }
+
+    private void touch(File session) {
+        if (!session.setLastModified(System.currentTimeMillis())) {
+            LOG.warn("Unable to touch upload session {}", session);
+        }
+    }
+
+    /**
+     * Purges all sessions which have not been touched for the configured timeout
+     * and are currently not in use.
+     */
+    @Override
+    public void run() {
+        try {
+            final File[] sessions = directory.listFiles();
+            if (sessions == null) return;
+            final long threshold = System.currentTimeMillis() - timeoutUnit.toMillis(timeout);
+            for (File session : sessions) {
+                if (session.isDirectory() && session.lastModified() < threshold) {
+                    purge(session);
+                }
+            }
+        /* CHECKSTYLE:OFF */
+        } catch (RuntimeException e) {
+        /* CHECKSTYLE:ON */
+            // exceptions would otherwise suppress all subsequent executions
+            LOG.error("Purging upload sessions failed", e);
+        }
+    }
+
+    private synchronized void purge(File session) {
+        if (users.containsKey(session.getName())) {
+            LOG.debug("Keeping expired upload session {} which is still in use", session.getName());
+        } else {
+            LOG.info("Purging expired upload session {}", session.getName());
+            delete(session);
+        }
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    private void delete(File session) {
+        final File[] files = session.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    LOG.warn("Unable to delete {}", file);
+                }
+            }
+        }
+        if (!session.delete()) {
+            LOG.warn("Unable to delete {}", session);
+        }
+    }
+
+    /**
+     * Reads a series of files in order, opening only one at a time. Releases
+     * the session when being closed.
+     *
+     * @since 2.2
+     * @author agent
+     */
+    private final class ChunkInputStream extends InputStream {
+
+        private final String uploadId;
+
+        private final File[] files;
+
+        private int index;
+
+        private InputStream current;
+
+        private boolean closed;
+
+        public ChunkInputStream(String uploadId, File[] files) {
+            this.uploadId = uploadId;
+            this.files = files;
+        }
+
+        private boolean next() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+            if (index >= files.length) return false;
+            current = new FileInputStream(files[index++]);
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (current != null || next()) {
+                final int b = current.read();
+                if (b != -1) return b;
+                if (!next()) return -1;
+            }
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (current != null || next()) {
+                final int read = current.read(b, off, len);
+                if (read != -1) return read;
+                if (!next()) return -1;
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            index = files.length;
+            try {
+                if (current != null) {
+                    current.close();
+                    current = null;
+                }
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    release(uploadId);
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.directory;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import de.cosmocode.palava.entity.AbstractEntityService;
+import de.cosmocode.palava.media.asset.AssetBase;
+
+/**
+ * Abstract implementation of the {@link DirectoryBaseService} interface.
+ * Requires the {@link DirectoryBase#ASSETS}, {@link DirectoryBase#COUNT_ASSETS},
+ * {@link DirectoryBase#INDEX_OF} and {@link DirectoryBase#REMOVE_ASSET} queries. Modifying
+ * directories additionally requires the {@link DirectoryBase#SHIFT_ASSETS} and
+ * {@link DirectoryBase#UPDATE_INDEX} queries or, for sparse directories, the
+ * {@link SparseDirectoryBase#ENTRIES} query. Adding assets to directories which are not
+ * sparse initializes {@link DirectoryBase#getAssets()}.
+ * 
+ * <p>
+ *   Databases like MySQL or Derby check the primary key of the join table, usually the
+ *   directory id and the index, after every row of a bulk update. Shifting a range of
+ *   indices by one in place would therefore collide with the neighbouring row. This class
+ *   instead moves the range to negative indices first and then to its destination, which
+ *   takes two {@link DirectoryBase#SHIFT_ASSETS} updates without ever duplicating an index.
+ * </p>
+ *
+ * @since 2.2
+ * @author agent
+ * @param <T> the generic directory type
+ */
+public abstract class AbstractDirectoryService<T extends DirectoryBase> extends AbstractEntityService<T>
+    implements DirectoryBaseService<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractDirectoryService.class);
+    
+    /**
+     * The index of an asset being moved while the assets in between are shifted.
+     */
+    private static final int PARKED = -1;
+    
+    /**
+     * The offset of the temporary range used by {@link #shift(DirectoryBase, int, int, int)}.
+     * Indices up to 2^30 - 2 end up below {@link #PARKED}.
+     */
+    private static final int TEMPORARY = Integer.MIN_VALUE / 2;
+
+    @Override
+    public List<AssetBase> listAssets(T directory, int offset, int limit) {
+        Preconditions.checkNotNull(directory, "Directory");
+        Preconditions.checkArgument(offset >= 0, "Offset must not be negative, but was %s", offset);
+        Preconditions.checkArgument(limit > 0, "Limit must be positive, but was %s", limit);
+        
+        @SuppressWarnings("unchecked")
+        final List<AssetBase> assets = entityManager().createNamedQuery(DirectoryBase.ASSETS).
+            setParameter(1, directory.getId()).setFirstResult(offset).setMaxResults(limit).getResultList();
+        return assets;
+    }
+    
+    @Override
+    public long countAssets(T directory) {
+        Preconditions.checkNotNull(directory, "Directory");
+        final Number count = (Number) entityManager().createNamedQuery(DirectoryBase.COUNT_ASSETS).
+            setParameter(1, directory.getId()).getSingleResult();
+        return count.longValue();
+    }
+    
+    @Override
+    public int indexOf(T directory, AssetBase asset) {
+        Preconditions.checkNotNull(directory, "Directory");
+        Preconditions.checkNotNull(asset, "Asset");
+        final List<?> result = entityManager().createNamedQuery(DirectoryBase.INDEX_OF).
+            setParameter(1, directory.getId()).setParameter(2, asset.getId()).getResultList();
+        return result.isEmpty() ? -1 : ((Number) result.get(0)).intValue();
+    }
+    
+    @Override
+    public int addAssets(T directory, List<? extends AssetBase> assets, int index) {
+        Preconditions.checkNotNull(directory, "Directory");
+        Preconditions.checkNotNull(assets, "Assets");
+        
+        if (directory instanceof SparseDirectoryBase) {
+            final SparseDirectoryBase sparse = SparseDirectoryBase.class.cast(directory);
+            final int size = (int) countAssets(directory);
+            final int currentIndex = index == -1 ? size : index;
+            Preconditions.checkPositionIndex(currentIndex, size);
+            
+            // the neighbours at currentIndex - 1 and currentIndex
+            final List<DirectoryEntryBase> neighbours = Lists.newArrayList(
+                entries(sparse, Math.max(currentIndex - 1, 0), currentIndex == 0 ? 1 : 2));
+            final int position = currentIndex == 0 ? 0 : 1;
+            
+            final long[] keys;
+            if (neighbours.size() == 2 && 
+                neighbours.get(1).getPosition() - neighbours.get(0).getPosition() <= assets.size()) {
+                LOG.debug("No room left between {} and {}, loading all entries", neighbours.get(0), neighbours.get(1));
+                keys = OrderKeys.at(sparse.getEntries(), currentIndex, assets.size());
+            } else {
+                keys = OrderKeys.at(neighbours, position, assets.size());
+            }
+            
+            for (int i = 0; i < keys.length; i++) {
+                sparse.addEntry(assets.get(i), keys[i]);
+            }
+            return currentIndex;
+        } else {
+            @SuppressWarnings("unchecked")
+            final List<AssetBase> list = (List<AssetBase>) directory.getAssets();
+            final int currentIndex = index == -1 ? list.size() : index;
+            list.addAll(currentIndex, assets);
+            return currentIndex;
+        }
+    }
+    
+    @Override
+    public int moveAsset(T directory, AssetBase asset, int index) {
+        final int current = indexOf(directory, asset);
+        if (current == -1 || current == index) return current;
+        Preconditions.checkElementIndex(index, (int) countAssets(directory));
+        
+        if (directory instanceof SparseDirectoryBase) {
+            moveEntry(SparseDirectoryBase.class.cast(directory), current, index);
+        } else {
+            // park the asset outside of the range being shifted
+            updateIndex(directory, asset, PARKED);
+            if (current < index) {
+                shift(directory, current + 1, index, -1);
+            } else {
+                shift(directory, index, current - 1, 1);
+            }
+            updateIndex(directory, asset, index);
+        }
+        
+        return current;
+    }
+    
+    /**
+     * Moves the entry at the current index by assigning an order key between its new
+     * neighbours, which are the only entries being loaded, unless there is no room left.
+     * 
+     * @param directory the directory
+     * @param current the current index of the entry
+     * @param index the new index of the entry
+     */
+    private void moveEntry(SparseDirectoryBase directory, int current, int index) {
+        final DirectoryEntryBase entry = entries(directory, current, 1).get(0);
+        
+        // the neighbours at index - 1 and index once the entry has been taken out
+        final List<DirectoryEntryBase> neighbours = Lists.newArrayList(
+            entries(directory, current < index ? index : Math.max(index - 1, 0), 2));
+        if (index == 0) {
+            // there is no lower neighbour when moving to the front
+            neighbours.subList(1, neighbours.size()).clear();
+        }
+        final int position = index == 0 ? 0 : 1;
+        
+        if (neighbours.size() == 2 && neighbours.get(1).getPosition() - neighbours.get(0).getPosition() <= 1) {
+            LOG.debug("No room left between {} and {}, loading all entries", neighbours.get(0), neighbours.get(1));
+            final List<DirectoryEntryBase> others = Lists.<DirectoryEntryBase>newArrayList(directory.getEntries());
+            others.remove(current);
+            entry.setPosition(OrderKeys.at(others, index));
+        } else {
+            entry.setPosition(OrderKeys.at(neighbours, position));
+        }
+    }
+    
+    @Override
+    public boolean removeAsset(T directory, AssetBase asset) {
+        final int index = indexOf(directory, asset);
+        if (index == -1) return false;
+        
+        entityManager().createNamedQuery(DirectoryBase.REMOVE_ASSET).
+            setParameter(1, directory.getId()).setParameter(2, asset.getId()).executeUpdate();
+        
+        if (!(directory instanceof SparseDirectoryBase)) {
+            shift(directory, index + 1, Integer.MAX_VALUE, -1);
+        }
+        
+        return true;
+    }
+    
+    private List<DirectoryEntryBase> entries(SparseDirectoryBase directory, int offset, int limit) {
+        @SuppressWarnings("unchecked")
+        final List<DirectoryEntryBase> entries = entityManager().createNamedQuery(SparseDirectoryBase.ENTRIES).
+            setParameter(1, directory.getId()).setFirstResult(offset).setMaxResults(limit).getResultList();
+        return entries;
+    }
+    
+    private void updateIndex(T directory, AssetBase asset, int index) {
+        entityManager().createNamedQuery(DirectoryBase.UPDATE_INDEX).setParameter(1, directory.getId()).
+            setParameter(2, asset.getId()).setParameter(3, index).executeUpdate();
+    }
+    
+    /**
+     * Shifts the indices between from and to, inclusive, by delta. The range is moved below
+     * {@link #PARKED} first, where it cannot collide with any other index, and then to its
+     * destination, which must be free.
+     * 
+     * @param directory the directory
+     * @param from the lowest index to shift
+     * @param to the highest index to shift
+     * @param delta the distance
+     */
+    private void shift(T directory, int from, int to, int delta) {
+        shiftRange(directory, from, to, TEMPORARY);
+        shiftRange(directory, Integer.MIN_VALUE, PARKED - 1, delta - TEMPORARY);
+    }
+    
+    private void shiftRange(T directory, int from, int to, int delta) {
+        entityManager().createNamedQuery(DirectoryBase.SHIFT_ASSETS).setParameter(1, directory.getId()).
+            setParameter(2, from).setParameter(3, to).setParameter(4, delta).executeUpdate();
+    }
+    
+}
@@ -16,7 +16,6 @@
 
 package de.cosmocode.palava.media.directory;
 
-import java.util.List;
 import java.util.Map;
 
 import javax.persistence.PersistenceException;
@@ -24,10 +23,10 @@ import javax.persistence.PersistenceException;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
-import de.cosmocode.palava.core.Registry;
 import de.cosmocode.palava.entity.EntityService;
 import de.cosmocode.palava.ipc.IpcArguments;
 import de.cosmocode.palava.ipc.IpcCall;
@@ -39,6 +38,7 @@ import de.cosmocode.palava.ipc.IpcCommand.Return;
 import de.cosmocode.palava.ipc.IpcCommand.Throw;
 import de.cosmocode.palava.ipc.IpcCommandExecutionException;
 import de.cosmocode.palava.jpa.Transactional;
+import de.cosmocode.palava.media.MediaEvents;
 import de.cosmocode.palava.media.MediaPermissions;
 import de.cosmocode.palava.media.asset.AssetBase;
 import de.cosmocode.palava.media.asset.AssetConstants;
@@ -75,12 +75,12 @@ public final class AddAsset implements IpcCommand {
     
     @Inject
     public AddAsset(EntityService<DirectoryBase> directoryService, EntityService<AssetBase> assetService,
-        Registry registry) {
+        MediaEvents events) {
         this.directoryService = Preconditions.checkNotNull(directoryService, "DirectoryService");
         this.assetService = Preconditions.checkNotNull(assetService, "AssetService");
-        Preconditions.checkNotNull(registry, "Registry");
-        this.addAssetEvent = registry.proxy(DirectoryAddAssetEvent.class);
-        this.addedAssetEvent = registry.proxy(DirectoryAddedAssetEvent.class);
+        Preconditions.checkNotNull(events, "Events");
+        this.addAssetEvent = events.proxy(DirectoryAddAssetEvent.class);
+        this.addedAssetEvent = events.afterCommit(DirectoryAddedAssetEvent.class);
     }
 
     @RequiresPermissions(MediaPermissions.DIRECTORY_ADD_ASSET)
@@ -98,18 +98,7 @@ public final class AddAsset implements IpcCommand {
         
         addAssetEvent.eventDirectoryAddAsset(directory, asset);
         
-        @SuppressWarnings("unchecked")
-        final List<AssetBase> assets = (List<AssetBase>) directory.getAssets();
-        
-        final int currentIndex;
-        
-        if (index == -1) {
-            currentIndex = assets.size();
-            assets.add(asset);
-        } else {
-            currentIndex = index;
-            assets.add(index, asset);
-        }
+        final int currentIndex = Directories.add(directoryService, directory, ImmutableList.of(asset), index);
         
         directoryService.update(directory);
         
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.directory;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.PersistenceException;
+
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommand.Description;
+import de.cosmocode.palava.ipc.IpcCommand.Param;
+import de.cosmocode.palava.ipc.IpcCommand.Params;
+import de.cosmocode.palava.ipc.IpcCommand.Return;
+import de.cosmocode.palava.ipc.IpcCommand.Throw;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.jpa.Transactional;
+import de.cosmocode.palava.media.MediaEvents;
+import de.cosmocode.palava.media.MediaPermissions;
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.asset.AssetConstants;
+import de.cosmocode.palava.media.asset.AssetIds;
+
+/**
+ * See below.
+ * 
+ * @since 2.2
+ * @author agent
+ */
+@Description("Adds the specified assets to the given directory, keeping their order")
+@Params({
+    @Param(name = DirectoryConstants.DIRECTORY_ID, description = "The identifier of the directory"),
+    @Param(name = AssetConstants.ASSET_IDS, type = "list", description = "The identifiers of the assets"),
+    @Param(
+        name = DirectoryConstants.INDEX, type = "positive int",  
+        description = "The desired index of the first asset in the directory. " + 
+            "A value of -1 adds the assets to the end.",
+        optional = true, defaultValue = "-1" 
+    )
+})
+@Return(name = DirectoryConstants.CURRENT_INDEX, description = "The current index of the first asset")
+@Throw(
+    name = PersistenceException.class, 
+    description = "If directory does not exist or updating failed"
+)
+@Singleton
+public final class AddAssets implements IpcCommand {
+    
+    private final EntityService<DirectoryBase> directoryService;
+    private final EntityService<AssetBase> assetService;
+    
+    private final DirectoryAddAssetEvent addAssetEvent;
+    private final DirectoryAddedAssetEvent addedAssetEvent;
+    
+    @Inject
+    public AddAssets(EntityService<DirectoryBase> directoryService, EntityService<AssetBase> assetService,
+        MediaEvents events) {
+        this.directoryService = Preconditions.checkNotNull(directoryService, "DirectoryService");
+        this.assetService = Preconditions.checkNotNull(assetService, "AssetService");
+        Preconditions.checkNotNull(events, "Events");
+        this.addAssetEvent = events.proxy(DirectoryAddAssetEvent.class);
+        this.addedAssetEvent = events.afterCommit(DirectoryAddedAssetEvent.class);
+    }
+
+    @RequiresPermissions(MediaPermissions.DIRECTORY_ADD_ASSET)
+    @Transactional
+    @Override
+    public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+        final IpcArguments arguments = call.getArguments();
+        
+        final long directoryId = arguments.getLong(DirectoryConstants.DIRECTORY_ID);
+        final List<Long> assetIds = AssetIds.parse(arguments.get(AssetConstants.ASSET_IDS));
+        final int index = arguments.getInt(DirectoryConstants.INDEX, -1);
+        
+        final DirectoryBase directory = directoryService.read(directoryId);
+        
+        final List<AssetBase> added = Lists.newArrayListWithCapacity(assetIds.size());
+        for (Long assetId : assetIds) {
+            added.add(assetService.reference(assetId));
+        }
+        
+        for (AssetBase asset : added) {
+            addAssetEvent.eventDirectoryAddAsset(directory, asset);
+        }
+        
+        final int currentIndex = Directories.add(directoryService, directory, added, index);
+        
+        directoryService.update(directory);
+        
+        for (AssetBase asset : added) {
+            addedAssetEvent.eventDirectoryAddedAsset(directory, asset);
+        }
+        
+        result.put(DirectoryConstants.CURRENT_INDEX, currentIndex);
+    }
+
+}
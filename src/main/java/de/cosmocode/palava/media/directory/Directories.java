@@ -0,0 +1,175 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.directory;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.media.asset.AssetBase;
+
+/**
+ * Static utility class for directory commands.
+ *
+ * @since 2.2
+ * @author agent
+ */
+final class Directories {
+
+    private Directories() {
+        
+    }
+    
+    /**
+     * Looks up the index of the given asset in the specified directory. Uses
+     * {@link DirectoryBaseService#indexOf(DirectoryBase, AssetBase)} if supported
+     * by the given service, which does not require loading the assets of the directory.
+     * 
+     * @param service the directory service
+     * @param directory the directory
+     * @param asset the asset
+     * @return the index of asset in directory or -1 if directory does not contain asset
+     */
+    static int indexOf(EntityService<DirectoryBase> service, DirectoryBase directory, AssetBase asset) {
+        Preconditions.checkNotNull(service, "Service");
+        Preconditions.checkNotNull(directory, "Directory");
+        if (service instanceof DirectoryBaseService<?>) {
+            return cast(service).indexOf(directory, asset);
+        } else if (directory instanceof SparseDirectoryBase) {
+            return OrderKeys.indexOf(SparseDirectoryBase.class.cast(directory).getEntries(), asset);
+        } else {
+            return directory.getAssets().indexOf(asset);
+        }
+    }
+    
+    /**
+     * Adds the given assets to the specified directory, starting at the given index. Uses
+     * {@link DirectoryBaseService#addAssets(DirectoryBase, List, int)} if supported by the
+     * given service, which does not require loading the entries of sparse directories.
+     * 
+     * @param service the directory service
+     * @param directory the directory
+     * @param assets the assets
+     * @param index the index of the first asset or -1 to append them
+     * @return the index of the first asset
+     * @throws IndexOutOfBoundsException if index is neither -1 nor between 0 and the number of assets
+     */
+    static int add(EntityService<DirectoryBase> service, DirectoryBase directory, 
+        List<? extends AssetBase> assets, int index) {
+        Preconditions.checkNotNull(service, "Service");
+        Preconditions.checkNotNull(directory, "Directory");
+        Preconditions.checkNotNull(assets, "Assets");
+        if (service instanceof DirectoryBaseService<?>) {
+            return cast(service).addAssets(directory, assets, index);
+        } else if (directory instanceof SparseDirectoryBase) {
+            final SparseDirectoryBase sparse = SparseDirectoryBase.class.cast(directory);
+            final List<? extends DirectoryEntryBase> entries = sparse.getEntries();
+            final int currentIndex = index == -1 ? entries.size() : index;
+            final long[] keys = OrderKeys.at(entries, currentIndex, assets.size());
+            for (int i = 0; i < keys.length; i++) {
+                sparse.addEntry(assets.get(i), keys[i]);
+            }
+            return currentIndex;
+        } else {
+            @SuppressWarnings("unchecked")
+            final List<AssetBase> list = (List<AssetBase>) directory.getAssets();
+            final int currentIndex = index == -1 ? list.size() : index;
+            list.addAll(currentIndex, assets);
+            return currentIndex;
+        }
+    }
+    
+    /**
+     * Moves the given asset to the specified index, shifting all assets in between by one place.
+     * Uses {@link DirectoryBaseService#moveAsset(DirectoryBase, AssetBase, int)} if supported
+     * by the given service, which does not require loading the assets of the directory.
+     * 
+     * @param service the directory service
+     * @param directory the directory
+     * @param asset the asset
+     * @param index the new index
+     * @return the previous index of asset or -1 if directory does not contain asset
+     * @throws IndexOutOfBoundsException if index is negative or not less than the number of assets
+     */
+    static int move(EntityService<DirectoryBase> service, DirectoryBase directory, AssetBase asset, int index) {
+        Preconditions.checkNotNull(service, "Service");
+        Preconditions.checkNotNull(directory, "Directory");
+        if (service instanceof DirectoryBaseService<?>) {
+            return cast(service).moveAsset(directory, asset, index);
+        } else if (directory instanceof SparseDirectoryBase) {
+            final List<DirectoryEntryBase> others = 
+                Lists.<DirectoryEntryBase>newArrayList(SparseDirectoryBase.class.cast(directory).getEntries());
+            final int current = OrderKeys.indexOf(others, asset);
+            if (current == -1 || current == index) return current;
+            Preconditions.checkElementIndex(index, others.size());
+            final DirectoryEntryBase entry = others.remove(current);
+            entry.setPosition(OrderKeys.at(others, index));
+            return current;
+        } else {
+            @SuppressWarnings("unchecked")
+            final List<AssetBase> assets = (List<AssetBase>) directory.getAssets();
+            final int current = assets.indexOf(asset);
+            if (current == -1 || current == index) return current;
+            Preconditions.checkElementIndex(index, assets.size());
+            if (current < index) {
+                // rotate to the left
+                Collections.rotate(assets.subList(current, index + 1), -1);
+            } else {
+                // rotate to the right
+                Collections.rotate(assets.subList(index, current + 1), 1);
+            }
+            return current;
+        }
+    }
+    
+    /**
+     * Removes the given asset from the specified directory. Uses
+     * {@link DirectoryBaseService#removeAsset(DirectoryBase, AssetBase)} if supported
+     * by the given service, which does not require loading the assets of the directory.
+     * 
+     * @param service the directory service
+     * @param directory the directory
+     * @param asset the asset
+     * @return true if directory contained asset, false otherwise
+     */
+    static boolean remove(EntityService<DirectoryBase> service, DirectoryBase directory, AssetBase asset) {
+        Preconditions.checkNotNull(service, "Service");
+        Preconditions.checkNotNull(directory, "Directory");
+        if (service instanceof DirectoryBaseService<?>) {
+            return cast(service).removeAsset(directory, asset);
+        }
+        
+        final int index = indexOf(service, directory, asset);
+        if (index == -1) {
+            return false;
+        } else if (directory instanceof SparseDirectoryBase) {
+            SparseDirectoryBase.class.cast(directory).getEntries().remove(index);
+        } else {
+            directory.getAssets().remove(index);
+        }
+        return true;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static DirectoryBaseService<DirectoryBase> cast(EntityService<DirectoryBase> service) {
+        return (DirectoryBaseService<DirectoryBase>) service;
+    }
+    
+}
@@ -29,6 +29,53 @@ import de.cosmocode.palava.model.base.EntityBase;
  */
 public interface DirectoryBase extends EntityBase {
 
+    /**
+     * Abstract query name for retrieving the assets of the directory whose id
+     * is passed as first parameter, in the order of {@link #getAssets()}.
+     * Required by {@link AbstractDirectoryService}.
+     */
+    String ASSETS = "DirectoryBase.ASSETS";
+    
+    /**
+     * Abstract query name for counting the assets of the directory whose id
+     * is passed as first parameter. Required by {@link AbstractDirectoryService}.
+     */
+    String COUNT_ASSETS = "DirectoryBase.COUNT_ASSETS";
+    
+    /**
+     * Abstract query name for retrieving the index of the asset whose id is passed
+     * as second parameter in the directory whose id is passed as first parameter.
+     * Must return no result if the asset is not contained in the directory.
+     * Required by {@link AbstractDirectoryService}.
+     */
+    String INDEX_OF = "DirectoryBase.INDEX_OF";
+    
+    /**
+     * Abstract query name for a bulk update which adds the fourth parameter to the index
+     * of all assets of the directory whose id is passed as first parameter, whose index lies
+     * between the second and the third parameter, inclusive. Usually a native query on the
+     * join table. {@link AbstractDirectoryService} never shifts assets onto occupied indices,
+     * so the query may check unique indices per row. Required by
+     * {@link AbstractDirectoryService} for directories which are not sparse.
+     */
+    String SHIFT_ASSETS = "DirectoryBase.SHIFT_ASSETS";
+    
+    /**
+     * Abstract query name for a bulk update which sets the index of the asset whose id is
+     * passed as second parameter in the directory whose id is passed as first parameter
+     * to the third parameter. Usually a native query on the join table. Required by
+     * {@link AbstractDirectoryService} for directories which are not sparse.
+     */
+    String UPDATE_INDEX = "DirectoryBase.UPDATE_INDEX";
+    
+    /**
+     * Abstract query name for a bulk delete which removes the asset whose id is passed as
+     * second parameter from the directory whose id is passed as first parameter, without
+     * changing the indices of the remaining assets. Sparse directories delete the
+     * corresponding {@link DirectoryEntryBase}. Required by {@link AbstractDirectoryService}.
+     */
+    String REMOVE_ASSET = "DirectoryBase.REMOVE_ASSET";
+
     /**
      * Returns an ordered list of all assets in this directory.
      * 
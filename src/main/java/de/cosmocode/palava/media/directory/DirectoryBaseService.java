@@ -0,0 +1,109 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.directory;
+
+import java.util.List;
+
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.media.asset.AssetBase;
+
+/**
+ * Extension of the {@link EntityService} interface for {@link DirectoryBase}s.
+ *
+ * @since 2.2
+ * @author agent
+ * @param <T> the generic directory type
+ */
+public interface DirectoryBaseService<T extends DirectoryBase> extends EntityService<T> {
+
+    /**
+     * Loads a page of the assets of the specified directory without
+     * initializing {@link DirectoryBase#getAssets()}.
+     * 
+     * @param directory the directory
+     * @param offset the index of the first asset
+     * @param limit the maximum number of assets
+     * @return the assets at index offset to offset + limit, in directory order
+     * @throws NullPointerException if directory is null
+     * @throws IllegalArgumentException if offset is negative or limit is not positive
+     */
+    List<AssetBase> listAssets(T directory, int offset, int limit);
+    
+    /**
+     * Counts the assets of the specified directory without
+     * initializing {@link DirectoryBase#getAssets()}.
+     * 
+     * @param directory the directory
+     * @return the number of assets in the given directory
+     * @throws NullPointerException if directory is null
+     */
+    long countAssets(T directory);
+    
+    /**
+     * Looks up the index of the specified asset in the given directory without
+     * initializing {@link DirectoryBase#getAssets()}.
+     * 
+     * @param directory the directory
+     * @param asset the asset
+     * @return the index of asset in directory or -1 if directory does not contain asset
+     * @throws NullPointerException if directory or asset is null
+     */
+    int indexOf(T directory, AssetBase asset);
+    
+    /**
+     * Adds the specified assets to the given directory, starting at the given index.
+     * Sparse directories only load the entries adjacent to the index, unless there is
+     * no room left between them. Other directories have to initialize
+     * {@link DirectoryBase#getAssets()}, because list indices cannot be inserted by a query.
+     * 
+     * @param directory the directory
+     * @param assets the assets
+     * @param index the index of the first asset or -1 to append them
+     * @return the index of the first asset
+     * @throws NullPointerException if directory or assets is null
+     * @throws IndexOutOfBoundsException if index is neither -1 nor between 0 and the number of assets
+     */
+    int addAssets(T directory, List<? extends AssetBase> assets, int index);
+    
+    /**
+     * Moves the specified asset to the given index without initializing
+     * {@link DirectoryBase#getAssets()}. All assets between the old and the new index
+     * will be shifted by one place. Directories whose assets have already been loaded
+     * are not refreshed.
+     * 
+     * @param directory the directory
+     * @param asset the asset
+     * @param index the new index
+     * @return the previous index of asset or -1 if directory does not contain asset
+     * @throws NullPointerException if directory or asset is null
+     * @throws IndexOutOfBoundsException if index is negative or not less than the number of assets
+     */
+    int moveAsset(T directory, AssetBase asset, int index);
+    
+    /**
+     * Removes the specified asset from the given directory without initializing
+     * {@link DirectoryBase#getAssets()}. Directories whose assets have already been
+     * loaded are not refreshed.
+     * 
+     * @param directory the directory
+     * @param asset the asset
+     * @return true if directory contained asset, false otherwise
+     * @throws NullPointerException if directory or asset is null
+     */
+    boolean removeAsset(T directory, AssetBase asset);
+    
+}
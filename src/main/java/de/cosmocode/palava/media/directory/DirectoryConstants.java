@@ -28,10 +28,14 @@ public final class DirectoryConstants {
     // parameters
     public static final String DIRECTORY_ID = "directoryId";
     public static final String INDEX = "index";
+    public static final String OFFSET = "offset";
+    public static final String LIMIT = "limit";
 
     // return values
     public static final String DIRECTORY = "directory";
     public static final String CURRENT_INDEX = "currentIndex";
+    public static final String ASSETS = "assets";
+    public static final String TOTAL = "total";
     
     private DirectoryConstants() {
         
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.directory;
+
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.model.base.EntityBase;
+
+/**
+ * Interface definition for the membership of an asset in a {@link SparseDirectoryBase}.
+ *
+ * @since 2.2
+ * @author agent
+ */
+public interface DirectoryEntryBase extends EntityBase {
+
+    /**
+     * Provides the asset of this entry.
+     * 
+     * @return the asset
+     */
+    AssetBase getAsset();
+    
+    /**
+     * Provides the order key of this entry. Entries of a directory are ordered
+     * by ascending order keys, which are not required to be consecutive.
+     * 
+     * @return the order key
+     */
+    long getPosition();
+    
+    /**
+     * Sets the order key of this entry.
+     * 
+     * @param position the new order key
+     */
+    void setPosition(long position);
+    
+}
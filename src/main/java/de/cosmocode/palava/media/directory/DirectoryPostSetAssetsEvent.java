@@ -0,0 +1,40 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.directory;
+
+import java.util.List;
+
+import de.cosmocode.palava.media.asset.AssetBase;
+
+/**
+ * Event interface for post directory set assets, which is fired once
+ * per reordering of many assets.
+ *
+ * @since 2.2
+ * @author agent
+ */
+public interface DirectoryPostSetAssetsEvent {
+    
+    /**
+     * Event callback.
+     * 
+     * @param directory the directory
+     * @param assets the assets whose positions change, in their new order
+     */
+    void eventDirectoryPostSetAssets(DirectoryBase directory, List<AssetBase> assets);
+
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.directory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.PersistenceException;
+
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommand.Description;
+import de.cosmocode.palava.ipc.IpcCommand.Param;
+import de.cosmocode.palava.ipc.IpcCommand.Params;
+import de.cosmocode.palava.ipc.IpcCommand.Return;
+import de.cosmocode.palava.ipc.IpcCommand.Returns;
+import de.cosmocode.palava.ipc.IpcCommand.Throw;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.jpa.Transactional;
+import de.cosmocode.palava.media.MediaPermissions;
+import de.cosmocode.palava.media.asset.AssetBase;
+
+/**
+ * See below.
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Description(
+    "Reads a page of the assets of a directory. Directory services implementing DirectoryBaseService " +
+    "load only the requested page, all others load the complete directory."
+)
+@Params({
+    @Param(name = DirectoryConstants.DIRECTORY_ID, description = "The identifier of the directory"),
+    @Param(
+        name = DirectoryConstants.OFFSET, type = "positive int", 
+        description = "The index of the first asset", optional = true, defaultValue = "0"
+    ),
+    @Param(name = DirectoryConstants.LIMIT, type = "positive int", description = "The maximum number of assets")
+})
+@Returns({
+    @Return(name = DirectoryConstants.ASSETS, description = "The assets of the requested page"),
+    @Return(name = DirectoryConstants.TOTAL, description = "The total number of assets in the directory")
+})
+@Throw(name = PersistenceException.class, description = "If there is no directory with the given id")
+@Singleton
+public final class ListAssets implements IpcCommand {
+
+    private final EntityService<DirectoryBase> service;
+    
+    @Inject
+    public ListAssets(EntityService<DirectoryBase> service) {
+        this.service = Preconditions.checkNotNull(service, "Service");
+    }
+
+    @RequiresPermissions(MediaPermissions.DIRECTORY_READ)
+    @Transactional
+    @Override
+    public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+        final IpcArguments arguments = call.getArguments();
+        final long directoryId = arguments.getLong(DirectoryConstants.DIRECTORY_ID);
+        final int offset = arguments.getInt(DirectoryConstants.OFFSET, 0);
+        final int limit = arguments.getInt(DirectoryConstants.LIMIT);
+        Preconditions.checkArgument(offset >= 0, "Offset must not be negative, but was %s", offset);
+        Preconditions.checkArgument(limit > 0, "Limit must be positive, but was %s", limit);
+        
+        final List<? extends AssetBase> assets;
+        final long total;
+        
+        if (service instanceof DirectoryBaseService<?>) {
+            @SuppressWarnings("unchecked")
+            final DirectoryBaseService<DirectoryBase> directoryService = (DirectoryBaseService<DirectoryBase>) service;
+            final DirectoryBase directory = directoryService.read(directoryId);
+            total = directoryService.countAssets(directory);
+            assets = offset < total ? directoryService.listAssets(directory, offset, limit) : 
+                Collections.<AssetBase>emptyList();
+        } else {
+            final List<? extends AssetBase> all = service.read(directoryId).getAssets();
+            total = all.size();
+            final int fromIndex = Math.min(offset, all.size());
+            assets = Lists.newArrayList(all.subList(fromIndex, fromIndex + Math.min(limit, all.size() - fromIndex)));
+        }
+        
+        result.put(DirectoryConstants.ASSETS, assets);
+        result.put(DirectoryConstants.TOTAL, total);
+    }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.directory;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import de.cosmocode.palava.media.asset.AssetBase;
+
+/**
+ * Static utility class for sparse order keys of {@link DirectoryEntryBase}s,
+ * which may also be used by custom {@link DirectoryBaseService} implementations.
+ *
+ * @since 2.2
+ * @author agent
+ */
+public final class OrderKeys {
+
+    /**
+     * The distance between two adjacent order keys after rebalancing,
+     * which allows 20 consecutive insertions into the same gap.
+     */
+    public static final long SPACING = 1L << 20;
+    
+    private static final Logger LOG = LoggerFactory.getLogger(OrderKeys.class);
+    
+    private OrderKeys() {
+        
+    }
+    
+    /**
+     * Finds the index of the entry referencing the given asset.
+     * 
+     * @param entries the entries, ordered by order key
+     * @param asset the asset
+     * @return the index of the corresponding entry or -1 if there is none
+     */
+    public static int indexOf(List<? extends DirectoryEntryBase> entries, AssetBase asset) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).getAsset().equals(asset)) return i;
+        }
+        return -1;
+    }
+    
+    /**
+     * Computes the order key for an entry which should be placed at the given index.
+     * The given entries must not contain the entry to be placed. If there is no room
+     * left between the two adjacent entries, all entries will be rebalanced first.
+     * 
+     * @param entries the entries, ordered by order key
+     * @param index the desired index
+     * @return the order key
+     * @throws IndexOutOfBoundsException if index is negative or greater than the number of entries
+     */
+    public static long at(List<? extends DirectoryEntryBase> entries, int index) {
+        return at(entries, index, 1)[0];
+    }
+    
+    /**
+     * Computes ascending order keys for count entries which should be placed at the given index.
+     * The given entries must not contain the entries to be placed. If there is not enough room
+     * left between the two adjacent entries, all entries will be rebalanced first.
+     * 
+     * @param entries the entries, ordered by order key
+     * @param index the desired index of the first entry
+     * @param count the number of entries
+     * @return the order keys
+     * @throws IndexOutOfBoundsException if index is negative or greater than the number of entries
+     * @throws IllegalArgumentException if count is negative
+     */
+    public static long[] at(List<? extends DirectoryEntryBase> entries, int index, int count) {
+        Preconditions.checkPositionIndex(index, entries.size());
+        Preconditions.checkArgument(count >= 0, "Count must not be negative, but was %s", count);
+        
+        final long[] keys = new long[count];
+        
+        if (entries.isEmpty()) {
+            for (int i = 0; i < count; i++) {
+                keys[i] = (i + 1) * SPACING;
+            }
+        } else if (index == entries.size()) {
+            final long last = entries.get(index - 1).getPosition();
+            for (int i = 0; i < count; i++) {
+                keys[i] = last + (i + 1) * SPACING;
+            }
+        } else if (index == 0) {
+            final long first = entries.get(0).getPosition();
+            for (int i = 0; i < count; i++) {
+                keys[i] = first - (count - i) * SPACING;
+            }
+        } else {
+            long low = entries.get(index - 1).getPosition();
+            long high = entries.get(index).getPosition();
+            
+            if (high - low <= count) {
+                rebalance(entries, index, count);
+                low = entries.get(index - 1).getPosition();
+                high = entries.get(index).getPosition();
+            }
+            
+            final long step = (high - low) / (count + 1);
+            for (int i = 0; i < count; i++) {
+                keys[i] = low + (i + 1) * step;
+            }
+        }
+        
+        return keys;
+    }
+    
+    /**
+     * Spreads the order keys of all given entries evenly, keeping their order
+     * and leaving room for the given number of entries before the given index.
+     * 
+     * @param entries the entries, ordered by order key
+     * @param index the index of the first entry after the room
+     * @param room the number of entries to leave room for
+     */
+    private static void rebalance(List<? extends DirectoryEntryBase> entries, int index, int room) {
+        LOG.debug("Rebalancing order keys of {} entries", entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            entries.get(i).setPosition((i < index ? i + 1 : i + 1 + room) * SPACING);
+        }
+    }
+    
+}
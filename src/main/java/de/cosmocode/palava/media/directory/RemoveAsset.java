@@ -26,7 +26,6 @@ import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
-import de.cosmocode.palava.core.Registry;
 import de.cosmocode.palava.entity.EntityService;
 import de.cosmocode.palava.ipc.IpcArguments;
 import de.cosmocode.palava.ipc.IpcCall;
@@ -37,6 +36,7 @@ import de.cosmocode.palava.ipc.IpcCommand.Params;
 import de.cosmocode.palava.ipc.IpcCommand.Throw;
 import de.cosmocode.palava.ipc.IpcCommandExecutionException;
 import de.cosmocode.palava.jpa.Transactional;
+import de.cosmocode.palava.media.MediaEvents;
 import de.cosmocode.palava.media.MediaPermissions;
 import de.cosmocode.palava.media.asset.AssetBase;
 import de.cosmocode.palava.media.asset.AssetConstants;
@@ -67,12 +67,12 @@ public final class RemoveAsset implements IpcCommand {
     
     @Inject
     public RemoveAsset(EntityService<DirectoryBase> directoryService, 
-        EntityService<AssetBase> assetService, Registry registry) {
+        EntityService<AssetBase> assetService, MediaEvents events) {
         this.directoryService = Preconditions.checkNotNull(directoryService, "DirectoryService");
         this.assetService = Preconditions.checkNotNull(assetService, "AssetService");
-        Preconditions.checkNotNull(registry, "Registry");
-        this.removeAssetEvent = registry.proxy(DirectoryRemoveAssetEvent.class);
-        this.removedAssetEvent = registry.proxy(DirectoryRemovedAssetEvent.class);
+        Preconditions.checkNotNull(events, "Events");
+        this.removeAssetEvent = events.proxy(DirectoryRemoveAssetEvent.class);
+        this.removedAssetEvent = events.afterCommit(DirectoryRemovedAssetEvent.class);
     }
 
     @RequiresPermissions(MediaPermissions.DIRECTORY_SET_ASSET)
@@ -89,7 +89,8 @@ public final class RemoveAsset implements IpcCommand {
 
         removeAssetEvent.eventDirectoryRemoveAsset(directory, asset);
         
-        directory.getAssets().remove(asset);
+        // bulk updates if supported by the service, which do not need to initialize the assets
+        Directories.remove(directoryService, directory, asset);
         directoryService.update(directory);
         
         removedAssetEvent.eventDirectoryRemovedAsset(directory, asset);
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.directory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.PersistenceException;
+
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommand.Description;
+import de.cosmocode.palava.ipc.IpcCommand.Param;
+import de.cosmocode.palava.ipc.IpcCommand.Params;
+import de.cosmocode.palava.ipc.IpcCommand.Throw;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.jpa.Transactional;
+import de.cosmocode.palava.media.MediaEvents;
+import de.cosmocode.palava.media.MediaPermissions;
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.asset.AssetConstants;
+import de.cosmocode.palava.media.asset.AssetIds;
+
+/**
+ * See below.
+ *
+ * @since 2.2
+ * @author agent
+ */
+@Description("Removes the specified assets from the given directory")
+@Params({
+    @Param(name = DirectoryConstants.DIRECTORY_ID, description = "The identifier of the directory"),
+    @Param(name = AssetConstants.ASSET_IDS, type = "list", description = "The identifiers of the assets")
+})
+@Throw(
+    name = PersistenceException.class, 
+    description = "If directory does not exist or updating failed"
+)
+@Singleton
+public final class RemoveAssets implements IpcCommand {
+
+    private final EntityService<DirectoryBase> directoryService;
+    private final EntityService<AssetBase> assetService;
+    
+    private final DirectoryRemoveAssetEvent removeAssetEvent;
+    private final DirectoryRemovedAssetEvent removedAssetEvent;
+    
+    @Inject
+    public RemoveAssets(EntityService<DirectoryBase> directoryService, 
+        EntityService<AssetBase> assetService, MediaEvents events) {
+        this.directoryService = Preconditions.checkNotNull(directoryService, "DirectoryService");
+        this.assetService = Preconditions.checkNotNull(assetService, "AssetService");
+        Preconditions.checkNotNull(events, "Events");
+        this.removeAssetEvent = events.proxy(DirectoryRemoveAssetEvent.class);
+        this.removedAssetEvent = events.afterCommit(DirectoryRemovedAssetEvent.class);
+    }
+
+    @RequiresPermissions(MediaPermissions.DIRECTORY_SET_ASSET)
+    @Transactional
+    @Override
+    public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+        final IpcArguments arguments = call.getArguments();
+        
+        final long directoryId = arguments.getLong(DirectoryConstants.DIRECTORY_ID);
+        final Set<Long> assetIds = Sets.newLinkedHashSet(AssetIds.parse(arguments.get(AssetConstants.ASSET_IDS)));
+        
+        final DirectoryBase directory = directoryService.read(directoryId);
+        
+        final List<AssetBase> removed = Lists.newArrayListWithCapacity(assetIds.size());
+        for (Long assetId : assetIds) {
+            removed.add(assetService.reference(assetId));
+        }
+
+        for (AssetBase asset : removed) {
+            removeAssetEvent.eventDirectoryRemoveAsset(directory, asset);
+        }
+        
+        // a single pass with constant time lookups, the list is rewritten once
+        if (directory instanceof SparseDirectoryBase) {
+            @SuppressWarnings("unchecked")
+            final List<DirectoryEntryBase> entries = 
+                (List<DirectoryEntryBase>) SparseDirectoryBase.class.cast(directory).getEntries();
+            final List<DirectoryEntryBase> retained = Lists.newArrayListWithCapacity(entries.size());
+            for (DirectoryEntryBase entry : entries) {
+                if (assetIds.contains(entry.getAsset().getId())) continue;
+                retained.add(entry);
+            }
+            if (retained.size() < entries.size()) {
+                entries.clear();
+                entries.addAll(retained);
+            }
+        } else {
+            @SuppressWarnings("unchecked")
+            final List<AssetBase> assets = (List<AssetBase>) directory.getAssets();
+            final List<AssetBase> retained = Lists.newArrayListWithCapacity(assets.size());
+            for (AssetBase asset : assets) {
+                if (assetIds.contains(asset.getId())) continue;
+                retained.add(asset);
+            }
+            if (retained.size() < assets.size()) {
+                assets.clear();
+                assets.addAll(retained);
+            }
+        }
+        
+        directoryService.update(directory);
+        
+        for (AssetBase asset : removed) {
+            removedAssetEvent.eventDirectoryRemovedAsset(directory, asset);
+        }
+    }
+
+}
@@ -16,8 +16,6 @@
 
 package de.cosmocode.palava.media.directory;
 
-import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 
 import javax.persistence.PersistenceException;
@@ -30,7 +28,6 @@ import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
-import de.cosmocode.palava.core.Registry;
 import de.cosmocode.palava.entity.EntityService;
 import de.cosmocode.palava.ipc.IpcArguments;
 import de.cosmocode.palava.ipc.IpcCall;
@@ -42,6 +39,7 @@ import de.cosmocode.palava.ipc.IpcCommand.Throw;
 import de.cosmocode.palava.ipc.IpcCommand.Throws;
 import de.cosmocode.palava.ipc.IpcCommandExecutionException;
 import de.cosmocode.palava.jpa.Transactional;
+import de.cosmocode.palava.media.MediaEvents;
 import de.cosmocode.palava.media.MediaPermissions;
 import de.cosmocode.palava.media.asset.AssetBase;
 import de.cosmocode.palava.media.asset.AssetConstants;
@@ -81,12 +79,12 @@ public final class SetAsset implements IpcCommand {
     
     @Inject
     public SetAsset(EntityService<DirectoryBase> directoryService, 
-        EntityService<AssetBase> assetService, Registry registry) {
+        EntityService<AssetBase> assetService, MediaEvents events) {
         this.directoryService = Preconditions.checkNotNull(directoryService, "DirectoryService");
         this.assetService = Preconditions.checkNotNull(assetService, "AssetService");
-        Preconditions.checkNotNull(registry, "Registry");
-        this.preSetAssetEvent = registry.proxy(DirectoryPreSetAssetEvent.class);
-        this.postSetAssetEvent = registry.proxy(DirectoryPostSetAssetEvent.class);
+        Preconditions.checkNotNull(events, "Events");
+        this.preSetAssetEvent = events.proxy(DirectoryPreSetAssetEvent.class);
+        this.postSetAssetEvent = events.afterCommit(DirectoryPostSetAssetEvent.class);
     }
 
     @RequiresPermissions(MediaPermissions.DIRECTORY_SET_ASSET)
@@ -103,32 +101,24 @@ public final class SetAsset implements IpcCommand {
         final DirectoryBase directory = directoryService.read(directoryId);
         final AssetBase asset = assetService.reference(assetId);
         
-        @SuppressWarnings("unchecked")
-        final List<AssetBase> assets = (List<AssetBase>) directory.getAssets();
-        Preconditions.checkState(assets.contains(asset), "%s is not contained in %s", asset, directory);
+        // a single lookup, which does not need to initialize the assets if supported by the service
+        final int currentIndex = Directories.indexOf(directoryService, directory, asset);
+        Preconditions.checkState(currentIndex != -1, "%s is not contained in %s", asset, directory);
         
-        LOG.trace("Setting index of {} in {} to {}", new Object[] {
-            asset, assets, index
+        LOG.trace("Setting index of {} in {} from {} to {}", new Object[] {
+            asset, directory, currentIndex, index
         });
         
         preSetAssetEvent.eventDirectoryPreSetAsset(directory, asset);
         
-        final int currentIndex = assets.indexOf(asset);
-        
         if (currentIndex == index) {
             LOG.trace("{} already is at index {}", asset, index);
             return;
-        } else if (currentIndex < index) {
-            // rotate to the left
-            Collections.rotate(assets.subList(currentIndex, index + 1), -1);
-        } else {
-            // rotate to the right
-            Collections.rotate(assets.subList(index, currentIndex + 1), 1);
         }
         
-        postSetAssetEvent.eventDirectoryPostSetAsset(directory, asset);
+        Directories.move(directoryService, directory, asset, index);
         
-        LOG.trace("New state of assets: {}", assets);
+        postSetAssetEvent.eventDirectoryPostSetAsset(directory, asset);
     }
 
 }
@@ -0,0 +1,212 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.directory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.PersistenceException;
+
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommand.Description;
+import de.cosmocode.palava.ipc.IpcCommand.Param;
+import de.cosmocode.palava.ipc.IpcCommand.Params;
+import de.cosmocode.palava.ipc.IpcCommand.Throw;
+import de.cosmocode.palava.ipc.IpcCommand.Throws;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.jpa.Transactional;
+import de.cosmocode.palava.media.MediaEvents;
+import de.cosmocode.palava.media.MediaPermissions;
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.asset.AssetConstants;
+import de.cosmocode.palava.media.asset.AssetIds;
+
+/**
+ * See below.
+ * 
+ * @since 2.2
+ * @author agent
+ */
+@Description(
+    "Reorders the specified assets in a directory. The assets are placed in the given order " +
+    "onto the positions they currently occupy, all other assets keep their positions. " +
+    "Passing all assets of the directory therefore defines the complete order."
+)
+@Params({
+    @Param(name = DirectoryConstants.DIRECTORY_ID, description = "The identifier of the directory"),
+    @Param(
+        name = AssetConstants.ASSET_IDS, type = "list", 
+        description = "The identifiers of the assets in the desired order"
+    )
+})
+@Throws({
+    @Throw(name = PersistenceException.class, description = "If directory does not exist or updating failed"),
+    @Throw(name = IllegalArgumentException.class, description = "If one of the specified assets is specified twice"),
+    @Throw(
+        name = IllegalStateException.class, 
+        description = "If one of the specified assets does not belong the directory or belongs to it more than once"
+    )
+})
+@Singleton
+public final class SetAssets implements IpcCommand {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SetAssets.class);
+    
+    private final EntityService<DirectoryBase> directoryService;
+    
+    private final DirectoryPreSetAssetsEvent preSetAssetsEvent;
+    private final DirectoryPostSetAssetsEvent postSetAssetsEvent;
+    
+    @Inject
+    public SetAssets(EntityService<DirectoryBase> directoryService, MediaEvents events) {
+        this.directoryService = Preconditions.checkNotNull(directoryService, "DirectoryService");
+        Preconditions.checkNotNull(events, "Events");
+        this.preSetAssetsEvent = events.proxy(DirectoryPreSetAssetsEvent.class);
+        this.postSetAssetsEvent = events.afterCommit(DirectoryPostSetAssetsEvent.class);
+    }
+
+    @RequiresPermissions(MediaPermissions.DIRECTORY_SET_ASSET)
+    @Transactional
+    @Override
+    public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+        final IpcArguments arguments = call.getArguments();
+        
+        final long directoryId = arguments.getLong(DirectoryConstants.DIRECTORY_ID);
+        final List<Long> assetIds = AssetIds.parse(arguments.get(AssetConstants.ASSET_IDS));
+        Preconditions.checkArgument(Sets.newHashSet(assetIds).size() == assetIds.size(), 
+            "%s contains duplicates", assetIds);
+        
+        final DirectoryBase directory = directoryService.read(directoryId);
+        
+        if (directory instanceof SparseDirectoryBase) {
+            setEntries(SparseDirectoryBase.class.cast(directory), assetIds);
+        } else {
+            setAssets(directory, assetIds);
+        }
+    }
+    
+    private void setAssets(DirectoryBase directory, List<Long> assetIds) {
+        @SuppressWarnings("unchecked")
+        final List<AssetBase> assets = (List<AssetBase>) directory.getAssets();
+        
+        // one pass to find the positions currently occupied by the specified assets
+        final Map<Long, AssetBase> byId = Maps.newHashMap();
+        final List<Integer> slots = Lists.newArrayListWithCapacity(assetIds.size());
+        final Set<Long> specified = Sets.newHashSet(assetIds);
+        for (int i = 0; i < assets.size(); i++) {
+            final AssetBase asset = assets.get(i);
+            if (specified.contains(asset.getId())) {
+                checkUnique(directory, byId.put(asset.getId(), asset));
+                slots.add(i);
+            }
+        }
+        
+        checkContained(directory, assetIds, byId.keySet());
+        
+        final List<AssetBase> moved = Lists.newArrayList();
+        for (int i = 0; i < slots.size(); i++) {
+            final AssetBase asset = byId.get(assetIds.get(i));
+            if (assets.get(slots.get(i)) != asset) {
+                moved.add(asset);
+            }
+        }
+        
+        if (!moved.isEmpty()) preSetAssetsEvent.eventDirectoryPreSetAssets(directory, moved);
+        
+        for (int i = 0; i < slots.size(); i++) {
+            final AssetBase asset = byId.get(assetIds.get(i));
+            if (assets.get(slots.get(i)) != asset) {
+                assets.set(slots.get(i), asset);
+            }
+        }
+        
+        LOG.trace("Moved {} of {} specified assets in {}", new Object[] {
+            moved.size(), assetIds.size(), directory
+        });
+        
+        if (!moved.isEmpty()) postSetAssetsEvent.eventDirectoryPostSetAssets(directory, moved);
+    }
+    
+    private void setEntries(SparseDirectoryBase directory, List<Long> assetIds) {
+        final List<? extends DirectoryEntryBase> entries = directory.getEntries();
+        
+        // the order keys currently occupied by the specified assets, in ascending order
+        final Map<Long, DirectoryEntryBase> byId = Maps.newHashMap();
+        final List<Long> positions = Lists.newArrayListWithCapacity(assetIds.size());
+        final Set<Long> specified = Sets.newHashSet(assetIds);
+        for (DirectoryEntryBase entry : entries) {
+            final long assetId = entry.getAsset().getId();
+            if (specified.contains(assetId)) {
+                checkUnique(directory, byId.put(assetId, entry));
+                positions.add(entry.getPosition());
+            }
+        }
+        
+        checkContained(directory, assetIds, byId.keySet());
+        
+        final List<AssetBase> moved = Lists.newArrayList();
+        for (int i = 0; i < positions.size(); i++) {
+            final DirectoryEntryBase entry = byId.get(assetIds.get(i));
+            if (entry.getPosition() != positions.get(i).longValue()) {
+                moved.add(entry.getAsset());
+            }
+        }
+        
+        if (!moved.isEmpty()) preSetAssetsEvent.eventDirectoryPreSetAssets(directory, moved);
+        
+        for (int i = 0; i < positions.size(); i++) {
+            final DirectoryEntryBase entry = byId.get(assetIds.get(i));
+            if (entry.getPosition() != positions.get(i).longValue()) {
+                entry.setPosition(positions.get(i));
+            }
+        }
+        
+        LOG.trace("Moved {} of {} specified assets in {}", new Object[] {
+            moved.size(), assetIds.size(), directory
+        });
+        
+        if (!moved.isEmpty()) postSetAssetsEvent.eventDirectoryPostSetAssets(directory, moved);
+    }
+    
+    private void checkUnique(DirectoryBase directory, Object previous) {
+        // a second slot for the same asset would leave more slots than specified assets
+        Preconditions.checkState(previous == null, "%s is contained more than once in %s", previous, directory);
+    }
+    
+    private void checkContained(DirectoryBase directory, List<Long> assetIds, Set<Long> found) {
+        if (found.size() == assetIds.size()) return;
+        final Set<Long> missing = Sets.newHashSet(assetIds);
+        missing.removeAll(found);
+        throw new IllegalStateException(String.format("%s are not contained in %s", missing, directory));
+    }
+
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.media.directory;
+
+import java.util.List;
+
+import de.cosmocode.palava.media.asset.AssetBase;
+
+/**
+ * A {@link DirectoryBase} which orders its assets using sparse order keys
+ * rather than list indices. Moving or inserting an asset therefore
+ * updates a single {@link DirectoryEntryBase} instead of renumbering all
+ * assets between the old and the new position.
+ * 
+ * <p>
+ *   Implementations should map {@link #getEntries()} ordered by
+ *   {@link DirectoryEntryBase#getPosition()} and derive {@link #getAssets()}
+ *   from it. Commands will use the entries instead of the assets
+ *   for all modifications.
+ * </p>
+ *
+ * @since 2.2
+ * @author agent
+ */
+public interface SparseDirectoryBase extends DirectoryBase {
+
+    /**
+     * Abstract query name for retrieving the entries of the directory whose id is passed
+     * as first parameter, ordered by ascending order key. Required by {@link AbstractDirectoryService}.
+     */
+    String ENTRIES = "SparseDirectoryBase.ENTRIES";
+
+    /**
+     * Returns all entries of this directory, ordered by ascending order key.
+     * Removing an entry from the returned list removes the corresponding
+     * asset from this directory.
+     * 
+     * @return a list of all entries
+     */
+    List<? extends DirectoryEntryBase> getEntries();
+    
+    /**
+     * Adds the given asset to this directory using the specified order key.
+     * 
+     * @param asset the asset
+     * @param position the order key
+     * @return the new entry
+     * @throws NullPointerException if asset is null
+     */
+    DirectoryEntryBase addEntry(AssetBase asset, long position);
+    
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmcode.palava.media;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+
+import de.cosmocode.palava.jpa.Transactional;
+import de.cosmocode.palava.media.AfterCommit;
+import de.cosmocode.palava.media.AfterCommitModule;
+
+/**
+ * Tests {@link AfterCommit} and the {@link AfterCommitModule}.
+ *
+ * @author agent
+ */
+public final class AfterCommitTest {
+
+    /**
+     * Records executed actions.
+     */
+    private static final class Recorder {
+        
+        private final List<String> executed = Lists.newArrayList();
+        
+        public Runnable action(final String name) {
+            return new Runnable() {
+                
+                @Override
+                public void run() {
+                    executed.add(name);
+                }
+                
+            };
+        }
+        
+    }
+    
+    /**
+     * A service whose transactional methods are intercepted.
+     */
+    static class Service {
+        
+        @Inject
+        private Inner inner;
+        
+        @Transactional
+        public List<String> execute(Recorder recorder, String name) {
+            AfterCommit.execute(recorder.action(name));
+            return Lists.newArrayList(recorder.executed);
+        }
+        
+        @Transactional
+        public List<String> nested(Recorder recorder) {
+            AfterCommit.execute(recorder.action("outer"));
+            final List<String> afterInner = inner.execute(recorder, "inner");
+            Assert.assertTrue(afterInner.isEmpty());
+            return Lists.newArrayList(recorder.executed);
+        }
+        
+        @Transactional
+        public void rollback(Recorder recorder) {
+            inner.execute(recorder, "inner");
+            AfterCommit.execute(recorder.action("outer"));
+            throw new IllegalArgumentException();
+        }
+        
+    }
+    
+    /**
+     * A second service, called by {@link Service}.
+     */
+    static class Inner {
+        
+        @Transactional
+        public List<String> execute(Recorder recorder, String name) {
+            AfterCommit.execute(recorder.action(name));
+            return Lists.newArrayList(recorder.executed);
+        }
+        
+    }
+    
+    private Service service() {
+        return Guice.createInjector(new AfterCommitModule()).getInstance(Service.class);
+    }
+    
+    /**
+     * Tests {@link AfterCommit#execute(Runnable)} outside of a transaction.
+     */
+    @Test
+    public void immediate() {
+        final Recorder recorder = new Recorder();
+        AfterCommit.execute(recorder.action("action"));
+        Assert.assertEquals(Lists.newArrayList("action"), recorder.executed);
+    }
+    
+    /**
+     * Tests {@link AfterCommit#execute(Runnable)} deferring actions until the transactional method returned.
+     */
+    @Test
+    public void deferred() {
+        final Recorder recorder = new Recorder();
+        final List<String> during = service().execute(recorder, "action");
+        Assert.assertTrue(during.isEmpty());
+        Assert.assertEquals(Lists.newArrayList("action"), recorder.executed);
+    }
+    
+    /**
+     * Tests {@link AfterCommit#execute(Runnable)} deferring actions of nested transactional methods
+     * until the outermost one returned.
+     */
+    @Test
+    public void nested() {
+        final Recorder recorder = new Recorder();
+        final List<String> during = service().nested(recorder);
+        Assert.assertTrue(during.isEmpty());
+        Assert.assertEquals(Lists.newArrayList("outer", "inner"), recorder.executed);
+    }
+    
+    /**
+     * Tests {@link AfterCommit#execute(Runnable)} dropping all actions if the outermost method threw.
+     */
+    @Test
+    public void rollback() {
+        final Recorder recorder = new Recorder();
+        final Service service = service();
+        try {
+            service.rollback(recorder);
+            Assert.fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(recorder.executed.isEmpty());
+        }
+        
+        // the frame of the failed transaction must not leak into the next one
+        service.execute(recorder, "next");
+        Assert.assertEquals(Lists.newArrayList("next"), recorder.executed);
+    }
+    
+    /**
+     * Tests the {@link AfterCommitModule} detecting a transaction which is still active
+     * after the outermost transactional method returned.
+     */
+    @Test
+    public void misordered() {
+        final EntityTransaction transaction = EasyMock.createMock("transaction", EntityTransaction.class);
+        EasyMock.expect(transaction.isActive()).andReturn(true);
+        final EntityManager entityManager = EasyMock.createMock("entityManager", EntityManager.class);
+        EasyMock.expect(entityManager.getTransaction()).andReturn(transaction);
+        EasyMock.replay(transaction, entityManager);
+        
+        final Service service = Guice.createInjector(new AfterCommitModule(), new AbstractModule() {
+            
+            @Override
+            protected void configure() {
+                bind(EntityManager.class).toInstance(entityManager);
+            }
+            
+        }).getInstance(Service.class);
+        
+        final Recorder recorder = new Recorder();
+        try {
+            service.nested(recorder);
+            Assert.fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(recorder.executed.isEmpty());
+        }
+        EasyMock.verify(transaction, entityManager);
+    }
+    
+    /**
+     * Tests {@link AfterCommitModule#isInstalled(com.google.inject.Injector)}.
+     */
+    @Test
+    public void isInstalled() {
+        Assert.assertTrue(AfterCommitModule.isInstalled(Guice.createInjector(new AfterCommitModule())));
+        Assert.assertFalse(AfterCommitModule.isInstalled(Guice.createInjector()));
+    }
+    
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmcode.palava.media;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.persistence.Entity;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.media.AsyncEvents;
+import de.cosmocode.palava.media.asset.AbstractAsset;
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.asset.AssetCreatedEvent;
+import de.cosmocode.palava.media.asset.AssetDeletedEvent;
+import de.cosmocode.palava.media.asset.AssetUpdatedEvent;
+import de.cosmocode.palava.media.directory.DirectoryBase;
+import de.cosmocode.rendering.Renderer;
+import de.cosmocode.rendering.RenderingException;
+import de.cosmocode.rendering.RenderingLevel;
+
+/**
+ * Tests {@link AsyncEvents}.
+ *
+ * @author agent
+ */
+public final class AsyncEventsTest {
+
+    /**
+     * An executor which queues tasks until they are run explicitly.
+     */
+    private static final class ManualExecutor implements Executor {
+        
+        private final List<Runnable> tasks = Lists.newArrayList();
+        
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+        
+        public int runAll() {
+            final int size = tasks.size();
+            for (Runnable task : Lists.newArrayList(tasks)) {
+                task.run();
+            }
+            tasks.clear();
+            return size;
+        }
+        
+    }
+    
+    /**
+     * Records all received events.
+     */
+    private static class Listener implements AssetCreatedEvent, AssetUpdatedEvent, AssetDeletedEvent {
+        
+        private final List<String> received = Lists.newArrayList();
+        
+        private final List<AssetBase> assets = Lists.newArrayList();
+        
+        @Override
+        public void eventAssetCreated(AssetBase asset) {
+            record("created", asset);
+        }
+        
+        @Override
+        public void eventAssetUpdated(AssetBase asset) {
+            record("updated", asset);
+        }
+        
+        @Override
+        public void eventAssetDeleted(AssetBase asset) {
+            record("deleted", asset);
+        }
+        
+        void record(String event, AssetBase asset) {
+            received.add(event + ":" + asset.getId());
+            assets.add(asset);
+        }
+        
+    }
+    
+    /**
+     * A mapped asset with a fixed id.
+     */
+    @Entity
+    private static class Item extends AbstractAsset {
+        
+        private final long id;
+        
+        public Item(long id) {
+            this.id = id;
+        }
+        
+        @Override
+        public long getId() {
+            return id;
+        }
+        
+        @Override
+        public Set<? extends DirectoryBase> getDirectories() {
+            return ImmutableSet.of();
+        }
+        
+        @Override
+        public Map<String, String> getMetaData() {
+            return Maps.newHashMap();
+        }
+        
+        @Override
+        public void render(Renderer renderer, RenderingLevel level) throws RenderingException {
+            
+        }
+        
+    }
+    
+    /**
+     * Simulates a runtime generated proxy, which extends the mapped class.
+     */
+    private static final class ItemProxy extends Item {
+        
+        public ItemProxy(long id) {
+            super(id);
+        }
+        
+    }
+    
+    /**
+     * Tests {@link AsyncEvents#of(Class, Object)} delivering only the latest of equal pending calls.
+     */
+    @Test
+    public void coalesce() {
+        final ManualExecutor executor = new ManualExecutor();
+        final Listener listener = new Listener();
+        final AssetUpdatedEvent unit = new AsyncEvents(executor).of(AssetUpdatedEvent.class, listener);
+        
+        final Item latest = new Item(1L);
+        unit.eventAssetUpdated(new Item(1L));
+        unit.eventAssetUpdated(latest);
+        unit.eventAssetUpdated(new Item(2L));
+        
+        Assert.assertEquals(2, executor.runAll());
+        Assert.assertEquals(Lists.newArrayList("updated:1", "updated:2"), listener.received);
+        Assert.assertSame(latest, listener.assets.get(0));
+    }
+    
+    /**
+     * Tests {@link AsyncEvents#of(Class, Object)} coalescing proxies with their mapped entities.
+     */
+    @Test
+    public void coalesceProxies() {
+        final ManualExecutor executor = new ManualExecutor();
+        final Listener listener = new Listener();
+        final AssetUpdatedEvent unit = new AsyncEvents(executor).of(AssetUpdatedEvent.class, listener);
+        
+        unit.eventAssetUpdated(new Item(1L));
+        unit.eventAssetUpdated(new ItemProxy(1L));
+        
+        Assert.assertEquals(1, executor.runAll());
+        Assert.assertEquals(Lists.newArrayList("updated:1"), listener.received);
+    }
+    
+    /**
+     * Tests {@link AsyncEvents#of(Class, Object)} keeping the events of one entity in order
+     * across event types, coalescing only with the last pending call.
+     */
+    @Test
+    public void order() {
+        final ManualExecutor executor = new ManualExecutor();
+        final Listener listener = new Listener();
+        final AsyncEvents events = new AsyncEvents(executor);
+        final AssetCreatedEvent created = events.of(AssetCreatedEvent.class, listener);
+        final AssetUpdatedEvent updated = events.of(AssetUpdatedEvent.class, listener);
+        final AssetDeletedEvent deleted = events.of(AssetDeletedEvent.class, listener);
+        
+        created.eventAssetCreated(new Item(1L));
+        updated.eventAssetUpdated(new Item(1L));
+        updated.eventAssetUpdated(new Item(1L));
+        deleted.eventAssetDeleted(new Item(1L));
+        updated.eventAssetUpdated(new Item(1L));
+        
+        Assert.assertEquals(1, executor.runAll());
+        Assert.assertEquals(
+            Lists.newArrayList("created:1", "updated:1", "deleted:1", "updated:1"),
+            listener.received
+        );
+    }
+    
+    /**
+     * Tests {@link AsyncEvents#of(Class, Object)} delivering in the calling thread if the executor is saturated.
+     */
+    @Test
+    public void rejected() {
+        final Executor executor = new Executor() {
+            
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+            
+        };
+        final Listener listener = new Listener();
+        final AssetUpdatedEvent unit = new AsyncEvents(executor).of(AssetUpdatedEvent.class, listener);
+        
+        unit.eventAssetUpdated(new Item(1L));
+        Assert.assertEquals(Lists.newArrayList("updated:1"), listener.received);
+        unit.eventAssetUpdated(new Item(1L));
+        Assert.assertEquals(Lists.newArrayList("updated:1", "updated:1"), listener.received);
+    }
+    
+    /**
+     * Tests {@link AsyncEvents#of(Class, Object)} continuing with the queue of an entity after a listener failed.
+     */
+    @Test
+    public void failingListener() {
+        final ManualExecutor executor = new ManualExecutor();
+        final Listener listener = new Listener() {
+            
+            @Override
+            public void eventAssetCreated(AssetBase asset) {
+                throw new IllegalStateException();
+            }
+            
+        };
+        final AsyncEvents events = new AsyncEvents(executor);
+        final AssetCreatedEvent created = events.of(AssetCreatedEvent.class, listener);
+        final AssetUpdatedEvent updated = events.of(AssetUpdatedEvent.class, listener);
+        
+        created.eventAssetCreated(new Item(1L));
+        updated.eventAssetUpdated(new Item(1L));
+        Assert.assertEquals(1, executor.runAll());
+        Assert.assertEquals(Lists.newArrayList("updated:1"), listener.received);
+        
+        updated.eventAssetUpdated(new Item(1L));
+        Assert.assertEquals(1, executor.runAll());
+        Assert.assertEquals(Lists.newArrayList("updated:1", "updated:1"), listener.received);
+    }
+    
+}
@@ -37,6 +37,8 @@ import de.cosmocode.rendering.RenderingLevel;
  */
 public final class ConcreteAsset extends AbstractAsset {
 
+    private final Map<String, String> metaData = Maps.newHashMap();
+
     @Override
     public long getId() {
         return 0;
@@ -49,7 +51,7 @@ public final class ConcreteAsset extends AbstractAsset {
     
     @Override
     public Map<String, String> getMetaData() {
-        return Maps.newHashMap();
+        return metaData;
     }
 
     @Override
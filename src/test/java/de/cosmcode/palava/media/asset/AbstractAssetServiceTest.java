@@ -0,0 +1,325 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.inject.Guice;
+
+import de.cosmcode.palava.media.ConcreteAsset;
+import de.cosmocode.palava.core.DefaultRegistryModule;
+import de.cosmocode.palava.core.Registry;
+import de.cosmocode.palava.media.MediaEvents;
+import de.cosmocode.palava.media.asset.AbstractAssetService;
+import de.cosmocode.palava.media.asset.ByteRange;
+import de.cosmocode.palava.media.asset.ChannelStore;
+import de.cosmocode.palava.store.Store;
+
+/**
+ * Tests the range reads of {@link AbstractAssetService} using a {@link ChannelStore}
+ * and a store which only supports streams.
+ *
+ * @author agent
+ */
+public final class AbstractAssetServiceTest {
+
+    private static final byte[] BINARY = new byte[100];
+
+    static {
+        for (int i = 0; i < BINARY.length; i++) {
+            BINARY[i] = (byte) i;
+        }
+    }
+
+    private File file;
+
+    private Registry registry;
+
+    /**
+     * Writes the binary data to a temporary file.
+     *
+     * @throws IOException should not happen
+     */
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("asset", ".bin");
+        Files.write(BINARY, file);
+        registry = Guice.createInjector(new DefaultRegistryModule()).getInstance(Registry.class);
+    }
+
+    /**
+     * Removes the temporary file.
+     *
+     * @throws IOException should not happen
+     */
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteRecursively(file);
+    }
+
+    /**
+     * A store which serves the binary data from the temporary file.
+     */
+    private final class FileStore implements ChannelStore {
+
+        @Override
+        public String create(InputStream stream) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void create(InputStream stream, String identifier) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InputStream read(String identifier) {
+            return new ByteArrayInputStream(BINARY);
+        }
+
+        @Override
+        public Set<String> list() {
+            return ImmutableSet.of("a");
+        }
+
+        @Override
+        public void delete(String identifier) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FileChannel channel(String identifier) throws IOException {
+            return new RandomAccessFile(file, "r").getChannel();
+        }
+
+    }
+
+    /**
+     * A service which uses the given store and no entity manager.
+     */
+    private final class Service extends AbstractAssetService<ConcreteAsset> {
+
+        private final Store store;
+
+        public Service(Store store) {
+            super(new MediaEvents(registry));
+            this.store = store;
+        }
+
+        @Override
+        protected Store getStore() {
+            return store;
+        }
+
+        @Override
+        protected EntityManager entityManager() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected Class<ConcreteAsset> entityClass() {
+            return ConcreteAsset.class;
+        }
+
+        @Override
+        public void dispose() {
+
+        }
+
+    }
+
+    private Service channels() {
+        return new Service(new FileStore());
+    }
+
+    private Service streams() {
+        final Store store = new FileStore();
+        return new Service(new Store() {
+
+            @Override
+            public String create(InputStream stream) throws IOException {
+                return store.create(stream);
+            }
+
+            @Override
+            public void create(InputStream stream, String identifier) throws IOException {
+                store.create(stream, identifier);
+            }
+
+            @Override
+            public InputStream read(String identifier) throws IOException {
+                return store.read(identifier);
+            }
+
+            @Override
+            public Set<String> list() throws IOException {
+                return store.list();
+            }
+
+            @Override
+            public void delete(String identifier) throws IOException {
+                store.delete(identifier);
+            }
+
+        });
+    }
+
+    private byte[] read(Service service, ByteRange range) throws IOException {
+        final ConcreteAsset asset = new ConcreteAsset();
+        asset.setStoreIdentifier("a");
+        final InputStream stream = service.readRange(asset, range);
+        try {
+            return ByteStreams.toByteArray(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private byte[] slice(int offset, int length) {
+        final byte[] slice = new byte[length];
+        System.arraycopy(BINARY, offset, slice, 0, length);
+        return slice;
+    }
+
+    private void assertRanges(Service service) throws IOException {
+        Assert.assertArrayEquals(slice(10, 20), read(service, ByteRange.of(10, 20)));
+        Assert.assertArrayEquals(slice(90, 10), read(service, ByteRange.of(90, 50)));
+        Assert.assertArrayEquals(slice(40, 60), read(service, ByteRange.from(40)));
+        Assert.assertArrayEquals(slice(100, 0), read(service, ByteRange.from(100)));
+        Assert.assertArrayEquals(slice(75, 25), read(service, ByteRange.last(25)));
+        Assert.assertArrayEquals(BINARY, read(service, ByteRange.last(1000)));
+    }
+
+    /**
+     * Tests {@link AbstractAssetService#readRange(de.cosmocode.palava.media.asset.AssetBase, ByteRange)}
+     * using file channels.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void readRangeChannel() throws IOException {
+        assertRanges(channels());
+    }
+
+    /**
+     * Tests {@link AbstractAssetService#readRange(de.cosmocode.palava.media.asset.AssetBase, ByteRange)}
+     * using streams.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void readRangeStream() throws IOException {
+        assertRanges(streams());
+    }
+
+    /**
+     * Tests {@link AbstractAssetService#readRange(de.cosmocode.palava.media.asset.AssetBase, ByteRange)}
+     * using file channels and a range starting beyond the end of the binary data.
+     *
+     * @throws IOException should not happen
+     */
+    @Test(expected = PersistenceException.class)
+    public void readRangeChannelBeyond() throws IOException {
+        read(channels(), ByteRange.of(101, 1));
+    }
+
+    /**
+     * Tests {@link AbstractAssetService#readRange(de.cosmocode.palava.media.asset.AssetBase, ByteRange)}
+     * using streams and a range starting beyond the end of the binary data.
+     *
+     * @throws IOException should not happen
+     */
+    @Test(expected = PersistenceException.class)
+    public void readRangeStreamBeyond() throws IOException {
+        read(streams(), ByteRange.of(101, 1));
+    }
+
+    /**
+     * A non-blocking target which accepts a limited number of bytes and nothing after that.
+     */
+    private static final class StalledChannel implements WritableByteChannel {
+
+        private int capacity;
+
+        public StalledChannel(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public int write(ByteBuffer source) {
+            final int written = Math.min(capacity, source.remaining());
+            source.position(source.position() + written);
+            capacity -= written;
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+
+        }
+
+    }
+
+    private ConcreteAsset asset() {
+        final ConcreteAsset asset = new ConcreteAsset();
+        asset.setStoreIdentifier("a");
+        return asset;
+    }
+
+    /**
+     * Tests {@link AbstractAssetService#transferTo(de.cosmocode.palava.media.asset.AssetBase,
+     * WritableByteChannel)} using file channels and a target which stops accepting bytes.
+     */
+    @Test(timeout = 10000)
+    public void transferToChannelStalled() {
+        Assert.assertEquals(30, channels().transferTo(asset(), new StalledChannel(30)));
+    }
+
+    /**
+     * Tests {@link AbstractAssetService#transferTo(de.cosmocode.palava.media.asset.AssetBase,
+     * WritableByteChannel)} using streams and a target which stops accepting bytes.
+     */
+    @Test(timeout = 10000)
+    public void transferToStreamStalled() {
+        Assert.assertEquals(30, streams().transferTo(asset(), new StalledChannel(30)));
+    }
+
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Query;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
+
+import de.cosmcode.palava.media.ConcreteAsset;
+import de.cosmocode.palava.core.DefaultRegistryModule;
+import de.cosmocode.palava.core.Registry;
+import de.cosmocode.palava.media.MediaConfig;
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.asset.AssetExpirationService;
+import de.cosmocode.palava.media.asset.AssetExpiredEvent;
+import de.cosmocode.palava.media.asset.AssetUnexpiredEvent;
+import de.cosmocode.palava.media.asset.ExpirationScheduler;
+
+/**
+ * Tests the batches of {@link AssetExpirationService}.
+ *
+ * @author agent
+ */
+public final class AssetExpirationServiceTest {
+
+    private final List<String> log = Lists.newArrayList();
+
+    private EntityManager manager;
+
+    private Injector injector;
+
+    /**
+     * A transaction which logs its commits.
+     */
+    private final class LoggingTransaction implements EntityTransaction {
+
+        private boolean active;
+
+        @Override
+        public void begin() {
+            active = true;
+        }
+
+        @Override
+        public void commit() {
+            active = false;
+            log.add("commit");
+        }
+
+        @Override
+        public void rollback() {
+            active = false;
+            log.add("rollback");
+        }
+
+        @Override
+        public void setRollbackOnly() {
+
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return false;
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+
+    }
+
+    /**
+     * Creates an injector with a batch size of 2 and listeners logging all events.
+     */
+    @Before
+    public void setUp() {
+        manager = EasyMock.createMock("manager", EntityManager.class);
+        final EntityManagerFactory factory = EasyMock.createMock("factory", EntityManagerFactory.class);
+        EasyMock.expect(factory.createEntityManager()).andReturn(manager).atLeastOnce();
+        EasyMock.expect(manager.getTransaction()).andReturn(new LoggingTransaction()).anyTimes();
+        manager.clear();
+        EasyMock.expectLastCall().anyTimes();
+        manager.close();
+        EasyMock.expectLastCall().atLeastOnce();
+        EasyMock.replay(factory);
+
+        injector = Guice.createInjector(new DefaultRegistryModule(), new AbstractModule() {
+
+            @Override
+            protected void configure() {
+                bind(EntityManagerFactory.class).toInstance(factory);
+                bind(ScheduledExecutorService.class).annotatedWith(ExpirationScheduler.class).toInstance(
+                    EasyMock.createMock(ScheduledExecutorService.class));
+                bindConstant().annotatedWith(Names.named(MediaConfig.EXPIRATION_BATCH_SIZE)).to(2);
+            }
+
+        });
+
+        final Registry registry = injector.getInstance(Registry.class);
+        registry.register(AssetExpiredEvent.class, new AssetExpiredEvent() {
+
+            @Override
+            public void eventAssetExpired(AssetBase asset) {
+                log.add("expired " + asset.getName());
+            }
+
+        });
+        registry.register(AssetUnexpiredEvent.class, new AssetUnexpiredEvent() {
+
+            @Override
+            public void eventAssetUnexpired(AssetBase asset) {
+                log.add("unexpired " + asset.getName());
+            }
+
+        });
+    }
+
+    private static ConcreteAsset asset(String name, boolean expired) {
+        final ConcreteAsset asset = new ConcreteAsset();
+        asset.setName(name);
+        asset.setExpired(expired);
+        return asset;
+    }
+
+    private void expectIds(String name, List<?>... pages) {
+        final Query query = EasyMock.createMock(Query.class);
+        EasyMock.expect(manager.createNamedQuery(name)).andReturn(query).times(pages.length);
+        EasyMock.expect(query.setMaxResults(2)).andReturn(query).times(pages.length);
+        for (List<?> page : pages) {
+            EasyMock.expect(query.getResultList()).andReturn(page);
+        }
+        EasyMock.replay(query);
+    }
+
+    private void expectUpdate(String name, List<Long> ids, int updated) {
+        final Query query = EasyMock.createMock(Query.class);
+        EasyMock.expect(manager.createNamedQuery(name)).andReturn(query);
+        EasyMock.expect(query.setParameter(1, ids)).andReturn(query);
+        EasyMock.expect(query.executeUpdate()).andReturn(updated);
+        EasyMock.replay(query);
+    }
+
+    private void expectAssets(List<Long> ids, AssetBase... assets) {
+        final Query query = EasyMock.createMock(Query.class);
+        EasyMock.expect(manager.createNamedQuery(AssetBase.BY_IDS)).andReturn(query);
+        EasyMock.expect(query.setParameter(1, ids)).andReturn(query);
+        EasyMock.expect(query.getResultList()).andReturn(ImmutableList.of(assets));
+        EasyMock.replay(query);
+    }
+
+    /**
+     * Tests expiring assets in batches, firing events after the commit of each batch and
+     * skipping assets which changed concurrently.
+     */
+    @Test
+    public void run() {
+        final List<Long> first = ImmutableList.of(1L, 2L);
+        final List<Long> second = ImmutableList.of(3L);
+        final List<Long> third = ImmutableList.of(4L);
+        expectIds(AssetBase.EXPIRING_IDS, first, second);
+        expectUpdate(AssetBase.UPDATE_EXPIRING, first, 1);
+        expectAssets(first, asset("a", true), asset("b", false));
+        expectUpdate(AssetBase.UPDATE_EXPIRING, second, 1);
+        expectAssets(second, asset("c", true));
+        expectIds(AssetBase.UNEXPIRING_IDS, third);
+        expectUpdate(AssetBase.UPDATE_UNEXPIRING, third, 1);
+        expectAssets(third, asset("d", false));
+        EasyMock.replay(manager);
+
+        injector.getInstance(AssetExpirationService.class).run();
+
+        Assert.assertEquals(ImmutableList.of(
+            "commit", "expired a",
+            "commit", "expired c",
+            "commit", "unexpired d"
+        ), log);
+        EasyMock.verify(manager);
+    }
+
+    /**
+     * Tests that a failing batch is rolled back, fires no events and stops the current run.
+     */
+    @Test
+    public void runFailing() {
+        final List<Long> first = ImmutableList.of(1L, 2L);
+        expectIds(AssetBase.EXPIRING_IDS, first);
+        final Query query = EasyMock.createMock(Query.class);
+        EasyMock.expect(manager.createNamedQuery(AssetBase.UPDATE_EXPIRING)).andReturn(query);
+        EasyMock.expect(query.setParameter(1, first)).andReturn(query);
+        EasyMock.expect(query.executeUpdate()).andThrow(new IllegalStateException("locked"));
+        EasyMock.replay(query);
+        EasyMock.replay(manager);
+
+        injector.getInstance(AssetExpirationService.class).run();
+
+        Assert.assertEquals(ImmutableList.of("rollback"), log);
+        EasyMock.verify(manager);
+    }
+
+}
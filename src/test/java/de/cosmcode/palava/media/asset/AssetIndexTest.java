@@ -0,0 +1,198 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.inject.Guice;
+
+import de.cosmocode.palava.core.DefaultRegistryModule;
+import de.cosmocode.palava.core.Registry;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.asset.AssetIndex;
+
+/**
+ * Tests {@link AssetIndex}.
+ *
+ * @author agent
+ */
+public final class AssetIndexTest {
+
+    private File directory;
+    
+    private Registry registry;
+    
+    private AssetIndex unit;
+    
+    /**
+     * Opens an index in a temporary directory.
+     * 
+     * @throws IOException should not happen
+     * @throws LifecycleException should not happen
+     */
+    @Before
+    public void setUp() throws IOException, LifecycleException {
+        directory = Files.createTempDir();
+        registry = Guice.createInjector(new DefaultRegistryModule()).getInstance(Registry.class);
+        unit = open();
+    }
+    
+    private AssetIndex open() throws LifecycleException {
+        final AssetIndex index = new AssetIndex(directory, registry);
+        index.initialize();
+        return index;
+    }
+    
+    /**
+     * Closes the index and removes the temporary directory.
+     * 
+     * @throws IOException should not happen
+     * @throws LifecycleException should not happen
+     */
+    @After
+    public void tearDown() throws IOException, LifecycleException {
+        unit.dispose();
+        Files.deleteRecursively(directory);
+    }
+    
+    private AssetBase asset(long id, String title) {
+        final AssetBase asset = EasyMock.createMock(AssetBase.class);
+        EasyMock.expect(asset.getId()).andReturn(id).anyTimes();
+        EasyMock.expect(asset.getName()).andReturn("asset" + id + ".png").anyTimes();
+        EasyMock.expect(asset.getTitle()).andReturn(title).anyTimes();
+        EasyMock.expect(asset.getDescription()).andReturn("An uploaded image").anyTimes();
+        EasyMock.replay(asset);
+        return asset;
+    }
+    
+    /**
+     * Tests that created assets can be found by name, title and description.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test
+    public void created() throws IOException {
+        unit.eventAssetCreated(asset(1, "Red logo"));
+        unit.eventAssetCreated(asset(2, "Blue banner"));
+        
+        Assert.assertEquals(Arrays.asList(1L), unit.search("logo", 10));
+        Assert.assertEquals(Arrays.asList(2L), unit.search("asset2.png", 10));
+        Assert.assertEquals(2, unit.search("uploaded", 10).size());
+        Assert.assertEquals(Collections.emptyList(), unit.search("green", 10));
+    }
+    
+    /**
+     * Tests that {@link AssetIndex#search(String, int)} respects the limit.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test
+    public void limit() throws IOException {
+        for (long id = 1; id <= 5; id++) {
+            unit.eventAssetCreated(asset(id, "Logo " + id));
+        }
+        Assert.assertEquals(3, unit.search("logo", 3).size());
+    }
+    
+    /**
+     * Tests that updated assets can only be found by their new title.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test
+    public void updated() throws IOException {
+        unit.eventAssetCreated(asset(1, "Red logo"));
+        Assert.assertEquals(Arrays.asList(1L), unit.search("red", 10));
+        
+        unit.eventAssetUpdated(asset(1, "Green logo"));
+        Assert.assertEquals(Collections.emptyList(), unit.search("red", 10));
+        Assert.assertEquals(Arrays.asList(1L), unit.search("green", 10));
+        Assert.assertEquals(Arrays.asList(1L), unit.search("logo", 10));
+    }
+    
+    /**
+     * Tests that deleted assets can not be found anymore.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test
+    public void deleted() throws IOException {
+        final AssetBase asset = asset(1, "Red logo");
+        unit.eventAssetCreated(asset);
+        unit.eventAssetDeleted(asset);
+        Assert.assertEquals(Collections.emptyList(), unit.search("logo", 10));
+    }
+    
+    /**
+     * Tests that {@link AssetIndex#reindex(long, long, java.util.Collection)} adds missing
+     * assets and removes deleted assets within the given range only.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test
+    public void reindex() throws IOException {
+        unit.eventAssetCreated(asset(1, "Logo"));
+        unit.eventAssetCreated(asset(2, "Logo"));
+        unit.eventAssetCreated(asset(4, "Logo"));
+        
+        // 2 has been deleted and 3 created without the index noticing
+        unit.reindex(1, 3, ImmutableList.of(asset(3, "Logo")));
+        
+        final List<Long> ids = Lists.newArrayList(unit.search("logo", 10));
+        Collections.sort(ids);
+        Assert.assertEquals(Arrays.asList(1L, 3L, 4L), ids);
+    }
+    
+    /**
+     * Tests that changes survive closing and reopening the index.
+     * 
+     * @throws IOException should not happen
+     * @throws LifecycleException should not happen
+     */
+    @Test
+    public void reopen() throws IOException, LifecycleException {
+        unit.eventAssetCreated(asset(1, "Red logo"));
+        unit.dispose();
+        unit = open();
+        Assert.assertEquals(Arrays.asList(1L), unit.search("logo", 10));
+    }
+    
+    /**
+     * Tests {@link AssetIndex#search(String, int)} with an invalid query.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void searchInvalid() throws IOException {
+        unit.search("title:(logo", 10);
+    }
+    
+}
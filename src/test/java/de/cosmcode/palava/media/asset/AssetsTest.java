@@ -0,0 +1,152 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.matcher.Matchers;
+
+import de.cosmcode.palava.media.ConcreteAsset;
+import de.cosmocode.palava.core.DefaultRegistryModule;
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.jpa.Transactional;
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.asset.Assets;
+
+/**
+ * Tests {@link Assets}.
+ *
+ * @author agent
+ */
+public final class AssetsTest {
+
+    private final AtomicInteger transactions = new AtomicInteger();
+
+    private Injector injector;
+
+    /**
+     * Creates an injector which counts the running transactions.
+     */
+    @Before
+    public void setUp() {
+        injector = Guice.createInjector(new DefaultRegistryModule(), new AbstractModule() {
+
+            @Override
+            protected void configure() {
+                bindInterceptor(Matchers.any(), Matchers.annotatedWith(Transactional.class), new MethodInterceptor() {
+
+                    @Override
+                    public Object invoke(MethodInvocation invocation) throws Throwable {
+                        transactions.incrementAndGet();
+                        try {
+                            return invocation.proceed();
+                        } finally {
+                            transactions.decrementAndGet();
+                        }
+                    }
+
+                });
+            }
+
+        });
+    }
+
+    private ConcreteAsset asset() {
+        final ConcreteAsset asset = new ConcreteAsset();
+        asset.setStream(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+        return asset;
+    }
+
+    /**
+     * Tests that services which only implement {@link EntityService} create assets in a transaction.
+     */
+    @Test
+    public void createFallback() {
+        @SuppressWarnings("unchecked")
+        final EntityService<AssetBase> service = EasyMock.createMock("service", EntityService.class);
+        final ConcreteAsset asset = asset();
+        EasyMock.expect(service.create(asset)).andAnswer(new IAnswer<AssetBase>() {
+
+            @Override
+            public AssetBase answer() {
+                Assert.assertTrue(transactions.get() > 0);
+                return asset;
+            }
+
+        });
+        EasyMock.replay(service);
+
+        injector.getInstance(Assets.class).create(service, asset);
+
+        Assert.assertEquals(0, transactions.get());
+        EasyMock.verify(service);
+    }
+
+    /**
+     * Tests that the two phase creation removes the binary data and resets
+     * the store identifier if persisting fails.
+     */
+    @Test
+    public void createFailed() {
+        final MemoryStore store = new MemoryStore();
+        final MockAssetService service = injector.getInstance(MockAssetService.class);
+        service.setStore(store);
+        final EntityManager manager = EasyMock.createMock("manager", EntityManager.class);
+        final ConcreteAsset asset = asset();
+        manager.persist(asset);
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Void>() {
+
+            @Override
+            public Void answer() {
+                Assert.assertTrue(transactions.get() > 0);
+                Assert.assertEquals(1, store.list().size());
+                throw new PersistenceException("constraint violated");
+            }
+
+        });
+        EasyMock.replay(manager);
+        service.setEntityManager(manager);
+
+        @SuppressWarnings("unchecked")
+        final EntityService<AssetBase> entities = (EntityService<AssetBase>) (EntityService<?>) service;
+
+        try {
+            injector.getInstance(Assets.class).create(entities, asset);
+            Assert.fail("Expected PersistenceException");
+        } catch (PersistenceException e) {
+            Assert.assertNull(asset.getStoreIdentifier());
+            Assert.assertTrue(store.list().isEmpty());
+        }
+        EasyMock.verify(manager);
+    }
+
+}
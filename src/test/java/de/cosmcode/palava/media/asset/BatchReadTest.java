@@ -0,0 +1,110 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityNotFoundException;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.asset.AssetConstants;
+import de.cosmocode.palava.media.asset.BatchRead;
+import de.cosmocode.palava.media.asset.ExtendedAssetBaseService;
+
+/**
+ * Tests {@link BatchRead}.
+ *
+ * @author agent
+ */
+public final class BatchReadTest {
+    
+    private Map<String, Object> execute(EntityService<AssetBase> service) throws IpcCommandExecutionException {
+        final IpcCall call = EasyMock.createMock(IpcCall.class);
+        final IpcArguments arguments = EasyMock.createMock(IpcArguments.class);
+        EasyMock.expect(call.getArguments()).andReturn(arguments);
+        EasyMock.expect(arguments.get(AssetConstants.ASSET_IDS)).andReturn(Arrays.asList(1L, 2L, 3L));
+        EasyMock.replay(call, arguments);
+        
+        final Map<String, Object> result = Maps.newHashMap();
+        new BatchRead(service).execute(call, result);
+        
+        EasyMock.verify(call, arguments);
+        return result;
+    }
+    
+    /**
+     * Tests {@link BatchRead#execute(IpcCall, Map)} with a plain entity service, which returns
+     * null for one unknown id and throws for another.
+     * 
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void executeFallback() throws IpcCommandExecutionException {
+        final AssetBase asset = EasyMock.createMock(AssetBase.class);
+        
+        @SuppressWarnings("unchecked")
+        final EntityService<AssetBase> service = EasyMock.createMock(EntityService.class);
+        EasyMock.expect(service.read(1L)).andReturn(null);
+        EasyMock.expect(service.read(2L)).andReturn(asset);
+        EasyMock.expect(service.read(3L)).andThrow(new EntityNotFoundException());
+        EasyMock.replay(asset, service);
+        
+        final Map<String, Object> result = execute(service);
+        EasyMock.verify(asset, service);
+        
+        Assert.assertEquals(Arrays.asList(asset), result.get(AssetConstants.ASSETS));
+        Assert.assertEquals(Arrays.asList(1L, 3L), result.get(AssetConstants.MISSING));
+    }
+    
+    /**
+     * Tests {@link BatchRead#execute(IpcCall, Map)} with an {@link ExtendedAssetBaseService}.
+     * 
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void executeExtended() throws IpcCommandExecutionException {
+        final AssetBase asset = EasyMock.createMock(AssetBase.class);
+        
+        @SuppressWarnings("unchecked")
+        final ExtendedAssetBaseService<AssetBase> service = EasyMock.createMock(ExtendedAssetBaseService.class);
+        final List<Long> ids = Arrays.asList(1L, 2L, 3L);
+        EasyMock.expect(service.readAll(ids)).andReturn(ImmutableMap.of(2L, asset));
+        EasyMock.replay(asset, service);
+        
+        @SuppressWarnings("unchecked")
+        final EntityService<AssetBase> casted = (EntityService<AssetBase>) (EntityService<?>) service;
+        final Map<String, Object> result = execute(casted);
+        EasyMock.verify(asset, service);
+        
+        Assert.assertEquals(Arrays.asList(asset), result.get(AssetConstants.ASSETS));
+        Assert.assertEquals(Arrays.asList(1L, 3L), result.get(AssetConstants.MISSING));
+    }
+    
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.cosmocode.palava.media.asset.ByteRange;
+
+/**
+ * Tests {@link ByteRange}.
+ *
+ * @author agent
+ */
+public final class ByteRangeTest {
+
+    /**
+     * Tests {@link ByteRange#resolve(long)} with a regular range.
+     */
+    @Test
+    public void resolve() {
+        final ByteRange range = ByteRange.of(10, 5);
+        Assert.assertSame(range, range.resolve(100));
+        Assert.assertSame(range, range.resolve(0));
+    }
+
+    /**
+     * Tests {@link ByteRange#resolve(long)} with a suffix range.
+     */
+    @Test
+    public void resolveSuffix() {
+        Assert.assertEquals(ByteRange.of(90, 10), ByteRange.last(10).resolve(100));
+        Assert.assertEquals(ByteRange.of(0, 100), ByteRange.last(500).resolve(100));
+        Assert.assertEquals(ByteRange.of(0, 0), ByteRange.last(10).resolve(0));
+        Assert.assertEquals(ByteRange.of(100, 0), ByteRange.last(0).resolve(100));
+    }
+
+    /**
+     * Tests {@link ByteRange#getOffset()} with an unresolved suffix range.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void offsetOfSuffix() {
+        ByteRange.last(10).getOffset();
+    }
+
+    /**
+     * Tests {@link ByteRange#of(long, long)} with a negative offset.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeOffset() {
+        ByteRange.of(-1, 10);
+    }
+
+    /**
+     * Tests {@link ByteRange#last(long)} with a negative length.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeLength() {
+        ByteRange.last(-1);
+    }
+
+    /**
+     * Tests {@link ByteRange#equals(Object)} and {@link ByteRange#hashCode()}.
+     */
+    @Test
+    public void equality() {
+        Assert.assertEquals(ByteRange.of(3, 4), ByteRange.of(3, 4));
+        Assert.assertEquals(ByteRange.of(3, 4).hashCode(), ByteRange.of(3, 4).hashCode());
+        Assert.assertEquals(ByteRange.from(3), ByteRange.of(3, Long.MAX_VALUE));
+        Assert.assertEquals(ByteRange.last(4), ByteRange.last(4));
+        Assert.assertFalse(ByteRange.last(4).equals(ByteRange.of(0, 4)));
+    }
+
+}
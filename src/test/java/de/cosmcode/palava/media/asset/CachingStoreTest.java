@@ -0,0 +1,249 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import de.cosmocode.palava.media.asset.CachingStore;
+import de.cosmocode.palava.media.asset.ChannelStore;
+import de.cosmocode.palava.store.Store;
+
+/**
+ * Tests {@link CachingStore}.
+ *
+ * @author agent
+ */
+public final class CachingStoreTest {
+
+    private static byte[] binary(int size) {
+        final byte[] binary = new byte[size];
+        for (int i = 0; i < size; i++) {
+            binary[i] = (byte) i;
+        }
+        return binary;
+    }
+
+    /**
+     * Creates an answer which returns a new stream on the given binary on every call.
+     *
+     * @param binary the binary
+     * @return a new answer
+     */
+    private static IAnswer<InputStream> stream(final byte[] binary) {
+        return new IAnswer<InputStream>() {
+
+            @Override
+            public InputStream answer() {
+                return new ByteArrayInputStream(binary);
+            }
+
+        };
+    }
+
+    /**
+     * Tests {@link CachingStore#read(String)} hitting the cache on the second read.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void readTwice() throws IOException {
+        final byte[] binary = binary(16);
+        final Store store = EasyMock.createMock("store", Store.class);
+        EasyMock.expect(store.read("a")).andReturn(new ByteArrayInputStream(binary)).once();
+        EasyMock.replay(store);
+
+        final CachingStore unit = new CachingStore(store);
+        Assert.assertArrayEquals(binary, ByteStreams.toByteArray(unit.read("a")));
+        Assert.assertArrayEquals(binary, ByteStreams.toByteArray(unit.read("a")));
+        Assert.assertEquals(1, unit.getMisses());
+        Assert.assertEquals(1, unit.getHits());
+        Assert.assertEquals(16, unit.getSize());
+
+        EasyMock.verify(store);
+    }
+
+    /**
+     * Tests {@link CachingStore#read(String)} with a binary exceeding the maximum entry size.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void readLarge() throws IOException {
+        final byte[] binary = binary(64);
+        final Store store = EasyMock.createMock("store", Store.class);
+        EasyMock.expect(store.read("a")).andAnswer(stream(binary)).times(2);
+        EasyMock.replay(store);
+
+        final CachingStore unit = new CachingStore(store);
+        unit.setMaxEntrySize(32);
+        Assert.assertArrayEquals(binary, ByteStreams.toByteArray(unit.read("a")));
+        Assert.assertArrayEquals(binary, ByteStreams.toByteArray(unit.read("a")));
+        Assert.assertEquals(2, unit.getMisses());
+        Assert.assertEquals(0, unit.getSize());
+
+        EasyMock.verify(store);
+    }
+
+    /**
+     * Tests {@link CachingStore#read(String)} with a binary exceeding the initial buffer size.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void readGrowing() throws IOException {
+        final byte[] binary = binary(100 * 1024);
+        final Store store = EasyMock.createMock("store", Store.class);
+        EasyMock.expect(store.read("a")).andAnswer(stream(binary)).once();
+        EasyMock.replay(store);
+
+        final CachingStore unit = new CachingStore(store);
+        Assert.assertArrayEquals(binary, ByteStreams.toByteArray(unit.read("a")));
+        Assert.assertArrayEquals(binary, ByteStreams.toByteArray(unit.read("a")));
+        Assert.assertEquals(binary.length, unit.getSize());
+
+        EasyMock.verify(store);
+    }
+
+    /**
+     * Tests that a binary deleted while being loaded is not cached.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void readWhileDeleting() throws IOException {
+        final byte[] binary = binary(8);
+        final Store store = EasyMock.createMock("store", Store.class);
+        final CachingStore unit = new CachingStore(store);
+        EasyMock.expect(store.read("a")).andAnswer(new IAnswer<InputStream>() {
+
+            @Override
+            public InputStream answer() throws IOException {
+                final InputStream stale = new ByteArrayInputStream(binary);
+                unit.delete("a");
+                return stale;
+            }
+
+        });
+        store.delete("a");
+        EasyMock.replay(store);
+
+        Assert.assertArrayEquals(binary, ByteStreams.toByteArray(unit.read("a")));
+        Assert.assertEquals(0, unit.getSize());
+
+        EasyMock.verify(store);
+    }
+
+    /**
+     * Tests {@link CachingStore#channel(String)} delegating to a {@link ChannelStore}.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void channel() throws IOException {
+        final File file = File.createTempFile("caching-store", ".bin");
+        final FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        final ChannelStore store = EasyMock.createMock("store", ChannelStore.class);
+        EasyMock.expect(store.channel("a")).andReturn(channel);
+        EasyMock.replay(store);
+
+        try {
+            Assert.assertSame(channel, new CachingStore(store).channel("a"));
+            EasyMock.verify(store);
+        } finally {
+            channel.close();
+            Files.deleteRecursively(file);
+        }
+    }
+
+    /**
+     * Tests {@link CachingStore#channel(String)} decorating a store which does not support channels.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void channelUnsupported() throws IOException {
+        final Store store = EasyMock.createMock("store", Store.class);
+        EasyMock.replay(store);
+        Assert.assertNull(new CachingStore(store).channel("a"));
+        EasyMock.verify(store);
+    }
+
+    /**
+     * Tests {@link CachingStore#delete(String)} invalidating the cached binary.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void delete() throws IOException {
+        final Store store = EasyMock.createMock("store", Store.class);
+        EasyMock.expect(store.read("a")).andReturn(new ByteArrayInputStream(binary(8)));
+        store.delete("a");
+        EasyMock.replay(store);
+
+        final CachingStore unit = new CachingStore(store);
+        unit.read("a").close();
+        Assert.assertEquals(8, unit.getSize());
+        unit.delete("a");
+        Assert.assertEquals(0, unit.getSize());
+
+        EasyMock.verify(store);
+    }
+
+    /**
+     * Tests that frequently read binaries survive a scan of binaries which are read only once.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void evictScan() throws IOException {
+        final Store store = EasyMock.createMock("store", Store.class);
+        EasyMock.expect(store.read("hot")).andReturn(new ByteArrayInputStream(binary(10))).once();
+        for (int i = 0; i < 10; i++) {
+            EasyMock.expect(store.read("cold" + i)).andReturn(new ByteArrayInputStream(binary(10))).once();
+        }
+        EasyMock.replay(store);
+
+        final CachingStore unit = new CachingStore(store);
+        unit.setMaxSize(40);
+        unit.read("hot").close();
+        unit.read("hot").close();
+        for (int i = 0; i < 10; i++) {
+            unit.read("cold" + i).close();
+        }
+        unit.read("hot").close();
+
+        Assert.assertEquals(2, unit.getHits());
+        Assert.assertEquals(7, unit.getEvictions());
+        Assert.assertEquals(40, unit.getSize());
+
+        EasyMock.verify(store);
+    }
+
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import java.io.CharConversionException;
+import java.io.IOException;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+import de.cosmocode.palava.media.asset.CharSequenceInputStream;
+
+/**
+ * Tests {@link CharSequenceInputStream}.
+ *
+ * @author agent
+ */
+public final class CharSequenceInputStreamTest {
+
+    /**
+     * Tests {@link CharSequenceInputStream#read(byte[], int, int)} with an empty sequence.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void readEmpty() throws IOException {
+        final CharSequenceInputStream unit = new CharSequenceInputStream("");
+        Assert.assertEquals(-1, unit.read());
+        Assert.assertEquals(-1, unit.read(new byte[8], 0, 8));
+    }
+
+    /**
+     * Tests {@link CharSequenceInputStream#read(byte[], int, int)} with ascii content.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void readAscii() throws IOException {
+        final CharSequenceInputStream unit = new CharSequenceInputStream("abc");
+        Assert.assertArrayEquals("abc".getBytes("US-ASCII"), ByteStreams.toByteArray(unit));
+    }
+
+    /**
+     * Tests that {@link CharSequenceInputStream#read()} rejects non-ascii characters.
+     *
+     * @throws IOException expected
+     */
+    @Test(expected = CharConversionException.class)
+    public void readNonAscii() throws IOException {
+        final CharSequenceInputStream unit = new CharSequenceInputStream("a\u00e4");
+        Assert.assertEquals('a', unit.read());
+        unit.read();
+    }
+
+    /**
+     * Tests that {@link CharSequenceInputStream#read(byte[], int, int)} rejects characters
+     * whose low byte happens to be ascii.
+     *
+     * @throws IOException expected
+     */
+    @Test(expected = CharConversionException.class)
+    public void readWide() throws IOException {
+        ByteStreams.toByteArray(new CharSequenceInputStream("ab\u0141c"));
+    }
+
+    /**
+     * Tests decoding a base64 string using {@link Base64InputStream} on top of a {@link CharSequenceInputStream}.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void decodeBase64() throws IOException {
+        final byte[] binary = new byte[64 * 1024];
+        for (int i = 0; i < binary.length; i++) {
+            binary[i] = (byte) (i * 31);
+        }
+        final String encoded = new String(Base64.encodeBase64(binary), "US-ASCII");
+        final Base64InputStream stream = new Base64InputStream(new CharSequenceInputStream(encoded));
+        Assert.assertArrayEquals(binary, ByteStreams.toByteArray(stream));
+    }
+
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Random;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+import de.cosmocode.palava.media.asset.CachingStore;
+import de.cosmocode.palava.media.asset.CompressingStore;
+import de.cosmocode.palava.media.asset.Stores;
+import de.cosmocode.palava.store.Store;
+
+/**
+ * Tests {@link CompressingStore}.
+ *
+ * @author agent
+ */
+public final class CompressingStoreTest {
+
+    /**
+     * Writes the given binary using a new {@link CompressingStore} and returns the stored bytes.
+     *
+     * @param binary the binary to write
+     * @return the bytes written to the decorated store
+     * @throws IOException should not happen
+     */
+    private static byte[] write(byte[] binary) throws IOException {
+        final byte[][] stored = new byte[1][];
+        final Store store = EasyMock.createMock("store", Store.class);
+        EasyMock.expect(store.create(EasyMock.isA(InputStream.class))).andAnswer(new IAnswer<String>() {
+
+            @Override
+            public String answer() throws Throwable {
+                stored[0] = ByteStreams.toByteArray(InputStream.class.cast(EasyMock.getCurrentArguments()[0]));
+                return "a";
+            }
+
+        });
+        EasyMock.replay(store);
+
+        Assert.assertEquals("a", new CompressingStore(store).create(new ByteArrayInputStream(binary)));
+
+        EasyMock.verify(store);
+        return stored[0];
+    }
+
+    private static CompressingStore reading(final byte[] stored) throws IOException {
+        final Store store = EasyMock.createMock("store", Store.class);
+        EasyMock.expect(store.read("a")).andAnswer(new IAnswer<InputStream>() {
+
+            @Override
+            public InputStream answer() {
+                return new ByteArrayInputStream(stored);
+            }
+
+        }).anyTimes();
+        EasyMock.replay(store);
+        return new CompressingStore(store);
+    }
+
+    private static byte[] text() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("{\"id\": ").append(i).append(", \"name\": \"asset\"}\n");
+        }
+        return builder.toString().getBytes("UTF-8");
+    }
+
+    /**
+     * Tests compressing text.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void compress() throws IOException {
+        final byte[] binary = text();
+        final byte[] stored = write(binary);
+        Assert.assertTrue(stored.length < binary.length / 10);
+
+        final CompressingStore unit = reading(stored);
+        Assert.assertEquals("deflate", unit.getEncoding("a"));
+        Assert.assertArrayEquals(binary, ByteStreams.toByteArray(unit.read("a")));
+        Assert.assertEquals(stored.length - CompressingStore.MAGIC.length - 1,
+            ByteStreams.toByteArray(unit.readEncoded("a")).length);
+    }
+
+    /**
+     * Tests storing binary data unchanged.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void binary() throws IOException {
+        final byte[] binary = new byte[4096];
+        new Random(0).nextBytes(binary);
+        binary[0] = 0;
+        Assert.assertArrayEquals(binary, write(binary));
+
+        final CompressingStore unit = reading(binary);
+        Assert.assertNull(unit.getEncoding("a"));
+        Assert.assertArrayEquals(binary, ByteStreams.toByteArray(unit.read("a")));
+    }
+
+    /**
+     * Tests storing binary data starting with {@link CompressingStore#MAGIC}.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void magic() throws IOException {
+        final byte[] binary = new byte[64];
+        System.arraycopy(CompressingStore.MAGIC, 0, binary, 0, CompressingStore.MAGIC.length);
+        final byte[] stored = write(binary);
+        Assert.assertEquals(binary.length + CompressingStore.MAGIC.length + 1, stored.length);
+
+        final CompressingStore unit = reading(stored);
+        Assert.assertNull(unit.getEncoding("a"));
+        Assert.assertArrayEquals(binary, ByteStreams.toByteArray(unit.read("a")));
+    }
+
+    /**
+     * Tests that {@link CompressingStore#sniff(PushbackInputStream)} predicts the stored
+     * encoding without consuming the binary.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void sniff() throws IOException {
+        final byte[] text = text();
+        final PushbackInputStream input = new PushbackInputStream(new ByteArrayInputStream(text),
+            CompressingStore.SNIFF_SIZE);
+        Assert.assertEquals("deflate", CompressingStore.sniff(input).getEncoding());
+        Assert.assertArrayEquals(text, ByteStreams.toByteArray(input));
+
+        final byte[] binary = new byte[4096];
+        new Random(0).nextBytes(binary);
+        binary[0] = 0;
+        Assert.assertNull(CompressingStore.sniff(new PushbackInputStream(new ByteArrayInputStream(binary),
+            CompressingStore.SNIFF_SIZE)).getEncoding());
+    }
+
+    /**
+     * Tests {@link Stores#find(Store, Class)} through a {@link CachingStore}.
+     */
+    @Test
+    public void find() {
+        final Store store = EasyMock.createMock("store", Store.class);
+        EasyMock.replay(store);
+        final CompressingStore compressing = new CompressingStore(store);
+        final Store unit = new CachingStore(compressing);
+        Assert.assertSame(compressing, Stores.find(unit, CompressingStore.class));
+        Assert.assertSame(unit, Stores.find(unit, CachingStore.class));
+        Assert.assertNull(Stores.find(store, CompressingStore.class));
+        EasyMock.verify(store);
+    }
+
+}
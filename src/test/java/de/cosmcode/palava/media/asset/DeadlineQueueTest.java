@@ -0,0 +1,150 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.media.asset.DeadlineQueue;
+
+/**
+ * Tests {@link DeadlineQueue}.
+ *
+ * @author agent
+ */
+public final class DeadlineQueueTest {
+
+    /**
+     * Tests {@link DeadlineQueue#drainTo(long, long[])} returning due identifiers in deadline order.
+     */
+    @Test
+    public void drainTo() {
+        final DeadlineQueue unit = new DeadlineQueue(2);
+        unit.add(1L, 30L);
+        unit.add(2L, 10L);
+        unit.add(3L, 50L);
+        unit.add(4L, 20L);
+
+        final long[] target = new long[4];
+        Assert.assertEquals(3, unit.drainTo(30L, target));
+        Assert.assertArrayEquals(new long[] {2L, 4L, 1L, 0L}, target);
+        Assert.assertEquals(1, unit.size());
+        Assert.assertEquals(50L, unit.peekDeadline());
+    }
+
+    /**
+     * Tests {@link DeadlineQueue#drainTo(long, long[])} with a target smaller than the number of due identifiers.
+     */
+    @Test
+    public void drainToLimited() {
+        final DeadlineQueue unit = new DeadlineQueue();
+        for (long i = 0; i < 10; i++) {
+            unit.add(i, 100L - i);
+        }
+
+        final long[] target = new long[4];
+        Assert.assertEquals(4, unit.drainTo(100L, target));
+        Assert.assertArrayEquals(new long[] {9L, 8L, 7L, 6L}, target);
+        Assert.assertEquals(6, unit.size());
+    }
+
+    /**
+     * Tests {@link DeadlineQueue#add(long, long)} changing the deadline of a queued identifier.
+     */
+    @Test
+    public void addTwice() {
+        final DeadlineQueue unit = new DeadlineQueue();
+        unit.add(1L, 10L);
+        unit.add(2L, 20L);
+        unit.add(1L, 30L);
+        unit.add(2L, 5L);
+        Assert.assertEquals(2, unit.size());
+        Assert.assertEquals(5L, unit.peekDeadline());
+
+        final long[] target = new long[2];
+        Assert.assertEquals(1, unit.drainTo(20L, target));
+        Assert.assertEquals(2L, target[0]);
+        Assert.assertEquals(30L, unit.peekDeadline());
+    }
+
+    /**
+     * Tests {@link DeadlineQueue#remove(long)}.
+     */
+    @Test
+    public void remove() {
+        final DeadlineQueue unit = new DeadlineQueue();
+        unit.add(1L, 10L);
+        unit.add(2L, 20L);
+        unit.add(3L, 30L);
+        Assert.assertTrue(unit.remove(1L));
+        Assert.assertFalse(unit.remove(1L));
+        Assert.assertFalse(unit.contains(1L));
+        Assert.assertTrue(unit.contains(3L));
+        Assert.assertEquals(2, unit.size());
+        Assert.assertEquals(20L, unit.peekDeadline());
+    }
+
+    /**
+     * Tests random adds, updates and removals against a map of expected deadlines.
+     */
+    @Test
+    public void random() {
+        final Random random = new Random(42L);
+        final DeadlineQueue unit = new DeadlineQueue(1);
+        final Map<Long, Long> expected = Maps.newHashMap();
+
+        for (int i = 0; i < 20000; i++) {
+            final long identifier = random.nextInt(500) - 250;
+            if (random.nextInt(4) == 0) {
+                Assert.assertEquals(expected.remove(identifier) != null, unit.remove(identifier));
+            } else {
+                final long deadline = random.nextInt(1000);
+                expected.put(identifier, deadline);
+                unit.add(identifier, deadline);
+            }
+            Assert.assertEquals(expected.size(), unit.size());
+        }
+
+        final long[] target = new long[1];
+        long previous = Long.MIN_VALUE;
+        while (!unit.isEmpty()) {
+            final long deadline = unit.peekDeadline();
+            Assert.assertTrue(deadline >= previous);
+            Assert.assertEquals(1, unit.drainTo(deadline, target));
+            Assert.assertEquals(Long.valueOf(deadline), expected.remove(target[0]));
+            previous = deadline;
+        }
+        Assert.assertTrue(expected.isEmpty());
+    }
+
+    /**
+     * Tests {@link DeadlineQueue#peekDeadline()} on an empty queue.
+     */
+    @Test
+    public void peekEmpty() {
+        final DeadlineQueue unit = new DeadlineQueue();
+        Assert.assertTrue(unit.isEmpty());
+        Assert.assertEquals(Long.MAX_VALUE, unit.peekDeadline());
+        Assert.assertEquals(0, unit.drainTo(Long.MAX_VALUE, new long[1]));
+    }
+
+}
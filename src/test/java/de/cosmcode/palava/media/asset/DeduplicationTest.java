@@ -0,0 +1,192 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.Query;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.name.Names;
+
+import de.cosmcode.palava.media.ConcreteAsset;
+import de.cosmocode.palava.core.DefaultRegistryModule;
+import de.cosmocode.palava.media.AfterCommitModule;
+import de.cosmocode.palava.media.MediaConfig;
+import de.cosmocode.palava.media.asset.AbstractAssetService;
+import de.cosmocode.palava.media.asset.AssetBase;
+
+/**
+ * Tests the deduplication of {@link AbstractAssetService}.
+ *
+ * @author agent
+ */
+public final class DeduplicationTest {
+
+    private static final byte[] BINARY = {1, 2, 3};
+
+    // sha-256 of BINARY
+    private static final String DIGEST = "039058c6f2c0cb492c533b0a4d14ef77cc0f78abccced5287d84a1a2011cfb81";
+
+    private MemoryStore store;
+
+    private MockAssetService unit;
+
+    /**
+     * Creates a new unit with deduplication enabled.
+     */
+    @Before
+    public void setUp() {
+        store = new MemoryStore();
+        unit = Guice.createInjector(new DefaultRegistryModule(), new AfterCommitModule(), new AbstractModule() {
+
+            @Override
+            protected void configure() {
+                bindConstant().annotatedWith(Names.named(MediaConfig.DEDUPLICATION)).to(true);
+            }
+
+        }).getInstance(MockAssetService.class);
+        unit.setStore(store);
+    }
+
+    private ConcreteAsset asset() {
+        final ConcreteAsset asset = new ConcreteAsset();
+        asset.setStream(new ByteArrayInputStream(BINARY));
+        return asset;
+    }
+
+    private Query query(EntityManager manager, String name) {
+        final Query query = EasyMock.createMock(Query.class);
+        EasyMock.expect(manager.createNamedQuery(name)).andReturn(query);
+        return query;
+    }
+
+    private void expectDigest(EntityManager manager, Object... identifiers) {
+        final Query query = query(manager, AssetBase.BY_DIGEST);
+        EasyMock.expect(query.setParameter(1, DIGEST)).andReturn(query);
+        EasyMock.expect(query.setLockMode(LockModeType.PESSIMISTIC_WRITE)).andReturn(query);
+        EasyMock.expect(query.setMaxResults(1)).andReturn(query);
+        EasyMock.expect(query.getResultList()).andReturn(ImmutableList.of(identifiers));
+        EasyMock.replay(query);
+    }
+
+    private void expectReferences(EntityManager manager, String identifier, long references) {
+        final Query query = query(manager, AssetBase.COUNT_BY_STORE_IDENTIFIER);
+        EasyMock.expect(query.setParameter(1, identifier)).andReturn(query);
+        EasyMock.expect(query.getSingleResult()).andReturn(references);
+        EasyMock.replay(query);
+    }
+
+    /**
+     * Tests creating an asset whose binary data is unknown.
+     */
+    @Test
+    public void createUnique() {
+        final EntityManager manager = EasyMock.createMock("manager", EntityManager.class);
+        expectDigest(manager);
+        final ConcreteAsset asset = asset();
+        manager.persist(asset);
+        EasyMock.replay(manager);
+        unit.setEntityManager(manager);
+
+        unit.create(asset);
+
+        Assert.assertEquals(DIGEST, asset.getDigest());
+        Assert.assertEquals(ImmutableSet.of(asset.getStoreIdentifier()), store.list());
+        EasyMock.verify(manager);
+    }
+
+    /**
+     * Tests creating an asset whose binary data has already been stored.
+     * The existing assets have to be locked and the duplicate has to be removed.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void createDuplicate() throws IOException {
+        store.create(new ByteArrayInputStream(BINARY), "existing");
+        final EntityManager manager = EasyMock.createMock("manager", EntityManager.class);
+        expectDigest(manager, "existing");
+        final ConcreteAsset asset = asset();
+        manager.persist(asset);
+        EasyMock.replay(manager);
+        unit.setEntityManager(manager);
+
+        unit.create(asset);
+
+        Assert.assertEquals("existing", asset.getStoreIdentifier());
+        Assert.assertEquals(ImmutableSet.of("existing"), store.list());
+        EasyMock.verify(manager);
+    }
+
+    /**
+     * Tests deleting the last asset referencing binary data.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void deleteLast() throws IOException {
+        store.create(new ByteArrayInputStream(BINARY), "existing");
+        final EntityManager manager = EasyMock.createMock("manager", EntityManager.class);
+        final ConcreteAsset asset = new ConcreteAsset();
+        asset.setStoreIdentifier("existing");
+        manager.remove(asset);
+        expectReferences(manager, "existing", 0L);
+        EasyMock.replay(manager);
+        unit.setEntityManager(manager);
+
+        unit.delete(asset);
+
+        Assert.assertEquals(Collections.emptySet(), store.list());
+        EasyMock.verify(manager);
+    }
+
+    /**
+     * Tests deleting an asset whose binary data is still referenced.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void deleteShared() throws IOException {
+        store.create(new ByteArrayInputStream(BINARY), "existing");
+        final EntityManager manager = EasyMock.createMock("manager", EntityManager.class);
+        final ConcreteAsset asset = new ConcreteAsset();
+        asset.setStoreIdentifier("existing");
+        manager.remove(asset);
+        expectReferences(manager, "existing", 1L);
+        EasyMock.replay(manager);
+        unit.setEntityManager(manager);
+
+        unit.delete(asset);
+
+        Assert.assertEquals(ImmutableSet.of("existing"), store.list());
+        EasyMock.verify(manager);
+    }
+
+}
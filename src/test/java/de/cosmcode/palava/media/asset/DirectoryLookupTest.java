@@ -0,0 +1,147 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.inject.Guice;
+
+import de.cosmcode.palava.media.ConcreteAsset;
+import de.cosmocode.palava.core.DefaultRegistryModule;
+import de.cosmocode.palava.core.Registry;
+import de.cosmocode.palava.media.MediaEvents;
+import de.cosmocode.palava.media.asset.AbstractAssetService;
+import de.cosmocode.palava.media.asset.AssetBase;
+
+/**
+ * Tests the directory lookups of {@link AbstractAssetService}.
+ *
+ * @author agent
+ */
+public final class DirectoryLookupTest {
+
+    private MockAssetService unit;
+    
+    private EntityManager manager;
+    
+    /**
+     * Creates the unit.
+     */
+    @Before
+    public void setUp() {
+        final Registry registry = Guice.createInjector(new DefaultRegistryModule()).getInstance(Registry.class);
+        unit = new MockAssetService(new MediaEvents(registry));
+        manager = EasyMock.createMock(EntityManager.class);
+        unit.setEntityManager(manager);
+    }
+    
+    /**
+     * Tests {@link AbstractAssetService#getDirectoryIds(AssetBase)}.
+     */
+    @Test
+    public void getDirectoryIds() {
+        final Query query = EasyMock.createMock(Query.class);
+        EasyMock.expect(manager.createNamedQuery(AssetBase.DIRECTORY_IDS)).andReturn(query);
+        EasyMock.expect(query.setParameter(1, 0L)).andReturn(query);
+        EasyMock.expect(query.setMaxResults(Integer.MAX_VALUE)).andReturn(query);
+        EasyMock.expect(query.getResultList()).andReturn(Arrays.<Object>asList(3, 7L));
+        EasyMock.replay(manager, query);
+        
+        Assert.assertEquals(Arrays.asList(3L, 7L), unit.getDirectoryIds(new ConcreteAsset()));
+        EasyMock.verify(manager, query);
+    }
+    
+    /**
+     * Tests {@link AbstractAssetService#countDirectories(AssetBase)}.
+     */
+    @Test
+    public void countDirectories() {
+        final Query query = EasyMock.createMock(Query.class);
+        EasyMock.expect(manager.createNamedQuery(AssetBase.COUNT_DIRECTORIES)).andReturn(query);
+        EasyMock.expect(query.setParameter(1, 0L)).andReturn(query);
+        EasyMock.expect(query.getSingleResult()).andReturn(2);
+        EasyMock.replay(manager, query);
+        
+        Assert.assertEquals(2L, unit.countDirectories(new ConcreteAsset()));
+        EasyMock.verify(manager, query);
+    }
+    
+    /**
+     * Tests {@link AbstractAssetService#countDirectories(java.util.Collection)}
+     * with assets which are not part of any directory.
+     */
+    @Test
+    public void countDirectoriesByIds() {
+        final Query query = EasyMock.createMock(Query.class);
+        EasyMock.expect(manager.createNamedQuery(AssetBase.COUNT_DIRECTORIES_BY_IDS)).andReturn(query);
+        EasyMock.expect(query.setParameter(EasyMock.eq(1), EasyMock.anyObject())).andReturn(query);
+        EasyMock.expect(query.getResultList()).andReturn(Arrays.<Object>asList(
+            new Object[] {1L, 2L}, new Object[] {3, 1}
+        ));
+        EasyMock.replay(manager, query);
+        
+        final Map<Long, Long> expected = ImmutableMap.of(1L, 2L, 2L, 0L, 3L, 1L);
+        Assert.assertEquals(expected, unit.countDirectories(Arrays.asList(1L, 2L, 3L)));
+        EasyMock.verify(manager, query);
+    }
+    
+    /**
+     * Tests that {@link AbstractAssetService#countDirectories(java.util.Collection)}
+     * queries at most 500 ids at once.
+     */
+    @Test
+    public void countDirectoriesChunked() {
+        final List<Long> ids = Lists.newArrayList();
+        for (long id = 0; id < 1200; id++) {
+            ids.add(id);
+        }
+        
+        final Capture<Object> chunks = new Capture<Object>(CaptureType.ALL);
+        final Query query = EasyMock.createMock(Query.class);
+        EasyMock.expect(manager.createNamedQuery(AssetBase.COUNT_DIRECTORIES_BY_IDS)).andReturn(query).times(3);
+        EasyMock.expect(query.setParameter(EasyMock.eq(1), EasyMock.capture(chunks))).andReturn(query).times(3);
+        EasyMock.expect(query.getResultList()).andReturn(Arrays.asList()).times(3);
+        EasyMock.replay(manager, query);
+        
+        final Map<Long, Long> counts = unit.countDirectories(ids);
+        EasyMock.verify(manager, query);
+        
+        Assert.assertEquals(1200, counts.size());
+        Assert.assertEquals(0L, counts.get(1199L).longValue());
+        
+        final List<Integer> sizes = Lists.newArrayList();
+        for (Object chunk : chunks.getValues()) {
+            sizes.add(((List<?>) chunk).size());
+        }
+        Assert.assertEquals(Arrays.asList(500, 500, 200), sizes);
+    }
+    
+}
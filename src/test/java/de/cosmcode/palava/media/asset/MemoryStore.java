@@ -0,0 +1,70 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+
+import de.cosmocode.palava.store.Store;
+
+/**
+ * A store which keeps all binary data in memory.
+ *
+ * @author agent
+ */
+public final class MemoryStore implements Store {
+
+    private final Map<String, byte[]> binaries = Maps.newHashMap();
+
+    @Override
+    public String create(InputStream stream) throws IOException {
+        final String identifier = UUID.randomUUID().toString();
+        create(stream, identifier);
+        return identifier;
+    }
+
+    @Override
+    public void create(InputStream stream, String identifier) throws IOException {
+        binaries.put(identifier, ByteStreams.toByteArray(stream));
+    }
+
+    @Override
+    public InputStream read(String identifier) throws IOException {
+        final byte[] binary = binaries.get(identifier);
+        if (binary == null) throw new IOException("No binary data for " + identifier);
+        return new ByteArrayInputStream(binary);
+    }
+
+    @Override
+    public Set<String> list() {
+        return ImmutableSet.copyOf(binaries.keySet());
+    }
+
+    @Override
+    public void delete(String identifier) throws IOException {
+        if (binaries.remove(identifier) == null) throw new IOException("No binary data for " + identifier);
+    }
+
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.cosmocode.palava.media.asset.MetaData;
+
+/**
+ * Tests {@link MetaData}.
+ *
+ * @author agent
+ */
+public final class MetaDataTest {
+
+    /**
+     * Tests {@link MetaData#toNumber(String)}.
+     */
+    @Test
+    public void toNumber() {
+        Assert.assertEquals(Double.valueOf(42), MetaData.toNumber("42"));
+        Assert.assertEquals(Double.valueOf(-1.5), MetaData.toNumber(" -1.5 "));
+        Assert.assertNull(MetaData.toNumber("campaign"));
+        Assert.assertNull(MetaData.toNumber(""));
+        Assert.assertNull(MetaData.toNumber("NaN"));
+        Assert.assertNull(MetaData.toNumber(null));
+    }
+
+    /**
+     * Tests {@link MetaData#toNumber(String)} rejecting java specific number formats.
+     */
+    @Test
+    public void toNumberStrict() {
+        Assert.assertEquals(Double.valueOf(1000), MetaData.toNumber("1e3"));
+        Assert.assertEquals(Double.valueOf(0.5), MetaData.toNumber(".5"));
+        Assert.assertNull(MetaData.toNumber("1d"));
+        Assert.assertNull(MetaData.toNumber("1f"));
+        Assert.assertNull(MetaData.toNumber("0x1p3"));
+        Assert.assertNull(MetaData.toNumber("Infinity"));
+        Assert.assertNull(MetaData.toNumber("1e999"));
+        Assert.assertNull(MetaData.toNumber("1 000"));
+    }
+
+    /**
+     * Tests {@link MetaData#toPattern(String)} escaping wildcards.
+     */
+    @Test
+    public void toPattern() {
+        Assert.assertEquals("summer%", MetaData.toPattern("summer"));
+        Assert.assertEquals("50\\%\\_off\\\\%", MetaData.toPattern("50%_off\\"));
+    }
+
+}
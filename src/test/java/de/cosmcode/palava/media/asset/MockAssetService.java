@@ -0,0 +1,73 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import javax.persistence.EntityManager;
+
+import com.google.inject.Inject;
+
+import de.cosmcode.palava.media.ConcreteAsset;
+import de.cosmocode.palava.media.MediaEvents;
+import de.cosmocode.palava.media.asset.AbstractAssetService;
+import de.cosmocode.palava.store.Store;
+
+/**
+ * An {@link AbstractAssetService} whose store and entity manager are set by tests.
+ * Not final, so transactional methods can be intercepted.
+ *
+ * @author agent
+ */
+public class MockAssetService extends AbstractAssetService<ConcreteAsset> {
+
+    private Store store;
+
+    private EntityManager entityManager;
+
+    @Inject
+    public MockAssetService(MediaEvents events) {
+        super(events);
+    }
+
+    public void setStore(Store store) {
+        this.store = store;
+    }
+
+    public void setEntityManager(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    protected Store getStore() {
+        return store;
+    }
+
+    @Override
+    protected EntityManager entityManager() {
+        return entityManager;
+    }
+
+    @Override
+    protected Class<ConcreteAsset> entityClass() {
+        return ConcreteAsset.class;
+    }
+
+    @Override
+    public void dispose() {
+
+    }
+
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import java.util.Collections;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Guice;
+
+import de.cosmcode.palava.media.ConcreteAsset;
+import de.cosmocode.palava.core.DefaultRegistryModule;
+import de.cosmocode.palava.core.Registry;
+import de.cosmocode.palava.media.MediaEvents;
+import de.cosmocode.palava.media.asset.AbstractAssetService;
+import de.cosmocode.palava.media.asset.AssetBase;
+
+/**
+ * Tests the maintenance of the numeric meta data column by {@link AbstractAssetService}.
+ *
+ * @author agent
+ */
+public final class NumberIndexingTest {
+
+    private MockAssetService unit;
+    
+    private EntityManager manager;
+    
+    private ConcreteAsset asset;
+    
+    /**
+     * Creates the unit and an asset with numeric and textual meta data.
+     */
+    @Before
+    public void setUp() {
+        final Registry registry = Guice.createInjector(new DefaultRegistryModule()).getInstance(Registry.class);
+        unit = new MockAssetService(new MediaEvents(registry));
+        manager = EasyMock.createMock(EntityManager.class);
+        unit.setEntityManager(manager);
+        
+        asset = new ConcreteAsset();
+        asset.getMetaData().put("width", "42");
+        asset.getMetaData().put("title", "Logo");
+        
+        EasyMock.expect(manager.merge(asset)).andReturn(asset);
+    }
+    
+    private Query update(String key, Double number) {
+        final Query query = EasyMock.createMock(Query.class);
+        EasyMock.expect(manager.createNamedQuery(AssetBase.UPDATE_META_DATA_NUMBER)).andReturn(query);
+        EasyMock.expect(query.setParameter(1, 0L)).andReturn(query);
+        EasyMock.expect(query.setParameter(2, key)).andReturn(query);
+        EasyMock.expect(query.setParameter(3, number)).andReturn(query);
+        EasyMock.expect(query.executeUpdate()).andReturn(1);
+        return query;
+    }
+    
+    /**
+     * Tests that {@link AbstractAssetService#update(AssetBase)} does not touch
+     * the numeric column by default.
+     */
+    @Test
+    public void updateDisabled() {
+        EasyMock.replay(manager);
+        unit.update(asset);
+        EasyMock.verify(manager);
+    }
+    
+    /**
+     * Tests that {@link AbstractAssetService#update(AssetBase)} refreshes all numbers if enabled.
+     */
+    @Test
+    public void update() {
+        unit.setNumbers(true);
+        
+        manager.flush();
+        final Query clear = EasyMock.createMock(Query.class);
+        EasyMock.expect(manager.createNamedQuery(AssetBase.CLEAR_META_DATA_NUMBERS)).andReturn(clear);
+        EasyMock.expect(clear.setParameter(1, 0L)).andReturn(clear);
+        EasyMock.expect(clear.executeUpdate()).andReturn(2);
+        final Query width = update("width", 42d);
+        EasyMock.replay(manager, clear, width);
+        
+        unit.update(asset);
+        EasyMock.verify(manager, clear, width);
+    }
+    
+    /**
+     * Tests that {@link AbstractAssetService#update(AssetBase, Set)} skips
+     * all work if no meta data has been changed.
+     */
+    @Test
+    public void updateUnchanged() {
+        unit.setNumbers(true);
+        EasyMock.replay(manager);
+        unit.update(asset, Collections.<String>emptySet());
+        EasyMock.verify(manager);
+    }
+    
+    /**
+     * Tests that {@link AbstractAssetService#update(AssetBase, Set)} refreshes
+     * only the changed keys, clearing values which are no longer numeric.
+     */
+    @Test
+    public void updateChanged() {
+        unit.setNumbers(true);
+        
+        manager.flush();
+        final Query width = update("width", 42d);
+        final Query title = update("title", null);
+        EasyMock.replay(manager, width, title);
+        
+        unit.update(asset, ImmutableSet.of("width", "title"));
+        EasyMock.verify(manager, width, title);
+    }
+    
+    /**
+     * Tests that {@link AbstractAssetService#update(AssetBase, Set)} does not touch
+     * the numeric column if disabled, even if meta data has been changed.
+     */
+    @Test
+    public void updateChangedDisabled() {
+        EasyMock.replay(manager);
+        unit.update(asset, ImmutableSet.of("width"));
+        EasyMock.verify(manager);
+    }
+    
+}
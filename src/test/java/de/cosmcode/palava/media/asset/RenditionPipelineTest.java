@@ -0,0 +1,320 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmcode.palava.media.asset;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.name.Names;
+
+import de.cosmocode.palava.core.DefaultRegistryModule;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.media.MediaConfig;
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.asset.AssetStore;
+import de.cosmocode.palava.media.asset.RenditionPipeline;
+import de.cosmocode.palava.store.Store;
+
+/**
+ * Tests {@link RenditionPipeline}.
+ *
+ * @author agent
+ */
+public final class RenditionPipelineTest {
+
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    private File directory;
+
+    /**
+     * Creates the temporary job directory.
+     */
+    @Before
+    public void setUp() {
+        directory = Files.createTempDir();
+    }
+
+    /**
+     * Removes the temporary job directory.
+     *
+     * @throws IOException should not happen
+     */
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteRecursively(directory);
+    }
+
+    /**
+     * Loads assets on behalf of the pipeline's workers.
+     */
+    private interface Loader {
+
+        /**
+         * Loads the asset with the given id.
+         *
+         * @param assetId the asset id
+         * @return the result of the by ids query
+         */
+        List<?> load(long assetId);
+
+    }
+
+    private EntityManagerFactory factory(final Loader loader) {
+        final EntityManagerFactory factory = EasyMock.createMock("factory", EntityManagerFactory.class);
+        EasyMock.expect(factory.createEntityManager()).andStubAnswer(new IAnswer<EntityManager>() {
+
+            @Override
+            public EntityManager answer() {
+                return manager(loader);
+            }
+
+        });
+        EasyMock.replay(factory);
+        return factory;
+    }
+
+    private EntityManager manager(final Loader loader) {
+        final EntityManager manager = EasyMock.createMock(EntityManager.class);
+        final Query query = EasyMock.createMock(Query.class);
+        final List<Long> ids = Lists.newArrayList();
+
+        EasyMock.expect(manager.createNamedQuery(AssetBase.BY_IDS)).andStubReturn(query);
+        manager.close();
+        EasyMock.expectLastCall().anyTimes();
+        EasyMock.expect(query.setParameter(EasyMock.eq(1), EasyMock.anyObject())).andStubAnswer(new IAnswer<Query>() {
+
+            @Override
+            public Query answer() {
+                ids.addAll((List<Long>) EasyMock.getCurrentArguments()[1]);
+                return query;
+            }
+
+        });
+        EasyMock.expect(query.getResultList()).andStubAnswer(new IAnswer<List>() {
+
+            @Override
+            public List answer() {
+                return loader.load(ids.get(0));
+            }
+
+        });
+        EasyMock.replay(manager, query);
+        return manager;
+    }
+
+    private RenditionPipeline unit(final EntityManagerFactory factory) throws LifecycleException {
+        final RenditionPipeline unit = Guice.createInjector(new DefaultRegistryModule(), new AbstractModule() {
+
+            @Override
+            protected void configure() {
+                bind(Store.class).annotatedWith(AssetStore.class).toInstance(new MemoryStore());
+                bindConstant().annotatedWith(Names.named(MediaConfig.RENDITIONS)).to("thumbnail=100x100.png");
+                bind(File.class).annotatedWith(Names.named(MediaConfig.RENDITIONS_DIRECTORY)).toInstance(directory);
+                bindConstant().annotatedWith(Names.named(MediaConfig.RENDITIONS_THREADS)).to(1);
+                bind(EntityManagerFactory.class).toInstance(factory);
+            }
+
+        }).getInstance(RenditionPipeline.class);
+        unit.initialize();
+        return unit;
+    }
+
+    private AssetBase asset(long id) {
+        final AssetBase asset = EasyMock.createMock("asset" + id, AssetBase.class);
+        EasyMock.expect(asset.getId()).andStubReturn(id);
+        EasyMock.replay(asset);
+        return asset;
+    }
+
+    private void job(long assetId) throws IOException {
+        Files.touch(new File(directory, Long.toString(assetId)));
+    }
+
+    private void await(RenditionPipeline unit, long completed) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (unit.getCompleted() < completed) {
+            Assert.assertTrue("Timed out waiting for " + completed + " job(s)", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Tests {@link RenditionPipeline#initialize()} resuming the jobs left over by a previous
+     * run which was shut down while processing them.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void restart() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final RenditionPipeline crashed = unit(factory(new Loader() {
+
+            @Override
+            public List<?> load(long assetId) {
+                started.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("Shutting down");
+            }
+
+        }));
+        crashed.eventAssetCreated(asset(2L));
+        crashed.eventAssetCreated(asset(1L));
+        Assert.assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        crashed.dispose();
+        Assert.assertEquals(0, crashed.getCompleted());
+        Assert.assertTrue(new File(directory, "1").exists());
+        Assert.assertTrue(new File(directory, "2").exists());
+        Files.touch(new File(directory, "unknown"));
+
+        final BlockingQueue<Long> loaded = new LinkedBlockingQueue<Long>();
+        final RenditionPipeline unit = unit(factory(new Loader() {
+
+            @Override
+            public List<?> load(long assetId) {
+                loaded.add(assetId);
+                return Collections.emptyList();
+            }
+
+        }));
+        try {
+            await(unit, 2);
+            Assert.assertEquals(ImmutableList.of(1L, 2L), ImmutableList.copyOf(loaded));
+            Assert.assertFalse(new File(directory, "1").exists());
+            Assert.assertFalse(new File(directory, "2").exists());
+            Assert.assertTrue(new File(directory, "unknown").exists());
+        } finally {
+            unit.dispose();
+        }
+    }
+
+    /**
+     * Tests {@link RenditionPipeline#eventRenditionRequested(AssetBase, String)} processing
+     * the job of a requested asset before older jobs.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void prioritized() throws Exception {
+        job(1L);
+        job(2L);
+        job(3L);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final BlockingQueue<Long> loaded = new LinkedBlockingQueue<Long>();
+        final RenditionPipeline unit = unit(factory(new Loader() {
+
+            @Override
+            public List<?> load(long assetId) {
+                loaded.add(assetId);
+                if (assetId == 1L) {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return Collections.emptyList();
+            }
+
+        }));
+        try {
+            // the only worker is busy with the first job
+            Assert.assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            Assert.assertEquals(2, unit.getQueueDepth());
+            unit.eventRenditionRequested(asset(3L), "thumbnail");
+            Assert.assertEquals(2, unit.getQueueDepth());
+            release.countDown();
+
+            await(unit, 3);
+            Assert.assertEquals(ImmutableList.of(1L, 3L, 2L), ImmutableList.copyOf(loaded));
+        } finally {
+            unit.dispose();
+        }
+    }
+
+    /**
+     * Tests {@link RenditionPipeline} retrying jobs whose asset could not be loaded
+     * with a doubling delay, keeping the job file in the meantime.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void retry() throws Exception {
+        job(1L);
+
+        final AtomicInteger failures = new AtomicInteger(2);
+        final BlockingQueue<Long> attempts = new LinkedBlockingQueue<Long>();
+        final RenditionPipeline unit = unit(factory(new Loader() {
+
+            @Override
+            public List<?> load(long assetId) {
+                attempts.add(System.nanoTime());
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("Database not available");
+                }
+                return Collections.emptyList();
+            }
+
+        }));
+        try {
+            final long first = attempts.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+            Assert.assertTrue(new File(directory, "1").exists());
+            final long second = attempts.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+            final long third = attempts.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+
+            await(unit, 1);
+            Assert.assertEquals(2, unit.getFailed());
+            Assert.assertEquals(0, unit.getRetrying());
+            Assert.assertFalse(new File(directory, "1").exists());
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(second - first) >= 1000);
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(third - second) >= 2000);
+        } finally {
+            unit.dispose();
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmcode.palava.media.asset;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Names;
+
+import de.cosmocode.palava.core.DefaultRegistryModule;
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.media.MediaConfig;
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.asset.AssetStore;
+import de.cosmocode.palava.media.asset.ExtendedAssetBaseService;
+import de.cosmocode.palava.media.asset.RenditionService;
+import de.cosmocode.palava.store.Store;
+
+/**
+ * Tests {@link RenditionService}.
+ *
+ * @author agent
+ */
+public final class RenditionServiceTest {
+
+    private RenditionService unit(final Store store, final long maxPixels) {
+        return unit(store, maxPixels, null);
+    }
+    
+    private RenditionService unit(final Store store, final long maxPixels, 
+        final ExtendedAssetBaseService<AssetBase> service) {
+        return Guice.createInjector(new DefaultRegistryModule(), new AbstractModule() {
+            
+            @Override
+            protected void configure() {
+                bind(Store.class).annotatedWith(AssetStore.class).toInstance(store);
+                bindConstant().annotatedWith(Names.named(MediaConfig.RENDITIONS)).to("thumbnail=100x100.png");
+                bindConstant().annotatedWith(Names.named(MediaConfig.RENDITIONS_MAX_PIXELS)).to(maxPixels);
+                if (service == null) return;
+                bindConstant().annotatedWith(Names.named(MediaConfig.DEDUPLICATION)).to(true);
+                @SuppressWarnings("unchecked")
+                final EntityService<AssetBase> casted = (EntityService<AssetBase>) (EntityService<?>) service;
+                bind(new TypeLiteral<EntityService<AssetBase>>() { }).toInstance(casted);
+            }
+            
+        }).getInstance(RenditionService.class);
+    }
+    
+    private String image(Store store, int width, int height) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", output);
+        return store.create(new ByteArrayInputStream(output.toByteArray()));
+    }
+    
+    private AssetBase asset(long id, String storeIdentifier) {
+        final AssetBase asset = EasyMock.createMock("asset" + id, AssetBase.class);
+        EasyMock.expect(asset.getId()).andStubReturn(id);
+        EasyMock.expect(asset.getStoreIdentifier()).andStubReturn(storeIdentifier);
+        EasyMock.replay(asset);
+        return asset;
+    }
+    
+    /**
+     * Tests {@link RenditionService#read(AssetBase, String)} scaling a subsampled image down.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test
+    public void read() throws IOException {
+        final MemoryStore store = new MemoryStore();
+        final AssetBase asset = asset(1L, image(store, 1000, 500));
+        
+        final BufferedImage rendition = ImageIO.read(unit(store, 1000000L).read(asset, "thumbnail"));
+        Assert.assertEquals(100, rendition.getWidth());
+        Assert.assertEquals(50, rendition.getHeight());
+    }
+    
+    /**
+     * Tests {@link RenditionService#read(AssetBase, String)} sharing renditions between
+     * assets with the same binary data.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test
+    public void shared() throws IOException {
+        final MemoryStore store = new MemoryStore();
+        final String identifier = image(store, 200, 200);
+        final RenditionService unit = unit(store, 1000000L);
+        
+        unit.read(asset(1L, identifier), "thumbnail").close();
+        Assert.assertEquals(2, store.list().size());
+        unit.read(asset(2L, identifier), "thumbnail").close();
+        Assert.assertEquals(2, store.list().size());
+    }
+    
+    /**
+     * Tests {@link RenditionService#eventAssetDeleted(AssetBase)} removing renditions
+     * without deduplication, even if the binary data has not been removed yet.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test
+    public void deleted() throws IOException {
+        final MemoryStore store = new MemoryStore();
+        final String identifier = image(store, 200, 200);
+        final AssetBase asset = asset(1L, identifier);
+        final RenditionService unit = unit(store, 1000000L);
+        
+        unit.read(asset, "thumbnail").close();
+        Assert.assertEquals(2, store.list().size());
+        unit.eventAssetDeleted(asset);
+        Assert.assertEquals(ImmutableSet.of(identifier), store.list());
+    }
+    
+    /**
+     * Tests {@link RenditionService#eventAssetDeleted(AssetBase)} keeping renditions
+     * with deduplication as long as the binary data is referenced.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test
+    public void deletedShared() throws IOException {
+        final MemoryStore store = new MemoryStore();
+        final String identifier = image(store, 200, 200);
+        final AssetBase asset = asset(1L, identifier);
+        
+        @SuppressWarnings("unchecked")
+        final ExtendedAssetBaseService<AssetBase> service = EasyMock.createMock(ExtendedAssetBaseService.class);
+        EasyMock.expect(service.countReferences(identifier)).andReturn(1L);
+        EasyMock.expect(service.countReferences(identifier)).andReturn(0L);
+        EasyMock.replay(service);
+        
+        final RenditionService unit = unit(store, 1000000L, service);
+        
+        unit.read(asset, "thumbnail").close();
+        unit.eventAssetDeleted(asset);
+        Assert.assertEquals(2, store.list().size());
+        
+        // the binary data may still exist, because it is released independently
+        unit.eventAssetDeleted(asset);
+        Assert.assertEquals(ImmutableSet.of(identifier), store.list());
+        EasyMock.verify(service);
+    }
+    
+    /**
+     * Tests {@link RenditionService#read(AssetBase, String)} rejecting an image exceeding the pixel limit.
+     * 
+     * @throws IOException expected
+     */
+    @Test(expected = IOException.class)
+    public void tooLarge() throws IOException {
+        final MemoryStore store = new MemoryStore();
+        final AssetBase asset = asset(1L, image(store, 200, 200));
+        unit(store, 200 * 199).read(asset, "thumbnail");
+    }
+    
+}
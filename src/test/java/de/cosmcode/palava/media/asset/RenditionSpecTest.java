@@ -0,0 +1,70 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.cosmocode.palava.media.asset.RenditionSpec;
+
+/**
+ * Tests {@link RenditionSpec}.
+ *
+ * @author agent
+ */
+public final class RenditionSpecTest {
+
+    /**
+     * Tests {@link RenditionSpec#valueOf(String)} with and without quality.
+     */
+    @Test
+    public void valueOf() {
+        final RenditionSpec spec = RenditionSpec.valueOf(" 128x96.JPG@0.5 ");
+        Assert.assertEquals(128, spec.getWidth());
+        Assert.assertEquals(96, spec.getHeight());
+        Assert.assertEquals("jpg", spec.getFormat());
+        Assert.assertEquals(0.5f, spec.getQuality(), 0f);
+        Assert.assertEquals(RenditionSpec.DEFAULT_QUALITY, RenditionSpec.valueOf("10x10.png").getQuality(), 0f);
+    }
+
+    /**
+     * Tests {@link RenditionSpec#toString()} being parseable by {@link RenditionSpec#valueOf(String)}.
+     */
+    @Test
+    public void roundTrip() {
+        final RenditionSpec spec = new RenditionSpec(800, 600, "png", 1f);
+        Assert.assertEquals("800x600.png@1.0", spec.toString());
+        Assert.assertEquals(spec, RenditionSpec.valueOf(spec.toString()));
+    }
+
+    /**
+     * Tests {@link RenditionSpec#valueOf(String)} with an invalid spec.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalid() {
+        RenditionSpec.valueOf("128.jpg");
+    }
+
+    /**
+     * Tests {@link RenditionSpec#RenditionSpec(int, int, String, float)} with an unsupported format.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedFormat() {
+        new RenditionSpec(10, 10, "unknown", 0.5f);
+    }
+
+}
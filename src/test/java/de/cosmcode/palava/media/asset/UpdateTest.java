@@ -0,0 +1,124 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import de.cosmcode.palava.media.ConcreteAsset;
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.asset.AssetConstants;
+import de.cosmocode.palava.media.asset.ExtendedAssetBaseService;
+import de.cosmocode.palava.media.asset.MetaData;
+import de.cosmocode.palava.media.asset.Update;
+
+/**
+ * Tests that {@link Update} reports exactly the changed meta data keys.
+ *
+ * @author agent
+ */
+public final class UpdateTest {
+    
+    private void execute(boolean patch, Map<Object, Object> metaData, Set<String> changedKeys) 
+        throws IpcCommandExecutionException {
+        final AssetBase asset = new ConcreteAsset();
+        asset.getMetaData().put("width", "42");
+        asset.getMetaData().put("title", "Logo");
+        asset.getMetaData().put(MetaData.CONTENT_ENCODING, "gzip");
+        
+        @SuppressWarnings("unchecked")
+        final ExtendedAssetBaseService<AssetBase> service = EasyMock.createMock(ExtendedAssetBaseService.class);
+        EasyMock.expect(service.reference(1L)).andReturn(asset);
+        EasyMock.expect(service.update(asset, changedKeys)).andReturn(asset);
+        
+        final IpcCall call = EasyMock.createMock(IpcCall.class);
+        final IpcArguments arguments = EasyMock.createNiceMock(IpcArguments.class);
+        EasyMock.expect(call.getArguments()).andReturn(arguments);
+        EasyMock.expect(arguments.getLong(AssetConstants.ASSET_ID)).andReturn(1L);
+        EasyMock.expect(arguments.getBoolean(AssetConstants.PATCH, false)).andReturn(patch);
+        EasyMock.expect(arguments.getMap(AssetConstants.META_DATA, null)).andReturn(metaData);
+        
+        EasyMock.replay(service, call, arguments);
+        
+        @SuppressWarnings("unchecked")
+        final EntityService<AssetBase> casted = (EntityService<AssetBase>) (EntityService<?>) service;
+        new Update(casted).execute(call, Maps.<String, Object>newHashMap());
+        
+        EasyMock.verify(service, call);
+    }
+    
+    /**
+     * Tests {@link Update#execute(IpcCall, Map)} in patch mode without changes.
+     * 
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void patchUnchanged() throws IpcCommandExecutionException {
+        final Map<Object, Object> metaData = Maps.newHashMap();
+        metaData.put("width", 42);
+        metaData.put("missing", null);
+        execute(true, metaData, ImmutableSet.<String>of());
+    }
+    
+    /**
+     * Tests {@link Update#execute(IpcCall, Map)} in patch mode with changed and removed keys.
+     * 
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void patchChanged() throws IpcCommandExecutionException {
+        final Map<Object, Object> metaData = Maps.newHashMap();
+        metaData.put("width", 43);
+        metaData.put("title", null);
+        metaData.put(MetaData.CONTENT_ENCODING, "identity");
+        execute(true, metaData, ImmutableSet.of("width", "title"));
+    }
+    
+    /**
+     * Tests {@link Update#execute(IpcCall, Map)} in replace mode.
+     * 
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void replace() throws IpcCommandExecutionException {
+        final Map<Object, Object> metaData = Maps.newHashMap();
+        metaData.put("width", "42");
+        metaData.put("height", "10");
+        execute(false, metaData, ImmutableSet.of("title", "height"));
+    }
+    
+    /**
+     * Tests {@link Update#execute(IpcCall, Map)} in replace mode without meta data.
+     * 
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void replaceCleared() throws IpcCommandExecutionException {
+        execute(false, null, ImmutableSet.of("width", "title"));
+    }
+    
+}
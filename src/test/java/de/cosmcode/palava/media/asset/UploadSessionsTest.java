@@ -0,0 +1,268 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.asset;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import com.google.inject.name.Names;
+
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.media.MediaConfig;
+import de.cosmocode.palava.media.asset.UploadScheduler;
+import de.cosmocode.palava.media.asset.UploadSessions;
+
+/**
+ * Tests {@link UploadSessions}.
+ *
+ * @author agent
+ */
+public final class UploadSessionsTest {
+
+    private static final String OWNER = "owner";
+
+    private File directory;
+
+    private ScheduledExecutorService scheduler;
+
+    private UploadSessions unit;
+
+    /**
+     * Creates a new unit using a temporary upload directory.
+     *
+     * @throws LifecycleException should not happen
+     */
+    @Before
+    public void setUp() throws LifecycleException {
+        directory = Files.createTempDir();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        unit = Guice.createInjector(new Module() {
+
+            @Override
+            public void configure(Binder binder) {
+                binder.bind(File.class).annotatedWith(Names.named(MediaConfig.UPLOAD_DIRECTORY)).toInstance(directory);
+                binder.bind(ScheduledExecutorService.class).annotatedWith(UploadScheduler.class).toInstance(scheduler);
+            }
+
+        }).getInstance(UploadSessions.class);
+        unit.initialize();
+    }
+
+    /**
+     * Disposes the unit and removes the upload directory.
+     *
+     * @throws LifecycleException should not happen
+     * @throws IOException should not happen
+     */
+    @After
+    public void tearDown() throws LifecycleException, IOException {
+        unit.dispose();
+        scheduler.shutdownNow();
+        Files.deleteRecursively(directory);
+    }
+
+    private void append(String uploadId, int index, String content) throws IOException {
+        unit.append(uploadId, OWNER, index, new ByteArrayInputStream(content.getBytes("UTF-8")));
+    }
+
+    private String read(InputStream stream) throws IOException {
+        try {
+            return new String(ByteStreams.toByteArray(stream), "UTF-8");
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Tests {@link UploadSessions#open(String, Object, int)} concatenating chunks sent out of order,
+     * including an empty and a replaced chunk.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void open() throws IOException {
+        final String uploadId = unit.begin(OWNER);
+        append(uploadId, 3, "baz");
+        append(uploadId, 0, "wrong");
+        append(uploadId, 1, "");
+        append(uploadId, 0, "foo");
+        append(uploadId, 2, "bar");
+        Assert.assertEquals("foobarbaz", read(unit.open(uploadId, OWNER, 4)));
+    }
+
+    /**
+     * Tests reading the stream returned by {@link UploadSessions#open(String, Object, int)} byte by byte.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void openSingleBytes() throws IOException {
+        final String uploadId = unit.begin(OWNER);
+        append(uploadId, 0, "ab");
+        append(uploadId, 1, "");
+        append(uploadId, 2, "c");
+        final InputStream stream = unit.open(uploadId, OWNER, 3);
+        Assert.assertEquals('a', stream.read());
+        Assert.assertEquals('b', stream.read());
+        Assert.assertEquals('c', stream.read());
+        Assert.assertEquals(-1, stream.read());
+        Assert.assertEquals(-1, stream.read(new byte[1], 0, 1));
+        stream.close();
+    }
+
+    /**
+     * Tests {@link UploadSessions#open(String, Object, int)} with a missing chunk.
+     *
+     * @throws IOException should not happen
+     */
+    @Test(expected = IllegalStateException.class)
+    public void openMissing() throws IOException {
+        final String uploadId = unit.begin(OWNER);
+        append(uploadId, 0, "foo");
+        append(uploadId, 2, "baz");
+        unit.open(uploadId, OWNER, 3);
+    }
+
+    /**
+     * Tests {@link UploadSessions#open(String, Object, int)} with a chunk beyond the given number of chunks.
+     *
+     * @throws IOException should not happen
+     */
+    @Test(expected = IllegalStateException.class)
+    public void openExcess() throws IOException {
+        final String uploadId = unit.begin(OWNER);
+        append(uploadId, 0, "foo");
+        append(uploadId, 1, "bar");
+        unit.open(uploadId, OWNER, 1);
+    }
+
+    /**
+     * Tests {@link UploadSessions#append(String, Object, int, InputStream)} with a manipulated upload id.
+     *
+     * @throws IOException should not happen
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void appendTraversal() throws IOException {
+        append("../" + unit.begin(OWNER), 0, "foo");
+    }
+
+    /**
+     * Tests {@link UploadSessions#append(String, Object, int, InputStream)} by another user.
+     *
+     * @throws IOException should not happen
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void appendForeign() throws IOException {
+        unit.append(unit.begin(OWNER), "other", 0, new ByteArrayInputStream(new byte[1]));
+    }
+
+    /**
+     * Tests {@link UploadSessions#open(String, Object, int)} by another user.
+     *
+     * @throws IOException should not happen
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void openForeign() throws IOException {
+        final String uploadId = unit.begin(OWNER);
+        append(uploadId, 0, "foo");
+        unit.open(uploadId, "other", 1);
+    }
+
+    /**
+     * Tests {@link UploadSessions#close(String)} removing the session.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void close() throws IOException {
+        final String uploadId = unit.begin(OWNER);
+        append(uploadId, 0, "foo");
+        unit.close(uploadId);
+        Assert.assertFalse(new File(directory, uploadId).exists());
+    }
+
+    /**
+     * Tests {@link UploadSessions#run()} purging expired sessions only.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void purge() throws IOException {
+        final String expired = unit.begin(OWNER);
+        final String active = unit.begin(OWNER);
+        final File session = new File(directory, expired);
+        Assert.assertTrue(session.setLastModified(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+        unit.run();
+        Assert.assertFalse(session.exists());
+        Assert.assertTrue(new File(directory, active).isDirectory());
+    }
+
+    /**
+     * Tests {@link UploadSessions#run()} keeping expired sessions which are being read.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void purgeInUse() throws IOException {
+        final String uploadId = unit.begin(OWNER);
+        append(uploadId, 0, "foo");
+        final File session = new File(directory, uploadId);
+        final InputStream stream = unit.open(uploadId, OWNER, 1);
+        Assert.assertTrue(session.setLastModified(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+        unit.run();
+        Assert.assertTrue(session.isDirectory());
+        Assert.assertEquals("foo", read(stream));
+        unit.run();
+        Assert.assertFalse(session.exists());
+    }
+
+    /**
+     * Tests that a failed {@link UploadSessions#open(String, Object, int)} does not keep
+     * the session from being purged.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void purgeAfterFailedOpen() throws IOException {
+        final String uploadId = unit.begin(OWNER);
+        try {
+            unit.open(uploadId, OWNER, 1);
+            Assert.fail("Expected missing chunk");
+        } catch (IllegalStateException e) {
+            final File session = new File(directory, uploadId);
+            Assert.assertTrue(session.setLastModified(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+            unit.run();
+            Assert.assertFalse(session.exists());
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.directory;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.directory.AbstractDirectoryService;
+import de.cosmocode.palava.media.directory.DirectoryBase;
+import de.cosmocode.palava.media.directory.DirectoryEntryBase;
+import de.cosmocode.palava.media.directory.OrderKeys;
+import de.cosmocode.palava.media.directory.SparseDirectoryBase;
+
+/**
+ * Tests {@link AbstractDirectoryService}.
+ *
+ * @author agent
+ */
+public final class AbstractDirectoryServiceTest {
+
+    private static final long SPACING = OrderKeys.SPACING;
+    
+    private Query count(long count) {
+        final Query query = EasyMock.createMock(Query.class);
+        EasyMock.expect(query.setParameter(1, 1L)).andReturn(query);
+        EasyMock.expect(query.getSingleResult()).andReturn(count);
+        return query;
+    }
+    
+    private Query entries(int offset, int limit, List<?> result) {
+        final Query query = EasyMock.createMock(Query.class);
+        EasyMock.expect(query.setParameter(1, 1L)).andReturn(query);
+        EasyMock.expect(query.setFirstResult(offset)).andReturn(query);
+        EasyMock.expect(query.setMaxResults(limit)).andReturn(query);
+        EasyMock.expect(query.getResultList()).andReturn(result);
+        return query;
+    }
+    
+    private SparseDirectoryBase sparse() {
+        final SparseDirectoryBase directory = EasyMock.createMock(SparseDirectoryBase.class);
+        EasyMock.expect(directory.getId()).andReturn(1L).anyTimes();
+        return directory;
+    }
+    
+    /**
+     * Tests {@link AbstractDirectoryService#addAssets(DirectoryBase, List, int)}
+     * with a sparse directory, which must only load the adjacent entries.
+     */
+    @Test
+    public void addAssetsSparse() {
+        final AssetBase asset = EasyMock.createMock(AssetBase.class);
+        final List<ConcreteEntry> neighbours = ImmutableList.of(
+            new ConcreteEntry(null, 2 * SPACING), new ConcreteEntry(null, 3 * SPACING));
+        
+        final Query count = count(5L);
+        final Query entries = entries(1, 2, neighbours);
+        final EntityManager manager = EasyMock.createMock(EntityManager.class);
+        EasyMock.expect(manager.createNamedQuery(DirectoryBase.COUNT_ASSETS)).andReturn(count);
+        EasyMock.expect(manager.createNamedQuery(SparseDirectoryBase.ENTRIES)).andReturn(entries);
+        
+        final SparseDirectoryBase directory = sparse();
+        EasyMock.expect(directory.addEntry(asset, 2 * SPACING + SPACING / 2)).andReturn(null);
+        
+        EasyMock.replay(asset, count, entries, manager, directory);
+        
+        Assert.assertEquals(2, new MockDirectoryService(manager).addAssets(directory, ImmutableList.of(asset), 2));
+        
+        EasyMock.verify(asset, count, entries, manager, directory);
+    }
+    
+    /**
+     * Tests {@link AbstractDirectoryService#addAssets(DirectoryBase, List, int)}
+     * with a sparse directory and index -1, which must only load the last entry.
+     */
+    @Test
+    public void addAssetsSparseAppend() {
+        final AssetBase asset = EasyMock.createMock(AssetBase.class);
+        
+        final Query count = count(3L);
+        final Query entries = entries(2, 2, ImmutableList.of(new ConcreteEntry(null, 3 * SPACING)));
+        final EntityManager manager = EasyMock.createMock(EntityManager.class);
+        EasyMock.expect(manager.createNamedQuery(DirectoryBase.COUNT_ASSETS)).andReturn(count);
+        EasyMock.expect(manager.createNamedQuery(SparseDirectoryBase.ENTRIES)).andReturn(entries);
+        
+        final SparseDirectoryBase directory = sparse();
+        EasyMock.expect(directory.addEntry(asset, 4 * SPACING)).andReturn(null);
+        
+        EasyMock.replay(asset, count, entries, manager, directory);
+        
+        Assert.assertEquals(3, new MockDirectoryService(manager).addAssets(directory, ImmutableList.of(asset), -1));
+        
+        EasyMock.verify(asset, count, entries, manager, directory);
+    }
+    
+    /**
+     * Tests {@link AbstractDirectoryService#addAssets(DirectoryBase, List, int)}
+     * with a sparse directory whose adjacent entries leave no room, which
+     * requires rebalancing all entries.
+     */
+    @Test
+    public void addAssetsSparseRebalance() {
+        final AssetBase asset = EasyMock.createMock(AssetBase.class);
+        final List<ConcreteEntry> all = ImmutableList.of(
+            new ConcreteEntry(null, SPACING), new ConcreteEntry(null, SPACING + 1));
+        
+        final Query count = count(2L);
+        final Query entries = entries(0, 2, all);
+        final EntityManager manager = EasyMock.createMock(EntityManager.class);
+        EasyMock.expect(manager.createNamedQuery(DirectoryBase.COUNT_ASSETS)).andReturn(count);
+        EasyMock.expect(manager.createNamedQuery(SparseDirectoryBase.ENTRIES)).andReturn(entries);
+        
+        final SparseDirectoryBase directory = sparse();
+        @SuppressWarnings("unchecked")
+        final List<DirectoryEntryBase> casted = (List<DirectoryEntryBase>) directory.getEntries();
+        EasyMock.expect(casted).andReturn(ImmutableList.<DirectoryEntryBase>copyOf(all));
+        EasyMock.expect(directory.addEntry(asset, 2 * SPACING)).andReturn(null);
+        
+        EasyMock.replay(asset, count, entries, manager, directory);
+        
+        Assert.assertEquals(1, new MockDirectoryService(manager).addAssets(directory, ImmutableList.of(asset), 1));
+        
+        EasyMock.verify(asset, count, entries, manager, directory);
+        Assert.assertEquals(SPACING, all.get(0).getPosition());
+        Assert.assertEquals(3 * SPACING, all.get(1).getPosition());
+    }
+    
+    private DirectoryBase directory() {
+        final DirectoryBase directory = EasyMock.createMock(DirectoryBase.class);
+        EasyMock.expect(directory.getId()).andReturn(1L).anyTimes();
+        EasyMock.replay(directory);
+        return directory;
+    }
+    
+    private AssetBase asset(long id) {
+        final AssetBase asset = EasyMock.createMock(AssetBase.class);
+        EasyMock.expect(asset.getId()).andReturn(id).anyTimes();
+        EasyMock.replay(asset);
+        return asset;
+    }
+    
+    /**
+     * Tests {@link AbstractDirectoryService#moveAsset(DirectoryBase, AssetBase, int)} towards the end
+     * on a join table which checks its primary key per row.
+     */
+    @Test
+    public void moveAssetForward() {
+        final JoinTable table = new JoinTable(1L, 2L, 3L, 4L, 5L);
+        final MockDirectoryService unit = new MockDirectoryService(table.entityManager());
+        Assert.assertEquals(0, unit.moveAsset(directory(), asset(1L), 3));
+        Assert.assertEquals(Arrays.asList(2L, 3L, 4L, 1L, 5L), table.getAssetIds());
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), table.getIndices());
+    }
+    
+    /**
+     * Tests {@link AbstractDirectoryService#moveAsset(DirectoryBase, AssetBase, int)} towards the front
+     * on a join table which checks its primary key per row.
+     */
+    @Test
+    public void moveAssetBackward() {
+        final JoinTable table = new JoinTable(1L, 2L, 3L, 4L, 5L);
+        final MockDirectoryService unit = new MockDirectoryService(table.entityManager());
+        Assert.assertEquals(4, unit.moveAsset(directory(), asset(5L), 1));
+        Assert.assertEquals(Arrays.asList(1L, 5L, 2L, 3L, 4L), table.getAssetIds());
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), table.getIndices());
+    }
+    
+    /**
+     * Tests {@link AbstractDirectoryService#moveAsset(DirectoryBase, AssetBase, int)} with an asset
+     * which is not part of the directory.
+     */
+    @Test
+    public void moveAssetMissing() {
+        final JoinTable table = new JoinTable(1L, 2L, 3L);
+        final MockDirectoryService unit = new MockDirectoryService(table.entityManager());
+        Assert.assertEquals(-1, unit.moveAsset(directory(), asset(4L), 1));
+        Assert.assertEquals(Arrays.asList(1L, 2L, 3L), table.getAssetIds());
+    }
+    
+    /**
+     * Tests {@link AbstractDirectoryService#removeAsset(DirectoryBase, AssetBase)}
+     * on a join table which checks its primary key per row.
+     */
+    @Test
+    public void removeAsset() {
+        final JoinTable table = new JoinTable(1L, 2L, 3L, 4L, 5L);
+        final MockDirectoryService unit = new MockDirectoryService(table.entityManager());
+        Assert.assertTrue(unit.removeAsset(directory(), asset(2L)));
+        Assert.assertFalse(unit.removeAsset(directory(), asset(2L)));
+        Assert.assertEquals(Arrays.asList(1L, 3L, 4L, 5L), table.getAssetIds());
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3), table.getIndices());
+    }
+    
+}
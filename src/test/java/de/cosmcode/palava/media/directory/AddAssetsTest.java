@@ -0,0 +1,219 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.directory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Guice;
+
+import de.cosmocode.palava.core.DefaultRegistryModule;
+import de.cosmocode.palava.core.Registry;
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.media.MediaEvents;
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.asset.AssetConstants;
+import de.cosmocode.palava.media.directory.AddAssets;
+import de.cosmocode.palava.media.directory.DirectoryAddAssetEvent;
+import de.cosmocode.palava.media.directory.DirectoryAddedAssetEvent;
+import de.cosmocode.palava.media.directory.DirectoryBase;
+import de.cosmocode.palava.media.directory.DirectoryConstants;
+import de.cosmocode.palava.media.directory.OrderKeys;
+import de.cosmocode.palava.media.directory.SparseDirectoryBase;
+
+/**
+ * Tests {@link AddAssets}.
+ *
+ * @author agent
+ */
+public final class AddAssetsTest {
+    
+    private final Map<Long, AssetBase> assets = Maps.newHashMap();
+    
+    private final Registry registry = Guice.createInjector(new DefaultRegistryModule()).getInstance(Registry.class);
+    
+    private AssetBase asset(long id) {
+        if (!assets.containsKey(id)) {
+            final AssetBase asset = EasyMock.createMock("asset" + id, AssetBase.class);
+            EasyMock.expect(asset.getId()).andReturn(id).anyTimes();
+            EasyMock.replay(asset);
+            assets.put(id, asset);
+        }
+        return assets.get(id);
+    }
+    
+    private List<Long> ids(List<? extends AssetBase> list) {
+        final List<Long> ids = Lists.newArrayList();
+        for (AssetBase asset : list) {
+            ids.add(asset.getId());
+        }
+        return ids;
+    }
+    
+    private Object execute(DirectoryBase directory, int index) throws IpcCommandExecutionException {
+        @SuppressWarnings("unchecked")
+        final EntityService<AssetBase> as = EasyMock.createMock("as", EntityService.class);
+        EasyMock.expect(as.reference(4L)).andReturn(asset(4L));
+        EasyMock.expect(as.reference(5L)).andReturn(asset(5L));
+        
+        @SuppressWarnings("unchecked")
+        final EntityService<DirectoryBase> ds = EasyMock.createMock("ds", EntityService.class);
+        EasyMock.expect(ds.read(1L)).andReturn(directory);
+        EasyMock.expect(ds.update(directory)).andReturn(directory);
+        
+        EasyMock.replay(as, ds);
+        
+        final AddAssets unit = new AddAssets(ds, as, new MediaEvents(registry));
+        
+        final IpcCall call = EasyMock.createMock("call", IpcCall.class);
+        final IpcArguments arguments = EasyMock.createMock("arguments", IpcArguments.class);
+        EasyMock.expect(call.getArguments()).andReturn(arguments);
+        EasyMock.expect(arguments.getLong(DirectoryConstants.DIRECTORY_ID)).andReturn(1L);
+        EasyMock.expect(arguments.get(AssetConstants.ASSET_IDS)).andReturn(Arrays.asList(4L, 5L));
+        EasyMock.expect(arguments.getInt(DirectoryConstants.INDEX, -1)).andReturn(index);
+        
+        EasyMock.replay(call, arguments);
+        
+        final Map<String, Object> result = Maps.newHashMap();
+        
+        unit.execute(call, result);
+        
+        EasyMock.verify(as, ds);
+        EasyMock.verify(call, arguments);
+        
+        return result.get(DirectoryConstants.CURRENT_INDEX);
+    }
+    
+    private List<Long> execute(int index, int currentIndex) throws IpcCommandExecutionException {
+        final List<AssetBase> list = Lists.newArrayList(asset(1L), asset(2L), asset(3L));
+        
+        final DirectoryBase directory = EasyMock.createMock("directory", DirectoryBase.class);
+        @SuppressWarnings("unchecked")
+        final List<AssetBase> casted = (List<AssetBase>) directory.getAssets();
+        EasyMock.expect(casted).andReturn(list);
+        EasyMock.replay(directory);
+        
+        Assert.assertEquals(currentIndex, execute(directory, index));
+        EasyMock.verify(directory);
+        return ids(list);
+    }
+    
+    /**
+     * Tests {@link AddAssets#execute(IpcCall, Map)} with index -1.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeAppend() throws IpcCommandExecutionException {
+        Assert.assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), execute(-1, 3));
+    }
+    
+    /**
+     * Tests {@link AddAssets#execute(IpcCall, Map)} with index 0.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeFront() throws IpcCommandExecutionException {
+        Assert.assertEquals(Arrays.asList(4L, 5L, 1L, 2L, 3L), execute(0, 0));
+    }
+    
+    /**
+     * Tests {@link AddAssets#execute(IpcCall, Map)} with an index in the middle of the directory.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeMiddle() throws IpcCommandExecutionException {
+        Assert.assertEquals(Arrays.asList(1L, 4L, 5L, 2L, 3L), execute(1, 1));
+    }
+    
+    /**
+     * Tests {@link AddAssets#execute(IpcCall, Map)} with an index out of bounds.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void executeOutOfBounds() throws IpcCommandExecutionException {
+        execute(4, 4);
+    }
+    
+    /**
+     * Tests {@link AddAssets#execute(IpcCall, Map)} with a sparse directory.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeSparse() throws IpcCommandExecutionException {
+        final long spacing = OrderKeys.SPACING;
+        final List<ConcreteEntry> entries = Lists.newArrayList(
+            new ConcreteEntry(asset(1L), spacing), new ConcreteEntry(asset(2L), 4 * spacing));
+        
+        final SparseDirectoryBase directory = EasyMock.createMock("directory", SparseDirectoryBase.class);
+        @SuppressWarnings("unchecked")
+        final List<ConcreteEntry> casted = (List<ConcreteEntry>) directory.getEntries();
+        EasyMock.expect(casted).andReturn(entries);
+        EasyMock.expect(directory.addEntry(asset(4L), 2 * spacing)).andReturn(null);
+        EasyMock.expect(directory.addEntry(asset(5L), 3 * spacing)).andReturn(null);
+        EasyMock.replay(directory);
+        
+        Assert.assertEquals(1, execute(directory, 1));
+        EasyMock.verify(directory);
+    }
+    
+    /**
+     * Tests that {@link AddAssets#execute(IpcCall, Map)} fires the events for every asset in order.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeEvents() throws IpcCommandExecutionException {
+        final List<String> events = Lists.newArrayList();
+        
+        registry.register(DirectoryAddAssetEvent.class, new DirectoryAddAssetEvent() {
+            
+            @Override
+            public void eventDirectoryAddAsset(DirectoryBase directory, AssetBase asset) {
+                events.add("add " + asset.getId());
+            }
+            
+        });
+        
+        registry.register(DirectoryAddedAssetEvent.class, new DirectoryAddedAssetEvent() {
+            
+            @Override
+            public void eventDirectoryAddedAsset(DirectoryBase directory, AssetBase asset) {
+                events.add("added " + asset.getId());
+            }
+            
+        });
+        
+        execute(-1, 3);
+        Assert.assertEquals(Arrays.asList("add 4", "add 5", "added 4", "added 5"), events);
+    }
+    
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.directory;
+
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.directory.DirectoryEntryBase;
+import de.cosmocode.palava.model.base.AbstractEntity;
+import de.cosmocode.rendering.Renderer;
+import de.cosmocode.rendering.RenderingException;
+import de.cosmocode.rendering.RenderingLevel;
+
+/**
+ * Simple implementation of the {@link DirectoryEntryBase} interface.
+ *
+ * @author agent
+ */
+public final class ConcreteEntry extends AbstractEntity implements DirectoryEntryBase {
+
+    private final AssetBase asset;
+    
+    private long position;
+    
+    public ConcreteEntry(AssetBase asset, long position) {
+        this.asset = asset;
+        this.position = position;
+    }
+    
+    @Override
+    public long getId() {
+        return 0;
+    }
+    
+    @Override
+    public AssetBase getAsset() {
+        return asset;
+    }
+    
+    @Override
+    public long getPosition() {
+        return position;
+    }
+    
+    @Override
+    public void setPosition(long position) {
+        this.position = position;
+    }
+    
+    @Override
+    public void render(Renderer renderer, RenderingLevel level) throws RenderingException {
+        
+    }
+    
+    @Override
+    public String toString() {
+        return "ConcreteEntry [position=" + position + "]";
+    }
+    
+}
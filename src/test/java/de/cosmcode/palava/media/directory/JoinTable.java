@@ -0,0 +1,158 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.directory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.media.directory.DirectoryBase;
+
+/**
+ * A simulated join table of a single directory, mapping indices to asset ids, which
+ * checks its primary key after every row of a bulk update, like MySQL or Derby do.
+ * Rows are updated in the order which is most likely to collide.
+ *
+ * @author agent
+ */
+public final class JoinTable {
+
+    private final SortedMap<Integer, Long> rows = Maps.newTreeMap();
+    
+    public JoinTable(long... assetIds) {
+        for (long assetId : assetIds) {
+            rows.put(rows.size(), assetId);
+        }
+    }
+    
+    /**
+     * Provides the asset ids, ordered by index.
+     * 
+     * @return the asset ids
+     */
+    public List<Long> getAssetIds() {
+        return ImmutableList.copyOf(rows.values());
+    }
+    
+    /**
+     * Provides the indices in use.
+     * 
+     * @return the indices
+     */
+    public List<Integer> getIndices() {
+        return ImmutableList.copyOf(rows.keySet());
+    }
+    
+    /**
+     * Provides an entity manager which supports the named queries of {@link DirectoryBase}
+     * required for directories which are not sparse.
+     * 
+     * @return a new entity manager
+     */
+    public EntityManager entityManager() {
+        return proxy(EntityManager.class, new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                Preconditions.checkState("createNamedQuery".equals(method.getName()), "%s not supported", method);
+                return query((String) args[0]);
+            }
+            
+        });
+    }
+    
+    private Query query(final String name) {
+        final Map<Integer, Object> parameters = Maps.newHashMap();
+        return proxy(Query.class, new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("setParameter".equals(method.getName())) {
+                    parameters.put((Integer) args[0], args[1]);
+                    return proxy;
+                } else if ("executeUpdate".equals(method.getName())) {
+                    return update(name, parameters);
+                } else if ("getSingleResult".equals(method.getName())) {
+                    Preconditions.checkState(DirectoryBase.COUNT_ASSETS.equals(name), "%s not supported", name);
+                    return Long.valueOf(rows.size());
+                } else if ("getResultList".equals(method.getName())) {
+                    Preconditions.checkState(DirectoryBase.INDEX_OF.equals(name), "%s not supported", name);
+                    final Integer index = indexOf((Long) parameters.get(2));
+                    return index == null ? Collections.emptyList() : Collections.singletonList(index);
+                } else {
+                    throw new IllegalStateException(String.format("%s not supported", method));
+                }
+            }
+            
+        });
+    }
+    
+    private Integer indexOf(Long assetId) {
+        for (Map.Entry<Integer, Long> row : rows.entrySet()) {
+            if (row.getValue().equals(assetId)) return row.getKey();
+        }
+        return null;
+    }
+    
+    private int update(String name, Map<Integer, Object> parameters) {
+        if (DirectoryBase.SHIFT_ASSETS.equals(name)) {
+            final int from = (Integer) parameters.get(2);
+            final int to = (Integer) parameters.get(3);
+            final int delta = (Integer) parameters.get(4);
+            final List<Integer> indices = Lists.newArrayList(rows.subMap(from, to == Integer.MAX_VALUE ? 
+                Integer.MAX_VALUE : to + 1).keySet());
+            if (delta < 0) {
+                // descending order collides with the next lower row when shifting down
+                Collections.reverse(indices);
+            }
+            for (Integer index : indices) {
+                move(index, index + delta);
+            }
+            return indices.size();
+        } else if (DirectoryBase.UPDATE_INDEX.equals(name)) {
+            move(indexOf((Long) parameters.get(2)), (Integer) parameters.get(3));
+            return 1;
+        } else if (DirectoryBase.REMOVE_ASSET.equals(name)) {
+            rows.remove(indexOf((Long) parameters.get(2)));
+            return 1;
+        } else {
+            throw new IllegalStateException(String.format("%s not supported", name));
+        }
+    }
+    
+    private void move(int from, int to) {
+        Preconditions.checkState(!rows.containsKey(to), "Duplicate index %s", to);
+        rows.put(to, rows.remove(from));
+    }
+    
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(JoinTable.class.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+    
+}
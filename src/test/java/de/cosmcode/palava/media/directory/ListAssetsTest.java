@@ -0,0 +1,210 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.directory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.directory.DirectoryBase;
+import de.cosmocode.palava.media.directory.DirectoryBaseService;
+import de.cosmocode.palava.media.directory.DirectoryConstants;
+import de.cosmocode.palava.media.directory.ListAssets;
+
+/**
+ * Tests {@link ListAssets}.
+ *
+ * @author agent
+ */
+public final class ListAssetsTest {
+    
+    private List<AssetBase> assets(long from, long to) {
+        final List<AssetBase> assets = Lists.newArrayList();
+        for (long id = from; id <= to; id++) {
+            final AssetBase asset = EasyMock.createMock("asset" + id, AssetBase.class);
+            EasyMock.expect(asset.getId()).andReturn(id).anyTimes();
+            EasyMock.replay(asset);
+            assets.add(asset);
+        }
+        return assets;
+    }
+    
+    private List<Long> ids(Object assets) {
+        final List<Long> ids = Lists.newArrayList();
+        for (Object asset : (List<?>) assets) {
+            ids.add(AssetBase.class.cast(asset).getId());
+        }
+        return ids;
+    }
+    
+    private Map<String, Object> execute(EntityService<DirectoryBase> service, int offset, int limit) 
+        throws IpcCommandExecutionException {
+        final IpcCall call = EasyMock.createMock("call", IpcCall.class);
+        final IpcArguments arguments = EasyMock.createMock("arguments", IpcArguments.class);
+        EasyMock.expect(call.getArguments()).andReturn(arguments);
+        EasyMock.expect(arguments.getLong(DirectoryConstants.DIRECTORY_ID)).andReturn(1L);
+        EasyMock.expect(arguments.getInt(DirectoryConstants.OFFSET, 0)).andReturn(offset);
+        EasyMock.expect(arguments.getInt(DirectoryConstants.LIMIT)).andReturn(limit);
+        
+        EasyMock.replay(call, arguments);
+        
+        final Map<String, Object> result = Maps.newHashMap();
+        new ListAssets(service).execute(call, result);
+        
+        EasyMock.verify(call, arguments);
+        return result;
+    }
+    
+    private Map<String, Object> fallback(int offset, int limit) throws IpcCommandExecutionException {
+        final DirectoryBase directory = EasyMock.createMock("directory", DirectoryBase.class);
+        @SuppressWarnings("unchecked")
+        final List<AssetBase> casted = (List<AssetBase>) directory.getAssets();
+        EasyMock.expect(casted).andReturn(assets(1, 5));
+        
+        @SuppressWarnings("unchecked")
+        final EntityService<DirectoryBase> service = EasyMock.createMock("service", EntityService.class);
+        EasyMock.expect(service.read(1L)).andReturn(directory);
+        
+        EasyMock.replay(directory, service);
+        final Map<String, Object> result = execute(service, offset, limit);
+        EasyMock.verify(directory, service);
+        return result;
+    }
+    
+    /**
+     * Tests {@link ListAssets#execute(IpcCall, Map)} with the first page.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeFirstPage() throws IpcCommandExecutionException {
+        final Map<String, Object> result = fallback(0, 2);
+        Assert.assertEquals(Arrays.asList(1L, 2L), ids(result.get(DirectoryConstants.ASSETS)));
+        Assert.assertEquals(5L, result.get(DirectoryConstants.TOTAL));
+    }
+    
+    /**
+     * Tests {@link ListAssets#execute(IpcCall, Map)} with the last, partially filled page.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeLastPage() throws IpcCommandExecutionException {
+        final Map<String, Object> result = fallback(4, 2);
+        Assert.assertEquals(Arrays.asList(5L), ids(result.get(DirectoryConstants.ASSETS)));
+        Assert.assertEquals(5L, result.get(DirectoryConstants.TOTAL));
+    }
+    
+    /**
+     * Tests {@link ListAssets#execute(IpcCall, Map)} with an offset behind the last asset.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeBehindLastPage() throws IpcCommandExecutionException {
+        final Map<String, Object> result = fallback(7, 2);
+        Assert.assertEquals(Arrays.<Long>asList(), ids(result.get(DirectoryConstants.ASSETS)));
+        Assert.assertEquals(5L, result.get(DirectoryConstants.TOTAL));
+    }
+    
+    /**
+     * Tests {@link ListAssets#execute(IpcCall, Map)} with a negative offset.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void executeNegativeOffset() throws IpcCommandExecutionException {
+        @SuppressWarnings("unchecked")
+        final EntityService<DirectoryBase> service = EasyMock.createMock("service", EntityService.class);
+        EasyMock.replay(service);
+        execute(service, -1, 2);
+    }
+    
+    /**
+     * Tests {@link ListAssets#execute(IpcCall, Map)} with a limit of zero.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void executeZeroLimit() throws IpcCommandExecutionException {
+        @SuppressWarnings("unchecked")
+        final EntityService<DirectoryBase> service = EasyMock.createMock("service", EntityService.class);
+        EasyMock.replay(service);
+        execute(service, 0, 0);
+    }
+    
+    /**
+     * Tests {@link ListAssets#execute(IpcCall, Map)} with a {@link DirectoryBaseService},
+     * which must load only the requested page.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeService() throws IpcCommandExecutionException {
+        final DirectoryBase directory = EasyMock.createMock("directory", DirectoryBase.class);
+        
+        @SuppressWarnings("unchecked")
+        final DirectoryBaseService<DirectoryBase> service = EasyMock.createMock("service", DirectoryBaseService.class);
+        EasyMock.expect(service.read(1L)).andReturn(directory);
+        EasyMock.expect(service.countAssets(directory)).andReturn(5L);
+        EasyMock.expect(service.listAssets(directory, 2, 2)).andReturn(ImmutableList.copyOf(assets(3, 4)));
+        
+        EasyMock.replay(directory, service);
+        final Map<String, Object> result = execute(service, 2, 2);
+        EasyMock.verify(directory, service);
+        
+        Assert.assertEquals(Arrays.asList(3L, 4L), ids(result.get(DirectoryConstants.ASSETS)));
+        Assert.assertEquals(5L, result.get(DirectoryConstants.TOTAL));
+    }
+    
+    /**
+     * Tests {@link ListAssets#execute(IpcCall, Map)} with a {@link DirectoryBaseService}
+     * and an offset behind the last asset, which must not query any assets.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeServiceBehindLastPage() throws IpcCommandExecutionException {
+        final DirectoryBase directory = EasyMock.createMock("directory", DirectoryBase.class);
+        
+        @SuppressWarnings("unchecked")
+        final DirectoryBaseService<DirectoryBase> service = EasyMock.createMock("service", DirectoryBaseService.class);
+        EasyMock.expect(service.read(1L)).andReturn(directory);
+        EasyMock.expect(service.countAssets(directory)).andReturn(5L);
+        
+        EasyMock.replay(directory, service);
+        final Map<String, Object> result = execute(service, 5, 2);
+        EasyMock.verify(directory, service);
+        
+        Assert.assertEquals(Arrays.<Long>asList(), ids(result.get(DirectoryConstants.ASSETS)));
+        Assert.assertEquals(5L, result.get(DirectoryConstants.TOTAL));
+    }
+    
+}
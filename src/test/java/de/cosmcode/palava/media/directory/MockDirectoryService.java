@@ -0,0 +1,47 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.directory;
+
+import javax.persistence.EntityManager;
+
+import de.cosmocode.palava.media.directory.AbstractDirectoryService;
+import de.cosmocode.palava.media.directory.DirectoryBase;
+
+/**
+ * An {@link AbstractDirectoryService} whose entity manager is set by tests.
+ *
+ * @author agent
+ */
+public final class MockDirectoryService extends AbstractDirectoryService<DirectoryBase> {
+
+    private final EntityManager entityManager;
+    
+    public MockDirectoryService(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+    
+    @Override
+    protected EntityManager entityManager() {
+        return entityManager;
+    }
+    
+    @Override
+    protected Class<DirectoryBase> entityClass() {
+        return DirectoryBase.class;
+    }
+    
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.directory;
+
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.directory.DirectoryEntryBase;
+import de.cosmocode.palava.media.directory.OrderKeys;
+
+/**
+ * Tests {@link OrderKeys}.
+ *
+ * @author agent
+ */
+public final class OrderKeysTest {
+
+    private static final long SPACING = OrderKeys.SPACING;
+    
+    private List<ConcreteEntry> entries(long... positions) {
+        final List<ConcreteEntry> entries = Lists.newArrayList();
+        for (long position : positions) {
+            entries.add(new ConcreteEntry(EasyMock.createMock(AssetBase.class), position));
+        }
+        return entries;
+    }
+    
+    private void assertAscending(List<? extends DirectoryEntryBase> entries) {
+        for (int i = 1; i < entries.size(); i++) {
+            Assert.assertTrue(entries.toString(), entries.get(i - 1).getPosition() < entries.get(i).getPosition());
+        }
+    }
+    
+    /**
+     * Tests {@link OrderKeys#indexOf(List, AssetBase)}.
+     */
+    @Test
+    public void indexOf() {
+        final List<ConcreteEntry> entries = entries(SPACING, 2 * SPACING);
+        Assert.assertEquals(1, OrderKeys.indexOf(entries, entries.get(1).getAsset()));
+        Assert.assertEquals(-1, OrderKeys.indexOf(entries, EasyMock.createMock(AssetBase.class)));
+    }
+    
+    /**
+     * Tests {@link OrderKeys#at(List, int)} with no entries.
+     */
+    @Test
+    public void atEmpty() {
+        Assert.assertEquals(SPACING, OrderKeys.at(entries(), 0));
+        Assert.assertArrayEquals(new long[] {SPACING, 2 * SPACING, 3 * SPACING}, 
+            OrderKeys.at(entries(), 0, 3));
+    }
+    
+    /**
+     * Tests {@link OrderKeys#at(List, int)} behind the last entry.
+     */
+    @Test
+    public void atEnd() {
+        Assert.assertEquals(3 * SPACING, OrderKeys.at(entries(SPACING, 2 * SPACING), 2));
+        Assert.assertArrayEquals(new long[] {3 * SPACING, 4 * SPACING}, 
+            OrderKeys.at(entries(SPACING, 2 * SPACING), 2, 2));
+    }
+    
+    /**
+     * Tests {@link OrderKeys#at(List, int)} in front of the first entry.
+     */
+    @Test
+    public void atFront() {
+        Assert.assertEquals(0L, OrderKeys.at(entries(SPACING, 2 * SPACING), 0));
+        Assert.assertArrayEquals(new long[] {-SPACING, 0L}, 
+            OrderKeys.at(entries(SPACING, 2 * SPACING), 0, 2));
+    }
+    
+    /**
+     * Tests {@link OrderKeys#at(List, int)} between two entries.
+     */
+    @Test
+    public void atMiddle() {
+        Assert.assertEquals(SPACING + SPACING / 2, OrderKeys.at(entries(SPACING, 2 * SPACING), 1));
+    }
+    
+    /**
+     * Tests {@link OrderKeys#at(List, int, int)} between two entries.
+     */
+    @Test
+    public void atMiddleMultiple() {
+        final List<ConcreteEntry> entries = entries(SPACING, 5 * SPACING);
+        Assert.assertArrayEquals(new long[] {2 * SPACING, 3 * SPACING, 4 * SPACING}, 
+            OrderKeys.at(entries, 1, 3));
+        Assert.assertEquals(SPACING, entries.get(0).getPosition());
+        Assert.assertEquals(5 * SPACING, entries.get(1).getPosition());
+    }
+    
+    /**
+     * Tests {@link OrderKeys#at(List, int)} with an index out of bounds.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void atOutOfBounds() {
+        OrderKeys.at(entries(SPACING), 2);
+    }
+    
+    /**
+     * Tests {@link OrderKeys#at(List, int, int)} with a negative count.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void atNegativeCount() {
+        OrderKeys.at(entries(SPACING), 0, -1);
+    }
+    
+    /**
+     * Tests that {@link OrderKeys#SPACING} allows 20 consecutive insertions into
+     * the same gap without touching any other entry.
+     */
+    @Test
+    public void gap() {
+        final List<ConcreteEntry> entries = entries(SPACING, 2 * SPACING);
+        for (int i = 0; i < 20; i++) {
+            final long key = OrderKeys.at(entries, 1);
+            entries.add(1, new ConcreteEntry(EasyMock.createMock(AssetBase.class), key));
+            assertAscending(entries);
+        }
+        Assert.assertEquals(SPACING, entries.get(0).getPosition());
+        Assert.assertEquals(SPACING + 1, entries.get(1).getPosition());
+        Assert.assertEquals(2 * SPACING, entries.get(entries.size() - 1).getPosition());
+    }
+    
+    /**
+     * Tests that {@link OrderKeys#at(List, int)} rebalances all entries
+     * once the gap ran out.
+     */
+    @Test
+    public void rebalance() {
+        final List<ConcreteEntry> entries = entries(SPACING, SPACING + 1, 3 * SPACING);
+        final long key = OrderKeys.at(entries, 1);
+        Assert.assertEquals(SPACING, entries.get(0).getPosition());
+        Assert.assertEquals(3 * SPACING, entries.get(1).getPosition());
+        Assert.assertEquals(4 * SPACING, entries.get(2).getPosition());
+        Assert.assertEquals(2 * SPACING, key);
+    }
+    
+    /**
+     * Tests that {@link OrderKeys#at(List, int, int)} rebalances all entries
+     * if the gap is too small for all new entries, keeping their order.
+     */
+    @Test
+    public void rebalanceMultiple() {
+        final List<ConcreteEntry> entries = entries(0L, 2L, 4L, 5L);
+        final List<ConcreteEntry> original = Lists.newArrayList(entries);
+        final long[] keys = OrderKeys.at(entries, 2, 3);
+        
+        Assert.assertEquals(original, entries);
+        assertAscending(entries);
+        for (long key : keys) {
+            entries.add(2 + entries.size() - original.size(), new ConcreteEntry(null, key));
+        }
+        assertAscending(entries);
+        Assert.assertEquals(7, entries.size());
+    }
+    
+}
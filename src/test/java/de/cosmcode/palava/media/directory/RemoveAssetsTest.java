@@ -0,0 +1,210 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.directory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Guice;
+
+import de.cosmocode.palava.core.DefaultRegistryModule;
+import de.cosmocode.palava.core.Registry;
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.media.MediaEvents;
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.asset.AssetConstants;
+import de.cosmocode.palava.media.directory.DirectoryBase;
+import de.cosmocode.palava.media.directory.DirectoryConstants;
+import de.cosmocode.palava.media.directory.DirectoryEntryBase;
+import de.cosmocode.palava.media.directory.DirectoryRemoveAssetEvent;
+import de.cosmocode.palava.media.directory.DirectoryRemovedAssetEvent;
+import de.cosmocode.palava.media.directory.RemoveAssets;
+import de.cosmocode.palava.media.directory.SparseDirectoryBase;
+
+/**
+ * Tests {@link RemoveAssets}.
+ *
+ * @author agent
+ */
+public final class RemoveAssetsTest {
+    
+    private final Map<Long, AssetBase> assets = Maps.newHashMap();
+    
+    private final Registry registry = Guice.createInjector(new DefaultRegistryModule()).getInstance(Registry.class);
+    
+    private AssetBase asset(long id) {
+        if (!assets.containsKey(id)) {
+            final AssetBase asset = EasyMock.createMock("asset" + id, AssetBase.class);
+            EasyMock.expect(asset.getId()).andReturn(id).anyTimes();
+            EasyMock.replay(asset);
+            assets.put(id, asset);
+        }
+        return assets.get(id);
+    }
+    
+    private List<Long> ids(List<? extends AssetBase> list) {
+        final List<Long> ids = Lists.newArrayList();
+        for (AssetBase asset : list) {
+            ids.add(asset.getId());
+        }
+        return ids;
+    }
+    
+    private void execute(DirectoryBase directory, List<Long> assetIds) throws IpcCommandExecutionException {
+        @SuppressWarnings("unchecked")
+        final EntityService<AssetBase> as = EasyMock.createMock("as", EntityService.class);
+        for (Long assetId : assetIds) {
+            EasyMock.expect(as.reference(assetId)).andReturn(asset(assetId));
+        }
+        
+        @SuppressWarnings("unchecked")
+        final EntityService<DirectoryBase> ds = EasyMock.createMock("ds", EntityService.class);
+        EasyMock.expect(ds.read(1L)).andReturn(directory);
+        EasyMock.expect(ds.update(directory)).andReturn(directory);
+        
+        EasyMock.replay(as, ds);
+        
+        final RemoveAssets unit = new RemoveAssets(ds, as, new MediaEvents(registry));
+        
+        final IpcCall call = EasyMock.createMock("call", IpcCall.class);
+        final IpcArguments arguments = EasyMock.createMock("arguments", IpcArguments.class);
+        EasyMock.expect(call.getArguments()).andReturn(arguments);
+        EasyMock.expect(arguments.getLong(DirectoryConstants.DIRECTORY_ID)).andReturn(1L);
+        EasyMock.expect(arguments.get(AssetConstants.ASSET_IDS)).andReturn(assetIds);
+        
+        EasyMock.replay(call, arguments);
+        
+        unit.execute(call, Maps.<String, Object>newHashMap());
+        
+        EasyMock.verify(as, ds);
+        EasyMock.verify(call, arguments);
+    }
+    
+    private List<Long> execute(List<Long> assetIds) throws IpcCommandExecutionException {
+        final List<AssetBase> list = Lists.newArrayList();
+        for (long id = 1; id <= 5; id++) {
+            list.add(asset(id));
+        }
+        
+        final DirectoryBase directory = EasyMock.createMock("directory", DirectoryBase.class);
+        @SuppressWarnings("unchecked")
+        final List<AssetBase> casted = (List<AssetBase>) directory.getAssets();
+        EasyMock.expect(casted).andReturn(list);
+        EasyMock.replay(directory);
+        
+        execute(directory, assetIds);
+        EasyMock.verify(directory);
+        return ids(list);
+    }
+    
+    /**
+     * Tests {@link RemoveAssets#execute(IpcCall, Map)} with some assets of the directory.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void execute() throws IpcCommandExecutionException {
+        Assert.assertEquals(Arrays.asList(1L, 3L, 5L), execute(Arrays.asList(4L, 2L)));
+    }
+    
+    /**
+     * Tests {@link RemoveAssets#execute(IpcCall, Map)} with all assets of the directory.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeAll() throws IpcCommandExecutionException {
+        Assert.assertEquals(Arrays.<Long>asList(), execute(Arrays.asList(1L, 2L, 3L, 4L, 5L)));
+    }
+    
+    /**
+     * Tests {@link RemoveAssets#execute(IpcCall, Map)} with an asset which is not part of the directory.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeMissing() throws IpcCommandExecutionException {
+        Assert.assertEquals(Arrays.asList(1L, 2L, 3L, 4L), execute(Arrays.asList(5L, 6L)));
+    }
+    
+    /**
+     * Tests {@link RemoveAssets#execute(IpcCall, Map)} with a sparse directory.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeSparse() throws IpcCommandExecutionException {
+        final List<DirectoryEntryBase> entries = Lists.newArrayList();
+        for (long id = 1; id <= 3; id++) {
+            entries.add(new ConcreteEntry(asset(id), id));
+        }
+        final DirectoryEntryBase first = entries.get(0);
+        final DirectoryEntryBase last = entries.get(2);
+        
+        final SparseDirectoryBase directory = EasyMock.createMock("directory", SparseDirectoryBase.class);
+        @SuppressWarnings("unchecked")
+        final List<DirectoryEntryBase> casted = (List<DirectoryEntryBase>) directory.getEntries();
+        EasyMock.expect(casted).andReturn(entries);
+        EasyMock.replay(directory);
+        
+        execute(directory, Arrays.asList(2L));
+        EasyMock.verify(directory);
+        Assert.assertEquals(Arrays.asList(first, last), entries);
+    }
+    
+    /**
+     * Tests that {@link RemoveAssets#execute(IpcCall, Map)} fires the events for every asset in order.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeEvents() throws IpcCommandExecutionException {
+        final List<String> events = Lists.newArrayList();
+        
+        registry.register(DirectoryRemoveAssetEvent.class, new DirectoryRemoveAssetEvent() {
+            
+            @Override
+            public void eventDirectoryRemoveAsset(DirectoryBase directory, AssetBase asset) {
+                events.add("remove " + asset.getId());
+            }
+            
+        });
+        
+        registry.register(DirectoryRemovedAssetEvent.class, new DirectoryRemovedAssetEvent() {
+            
+            @Override
+            public void eventDirectoryRemovedAsset(DirectoryBase directory, AssetBase asset) {
+                events.add("removed " + asset.getId());
+            }
+            
+        });
+        
+        execute(Arrays.asList(4L, 2L));
+        Assert.assertEquals(Arrays.asList("remove 4", "remove 2", "removed 4", "removed 2"), events);
+    }
+    
+}
@@ -33,6 +33,7 @@ import de.cosmocode.palava.entity.EntityService;
 import de.cosmocode.palava.ipc.IpcArguments;
 import de.cosmocode.palava.ipc.IpcCall;
 import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.media.MediaEvents;
 import de.cosmocode.palava.media.asset.AssetBase;
 import de.cosmocode.palava.media.asset.AssetConstants;
 import de.cosmocode.palava.media.directory.DirectoryBase;
@@ -81,7 +82,7 @@ public final class SetAssetTest {
         final DirectoryBase directory = EasyMock.createMock("directory", DirectoryBase.class);
         @SuppressWarnings("unchecked")
         final List<AssetBase> casted = (List<AssetBase>) directory.getAssets();
-        EasyMock.expect(casted).andReturn(assets);
+        EasyMock.expect(casted).andReturn(assets).atLeastOnce();
         
         @SuppressWarnings("unchecked")
         final EntityService<DirectoryBase> ds = EasyMock.createMock("ds", EntityService.class);
@@ -91,7 +92,7 @@ public final class SetAssetTest {
         
         final Registry registry = Guice.createInjector(new DefaultRegistryModule()).getInstance(Registry.class);
         
-        final SetAsset unit = new SetAsset(ds, as, registry);
+        final SetAsset unit = new SetAsset(ds, as, new MediaEvents(registry));
         
         final IpcCall call = EasyMock.createMock("call", IpcCall.class);
         final IpcArguments arguments = EasyMock.createMock("arguments", IpcArguments.class);
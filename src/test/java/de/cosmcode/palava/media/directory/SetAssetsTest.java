@@ -0,0 +1,216 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmcode.palava.media.directory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.inject.Guice;
+import com.google.inject.internal.Lists;
+import com.google.inject.internal.Maps;
+
+import de.cosmocode.palava.core.DefaultRegistryModule;
+import de.cosmocode.palava.core.Registry;
+import de.cosmocode.palava.entity.EntityService;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.media.MediaEvents;
+import de.cosmocode.palava.media.asset.AssetBase;
+import de.cosmocode.palava.media.asset.AssetConstants;
+import de.cosmocode.palava.media.directory.DirectoryBase;
+import de.cosmocode.palava.media.directory.DirectoryConstants;
+import de.cosmocode.palava.media.directory.DirectoryPostSetAssetsEvent;
+import de.cosmocode.palava.media.directory.DirectoryPreSetAssetsEvent;
+import de.cosmocode.palava.media.directory.SetAssets;
+
+/**
+ * Tests {@link SetAssets}.
+ *
+ * @author agent
+ */
+public final class SetAssetsTest {
+    
+    private List<AssetBase> execute(List<Long> assetIds) throws IpcCommandExecutionException {
+        return execute(assetIds, Guice.createInjector(new DefaultRegistryModule()).getInstance(Registry.class));
+    }
+    
+    private List<AssetBase> execute(List<Long> assetIds, Registry registry) throws IpcCommandExecutionException {
+        return execute(Arrays.asList(1L, 2L, 3L, 4L, 5L), assetIds, registry);
+    }
+    
+    private List<AssetBase> execute(List<Long> storedIds, List<Long> assetIds, Registry registry) 
+        throws IpcCommandExecutionException {
+        final Map<Long, AssetBase> byId = Maps.newHashMap();
+        final List<AssetBase> assets = Lists.newArrayList();
+        for (Long id : storedIds) {
+            if (!byId.containsKey(id)) {
+                final AssetBase asset = EasyMock.createMock("asset" + id, AssetBase.class);
+                EasyMock.expect(asset.getId()).andReturn(id).anyTimes();
+                EasyMock.replay(asset);
+                byId.put(id, asset);
+            }
+            assets.add(byId.get(id));
+        }
+        
+        final DirectoryBase directory = EasyMock.createMock("directory", DirectoryBase.class);
+        @SuppressWarnings("unchecked")
+        final List<AssetBase> casted = (List<AssetBase>) directory.getAssets();
+        EasyMock.expect(casted).andReturn(assets);
+        
+        @SuppressWarnings("unchecked")
+        final EntityService<DirectoryBase> ds = EasyMock.createMock("ds", EntityService.class);
+        EasyMock.expect(ds.read(1L)).andReturn(directory);
+        
+        EasyMock.replay(directory, ds);
+        
+        final SetAssets unit = new SetAssets(ds, new MediaEvents(registry));
+        
+        final IpcCall call = EasyMock.createMock("call", IpcCall.class);
+        final IpcArguments arguments = EasyMock.createMock("arguments", IpcArguments.class);
+        EasyMock.expect(call.getArguments()).andReturn(arguments);
+        EasyMock.expect(arguments.getLong(DirectoryConstants.DIRECTORY_ID)).andReturn(1L);
+        EasyMock.expect(arguments.get(AssetConstants.ASSET_IDS)).andReturn(assetIds);
+        
+        EasyMock.replay(call, arguments);
+        
+        final Map<String, Object> result = Maps.newHashMap();
+        
+        unit.execute(call, result);
+        
+        EasyMock.verify(directory, ds);
+        EasyMock.verify(call, arguments);
+        
+        return assets;
+    }
+    
+    private List<Long> ids(List<AssetBase> assets) {
+        final List<Long> ids = Lists.newArrayList();
+        for (AssetBase asset : assets) {
+            ids.add(asset.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Tests {@link SetAssets#execute(IpcCall, Map)} with all assets of the directory.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeFull() throws IpcCommandExecutionException {
+        final List<Long> order = Arrays.asList(5L, 3L, 1L, 2L, 4L);
+        Assert.assertEquals(order, ids(execute(order)));
+    }
+
+    /**
+     * Tests {@link SetAssets#execute(IpcCall, Map)} with some assets of the directory.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executePartial() throws IpcCommandExecutionException {
+        final List<Long> order = Arrays.asList(4L, 2L);
+        Assert.assertEquals(Arrays.asList(1L, 4L, 3L, 2L, 5L), ids(execute(order)));
+    }
+
+    /**
+     * Tests that {@link SetAssets#execute(IpcCall, Map)} fires one event per call with all moved assets.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeEvents() throws IpcCommandExecutionException {
+        final Registry registry = Guice.createInjector(new DefaultRegistryModule()).getInstance(Registry.class);
+        final List<List<Long>> pre = Lists.newArrayList();
+        final List<List<Long>> post = Lists.newArrayList();
+        
+        registry.register(DirectoryPreSetAssetsEvent.class, new DirectoryPreSetAssetsEvent() {
+            
+            @Override
+            public void eventDirectoryPreSetAssets(DirectoryBase directory, List<AssetBase> assets) {
+                pre.add(ids(assets));
+            }
+            
+        });
+        
+        registry.register(DirectoryPostSetAssetsEvent.class, new DirectoryPostSetAssetsEvent() {
+            
+            @Override
+            public void eventDirectoryPostSetAssets(DirectoryBase directory, List<AssetBase> assets) {
+                post.add(ids(assets));
+            }
+            
+        });
+        
+        execute(Arrays.asList(1L, 4L, 3L, 2L), registry);
+        
+        final List<List<Long>> expected = Lists.newArrayList();
+        expected.add(Arrays.asList(4L, 2L));
+        Assert.assertEquals(expected, pre);
+        Assert.assertEquals(expected, post);
+    }
+
+    /**
+     * Tests {@link SetAssets#execute(IpcCall, Map)} with an asset which is not part of the directory.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test(expected = IllegalStateException.class)
+    public void executeMissing() throws IpcCommandExecutionException {
+        execute(Arrays.asList(1L, 6L));
+    }
+    
+    /**
+     * Tests {@link SetAssets#execute(IpcCall, Map)} with an asset which is specified twice.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void executeDuplicate() throws IpcCommandExecutionException {
+        execute(Arrays.asList(1L, 2L, 1L));
+    }
+    
+    /**
+     * Tests {@link SetAssets#execute(IpcCall, Map)} with an asset which is contained twice in the directory.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test(expected = IllegalStateException.class)
+    public void executeContainedTwice() throws IpcCommandExecutionException {
+        final Registry registry = Guice.createInjector(new DefaultRegistryModule()).getInstance(Registry.class);
+        execute(Arrays.asList(1L, 2L, 1L, 3L), Arrays.asList(3L, 1L), registry);
+    }
+    
+    /**
+     * Tests {@link SetAssets#execute(IpcCall, Map)} with a directory which contains an unspecified asset twice.
+     * 
+     * @throws IpcCommandExecutionException should not happen 
+     */
+    @Test
+    public void executeUnspecifiedTwice() throws IpcCommandExecutionException {
+        final Registry registry = Guice.createInjector(new DefaultRegistryModule()).getInstance(Registry.class);
+        final List<AssetBase> assets = execute(Arrays.asList(1L, 2L, 1L, 3L), Arrays.asList(3L, 2L), registry);
+        Assert.assertEquals(Arrays.asList(1L, 3L, 1L, 2L), ids(assets));
+    }
+
+}